@@ -0,0 +1,126 @@
+package net.omny;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * Search and copy the bytes of a 16 KB ByteStack
+ *
+ * BOXED goes through the List&lt;Byte&gt; methods, NAIVE reads the bytes one by
+ * one without boxing, PRIMITIVE uses the bulk methods (SWAR search, array copy).
+ */
+@State(Scope.Thread)
+public class ByteStackPrimitiveBenchmark {
+
+    private static final byte[] PATTERN = "\r\n\r\n".getBytes();
+
+    @Param({ "BOXED", "NAIVE", "PRIMITIVE" })
+    public String implType;
+
+    private ByteStack byteStack;
+    private byte[] dest;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ByteStackPrimitiveBenchmark.class.getSimpleName())
+
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/ByteStackPrimitive_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.byteStack = new ByteStack(16 * 1024);
+        while (byteStack.size() < 16 * 1024 - 64) {
+            byteStack.addString("X-Header-" + byteStack.size() + ": some value\r\n");
+        }
+        byteStack.addString("\r\n");
+        this.dest = new byte[byteStack.size()];
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int indexOf() {
+        switch (implType) {
+            case "BOXED":
+                for (int i = 0; i + PATTERN.length <= byteStack.size(); i++) {
+                    int j = 0;
+                    while (j < PATTERN.length && byteStack.get(i + j) == PATTERN[j]) {
+                        j++;
+                    }
+                    if (j == PATTERN.length) {
+                        return i;
+                    }
+                }
+                return -1;
+            case "NAIVE":
+                for (int i = 0; i + PATTERN.length <= byteStack.size(); i++) {
+                    int j = 0;
+                    while (j < PATTERN.length && byteStack.getNative(i + j) == PATTERN[j]) {
+                        j++;
+                    }
+                    if (j == PATTERN.length) {
+                        return i;
+                    }
+                }
+                return -1;
+            default:
+                return byteStack.indexOf(PATTERN);
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] copy() {
+        switch (implType) {
+            case "BOXED":
+                Iterator<Byte> iterator = byteStack.iterator();
+                for (int i = 0; iterator.hasNext(); i++) {
+                    dest[i] = iterator.next();
+                }
+                return dest;
+            case "NAIVE":
+                ByteStack.ByteCursor cursor = byteStack.cursor();
+                for (int i = 0; cursor.hasNext(); i++) {
+                    dest[i] = cursor.next();
+                }
+                return dest;
+            default:
+                byteStack.copyTo(dest, 0);
+                return dest;
+        }
+    }
+
+}
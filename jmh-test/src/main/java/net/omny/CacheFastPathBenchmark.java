@@ -0,0 +1,136 @@
+package net.omny;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.Method;
+import net.omny.route.Route;
+import net.omny.route.Router;
+import net.omny.route.impl.AnonymousRoute;
+import net.omny.server.WebServer;
+import net.omny.utils.Debug;
+import net.omny.views.TextView;
+
+/**
+ * End to end benchmark of a request on a real socket
+ *
+ * CACHED is answered by the raw request line lookup, VARY by the lookup done
+ * once headers are parsed, UNCACHED by running the route.
+ */
+@State(Scope.Benchmark)
+public class CacheFastPathBenchmark {
+
+    private static final int PORT = 8097;
+
+    @Param({ "CACHED", "VARY", "UNCACHED" })
+    public String path;
+
+    private byte[] request;
+    private byte[] buffer = new byte[4096];
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CacheFastPathBenchmark.class.getSimpleName())
+
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/CacheFastPath_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        Debug.ENABLE = false;
+        WebServer.launch(new BenchmarkServer());
+        // Wait for the server to listen
+        Thread.sleep(500);
+        this.request = ("GET /" + path.toLowerCase() + " HTTP/1.1\r\n"
+                + "Host: localhost:" + PORT + "\r\n"
+                + "User-Agent: jmh\r\n"
+                + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+                + "Accept-Encoding: gzip, deflate\r\n"
+                + "Connection: keep-alive\r\n\r\n").getBytes();
+        // First request renders the response and caches it
+        request();
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int request() throws IOException {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.getOutputStream().write(this.request);
+            InputStream in = socket.getInputStream();
+            int total = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    public static class BenchmarkServer extends WebServer {
+
+        public BenchmarkServer() {
+            super();
+            this.port = PORT;
+            postInit();
+        }
+
+        @Override
+        protected void init() {
+            route(this.router);
+            this.router.setRouted(true);
+        }
+
+        @Override
+        public void route(Router router) {
+            router.route("/cached", page(true), Method.GET);
+            Route vary = page(true);
+            vary.setVaryHeaders("Accept-Encoding");
+            router.route("/vary", vary, Method.GET);
+            router.route("/uncached", page(false), Method.GET);
+        }
+
+        private static Route page(boolean cached) {
+            Route route = new AnonymousRoute((req, res) -> {
+                StringBuilder builder = new StringBuilder("<html><body><ul>");
+                for (int i = 0; i < 100; i++) {
+                    builder.append("<li>Item ").append(i).append("</li>");
+                }
+                return new TextView(builder.append("</ul></body></html>").toString());
+            });
+            route.setAllowCache(cached);
+            route.setLastInCache(60 * 1000);
+            return route;
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+package net.omny;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.utils.ByteStack;
+import net.omny.utils.DirectByteStack;
+
+/**
+ * Write a body held in a ByteStack (heap) or a DirectByteStack (off-heap) to
+ * a channel, like a large response written to the socket of a client
+ *
+ * The channel is /dev/null, so only the copies made before the system call are
+ * measured.
+ */
+@State(Scope.Thread)
+public class DirectVsHeapByteStack {
+
+    @Param({ "HEAP", "DIRECT" })
+    public String implType;
+
+    @Param({ "16384", "1048576" })
+    public int size;
+
+    private ByteStack heap;
+    private DirectByteStack direct;
+    private FileChannel channel;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(DirectVsHeapByteStack.class.getSimpleName())
+
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/DirectVsHeap_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] chunk = new byte[1024];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) ('a' + i % 26);
+        }
+        this.heap = new ByteStack();
+        this.direct = new DirectByteStack();
+        for (int i = 0; i < size / chunk.length; i++) {
+            heap.addAllBytes(chunk);
+            direct.addAllBytes(chunk);
+        }
+        this.channel = FileChannel.open(Path.of("/dev/null"), StandardOpenOption.WRITE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.channel.close();
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void write() throws IOException {
+        if (implType.equals("DIRECT")) {
+            direct.writeTo(channel);
+        } else {
+            ByteBuffer view = heap.asByteBuffer();
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package net.omny;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.Gson;
+
+import net.omny.route.Code;
+import net.omny.route.Response;
+import net.omny.utils.HTTPUtils.Version;
+import net.omny.views.JsonView;
+
+/**
+ * Serialize a list of objects in the body of a response
+ *
+ * TO_JSON builds the JSON string with Gson.toJson then encodes it in a new
+ * array, STREAMED writes it with {@link JsonView#of(Object)} straight in the
+ * pooled body.
+ */
+@State(Scope.Thread)
+public class JsonViewBenchmark {
+
+    private static final Gson GSON = new Gson();
+
+    @Param({ "TO_JSON", "STREAMED" })
+    public String implType;
+
+    @Param({ "10", "1000" })
+    public int size;
+
+    private List<User> users;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(JsonViewBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/JsonView_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.users = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            this.users.add(new User("user" + i, "user" + i + "@example.com", 20 + i % 50,
+                    List.of("admin", "caf\u00e9", "tag" + i)));
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int write() {
+        Response response = new Response(Code.S200_OK, Version.V1_1);
+        try {
+            if (implType.equals("TO_JSON")) {
+                response.getBody().addAllBytes(GSON.toJson(users).getBytes(StandardCharsets.UTF_8));
+            } else {
+                JsonView.of(users).write(response);
+            }
+            return response.getBody().size();
+        } finally {
+            response.release();
+        }
+    }
+
+    static class User {
+
+        final String name;
+        final String email;
+        final int age;
+        final List<String> tags;
+
+        User(String name, String email, int age, List<String> tags) {
+            this.name = name;
+            this.email = email;
+            this.age = age;
+            this.tags = tags;
+        }
+
+    }
+
+}
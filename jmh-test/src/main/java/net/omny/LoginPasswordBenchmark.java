@@ -0,0 +1,109 @@
+package net.omny;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.spec.KeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.route.Request;
+import net.omny.route.middleware.LoginPasswordMiddleware;
+import net.omny.utils.Debug;
+
+/**
+ * Authenticate a request whose password is verified by PBKDF2, as stored
+ * passwords are
+ *
+ * UNCACHED verifies the password for each request, CACHED keeps the result in
+ * the CredentialCache of the middleware.
+ */
+@State(Scope.Thread)
+public class LoginPasswordBenchmark {
+
+    private static final byte[] SALT = "omny-salt".getBytes(StandardCharsets.UTF_8);
+
+    @Param({ "UNCACHED", "CACHED" })
+    public String implType;
+
+    private LoginPasswordMiddleware middleware;
+    private Request request;
+    private Socket client;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(LoginPasswordBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/LoginPassword_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws MalformedRequestException {
+        Debug.ENABLE = false;
+        byte[] stored = hash("s3cret");
+        this.middleware = LoginPasswordMiddleware.middleware("/admin",
+                (login, password) -> login.equals("bob") && Arrays.equals(stored, hash(password)));
+        if (implType.equals("UNCACHED")) {
+            this.middleware.getCache().setTtl(0);
+        }
+        String authorization = Base64.getEncoder().encodeToString("bob:s3cret".getBytes(StandardCharsets.UTF_8));
+        this.request = Request.parse("GET /admin/users HTTP/1.1\r\nHost: localhost\r\nAuthorization: Basic "
+                + authorization);
+        this.client = new Socket() {
+            @Override
+            public OutputStream getOutputStream() {
+                return OutputStream.nullOutputStream();
+            }
+        };
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean authenticate() throws IOException {
+        return this.middleware.handle(null, null, this.request, this.client);
+    }
+
+    private static byte[] hash(String password) {
+        try {
+            KeySpec spec = new PBEKeySpec(password.toCharArray(), SALT, 10_000, 256);
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
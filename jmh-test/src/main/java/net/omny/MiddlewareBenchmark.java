@@ -0,0 +1,142 @@
+package net.omny;
+
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.NamedRouter;
+import net.omny.route.Request;
+import net.omny.route.Router;
+import net.omny.route.middleware.Middleware;
+import net.omny.route.middleware.MiddlewarePriority;
+import net.omny.route.middleware.MiddlewareTrie;
+import net.omny.route.middleware.UrlMiddleware;
+import net.omny.server.WebServer;
+import net.omny.utils.Debug;
+
+/**
+ * Find and run the middlewares of a request when named routers each added one
+ * under their namespace, plus one for every path
+ *
+ * LINEAR looks at every middleware and compares its url to the path, as the
+ * router did for each request, TRIE runs the chain resolved for the path.
+ */
+@State(Scope.Thread)
+public class MiddlewareBenchmark {
+
+    @Param({ "LINEAR", "TRIE" })
+    public String implType;
+
+    @Param({ "1", "10", "100" })
+    public int routers;
+
+    private Router router;
+    private List<Middleware> middlewares;
+    private MiddlewareTrie trie;
+    private String path;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(MiddlewareBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/Middleware_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Debug.ENABLE = false;
+        this.router = new Router();
+        this.router.middleware(new CountingMiddleware(null));
+        for (int i = 0; i < routers; i++) {
+            this.router.route(new NamedRouter("ns" + i) {
+                @Override
+                public void route() {
+                    middleware(new CountingMiddleware("/"));
+                }
+            });
+        }
+        this.middlewares = this.router.getMiddlewares().get(MiddlewarePriority.BEFORE);
+        this.trie = this.router.getMiddlewareTrie(MiddlewarePriority.BEFORE);
+        this.path = "/ns" + (routers / 2) + "/users/42";
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean handle() throws Exception {
+        if (implType.equals("TRIE")) {
+            for (Middleware middleware : this.trie.chainFor(this.path)) {
+                if (middleware.handle(null, this.router, null, null)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (Middleware middleware : this.middlewares) {
+            if (middleware instanceof UrlMiddleware urlMiddleware) {
+                if (urlMiddleware.getUrl() != null && !this.path.startsWith(urlMiddleware.getUrl())) {
+                    continue;
+                }
+            }
+            if (middleware.handle(null, this.router, null, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class CountingMiddleware implements Middleware, UrlMiddleware {
+
+        private String url;
+        private int count;
+
+        CountingMiddleware(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public boolean handle(WebServer webServer, Router router, Request request, Socket client) {
+            this.count++;
+            return false;
+        }
+
+        @Override
+        public String getUrl() {
+            return this.url;
+        }
+
+        @Override
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+    }
+
+}
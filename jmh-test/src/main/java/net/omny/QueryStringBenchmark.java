@@ -0,0 +1,119 @@
+package net.omny;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.route.QueryString;
+import net.omny.route.Request;
+
+/**
+ * Read two parameters of a query string, and find the route of a path among
+ * routes with params
+ *
+ * SPLIT splits the strings and decodes every value in a new HashMap (as the
+ * router did for each route), OFFSETS records where the parameters are and
+ * compares the segments in place.
+ */
+@State(Scope.Thread)
+public class QueryStringBenchmark {
+
+    private static final String QUERY = "page=2&sort=date&tag=java&tag=http&q=omny+web";
+    private static final String[] ROUTES = { "/", "/about", "/api/user/:id", "/api/user/:id/friends",
+            "/api/post/:id", "/api/post/:id/comments", "/api/user/:id/posts/:post", "/api/user/:id/posts" };
+
+    @Param({ "SPLIT", "OFFSETS" })
+    public String implType;
+
+    private Request request;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(QueryStringBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/QueryString_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws MalformedRequestException {
+        this.request = Request.parse("GET /api/user/42/posts?" + QUERY + " HTTP/1.1\r\nHost: localhost");
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int query() throws UnsupportedEncodingException {
+        if (implType.equals("SPLIT")) {
+            Map<String, String> params = new HashMap<>();
+            for (String pair : QUERY.split("&")) {
+                String[] parts = pair.split("=", 2);
+                params.put(URLDecoder.decode(parts[0], "UTF-8"),
+                        parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+            }
+            return params.get("sort").length() + params.get("q").length();
+        }
+        QueryString query = QueryString.parse(QUERY);
+        return query.get("sort").length() + query.get("q").length();
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String route() {
+        if (implType.equals("SPLIT")) {
+            for (String route : ROUTES) {
+                String[] division = route.split("\\/");
+                String[] current = request.getPath().split("\\/");
+                if (division.length != current.length) {
+                    continue;
+                }
+                Map<String, String> params = request.extractParams(route);
+                if (params != null && request.equalsPath(route, true)) {
+                    request.setParams(params);
+                    return route;
+                }
+            }
+            return null;
+        }
+        for (String route : ROUTES) {
+            if (request.matchPath(route)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+}
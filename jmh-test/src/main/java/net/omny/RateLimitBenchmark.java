@@ -0,0 +1,119 @@
+package net.omny;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.middleware.RateLimitMiddleware;
+
+/**
+ * Check the rate of clients from 4 threads sharing the limiter, with every
+ * thread on the same client or each on its own among many
+ *
+ * STRIPED is the RateLimitMiddleware, SYNCHRONIZED the same token buckets in
+ * a map behind one lock.
+ */
+@State(Scope.Benchmark)
+public class RateLimitBenchmark {
+
+    @Param({ "STRIPED", "SYNCHRONIZED" })
+    public String implType;
+
+    @Param({ "1", "10000" })
+    public int keys;
+
+    private RateLimitMiddleware striped;
+    private LockedLimiter locked;
+    private Integer[] clients;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RateLimitBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/RateLimit_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Mostly accepted, so every check updates its bucket
+        this.striped = new RateLimitMiddleware("/", 1000, 1e9);
+        this.locked = new LockedLimiter(1000, 1e9);
+        this.clients = new Integer[keys];
+        for (int i = 0; i < keys; i++) {
+            this.clients[i] = i * 31;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index = (int) Thread.currentThread().getId() * 7919;
+
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Threads(4)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long acquire(Cursor cursor) {
+        Integer client = this.clients[(cursor.index++ & Integer.MAX_VALUE) % this.clients.length];
+        if (implType.equals("STRIPED")) {
+            return this.striped.acquire(client);
+        }
+        return this.locked.acquire(client);
+    }
+
+    private static class LockedLimiter {
+
+        private final Map<Object, long[]> buckets = new HashMap<>();
+        private final long interval;
+        private final long tolerance;
+
+        private LockedLimiter(int burst, double rate) {
+            this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            this.tolerance = this.interval * (burst - 1);
+        }
+
+        private synchronized long acquire(Object client) {
+            long now = System.nanoTime();
+            long[] bucket = this.buckets.computeIfAbsent(client, k -> new long[] { now });
+            long from = Math.max(bucket[0], now);
+            long wait = from - now - this.tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            bucket[0] = from + this.interval;
+            return 0;
+        }
+
+    }
+
+}
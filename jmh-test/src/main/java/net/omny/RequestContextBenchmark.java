@@ -0,0 +1,185 @@
+package net.omny;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.Method;
+import net.omny.route.RequestContext;
+import net.omny.route.Route;
+import net.omny.route.Router;
+import net.omny.route.impl.AnonymousRoute;
+import net.omny.route.impl.TextRoute;
+import net.omny.server.WebServer;
+import net.omny.utils.Debug;
+import net.omny.utils.HttpClock;
+import net.omny.views.TextView;
+
+/**
+ * Handle a request read from memory, with and without the recycled context
+ *
+ * The socket is a stub, so only what the server allocates is measured: run with
+ * the GC profiler (gc.alloc.rate.norm).
+ * CACHED is answered by the raw request line lookup, CONSTANT by a route
+ * rendered at registration, RENDERED by running the route.
+ */
+@State(Scope.Thread)
+public class RequestContextBenchmark {
+
+    @Param({ "RECYCLED", "ALLOCATED" })
+    public String context;
+
+    @Param({ "CACHED", "CONSTANT", "RENDERED" })
+    public String path;
+
+    private ScheduledExecutorService clock;
+    private BenchmarkServer server;
+    private StubSocket socket;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RequestContextBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/RequestContext_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Debug.ENABLE = false;
+        RequestContext.ENABLE = context.equals("RECYCLED");
+        this.clock = Executors.newSingleThreadScheduledExecutor();
+        HttpClock.start(this.clock);
+        this.server = new BenchmarkServer();
+        this.socket = new StubSocket(("GET /" + path.toLowerCase() + " HTTP/1.1\r\n"
+                + "Host: localhost:8080\r\n"
+                + "User-Agent: jmh\r\n"
+                + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+                + "Accept-Encoding: gzip, deflate\r\n"
+                + "Connection: keep-alive\r\n\r\n").getBytes());
+        // First request renders the response and caches it
+        handle();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.clock.shutdownNow();
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void handle() throws IOException {
+        this.socket.in.reset();
+        this.server.handler(this.socket);
+    }
+
+    /**
+     * Socket reading the same request again and again, writing to nothing
+     */
+    static class StubSocket extends Socket {
+
+        final ByteArrayInputStream in;
+        final OutputStream out = OutputStream.nullOutputStream();
+
+        StubSocket(byte[] request) {
+            this.in = new ByteArrayInputStream(request);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public synchronized void close() {
+        }
+
+    }
+
+    public static class BenchmarkServer extends WebServer {
+
+        public BenchmarkServer() {
+            super();
+            postInit();
+            init();
+        }
+
+        @Override
+        protected void init() {
+            route(this.router);
+            this.router.setRouted(true);
+        }
+
+        @Override
+        public void route(Router router) {
+            router.route("/cached", page(true), Method.GET);
+            router.route("/constant", new TextRoute(text()), Method.GET);
+            router.route("/rendered", page(false), Method.GET);
+        }
+
+        private static Route page(boolean cached) {
+            String text = text();
+            Route route = new AnonymousRoute((req, res) -> new TextView(text));
+            route.setAllowCache(cached);
+            route.setLastInCache(60 * 60 * 1000);
+            return route;
+        }
+
+        private static String text() {
+            StringBuilder builder = new StringBuilder("<html><body><ul>");
+            for (int i = 0; i < 100; i++) {
+                builder.append("<li>Item ").append(i).append("</li>");
+            }
+            return builder.append("</ul></body></html>").toString();
+        }
+
+    }
+
+}
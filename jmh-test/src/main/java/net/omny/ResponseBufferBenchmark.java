@@ -0,0 +1,90 @@
+package net.omny;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.Code;
+import net.omny.route.Response;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.Debug;
+import net.omny.utils.HTTPUtils.Headers;
+import net.omny.utils.HTTPUtils.MimeType;
+import net.omny.utils.HTTPUtils.Version;
+import net.omny.views.TextView;
+
+/**
+ * Build a response and write it, with and without the buffer pool
+ *
+ * Run with the GC profiler to see the allocation per response
+ * (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+public class ResponseBufferBenchmark {
+
+    @Param({ "POOLED", "UNPOOLED" })
+    public String buffers;
+
+    private TextView view;
+    private OutputStream client = OutputStream.nullOutputStream();
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ResponseBufferBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/ResponseBuffer_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Debug.ENABLE = false;
+        ByteStackPool.ENABLE = buffers.equals("POOLED");
+        StringBuilder builder = new StringBuilder("<html><body><ul>");
+        for (int i = 0; i < 100; i++) {
+            builder.append("<li>Item ").append(i).append("</li>");
+        }
+        this.view = new TextView(builder.append("</ul></body></html>").toString());
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void writeResponse() throws IOException {
+        Response response = new Response(Code.S200_OK, Version.V1_1);
+        response.setHeader(Headers.CONTENT_TYPE, MimeType.HTML);
+        this.view.write(response);
+        try {
+            response.writeTo(this.client);
+        } finally {
+            response.release();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package net.omny;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.Code;
+import net.omny.route.Response;
+import net.omny.template.TemplateCache;
+import net.omny.utils.HTTPUtils.Version;
+
+/**
+ * Render a template file in the body of a response
+ *
+ * REGEX reads the file and replaces the variables with a pattern, as the
+ * template route did for each request; COMPILED renders the template compiled
+ * once by {@link TemplateCache}.
+ */
+@State(Scope.Thread)
+public class TemplateBenchmark {
+
+    /**
+     * The variables "#{name}", as the template route used to replace them
+     */
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("#\\{([a-zA-Z0-9]+)\\}");
+
+    private static final String SMALL = "<!DOCTYPE html>\n<html lang=\"en\">\n\t<head>\n"
+            + "\t\t<meta charset=\"UTF-8\" />\n"
+            + "\t\t<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\" />\n"
+            + "\t\t<title>Document</title>\n\t</head>\n\t<body>\n\t\t<h1>Template test</h1>\n"
+            + "\t\t<h2>#{name}</h2>\n\t</body>\n</html>\n";
+
+    @Param({ "REGEX", "COMPILED" })
+    public String implType;
+
+    /**
+     * SMALL is the size of template_test.html, LARGE about 100 KB with a variable
+     * every 500 bytes
+     */
+    @Param({ "SMALL", "LARGE" })
+    public String template;
+
+    private Path file;
+    private Map<String, String> variables;
+    private TemplateCache cache;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(TemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/Template_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String source = SMALL;
+        if (template.equals("LARGE")) {
+            StringBuilder builder = new StringBuilder();
+            while (builder.length() < 100 * 1024) {
+                builder.append("<tr><td class=\"name\">#{name}</td><td class=\"mail\">#{email}</td></tr>\n");
+                builder.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor "
+                        + "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud "
+                        + "exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat. Duis aute irure "
+                        + "dolor in reprehenderit in voluptate velit esse cillum dolore eu fugiat nulla.</p>\n");
+            }
+            source = builder.toString();
+        }
+        this.file = Files.createTempFile("template", ".html");
+        Files.writeString(this.file, source);
+        this.variables = Map.of("name", "Café & Co", "email", "user@example.com");
+        this.cache = new TemplateCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int render() throws IOException {
+        Response response = new Response(Code.S200_OK, Version.V1_1);
+        try {
+            if (implType.equals("REGEX")) {
+                String templates = new String(Files.readAllBytes(Paths.get(this.file.toString())));
+                String result = VARIABLE_PATTERN.matcher(templates).replaceAll((match) -> {
+                    String name = match.group(1);
+                    if (this.variables.containsKey(name)) {
+                        return this.variables.get(name);
+                    }
+                    return match.group(0);
+                });
+                response.addBody(result);
+            } else {
+                this.cache.get(this.file).render(this.variables, response.getBody());
+            }
+            return response.getBody().size();
+        } finally {
+            response.release();
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package net.omny;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.Code;
+import net.omny.route.Response;
+import net.omny.template.Template;
+import net.omny.utils.HTTPUtils.Version;
+
+/**
+ * Render a page listing users with a loop, a condition and an included row
+ *
+ * PARSED walks the nodes of the template, COMPILED runs the class generated
+ * for it.
+ */
+@State(Scope.Thread)
+public class TemplateBlocksBenchmark {
+
+    @Param({ "PARSED", "COMPILED" })
+    public String implType;
+
+    @Param({ "10", "100" })
+    public int size;
+
+    private Path directory;
+    private Template template;
+    private Map<String, Object> variables;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(TemplateBlocksBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/TemplateBlocks_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("templates");
+        Files.writeString(this.directory.resolve("row.html"),
+                "<tr class=\"#{if user.admin}admin#{else}user#{end}\"><td>#{user.name}</td>"
+                        + "<td>#{user.email}</td><td>#{each tag in user.tags}<span>#{tag}</span>#{end}</td></tr>\n");
+        String page = "<!DOCTYPE html>\n<html lang=\"en\">\n<head><title>#{title}</title></head>\n<body>\n"
+                + "<h1>#{title}</h1>\n<table>\n#{each user in users}#{include row.html}#{end}</table>\n"
+                + "#{if !users}<p>No users</p>#{end}\n</body>\n</html>\n";
+        Path file = this.directory.resolve("page.html");
+        Files.writeString(file, page);
+        this.template = implType.equals("COMPILED") ? Template.compile(file)
+                : Template.parse(page.replace("#{include row.html}", Files.readString(this.directory.resolve("row.html"))));
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            users.add(new User("user" + i, "user" + i + "@example.com", i % 10 == 0, List.of("café", "tag" + i)));
+        }
+        this.variables = Map.of("title", "Users & groups", "users", users);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.directory.resolve("row.html"));
+        Files.deleteIfExists(this.directory.resolve("page.html"));
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int render() {
+        Response response = new Response(Code.S200_OK, Version.V1_1);
+        try {
+            this.template.render(this.variables, response.getBody());
+            return response.getBody().size();
+        } finally {
+            response.release();
+        }
+    }
+
+    public static class User {
+
+        private final String name;
+        private final String email;
+        private final boolean admin;
+        private final List<String> tags;
+
+        User(String name, String email, boolean admin, List<String> tags) {
+            this.name = name;
+            this.email = email;
+            this.admin = admin;
+            this.tags = tags;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getEmail() {
+            return this.email;
+        }
+
+        public boolean isAdmin() {
+            return this.admin;
+        }
+
+        public List<String> getTags() {
+            return this.tags;
+        }
+
+    }
+
+}
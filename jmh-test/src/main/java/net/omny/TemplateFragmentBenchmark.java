@@ -0,0 +1,90 @@
+package net.omny;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.omny.route.Code;
+import net.omny.route.Response;
+import net.omny.template.Template;
+import net.omny.utils.HTTPUtils.Version;
+
+/**
+ * Render a page whose sidebar lists 200 links and whose greeting is per user
+ *
+ * RENDERED renders the whole page, FRAGMENT wraps the sidebar in a
+ * {@code #{cache}} block: its bytes are copied from the fragment cache.
+ */
+@State(Scope.Thread)
+public class TemplateFragmentBenchmark {
+
+    @Param({ "RENDERED", "FRAGMENT" })
+    public String implType;
+
+    private Template template;
+    private Map<String, Object> variables;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(TemplateFragmentBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.TEXT)
+                .result("benchmark-result/TemplateFragment_" + System.currentTimeMillis() + ".txt")
+                .forks(1).build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String sidebar = "<nav><ul>#{each link in links}<li><a href=\"#{link.url}\">#{link.title}</a></li>#{end}</ul></nav>";
+        if (implType.equals("FRAGMENT")) {
+            sidebar = "#{cache 10m}" + sidebar + "#{end}";
+        }
+        this.template = Template.compile("<!DOCTYPE html>\n<html>\n<body>\n<h1>Hello #{user}</h1>\n" + sidebar
+                + "\n</body>\n</html>\n");
+        List<Map<String, String>> links = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            links.add(Map.of("url", "/page/" + i + "?ref=nav&lang=en", "title", "Page <" + i + ">"));
+        }
+        this.variables = Map.of("user", "Bob", "links", links);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int render() {
+        Response response = new Response(Code.S200_OK, Version.V1_1);
+        try {
+            this.template.render(this.variables, response.getBody());
+            return response.getBody().size();
+        } finally {
+            response.release();
+        }
+    }
+
+}
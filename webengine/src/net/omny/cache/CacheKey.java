@@ -0,0 +1,162 @@
+package net.omny.cache;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import net.omny.route.Method;
+import net.omny.route.Request;
+
+/**
+ * Key of a cached response
+ *
+ * A key is composed of the method, the request target (path and query string)
+ * and the values of the headers the route declared as varying.
+ * The hash is mixed from the cached hash codes of the components, so no string
+ * is built when a key is looked up.
+ */
+public final class CacheKey {
+
+    static final String[] NO_VARY = {};
+
+    private final Method method;
+    private final String target;
+    private final String[] varyValues;
+    private final int hash;
+
+    /**
+     *
+     * @param method The method of the request
+     * @param target The request target (path and query string)
+     * @return the primary key, without varying headers
+     */
+    public static CacheKey of(Method method, String target) {
+        return new CacheKey(method, target, NO_VARY);
+    }
+
+    /**
+     *
+     * @param request     The request
+     * @param varyHeaders The (lower-cased) headers names the response varies on
+     * @return the key of the response for this request
+     */
+    public static CacheKey of(Request request, String[] varyHeaders) {
+        if (varyHeaders.length == 0)
+            return of(request.getMethod(), request.getTarget());
+        String[] values = new String[varyHeaders.length];
+        for (int i = 0; i < varyHeaders.length; i++) {
+            values[i] = request.getHeader(varyHeaders[i]);
+        }
+        return new CacheKey(request.getMethod(), request.getTarget(), values);
+    }
+
+    private CacheKey(Method method, String target, String[] varyValues) {
+        this.method = Objects.requireNonNull(method);
+        this.target = Objects.requireNonNull(target);
+        this.varyValues = varyValues;
+        this.hash = hashOf(method, target, varyValues);
+    }
+
+    /**
+     * @return the hash of the key with these components
+     */
+    private static int hashOf(Method method, String target, String[] varyValues) {
+        int h = 31 * method.ordinal() + target.hashCode();
+        for (String value : varyValues) {
+            h = 31 * h + (value == null ? 0 : value.hashCode());
+        }
+        return spread(h);
+    }
+
+    /**
+     * Spread the bits like HashMap does, the target hash is often weak on the low bits
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return true if this key does not depend on any header
+     */
+    public boolean isPrimary() {
+        return varyValues.length == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj instanceof Probe probe)
+            return probe.equals(this);
+        if (!(obj instanceof CacheKey other))
+            return false;
+        return hash == other.hash
+                && method == other.method
+                && target.equals(other.target)
+                && Arrays.equals(varyValues, other.varyValues);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheKey {method=" + method + ", target=" + target + ", vary=" + Arrays.toString(varyValues) + "}";
+    }
+
+    /**
+     * Stands for a primary key when looking up the cache, so no key is allocated
+     * It has the hash of the primary key with the same method and target and
+     * both are equal, whichever is compared to the other; it must never be
+     * stored
+     */
+    static final class Probe {
+
+        private Method method;
+        private String target;
+        private int hash;
+
+        Probe of(Method method, String target) {
+            this.method = method;
+            this.target = target;
+            this.hash = hashOf(method, target, NO_VARY);
+            return this;
+        }
+
+        /**
+         * Forget the target, so it is not retained
+         */
+        void clear() {
+            this.target = null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj instanceof Probe other)
+                return hash == other.hash && method == other.method && Objects.equals(target, other.target);
+            return obj instanceof CacheKey other
+                    && hash == other.hash
+                    && other.isPrimary()
+                    && method == other.method
+                    && other.target.equals(target);
+        }
+
+    }
+
+}
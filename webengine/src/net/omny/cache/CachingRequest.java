@@ -1,22 +1,56 @@
 package net.omny.cache;
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
-import lombok.AllArgsConstructor;
+import net.omny.route.Method;
+import net.omny.route.Request;
+import net.omny.route.Route;
 import net.omny.server.WebServer;
+import net.omny.utils.ByteStack;
+import net.omny.utils.Debug;
+import net.omny.utils.HTTPUtils.Headers;
+import net.omny.utils.HttpClock;
 
 public class CachingRequest {
 
     private static final byte[] EMPTY = {};
+    private static final String AUTHORIZATION = Headers.AUTHORIZATION.toLowerCase();
+    private static final int FAST_INDEX_SIZE = 1024;
+    private static final ThreadLocal<CacheKey.Probe> PROBES = ThreadLocal.withInitial(CacheKey.Probe::new);
 
-    private Map<String, CachedRequest> cache = new HashMap<>();
+    /**
+     * Cached responses, and vary markers
+     *
+     * When a route varies on some headers, an entry without content is stored
+     * under the primary key (method and target) that holds the headers to read
+     * in order to build the full key.
+     */
+    private Map<CacheKey, CachedRequest> cache = new ConcurrentHashMap<>();
+    /**
+     * Direct-mapped index of the responses that don't depend on any header,
+     * looked up with the raw bytes of the request line
+     * A slot is overwritten on collision, the response is then found through
+     * {@link #cache} only
+     */
+    private final AtomicReferenceArray<FastEntry> fastIndex = new AtomicReferenceArray<>(FAST_INDEX_SIZE);
+    /**
+     * Where stale responses are rendered again
+     */
+    private Executor background = Runnable::run;
 
     public CachingRequest(WebServer webServer) {
+        this.background = webServer::background;
         if (webServer.getThreadPool() != null) {
             webServer.getThreadPool().scheduleAtFixedRate(() -> {
                 updateCache();
@@ -30,21 +64,240 @@ public class CachingRequest {
     }
 
     /**
-     * 
+     * Build the key used to look up the response of this request
+     *
+     * @param request The request, with its headers read
+     * @return the key, or null if the response to this request can't be served
+     *         from the cache
+     */
+    public CacheKey keyOf(Request request) {
+        CacheKey primary = CacheKey.of(request.getMethod(), request.getTarget());
+        CachedRequest marker = cache.get(primary);
+        if (marker == null || marker.vary == null) {
+            return isShareable(request, CacheKey.NO_VARY) ? primary : null;
+        }
+        marker.updateAt = HttpClock.millis();
+        return isShareable(request, marker.vary) ? CacheKey.of(request, marker.vary) : null;
+    }
+
+    /**
+     * Build the key used to store the response of this request
+     * and remember the headers the route varies on
+     *
+     * @param request The request
+     * @param route   The route that produced the response
+     * @return the key, or null if the response must not be cached
+     */
+    public CacheKey keyOf(Request request, Route route) {
+        String[] vary = route.getVaryHeaders();
+        if (!isShareable(request, vary))
+            return null;
+        if (vary.length == 0)
+            return CacheKey.of(request.getMethod(), request.getTarget());
+
+        CacheKey primary = CacheKey.of(request.getMethod(), request.getTarget());
+        CachedRequest marker = cache.get(primary);
+        if (marker == null || marker.vary == null) {
+            // The response stored without varying leaves, the fast index included
+            CachedRequest previous = cache.put(primary, new CachedRequest(null, route.getLastInCache(),
+                    HttpClock.millis(), new AtomicInteger(), vary));
+            if (previous != null)
+                previous.removed = true;
+        }
+        return CacheKey.of(request, vary);
+    }
+
+    /**
+     * A response sent to an authentified client is private to this client,
+     * it can only be shared when the route explicitly varies on the credentials
+     * A response to a request with a body depends on the body, it is never shared
+     */
+    private boolean isShareable(Request request, String[] vary) {
+        if (request.hasBody())
+            return false;
+        if (!request.containsHeader(AUTHORIZATION))
+            return true;
+        for (String header : vary) {
+            if (header.equals(AUTHORIZATION))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retrieve a cached response and count the access
+     *
+     * A response times out once older than its caching time, however often it
+     * is requested. It is still returned during the stale-while-revalidate
+     * window of its route, and rendered again in the background.
+     * With refresh-ahead, a response is rendered again in the background when
+     * it nears its caching time, while the current one keeps being served.
+     *
+     * @param key The key of the request
+     * @return the full response, or null if it must be rendered
+     */
+    public byte[] lookup(CacheKey key) {
+        return serve(cache.get(key));
+    }
+
+    /**
+     * Retrieve the cached response to a request, same as looking up
+     * {@link #keyOf(Request)} without allocating the primary key
+     *
+     * @param request The request, with its headers read
+     * @return the full response, or null if it must be rendered
+     */
+    public byte[] lookup(Request request) {
+        CacheKey.Probe probe = PROBES.get().of(request.getMethod(), request.getTarget());
+        CachedRequest marker = cache.get(probe);
+        probe.clear();
+        if (marker == null)
+            return null;
+        if (marker.vary == null)
+            return isShareable(request, CacheKey.NO_VARY) ? serve(marker) : null;
+        marker.updateAt = HttpClock.millis();
+        return isShareable(request, marker.vary) ? lookup(CacheKey.of(request, marker.vary)) : null;
+    }
+
+    /**
+     * Retrieve a cached response from the raw request line, without parsing the
+     * request
+     *
+     * Only responses that don't depend on any header are found this way, the
+     * caller must make sure the request doesn't carry credentials.
+     *
+     * @param line The buffer containing the request line
+     * @param from The index of the first byte of the request line
+     * @param to   The index after the last byte of the request line
+     * @return the full response, or null if the request must be parsed
+     */
+    public byte[] lookup(byte[] line, int from, int to) {
+        // <METHOD> SP <TARGET> SP <HTTP_VERSION>
+        int methodEnd = ByteStack.indexOf(line, from, to, (byte) ' ');
+        if (methodEnd < 0)
+            return null;
+        int targetEnd = ByteStack.indexOf(line, methodEnd + 1, to, (byte) ' ');
+        if (targetEnd < 0)
+            return null;
+        Method method = Method.of(line, from, methodEnd);
+        if (method == null)
+            return null;
+
+        int hash = fastHash(method, line, methodEnd + 1, targetEnd);
+        FastEntry entry = fastIndex.get(hash & (FAST_INDEX_SIZE - 1));
+        if (entry == null || entry.method != method || entry.cached.removed
+                || !Arrays.equals(entry.target, 0, entry.target.length, line, methodEnd + 1, targetEnd))
+            return null;
+        return serve(entry.cached);
+    }
+
+    private byte[] serve(CachedRequest rq) {
+        byte[] content;
+        if (rq == null || (content = rq.content) == null)
+            return null;
+        long now = HttpClock.millis();
+        long age = now - rq.storedAt;
+        if (age > rq.time) {
+            if (rq.render == null || age > rq.time + rq.staleWhileRevalidate)
+                return null;
+            refresh(rq);
+        } else if (rq.refreshAhead && age > rq.time - rq.time / 4) {
+            // Renewed in the last quarter of its caching time
+            refresh(rq);
+        }
+        rq.updateAt = now;
+        rq.count.incrementAndGet();
+        return content;
+    }
+
+    private void refresh(CachedRequest rq) {
+        if (!rq.refreshing.compareAndSet(false, true))
+            return; // Already being rendered
+        background.execute(() -> {
+            try {
+                byte[] content = rq.render.get();
+                // A failed render must not replace the response being served
+                if (isSuccess(content)) {
+                    rq.content = content;
+                    rq.storedAt = HttpClock.millis();
+                } else if (Debug.ENABLE) {
+                    Debug.debug("Kept the cached response, the route didn't succeed to render it again");
+                }
+            } catch (Exception e) {
+                Debug.error("Could not render again a cached response", e);
+            } finally {
+                rq.refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Only successful responses are cached, an error (eg: a template failing to
+     * render) is rendered again for the next request
+     *
+     * @param response The full response
+     * @return true if its status is 2xx
+     */
+    public static boolean isSuccess(byte[] response) {
+        if (response == null)
+            return false;
+        // <HTTP_VERSION> SP <STATUS> SP <REASON>
+        int space = ByteStack.indexOf(response, 0, response.length, (byte) ' ');
+        return space >= 0 && space + 1 < response.length && response[space + 1] == '2';
+    }
+
+    private static int fastHash(Method method, byte[] target, int from, int to) {
+        int h = method.ordinal();
+        for (int i = from; i < to; i++) {
+            h = 31 * h + (target[i] & 0xff);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private void store(CacheKey key, CachedRequest rq) {
+        CachedRequest previous = cache.put(key, rq);
+        if (previous != null)
+            previous.removed = true;
+        if (!key.isPrimary())
+            return;
+        String target = key.getTarget();
+        // The request line is read as ISO-8859-1, other targets can't be matched
+        if (!StandardCharsets.ISO_8859_1.newEncoder().canEncode(target))
+            return;
+        byte[] targetBytes = target.getBytes(StandardCharsets.ISO_8859_1);
+        int hash = fastHash(key.getMethod(), targetBytes, 0, targetBytes.length);
+        fastIndex.set(hash & (FAST_INDEX_SIZE - 1), new FastEntry(key.getMethod(), targetBytes, rq));
+    }
+
+    /**
+     *
      * @param path The path of the URL of the request
      * @return
      */
     public int countRequest(String path) {
-        if (!cache.containsKey(path))
+        return countRequest(CacheKey.of(Method.GET, path));
+    }
+
+    /**
+     *
+     * @param key The key of the request
+     * @return the number of time this request was served, 0 if not in cache
+     */
+    public int countRequest(CacheKey key) {
+        var rq = cache.get(key);
+        if (rq == null || rq.content == null)
             return 0;
-        var rq = cache.get(path);
         return rq.isTimedOut() ? 0 : rq.count.get();
     }
 
     public void cacheRequest(String path) throws IllegalAccessException {
-        if (cache.containsKey(path)) {
-            var rq = cache.get(path);
-            rq.updateAt = System.currentTimeMillis();
+        cacheRequest(CacheKey.of(Method.GET, path));
+    }
+
+    public void cacheRequest(CacheKey key) throws IllegalAccessException {
+        var rq = cache.get(key);
+        if (rq != null && rq.content != null) {
+            rq.updateAt = HttpClock.millis();
             rq.count.incrementAndGet();
         } else {
             throw new IllegalAccessException("You must cache the request first with the content");
@@ -52,63 +305,143 @@ public class CachingRequest {
     }
 
     /**
-     * 
-     * the time is refreshed for each request performed to the caching system
-     * 
+     *
+     * A timed out response is replaced, otherwise the access is counted
+     *
      * @param path    The path of the URL of the request
      * @param content The content of the FULL REQUEST (headers and body)
-     * @param time    How long the request must be cached when no request are done
-     *                to the caching system
+     * @param time    How long (in ms) the request is served from the cache once
+     *                stored
      */
     public void cacheRequest(String path, byte[] content, long time) {
-        if (cache.containsKey(path)) {
-            var rq = cache.get(path);
-            rq.updateAt = System.currentTimeMillis();
+        cacheRequest(CacheKey.of(Method.GET, path), content, time);
+    }
+
+    /**
+     *
+     * A timed out response is replaced, otherwise the access is counted
+     *
+     * @param key     The key of the request, see {@link #keyOf(Request, Route)}
+     * @param content The content of the FULL REQUEST (headers and body)
+     * @param time    How long (in ms) the request is served from the cache once
+     *                stored
+     */
+    public void cacheRequest(CacheKey key, byte[] content, long time) {
+        var rq = cache.get(key);
+        if (rq != null && rq.content != null && !rq.isTimedOut()) {
+            rq.updateAt = HttpClock.millis();
             rq.count.incrementAndGet();
-        } else {
-            cache.put(path, new CachedRequest(content, time, System.currentTimeMillis(), new AtomicInteger(1)));
+        } else if (isSuccess(content)) {
+            store(key, new CachedRequest(content, time, HttpClock.millis(), new AtomicInteger(1), null));
         }
     }
 
+    /**
+     * Store the response rendered by a route, replacing any previous one, unless
+     * it is an error
+     *
+     * @param key     The key of the request, see {@link #keyOf(Request, Route)}
+     * @param content The content of the FULL REQUEST (headers and body)
+     * @param route   The route, giving the caching times
+     * @param render  Render the response again, used to revalidate it in the
+     *                background
+     */
+    public void cacheRequest(CacheKey key, byte[] content, Route route, Supplier<byte[]> render) {
+        if (!isSuccess(content))
+            return;
+        var rq = new CachedRequest(content, route.getLastInCache(), HttpClock.millis(),
+                new AtomicInteger(1), null);
+        rq.staleWhileRevalidate = route.getStaleWhileRevalidate();
+        rq.refreshAhead = route.isRefreshAhead();
+        rq.render = render;
+        store(key, rq);
+    }
+
     /**
      * Retrieve and update the time of the caching request
-     * 
-     * 
+     *
+     *
      * @param path The path of the URL of the request
      * @return the full request as byte array if caching is found, otherwise empty
      *         byte array
      */
     public byte[] get(String path) {
-        if (!cache.containsKey(path))
+        return get(CacheKey.of(Method.GET, path));
+    }
+
+    /**
+     *
+     * @param key The key of the request
+     * @return the full request as byte array if caching is found, otherwise empty
+     *         byte array
+     */
+    public byte[] get(CacheKey key) {
+        var rq = cache.get(key);
+        if (rq == null || rq.content == null)
             return EMPTY;
-        return cache.get(path).content;
+        return rq.content;
     }
 
     public void updateCache() {
-        Set<Entry<String, CachedRequest>> cacheEntry = this.cache.entrySet();
+        Set<Entry<CacheKey, CachedRequest>> cacheEntry = this.cache.entrySet();
 
         for (var entry : cacheEntry) {
             var rq = entry.getValue();
-            if (rq.isTimedOut()) {
+            if (rq.isExpired()) {
                 // This URL hasn't been request for a while
                 // We must remove it from the the cache
-                this.cache.remove(entry.getKey());
+                if (this.cache.remove(entry.getKey(), rq))
+                    rq.removed = true;
             }
         }
     }
 
-    @AllArgsConstructor
     private class CachedRequest {
 
-        public byte[] content;
+        public volatile byte[] content;
         public long time;
-        public long updateAt;
+        public volatile long updateAt;
         public AtomicInteger count;
+        /**
+         * Headers the response varies on, only set on vary markers
+         */
+        public String[] vary;
+
+        public volatile long storedAt;
+        public long staleWhileRevalidate;
+        public boolean refreshAhead;
+        public Supplier<byte[]> render;
+        public final AtomicBoolean refreshing = new AtomicBoolean();
+        /**
+         * Set when the response left the cache, the fast index may still point to it
+         */
+        public volatile boolean removed;
+
+        public CachedRequest(byte[] content, long time, long updateAt, AtomicInteger count, String[] vary) {
+            this.content = content;
+            this.time = time;
+            this.updateAt = updateAt;
+            this.storedAt = updateAt;
+            this.count = count;
+            this.vary = vary;
+        }
 
         public boolean isTimedOut() {
-            return updateAt + time < System.currentTimeMillis();
+            return storedAt + time < HttpClock.millis();
+        }
+
+        /**
+         * @return true if the response can't even be served stale anymore, or
+         *         the vary marker hasn't been used for its caching time
+         */
+        public boolean isExpired() {
+            long since = content == null ? updateAt : storedAt;
+            return since + time + staleWhileRevalidate < HttpClock.millis();
         }
 
     }
 
+    private record FastEntry(Method method, byte[] target, CachedRequest cached) {
+    }
+
 }
@@ -0,0 +1,20 @@
+package net.omny.exceptions;
+
+import lombok.Getter;
+import net.omny.route.Code;
+
+/**
+ * The request line or the headers are larger than the server reads, it is
+ * answered with a 414 or a 431
+ */
+public class HeadTooLargeException extends MalformedRequestException {
+
+    @Getter
+    private final Code code;
+
+    public HeadTooLargeException(Code code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+}
@@ -0,0 +1,19 @@
+package net.omny.exceptions;
+
+import java.io.IOException;
+
+/**
+ * The body of the request is larger than the server accepts, it is answered
+ * with a 413
+ */
+public class PayloadTooLargeException extends IOException {
+
+    public PayloadTooLargeException(long maxSize) {
+        super("Request body larger than " + maxSize + " bytes");
+    }
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+
+}
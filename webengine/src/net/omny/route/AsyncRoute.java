@@ -0,0 +1,72 @@
+package net.omny.route;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.views.View;
+
+/**
+ * Route answering once a stage completes (eg: a call to a slow service),
+ * without holding a thread of the server meanwhile
+ *
+ * The request is read by {@link #handleAsync(Request, Response)}, on the
+ * thread of the server: the stage must use a {@link Request#snapshot()} of it,
+ * the request is recycled once the method returns. The response can be
+ * changed until the stage completes. The connection is kept open and answered
+ * by a thread of the server when the stage completes, with
+ * {@link #timeoutCode} if it didn't complete in {@link #timeout} ms, or 500 if
+ * it failed.
+ *
+ * Async routes are not cached, their responses are rendered for each request.
+ */
+public abstract class AsyncRoute extends Route {
+
+  /**
+   * How long (in ms) the stage has to complete, 0 to wait as long as it takes
+   */
+  @Getter @Setter private long timeout = 30_000;
+  /**
+   * Sent when the stage didn't complete in time: 503 Service Unavailable, or
+   * 408 Request Timeout
+   */
+  @Getter @Setter private Code timeoutCode = Code.E503_SERVICE_UNAVAILABLE;
+
+  public AsyncRoute() { setAllowCache(false); }
+
+  /**
+   * Start handling the request
+   *
+   * @param req The request, recycled once this method returns
+   * @param res The response, written once the stage completes
+   * @return the view of the response
+   */
+  public abstract CompletionStage<? extends View> handleAsync(Request req,
+                                                              Response res);
+
+  /**
+   * Wait for the stage, when the route is rendered without a connection (eg:
+   * when it is cached)
+   */
+  @Override
+  public View handle(Request req, Response res) {
+    CompletableFuture<? extends View> future =
+        handleAsync(req, res).toCompletableFuture();
+    try {
+      return this.timeout > 0
+          ? future.get(this.timeout, TimeUnit.MILLISECONDS)
+          : future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } catch (ExecutionException e) {
+      throw new CompletionException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new CompletionException(e);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package net.omny.route;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream the body of a response is written through when it is sent, see
+ * {@link Response#wrapBody(BodyFilter)}
+ *
+ * Example: response.wrapBody(GZIPOutputStream::new);
+ */
+@FunctionalInterface
+public interface BodyFilter {
+
+	/**
+	 * @param body The stream sending the body, closing the returned stream must
+	 *             close it
+	 * @return the stream the body is written to
+	 */
+	OutputStream wrap(OutputStream body) throws IOException;
+
+}
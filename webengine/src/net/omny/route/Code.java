@@ -11,7 +11,7 @@ import lombok.Getter;
 public enum Code {
 
 	// INFO RESPONSE CODE
-	I100_CONTINUE(100),
+	I100_CONTINUE(100, "Continue"),
 	I101_SWITCH_PROTOCOL(101),
 	I103_PROCESSING(103),
 	// SUCESS RESPONSE CODE
@@ -31,7 +31,7 @@ public enum Code {
 	R307_TEMP_REDIRECT(307),
 	R308_PERM_REDIRECT(308),
 	// ERROR CLIENT SIDE RESPONSE CODE
-	E400_BAD_REQUEST(400),
+	E400_BAD_REQUEST(400, "Bad Request"),
 	E401_UNAUTHORIZED(401, "Not authentified"),
 	E402_PAYMENT_REQUIRED(402),
 	E403_FORBIDDEN(403),
@@ -39,14 +39,18 @@ public enum Code {
 	E405_METHOD_NOT_ALLOWED(405),
 	E406_NOT_ACCEPT(406),
 	E407_PROXY_AUTH_REQUIRED(407),
-	E408_REQUEST_TIMEOUT(408),
+	E408_REQUEST_TIMEOUT(408, "Request Timeout"),
 	E409_CONFLICT(409),
 	E410_GONE(410),
-	E411_LENGTH_REQUIRED(411),
+	E411_LENGTH_REQUIRED(411, "Length Required"),
 	E412_PRECONDITION_FAILED(412),
-	E413_PAYLOAD_TOO_LARGE(413),
+	E413_PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+	E414_URI_TOO_LONG(414, "URI Too Long"),
+	E429_TOO_MANY_REQUESTS(429, "Too Many Requests"),
+	E431_REQUEST_HEADER_FIELDS_TOO_LARGE(431, "Request Header Fields Too Large"),
 	// ERROR SERVER SIDE RESPONSE CODE
-	E500_INTERNAL_ERROR(500);
+	E500_INTERNAL_ERROR(500, "Internal Server Error"),
+	E503_SERVICE_UNAVAILABLE(503, "Service Unavailable");
 
 	@Getter
 	private int code;
@@ -0,0 +1,166 @@
+package net.omny.route;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.DirectByteStack;
+import net.omny.utils.HTTPUtils.Headers;
+import net.omny.utils.HTTPUtils.Version;
+import net.omny.utils.HttpClock;
+import net.omny.views.View;
+
+/**
+ * Response of a constant route, rendered once when the route is registered
+ *
+ * The status line, the headers and the body are kept as immutable buffers,
+ * only the date and the headers depending on the connection are added when it
+ * is sent.
+ */
+public final class ConstantResponse {
+
+	private static final byte[] CONNECTION_CLOSE = ("Connection: close\r\n\r\n").getBytes();
+	/**
+	 * Bodies up to this size are copied with the head, so the response is sent
+	 * in one write
+	 */
+	private static final int INLINE_BODY_SIZE = 8 * 1024;
+	/**
+	 * Room for the date and the connection headers
+	 */
+	private static final int HEAD_EXTRA = 64;
+
+	private final byte[] head;
+	/**
+	 * The body if it is small enough to be sent with the head, null otherwise
+	 */
+	private final byte[] body;
+	/**
+	 * The body if it is large, kept off-heap to be written to the socket channel
+	 * without being copied, null otherwise
+	 */
+	private final DirectByteStack directBody;
+	private final int bodyLength;
+
+	/**
+	 * Render the response of a constant route
+	 *
+	 * @param route The route, see {@link Route#isConstant()}
+	 * @return the rendered response
+	 */
+	public static ConstantResponse render(Route route) {
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		if (route.getVaryHeaderValue() != null) {
+			response.setHeader(Headers.VARY, route.getVaryHeaderValue());
+		}
+		// A constant route does not read the request
+		View view = route.handle(null, response);
+		view.write(response);
+		ConstantResponse constant = new ConstantResponse(response.toHeadBytes(), response.bodyToArray());
+		response.release();
+		return constant;
+	}
+
+	private ConstantResponse(byte[] head, byte[] body) {
+		this.head = head;
+		this.bodyLength = body.length;
+		if (body.length <= INLINE_BODY_SIZE) {
+			this.body = body;
+			this.directBody = null;
+		} else {
+			this.body = null;
+			this.directBody = DirectByteStack.of(body);
+		}
+	}
+
+	/**
+	 * Send the response
+	 * A large body is written to the channel of the socket, if it has one
+	 *
+	 * @param client The socket of the client
+	 */
+	public void writeTo(Socket client) throws IOException {
+		SocketChannel channel = client.getChannel();
+		if (this.directBody == null || channel == null) {
+			writeTo(client.getOutputStream());
+			return;
+		}
+		// Gathering write, the body is not copied
+		ByteBuffer[] buffers = { ByteBuffer.wrap(fullHead(0)), this.directBody.asByteBuffer() };
+		while (buffers[1].hasRemaining()) {
+			channel.write(buffers);
+		}
+	}
+
+	/**
+	 * Send the response
+	 *
+	 * @param out The stream of the client
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (this.body != null) {
+			// Assembled in a pooled buffer, nothing is allocated per client
+			ByteStack bytes = ByteStackPool.acquire(this.head.length + HEAD_EXTRA + this.bodyLength);
+			try {
+				appendHead(bytes);
+				bytes.addAllBytes(this.body);
+				out.write(bytes.getBackedArray(), 0, bytes.size());
+			} finally {
+				ByteStackPool.release(bytes);
+			}
+		} else {
+			// The body is large, it is not worth copying it with the head
+			out.write(fullHead(0));
+			this.directBody.writeTo(out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * @return the full response as sent to the client
+	 */
+	public byte[] toBytes() {
+		byte[] bytes = fullHead(this.bodyLength);
+		byte[] content = this.body != null ? this.body : this.directBody.toArrayNative();
+		System.arraycopy(content, 0, bytes, bytes.length - this.bodyLength, this.bodyLength);
+		return bytes;
+	}
+
+	/**
+	 * @param reserved The number of bytes to leave free after the head
+	 * @return the head with the date, the connection headers and the empty line
+	 */
+	private byte[] fullHead(int reserved) {
+		byte[] date = HttpClock.dateHeader();
+		byte[] bytes = new byte[this.head.length + date.length + CONNECTION_CLOSE.length + reserved];
+		System.arraycopy(this.head, 0, bytes, 0, this.head.length);
+		System.arraycopy(date, 0, bytes, this.head.length, date.length);
+		System.arraycopy(CONNECTION_CLOSE, 0, bytes, this.head.length + date.length, CONNECTION_CLOSE.length);
+		return bytes;
+	}
+
+	private void appendHead(ByteStack bytes) {
+		bytes.addAllBytes(this.head);
+		bytes.addAllBytes(HttpClock.dateHeader());
+		bytes.addAllBytes(CONNECTION_CLOSE);
+	}
+
+	/**
+	 * @return the length of the body in bytes
+	 */
+	public int getBodyLength() {
+		return this.bodyLength;
+	}
+
+	@Override
+	public String toString() {
+		return "ConstantResponse {head=" + new String(this.head, StandardCharsets.ISO_8859_1) + ", bodyLength="
+				+ this.bodyLength + "}";
+	}
+
+}
@@ -1,5 +1,8 @@
 package net.omny.route;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * RFC = https://datatracker.ietf.org/doc/html/rfc2616#page-51
  * 
@@ -19,5 +22,31 @@ public enum Method {
 	CONNECT,
 	TRACE,
 	PATCH;
-	
+
+	private static final Method[] METHODS = values();
+	private static final byte[][] NAMES_AS_BYTES = new byte[METHODS.length][];
+
+	static {
+		for (int i = 0; i < METHODS.length; i++) {
+			NAMES_AS_BYTES[i] = METHODS[i].name().getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	/**
+	 * Find a method by its name, without decoding it
+	 * 
+	 * @param bytes The buffer containing the name
+	 * @param from  The index of the first byte of the name
+	 * @param to    The index after the last byte of the name
+	 * @return the method, null if none has this name
+	 */
+	public static Method of(byte[] bytes, int from, int to) {
+		for (int i = 0; i < METHODS.length; i++) {
+			byte[] name = NAMES_AS_BYTES[i];
+			if (Arrays.equals(name, 0, name.length, bytes, from, to))
+				return METHODS[i];
+		}
+		return null;
+	}
+
 }
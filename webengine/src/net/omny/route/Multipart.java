@@ -0,0 +1,655 @@
+package net.omny.route;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.exceptions.PayloadTooLargeException;
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.HTTPUtils.Headers;
+
+/**
+ * Parser of a multipart/form-data body, read part by part while it is received
+ *
+ * The body is read in one buffer of {@link #BUFFER_SIZE} bytes, scanned for the
+ * boundary: the content of a part is given to the route as soon as it can't be
+ * the start of the boundary, so the memory used stays the same whatever the
+ * size of the upload. Fields are read as strings, files are spooled to
+ * temporary files (deleted when the parser is closed, move them to keep them)
+ * or written to any channel.
+ *
+ * <pre>
+ * Multipart.Part part;
+ * while ((part = multipart.next()) != null) {
+ * 	if (part.isFile()) {
+ * 		part.transferTo(fileChannel);
+ * 	} else {
+ * 		String value = part.getValue();
+ * 	}
+ * }
+ * </pre>
+ */
+public final class Multipart implements Closeable {
+
+	public static final int BUFFER_SIZE = 16 * 1024;
+	public static final int DEFAULT_MAX_FIELD_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_PARTS = 1000;
+	/**
+	 * Maximum size of the headers of one part
+	 */
+	private static final int MAX_HEADERS_SIZE = 8 * 1024;
+	private static final String CONTENT_DISPOSITION = "content-disposition";
+
+	private final ReadableByteChannel body;
+	/**
+	 * CRLF, "--" and the boundary: the line break before the boundary belongs to
+	 * it, not to the content of the part
+	 */
+	private final byte[] delimiter;
+	/**
+	 * How far the scan can jump for each byte, see {@link #find()}
+	 */
+	private final int[] skip = new int[256];
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final ByteBuffer window = ByteBuffer.wrap(this.buffer);
+	private int position;
+	private int limit;
+	/**
+	 * Start of the delimiter in the buffer, -1 if not found yet
+	 */
+	private int delimiterAt = -1;
+	/**
+	 * The delimiter doesn't start before this index
+	 */
+	private int scanned;
+	private long read;
+	private int parts;
+	private boolean started;
+	private boolean finished;
+	private Part current;
+	private final List<Path> spooled = new ArrayList<>();
+
+	/**
+	 * Maximum size of a field read as a string, see {@link Part#getValue()}
+	 */
+	@Getter
+	@Setter
+	private int maxFieldSize = DEFAULT_MAX_FIELD_SIZE;
+	/**
+	 * Maximum size of the content of one part
+	 */
+	@Getter
+	@Setter
+	private long maxPartSize = Long.MAX_VALUE;
+	/**
+	 * Maximum size of the whole body, the body of the request has its own limit
+	 * too
+	 */
+	@Getter
+	@Setter
+	private long maxTotalSize = Long.MAX_VALUE;
+	@Getter
+	@Setter
+	private int maxParts = DEFAULT_MAX_PARTS;
+	/**
+	 * Directory of the spooled files, null for the default temporary directory
+	 */
+	@Getter
+	@Setter
+	private Path tempDirectory;
+
+	/**
+	 * @param body     The body
+	 * @param boundary The boundary of the parts, see {@link #boundaryOf(String)}
+	 */
+	public Multipart(ReadableByteChannel body, String boundary) {
+		if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+			throw new IllegalArgumentException("Invalid multipart boundary '" + boundary + "'");
+		}
+		this.body = body;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		int last = this.delimiter.length - 1;
+		Arrays.fill(this.skip, this.delimiter.length);
+		for (int i = 0; i < last; i++) {
+			this.skip[this.delimiter[i] & 0xff] = last - i;
+		}
+		// The first boundary has no line break before it
+		this.buffer[0] = '\r';
+		this.buffer[1] = '\n';
+		this.limit = 2;
+	}
+
+	/**
+	 * @param contentType The Content-Type of the request
+	 * @return the boundary, null if the body is not multipart
+	 */
+	public static String boundaryOf(String contentType) {
+		if (contentType == null || !contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+			return null;
+		}
+		return parameter(contentType, "boundary");
+	}
+
+	/**
+	 * Go to the next part, what is left of the current part is skipped
+	 *
+	 * @return the part, null after the last one
+	 * @throws ProtocolException        If the body is not a valid multipart body
+	 * @throws PayloadTooLargeException If the body has too many parts or is too
+	 *                                  large
+	 */
+	public Part next() throws IOException {
+		if (this.finished) {
+			return null;
+		}
+		if (!this.started || (this.current != null && !this.current.ended)) {
+			// The preamble, or the content of the current part
+			int count;
+			while ((count = available()) > 0) {
+				this.position += count;
+			}
+			this.started = true;
+		}
+		if (this.current != null) {
+			this.current.ended = true;
+			this.current = null;
+		}
+		this.position += this.delimiter.length;
+		this.delimiterAt = -1;
+
+		ensure(2);
+		if (this.buffer[this.position] == '-' && this.buffer[this.position + 1] == '-') {
+			// Closing delimiter, the epilogue is ignored
+			this.finished = true;
+			return null;
+		}
+		// Whitespaces are allowed after the boundary
+		while (true) {
+			ensure(1);
+			byte b = this.buffer[this.position];
+			if (b != ' ' && b != '\t') {
+				break;
+			}
+			this.position++;
+		}
+		String line = readLine();
+		if (!line.isEmpty()) {
+			throw new ProtocolException("Multipart boundary followed by '" + line + "'");
+		}
+		if (++this.parts > this.maxParts) {
+			throw new PayloadTooLargeException("Multipart body with more than " + this.maxParts + " parts");
+		}
+		this.current = new Part(readHeaders());
+		return this.current;
+	}
+
+	/**
+	 * Read all the parts, fields as strings and files spooled to temporary files
+	 * A name given to several parts keeps the last one
+	 *
+	 * @return the form
+	 */
+	public Form readForm() throws IOException {
+		Form form = new Form();
+		Part part;
+		while ((part = next()) != null) {
+			if (part.isFile()) {
+				Path path = part.spool();
+				form.files.put(part.getName(), new SpooledFile(part, path, Files.size(path)));
+			} else {
+				form.fields.put(part.getName(), part.getValue());
+			}
+		}
+		return form;
+	}
+
+	/**
+	 * Delete the spooled files that were not moved
+	 */
+	@Override
+	public void close() {
+		if (this.current != null) {
+			this.current.ended = true;
+		}
+		for (Path path : this.spooled) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				// Left to the system
+			}
+		}
+		this.spooled.clear();
+	}
+
+	/**
+	 * Bytes of content readable from {@link #position}, 0 once the delimiter is
+	 * reached
+	 */
+	private int available() throws IOException {
+		while (true) {
+			if (this.delimiterAt < 0) {
+				this.delimiterAt = find();
+			}
+			if (this.delimiterAt >= 0) {
+				return this.delimiterAt - this.position;
+			}
+			// The end of the buffer may be the start of the delimiter
+			int safe = this.limit - this.position - (this.delimiter.length - 1);
+			if (safe > 0) {
+				return safe;
+			}
+			if (!fill()) {
+				throw new ProtocolException("Multipart body ended before its closing boundary");
+			}
+		}
+	}
+
+	/**
+	 * Find the delimiter in the buffer, skipping bytes it can't start with
+	 * (Boyer-Moore-Horspool)
+	 *
+	 * @return its index, -1 if it is not in the buffer
+	 */
+	private int find() {
+		int last = this.delimiter.length - 1;
+		int i = Math.max(this.position, this.scanned);
+		while (i + last < this.limit) {
+			int j = last;
+			while (this.buffer[i + j] == this.delimiter[j]) {
+				if (j == 0) {
+					return i;
+				}
+				j--;
+			}
+			i += this.skip[this.buffer[i + last] & 0xff];
+		}
+		this.scanned = i;
+		return -1;
+	}
+
+	/**
+	 * Move what is left to the start of the buffer, then read from the body
+	 *
+	 * @return false if the body ended
+	 */
+	private boolean fill() throws IOException {
+		if (this.position > 0) {
+			System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+			this.limit -= this.position;
+			this.scanned = Math.max(0, this.scanned - this.position);
+			this.position = 0;
+		}
+		if (this.limit == this.buffer.length) {
+			throw new ProtocolException("Multipart line longer than " + this.buffer.length + " bytes");
+		}
+		this.window.limit(this.buffer.length).position(this.limit);
+		int count;
+		do {
+			count = this.body.read(this.window);
+		} while (count == 0);
+		if (count < 0) {
+			return false;
+		}
+		this.read += count;
+		if (this.read > this.maxTotalSize) {
+			throw new PayloadTooLargeException(this.maxTotalSize);
+		}
+		this.limit += count;
+		return true;
+	}
+
+	private void ensure(int count) throws IOException {
+		while (this.limit - this.position < count) {
+			if (!fill()) {
+				throw new ProtocolException("Multipart body ended before its closing boundary");
+			}
+		}
+	}
+
+	private String readLine() throws IOException {
+		int from = this.position;
+		while (true) {
+			int end = ByteStack.indexOf(this.buffer, from, this.limit, (byte) '\n');
+			if (end >= 0) {
+				if (end == this.position || this.buffer[end - 1] != '\r') {
+					throw new ProtocolException("Multipart line not ended by CRLF");
+				}
+				String line = new String(this.buffer, this.position, end - 1 - this.position, StandardCharsets.UTF_8);
+				this.position = end + 1;
+				return line;
+			}
+			// Only the bytes read after are scanned
+			int scannedLength = this.limit - this.position;
+			if (!fill()) {
+				throw new ProtocolException("Multipart body ended before its closing boundary");
+			}
+			from = this.position + scannedLength;
+		}
+	}
+
+	private Map<String, String> readHeaders() throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		int size = 0;
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			size += line.length() + 2;
+			if (size > MAX_HEADERS_SIZE) {
+				throw new ProtocolException("Multipart headers larger than " + MAX_HEADERS_SIZE + " bytes");
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0) {
+				throw new ProtocolException("Invalid multipart header '" + line + "'");
+			}
+			headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+		}
+		return headers;
+	}
+
+	/**
+	 * Value of a parameter of a header, eg: the boundary in
+	 * {@code multipart/form-data; boundary=abc}
+	 *
+	 * @param header The value of the header
+	 * @param name   The name of the parameter
+	 * @return the value, unquoted, null if there is none
+	 */
+	static String parameter(String header, String name) {
+		int length = header.length();
+		int i = header.indexOf(';');
+		while (i >= 0 && i < length) {
+			i++;
+			int equal = header.indexOf('=', i);
+			if (equal < 0) {
+				return null;
+			}
+			String key = header.substring(i, equal).trim();
+			String value;
+			i = equal + 1;
+			while (i < length && header.charAt(i) == ' ') {
+				i++;
+			}
+			if (i < length && header.charAt(i) == '"') {
+				StringBuilder builder = new StringBuilder();
+				i++;
+				while (i < length && header.charAt(i) != '"') {
+					char c = header.charAt(i);
+					if (c == '\\' && i + 1 < length) {
+						c = header.charAt(++i);
+					}
+					builder.append(c);
+					i++;
+				}
+				value = builder.toString();
+				i = header.indexOf(';', i);
+			} else {
+				int end = header.indexOf(';', i);
+				value = (end < 0 ? header.substring(i) : header.substring(i, end)).trim();
+				i = end;
+			}
+			if (key.equalsIgnoreCase(name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A part of the body, its content is read from the body while it is received
+	 * It can't be read anymore once the next part is asked for
+	 */
+	public final class Part implements ReadableByteChannel {
+
+		private final Map<String, String> headers;
+		@Getter
+		private final String name;
+		/**
+		 * The name of the uploaded file, null if the part is a field
+		 */
+		@Getter
+		private final String fileName;
+		private long size;
+		private boolean ended;
+
+		private Part(Map<String, String> headers) throws ProtocolException {
+			this.headers = headers;
+			String disposition = headers.get(CONTENT_DISPOSITION);
+			if (disposition == null) {
+				throw new ProtocolException("Multipart part without Content-Disposition");
+			}
+			this.name = parameter(disposition, "name");
+			String encodedName = parameter(disposition, "filename*");
+			this.fileName = encodedName != null ? decodeFileName(encodedName) : parameter(disposition, "filename");
+		}
+
+		/**
+		 * @return true if the part is an uploaded file
+		 */
+		public boolean isFile() {
+			return this.fileName != null;
+		}
+
+		/**
+		 * @return the Content-Type of the part, null if not given
+		 */
+		public String getContentType() {
+			return this.headers.get(Headers.CONTENT_TYPE.toLowerCase());
+		}
+
+		/**
+		 * @param name The name of the header, case insensitive
+		 * @return the value, null if the part doesn't have it
+		 */
+		public String getHeader(String name) {
+			return this.headers.get(name.toLowerCase());
+		}
+
+		/**
+		 * @return the bytes of content read yet
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Read the rest of the content as a string
+		 *
+		 * @return the content decoded in UTF-8
+		 * @throws PayloadTooLargeException If it is larger than
+		 *                                  {@link Multipart#getMaxFieldSize()}
+		 */
+		public String getValue() throws IOException {
+			ByteStack value = ByteStackPool.acquire(256);
+			try {
+				int count;
+				while ((count = chunk()) > 0) {
+					if (value.size() + count > maxFieldSize) {
+						throw new PayloadTooLargeException(maxFieldSize);
+					}
+					value.addAllBytes(buffer, position, count);
+					consume(count);
+				}
+				return new String(value.getBackedArray(), 0, value.size(), StandardCharsets.UTF_8);
+			} finally {
+				ByteStackPool.release(value);
+			}
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!dst.hasRemaining()) {
+				return this.ended ? -1 : 0;
+			}
+			int count = chunk();
+			if (count < 0) {
+				return -1;
+			}
+			count = Math.min(count, dst.remaining());
+			dst.put(buffer, position, count);
+			consume(count);
+			return count;
+		}
+
+		/**
+		 * Write the rest of the content to a channel, straight from the buffer of
+		 * the parser
+		 *
+		 * @param target The channel, eg: a {@link FileChannel}
+		 * @return the number of bytes written
+		 */
+		public long transferTo(WritableByteChannel target) throws IOException {
+			long written = 0;
+			int count;
+			while ((count = chunk()) > 0) {
+				ByteBuffer slice = ByteBuffer.wrap(buffer, position, count);
+				while (slice.hasRemaining()) {
+					target.write(slice);
+				}
+				consume(count);
+				written += count;
+			}
+			return written;
+		}
+
+		/**
+		 * Write the rest of the content to a temporary file
+		 * The file is deleted when the parser is closed, unless it is moved
+		 *
+		 * @return the file
+		 */
+		public Path spool() throws IOException {
+			Path file = tempDirectory == null ? Files.createTempFile("omny-upload-", ".part")
+					: Files.createTempFile(tempDirectory, "omny-upload-", ".part");
+			spooled.add(file);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				transferTo(channel);
+			} catch (IOException e) {
+				Files.deleteIfExists(file);
+				throw e;
+			}
+			return file;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return !this.ended;
+		}
+
+		/**
+		 * Nothing to release, the rest of the content is skipped by
+		 * {@link Multipart#next()}
+		 */
+		@Override
+		public void close() {
+		}
+
+		/**
+		 * @return the bytes of content readable in the buffer, -1 at the end of the
+		 *         part
+		 */
+		private int chunk() throws IOException {
+			if (this.ended) {
+				return -1;
+			}
+			int count = available();
+			if (count == 0) {
+				this.ended = true;
+				return -1;
+			}
+			if (this.size + count > maxPartSize) {
+				throw new PayloadTooLargeException(maxPartSize);
+			}
+			return count;
+		}
+
+		private void consume(int count) {
+			position += count;
+			this.size += count;
+		}
+
+	}
+
+	/**
+	 * The fields and the files of a form, see {@link Multipart#readForm()}
+	 */
+	public static final class Form {
+
+		private final Map<String, String> fields = new LinkedHashMap<>();
+		private final Map<String, SpooledFile> files = new LinkedHashMap<>();
+
+		public String getField(String name) {
+			return this.fields.get(name);
+		}
+
+		public SpooledFile getFile(String name) {
+			return this.files.get(name);
+		}
+
+		public Map<String, String> getFields() {
+			return Collections.unmodifiableMap(this.fields);
+		}
+
+		public Map<String, SpooledFile> getFiles() {
+			return Collections.unmodifiableMap(this.files);
+		}
+
+	}
+
+	/**
+	 * An uploaded file written to a temporary file
+	 */
+	@Getter
+	public static final class SpooledFile {
+
+		private final String name;
+		private final String fileName;
+		private final String contentType;
+		private final Path path;
+		private final long size;
+
+		private SpooledFile(Part part, Path path, long size) {
+			this.name = part.getName();
+			this.fileName = part.getFileName();
+			this.contentType = part.getContentType();
+			this.path = path;
+			this.size = size;
+		}
+
+	}
+
+	/**
+	 * Decode an extended file name, eg: {@code UTF-8''na%C3%AFve.txt}
+	 */
+	private static String decodeFileName(String value) {
+		int quote = value.indexOf("''");
+		if (quote < 0) {
+			return value;
+		}
+		try {
+			// '+' is not a space here
+			return URLDecoder.decode(value.substring(quote + 2).replace("+", "%2B"), value.substring(0, quote));
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return value.substring(quote + 2);
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+package net.omny.route;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * Parameters of a query string, or of an application/x-www-form-urlencoded body
+ *
+ * Parsing only records where the names and the values are in the bytes
+ * received, nothing is decoded: a value is decoded when it is asked for, and
+ * names are compared with the bytes directly when they don't need decoding.
+ * A name can be given several times, see {@link #getAll(String)}.
+ * The bytes must not change while the parameters are used.
+ */
+public final class QueryString {
+
+	private static final int DEFAULT_PARAM_COUNT = 8;
+	private static final QueryString EMPTY = new QueryString();
+
+	private byte[] source;
+	/**
+	 * For each parameter, the index of its name, the index after its name, the
+	 * index of its value and the index after its value in {@link #source}
+	 */
+	private int[] index = new int[4 * DEFAULT_PARAM_COUNT];
+	private int count;
+	/**
+	 * Decoded bytes, before they are turned into a string
+	 */
+	private byte[] scratch;
+
+	/**
+	 * No parameters, see {@link #reset(byte[], int, int)}
+	 */
+	QueryString() {
+	}
+
+	/**
+	 * @param query The query string, without the '?'
+	 * @return the parameters
+	 */
+	public static QueryString parse(String query) {
+		QueryString queryString = new QueryString();
+		byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+		queryString.reset(bytes, 0, bytes.length);
+		return queryString;
+	}
+
+	/**
+	 * @return parameters that can't be changed, without any parameter
+	 */
+	public static QueryString empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Record the parameters of a query string
+	 *
+	 * @param bytes The buffer containing the query string
+	 * @param from  The index of the first byte (after the '?')
+	 * @param to    The index after the last byte
+	 */
+	void reset(byte[] bytes, int from, int to) {
+		this.source = bytes;
+		this.count = 0;
+		int start = from;
+		while (start < to) {
+			int end = ByteStack.indexOf(bytes, start, to, (byte) '&');
+			if (end < 0) {
+				end = to;
+			}
+			if (end > start) {
+				int equal = ByteStack.indexOf(bytes, start, end, (byte) '=');
+				if (equal < 0) {
+					equal = end;
+				}
+				add(start, equal, equal < end ? equal + 1 : end, end);
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Forget the parameters, so the bytes are not retained
+	 */
+	void clear() {
+		this.source = null;
+		this.count = 0;
+	}
+
+	private void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		if (this.index.length < 4 * (this.count + 1)) {
+			this.index = Arrays.copyOf(this.index, this.index.length * 2);
+		}
+		int i = 4 * this.count++;
+		this.index[i] = nameStart;
+		this.index[i + 1] = nameEnd;
+		this.index[i + 2] = valueStart;
+		this.index[i + 3] = valueEnd;
+	}
+
+	/**
+	 * @return the number of parameters, a name given several times is counted
+	 *         each time
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	public boolean isEmpty() {
+		return this.count == 0;
+	}
+
+	/**
+	 * @param name The decoded name
+	 * @return true if the parameter is given
+	 */
+	public boolean contains(String name) {
+		return indexOf(name, 0) >= 0;
+	}
+
+	/**
+	 * @param name The decoded name
+	 * @return the first value of the parameter, decoded, null if it is not given
+	 */
+	public String get(String name) {
+		int i = indexOf(name, 0);
+		return i < 0 ? null : getValue(i);
+	}
+
+	/**
+	 * @param name The decoded name
+	 * @return all the values of the parameter in order, empty if it is not given
+	 */
+	public List<String> getAll(String name) {
+		List<String> values = new ArrayList<>(1);
+		for (int i = indexOf(name, 0); i >= 0; i = indexOf(name, i + 1)) {
+			values.add(getValue(i));
+		}
+		return values;
+	}
+
+	/**
+	 * @param i The index of the parameter, in the order they are given
+	 * @return its name, decoded
+	 */
+	public String getName(int i) {
+		checkIndex(i);
+		return decode(this.index[4 * i], this.index[4 * i + 1]);
+	}
+
+	/**
+	 * @param i The index of the parameter, in the order they are given
+	 * @return its value, decoded, empty if the parameter has no value
+	 */
+	public String getValue(int i) {
+		checkIndex(i);
+		return decode(this.index[4 * i + 2], this.index[4 * i + 3]);
+	}
+
+	/**
+	 * @return all the parameters decoded, by name in the order they are given
+	 */
+	public Map<String, List<String>> toMap() {
+		Map<String, List<String>> map = new LinkedHashMap<>();
+		for (int i = 0; i < this.count; i++) {
+			map.computeIfAbsent(getName(i), name -> new ArrayList<>(1)).add(getValue(i));
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= this.count) {
+			throw new IndexOutOfBoundsException("Parameter " + i + " out of " + this.count);
+		}
+	}
+
+	/**
+	 * @return the index of the first parameter named name from the parameter
+	 *         start, -1 if there is none
+	 */
+	private int indexOf(String name, int start) {
+		for (int i = start; i < this.count; i++) {
+			if (nameEquals(this.index[4 * i], this.index[4 * i + 1], name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean nameEquals(int from, int to, String name) {
+		if (needsDecoding(from, to)) {
+			return decode(from, to).equals(name);
+		}
+		// Bytes of other characters than ASCII never equal a char, the name is
+		// decoded to compare them
+		if (to - from != name.length()) {
+			return !isAscii(name) && decode(from, to).equals(name);
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c >= 0x80) {
+				return decode(from, to).equals(name);
+			}
+			if (this.source[from + i] != c) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean needsDecoding(int from, int to) {
+		for (int i = from; i < to; i++) {
+			byte b = this.source[i];
+			if (b == '%' || b == '+') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decode the bytes in UTF-8, '+' is a space and "%XX" a byte
+	 * An invalid escape is kept as is
+	 */
+	private String decode(int from, int to) {
+		if (!needsDecoding(from, to)) {
+			return new String(this.source, from, to - from, StandardCharsets.UTF_8);
+		}
+		if (this.scratch == null || this.scratch.length < to - from) {
+			this.scratch = new byte[Math.max(64, to - from)];
+		}
+		int length = 0;
+		for (int i = from; i < to; i++) {
+			byte b = this.source[i];
+			if (b == '+') {
+				b = ' ';
+			} else if (b == '%' && i + 2 < to && hex(this.source[i + 1]) >= 0 && hex(this.source[i + 2]) >= 0) {
+				b = (byte) (hex(this.source[i + 1]) << 4 | hex(this.source[i + 2]));
+				i += 2;
+			}
+			this.scratch[length++] = b;
+		}
+		return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private static int hex(byte b) {
+		if (b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		if (b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		}
+		if (b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static boolean isAscii(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
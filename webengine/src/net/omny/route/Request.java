@@ -1,13 +1,18 @@
 package net.omny.route;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-import lombok.Getter;
 import lombok.Setter;
 import net.omny.exceptions.MalformedRequestException;
+import net.omny.utils.ByteStack;
 import net.omny.utils.HTTPUtils;
 import net.omny.utils.HTTPUtils.Headers;
 
@@ -30,10 +35,10 @@ public final class Request {
 	// Sec-Fetch-Site: none
 	// Sec-Fetch-User: ?1
 
-	public static Request lightWeight(String headerLine)
-			throws MalformedRequestException {
-		return new Request(headerLine);
-	}
+	private static final int DEFAULT_HEAD_SIZE = 1024;
+	private static final int DEFAULT_HEADER_COUNT = 16;
+	private static final int PATH_CACHE_SIZE = 64;
+	private static final String FORM_URLENCODED = "application/x-www-form-urlencoded";
 
 	/**
 	 * 
@@ -44,23 +49,47 @@ public final class Request {
 	 * @date 08/08/2021
 	 */
 	public static Request parse(String req) throws MalformedRequestException {
-		String[] lines = req.split("\r\n");
-		return new Request(lines);
+		byte[] bytes = req.getBytes(StandardCharsets.ISO_8859_1);
+		Request request = new Request((RequestContext) null);
+		request.parseHead(bytes, 0, bytes.length);
+		return request;
 	}
 
-	@Getter
 	private Method method;
-	@Getter
 	private HTTPUtils.Version httpVersion;
-	@Getter
+	/**
+	 * The path and the query string, as requested
+	 */
+	private String target;
 	private String path;
-	@Getter
 	private String charset;
+	/**
+	 * The query string in {@link #head}, -1 if there is none
+	 */
+	private int queryStart = -1;
+	private int queryEnd;
+	/**
+	 * Parsed on first access, recycled with the request
+	 */
+	private final QueryString query = new QueryString();
+	private boolean queryParsed;
+	/**
+	 * Parameters of an url-encoded body, parsed on first access
+	 */
+	private QueryString form;
 
 	/**
-	 * Headers content
+	 * The request line and the headers as received, in ISO-8859-1
+	 */
+	private byte[] head;
+	private int headLength;
+	/**
+	 * For each header, the index of its name, the index after its name, the index
+	 * of its value and the index after its value in {@link #head}
+	 * Values are decoded only when asked
 	 */
-	protected Map<String, String> headers = new HashMap<>();
+	private int[] headerIndex;
+	private int headerCount;
 
 	/**
 	 * Represent URL parameters
@@ -71,58 +100,189 @@ public final class Request {
 	 * TestTest is treated as parameter
 	 * and is accessible from params hashmap
 	 */
-	@Setter @Getter
+	@Setter
 	private Map<String, String> params = new HashMap<>();
 
-	private Request(String header) throws MalformedRequestException {
-		String[] firstLine = header.split("\\s+");
-		// <METHOD> <PATH> <HTTP_VERSION>
-		try {
-			this.method = Method.valueOf(firstLine[0]);
-		} catch (IllegalArgumentException e) {
-			// Method.valueOf not found
-			throw new MalformedRequestException(header);
-		}
-		this.path = firstLine[1];
-		this.httpVersion = HTTPUtils.Version.byTag(firstLine[2]);
+	/**
+	 * The body, null if the request is not read from a client
+	 */
+	private RequestBody body;
+	/**
+	 * True once the route answers later, see {@link #park()}
+	 */
+	private boolean parked;
+	/**
+	 * Run once the request is answered, see {@link #whenAnswered(Runnable)}
+	 */
+	private Runnable answered;
+
+	/**
+	 * The context recycling this request, null if it is not recycled
+	 */
+	final RequestContext context;
+	/**
+	 * The thread handling the request, while it is recycled
+	 */
+	private Thread owner;
+	/**
+	 * Paths already decoded by this recycled request, by hash of their bytes
+	 * A slot is overwritten on collision
+	 */
+	private final String[] pathCache;
+
+	Request(RequestContext context) {
+		this.context = context;
+		this.head = new byte[DEFAULT_HEAD_SIZE];
+		this.headerIndex = new int[4 * DEFAULT_HEADER_COUNT];
+		this.pathCache = context == null ? null : new String[PATH_CACHE_SIZE];
 	}
 
 	/**
-	 * Private constructor
+	 * Copy a request, the copy is not recycled
+	 */
+	private Request(Request request) {
+		this.context = null;
+		this.method = request.method;
+		this.httpVersion = request.httpVersion;
+		this.target = request.target;
+		this.path = request.path;
+		this.charset = request.charset;
+		this.queryStart = request.queryStart;
+		this.queryEnd = request.queryEnd;
+		this.head = Arrays.copyOf(request.head, request.headLength);
+		this.headLength = request.headLength;
+		this.headerIndex = Arrays.copyOf(request.headerIndex, 4 * request.headerCount);
+		this.headerCount = request.headerCount;
+		this.params = new HashMap<>(request.params);
+		this.pathCache = null;
+		this.answered = request.answered;
+	}
+
+	/**
+	 * Parse the request line and the headers
 	 * 
-	 * @author Fabien CAYRE (Computer)
-	 *
-	 * @param lines
+	 * @param bytes The buffer containing the head
+	 * @param from  The index of the request line
+	 * @param to    The index after the head
 	 * @throws MalformedRequestException If the request is malformed
-	 * @date 16/08/2021
 	 */
-	private Request(String[] lines) throws MalformedRequestException {
-		// Split by space
-		String[] firstLine = lines[0].split("\\s+");
-		// <METHOD> <PATH> <HTTP_VERSION>
-		try {
-			this.method = Method.valueOf(firstLine[0]);
-		} catch (IllegalArgumentException e) {
-			// Method.valueOf not found
-			throw new MalformedRequestException(Arrays.toString(lines));
+	void parseHead(byte[] bytes, int from, int to) throws MalformedRequestException {
+		int length = to - from;
+		if (this.head.length < length) {
+			this.head = new byte[Math.max(length, this.head.length * 2)];
 		}
-		this.path = firstLine[1];
-		this.httpVersion = HTTPUtils.Version.byTag(firstLine[2]);
+		System.arraycopy(bytes, from, this.head, 0, length);
+		this.headLength = length;
+		this.headerCount = 0;
 
-		for (int i = 1; i < lines.length; i++) {
-			String[] headerLines = lines[i].split(":\\s+");
-			this.headers.put(headerLines[0].toLowerCase(), headerLines[1]);
+		int lineEnd = lineEnd(0);
+		parseRequestLine(0, trimCR(0, lineEnd));
+		for (int lineStart = lineEnd + 1; lineStart < this.headLength; lineStart = lineEnd + 1) {
+			lineEnd = lineEnd(lineStart);
+			int end = trimCR(lineStart, lineEnd);
+			if (end > lineStart) {
+				parseHeader(lineStart, end);
+			}
 		}
 		setCharset();
 	}
 
-	public void readFurther(String nextLines) {
-		String[] lines = nextLines.split("\r\n");
-		for (int i = 0; i < lines.length; i++) {
-			String[] headerLines = lines[i].split(":\\s+");
-			this.headers.put(headerLines[0].toLowerCase(), headerLines[1]);
+	private void parseRequestLine(int from, int to) throws MalformedRequestException {
+		// <METHOD> <PATH> <HTTP_VERSION>
+		int methodEnd = skip(from, to, false);
+		this.method = Method.of(this.head, from, methodEnd);
+		int pathStart = skip(methodEnd, to, true);
+		int pathEnd = skip(pathStart, to, false);
+		if (this.method == null || pathStart == pathEnd) {
+			throw new MalformedRequestException(new String(this.head, from, to - from, StandardCharsets.ISO_8859_1));
 		}
-		setCharset();
+		// <PATH>[?<QUERY>]
+		this.target = decodePath(pathStart, pathEnd);
+		int queryMark = ByteStack.indexOf(this.head, pathStart, pathEnd, (byte) '?');
+		if (queryMark < 0) {
+			this.path = this.target;
+			this.queryStart = -1;
+		} else {
+			this.path = decodePath(pathStart, queryMark);
+			this.queryStart = queryMark + 1;
+			this.queryEnd = pathEnd;
+		}
+		int versionStart = skip(pathEnd, to, true);
+		this.httpVersion = HTTPUtils.Version.byTag(this.head, versionStart, skip(versionStart, to, false));
+	}
+
+	/**
+	 * Decode the path, the same paths are requested again and again so the
+	 * strings are reused
+	 */
+	private String decodePath(int from, int to) {
+		if (this.pathCache == null) {
+			return new String(this.head, from, to - from, StandardCharsets.ISO_8859_1);
+		}
+		int h = 0;
+		for (int i = from; i < to; i++) {
+			h = 31 * h + (this.head[i] & 0xff);
+		}
+		int slot = (h ^ (h >>> 16)) & (PATH_CACHE_SIZE - 1);
+		String cached = this.pathCache[slot];
+		if (cached != null && cached.length() == to - from) {
+			int i = 0;
+			while (i < cached.length() && cached.charAt(i) == (this.head[from + i] & 0xff)) {
+				i++;
+			}
+			if (i == cached.length()) {
+				return cached;
+			}
+		}
+		return this.pathCache[slot] = new String(this.head, from, to - from, StandardCharsets.ISO_8859_1);
+	}
+
+	private void parseHeader(int from, int to) throws MalformedRequestException {
+		// <NAME>:<OPTIONAL SPACES><VALUE><OPTIONAL SPACES>
+		int colon = ByteStack.indexOf(this.head, from, to, (byte) ':');
+		if (colon <= from) {
+			throw new MalformedRequestException(new String(this.head, from, to - from, StandardCharsets.ISO_8859_1));
+		}
+		int valueStart = skip(colon + 1, to, true);
+		int valueEnd = to;
+		while (valueEnd > valueStart && isSpace(this.head[valueEnd - 1])) {
+			valueEnd--;
+		}
+		if (this.headerIndex.length < 4 * (this.headerCount + 1)) {
+			this.headerIndex = Arrays.copyOf(this.headerIndex, this.headerIndex.length * 2);
+		}
+		int i = 4 * this.headerCount++;
+		this.headerIndex[i] = from;
+		this.headerIndex[i + 1] = colon;
+		this.headerIndex[i + 2] = valueStart;
+		this.headerIndex[i + 3] = valueEnd;
+	}
+
+	/**
+	 * @return the index of the LF ending the line, or the end of the head
+	 */
+	private int lineEnd(int from) {
+		int lineEnd = ByteStack.indexOf(this.head, from, this.headLength, (byte) '\n');
+		return lineEnd < 0 ? this.headLength : lineEnd;
+	}
+
+	private int trimCR(int from, int lineEnd) {
+		return lineEnd > from && this.head[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+	}
+
+	/**
+	 * @param spaces True to skip spaces, false to skip until a space
+	 * @return the index of the first byte not skipped
+	 */
+	private int skip(int from, int to, boolean spaces) {
+		while (from < to && isSpace(this.head[from]) == spaces) {
+			from++;
+		}
+		return from;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t';
 	}
 
 	private void setCharset(){
@@ -138,48 +298,374 @@ public final class Request {
 		}
 	}
 
+	/**
+	 * Copy the request, so it can be used once handled (eg: by a background task)
+	 * 
+	 * @return a copy of this request which is never recycled
+	 */
+	public Request snapshot() {
+		checkOwner();
+		return new Request(this);
+	}
+
+	/**
+	 * The route answers later, from another thread: the connection is left open
+	 * once the handler returns, what the route didn't read of the body is read
+	 * now
+	 */
+	void park() {
+		checkOwner();
+		this.parked = true;
+		if (this.context != null) {
+			this.context.discardBody(RequestContext.DISCARD_LIMIT);
+		}
+	}
+
+	/**
+	 * Run something once the request is answered, by the thread sending the
+	 * response when the request is parked; a snapshot taken afterwards runs it
+	 * instead of this request
+	 * 
+	 * @param answered Run once, null for nothing
+	 */
+	public void whenAnswered(Runnable answered) {
+		checkOwner();
+		this.answered = answered;
+	}
+
+	/**
+	 * The response of a parked request is sent
+	 */
+	void answered() {
+		Runnable answered = this.answered;
+		this.answered = null;
+		if (answered != null) {
+			answered.run();
+		}
+	}
+
+	/**
+	 * @return true if the route answers later, the handler must not close the
+	 *         connection
+	 */
+	public boolean isParked() {
+		checkOwner();
+		return this.parked;
+	}
+
+	/**
+	 * Start handling the request on the current thread
+	 */
+	void open() {
+		this.owner = Thread.currentThread();
+	}
+
+	/**
+	 * Forget the request once handled, so it can be parsed again
+	 */
+	void recycle() {
+		this.owner = null;
+		this.method = null;
+		this.httpVersion = null;
+		this.target = null;
+		this.path = null;
+		this.charset = null;
+		this.queryStart = -1;
+		this.query.clear();
+		this.queryParsed = false;
+		if (this.form != null) {
+			this.form.clear();
+		}
+		this.headLength = 0;
+		this.headerCount = 0;
+		this.params.clear();
+		this.body = null;
+		this.parked = false;
+		this.answered = null;
+	}
+
+	/**
+	 * A recycled request is only usable by the thread handling it, until it is
+	 * answered
+	 */
+	private void checkOwner() {
+		if (this.context != null && this.owner != Thread.currentThread()) {
+			throw new IllegalStateException(
+					"Request used outside of its handler, keep a snapshot() of it instead");
+		}
+	}
+
+	public Method getMethod() {
+		checkOwner();
+		return this.method;
+	}
+
+	public HTTPUtils.Version getHttpVersion() {
+		checkOwner();
+		return this.httpVersion;
+	}
+
+	/**
+	 * @return the path, without the query string
+	 */
+	public String getPath() {
+		checkOwner();
+		return this.path;
+	}
+
+	/**
+	 * @return the path and the query string, as requested (eg: to cache the
+	 *         response)
+	 */
+	public String getTarget() {
+		checkOwner();
+		return this.target;
+	}
+
+	/**
+	 * @return the query string as requested (without the '?'), null if there is
+	 *         none
+	 */
+	public String getQueryString() {
+		checkOwner();
+		if (this.queryStart < 0) {
+			return null;
+		}
+		return new String(this.head, this.queryStart, this.queryEnd - this.queryStart, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return the parameters of the query string, decoded when asked for
+	 */
+	public QueryString getQuery() {
+		checkOwner();
+		if (!this.queryParsed) {
+			if (this.queryStart >= 0) {
+				this.query.reset(this.head, this.queryStart, this.queryEnd);
+			}
+			this.queryParsed = true;
+		}
+		return this.query;
+	}
+
+	/**
+	 * @param name The name of the parameter
+	 * @return its first value in the query string, null if it is not given
+	 */
+	public String getQuery(String name) {
+		return getQuery().get(name);
+	}
+
+	/**
+	 * Read an application/x-www-form-urlencoded body
+	 * 
+	 * @return the parameters of the body, empty if the body is not url-encoded
+	 * @throws UncheckedIOException If the body can't be read
+	 */
+	public QueryString getFormParams() {
+		checkOwner();
+		String contentType = getHeader(Headers.CONTENT_TYPE);
+		if (contentType == null || !contentType.regionMatches(true, 0, FORM_URLENCODED, 0, FORM_URLENCODED.length())) {
+			return QueryString.empty();
+		}
+		if (this.form == null) {
+			this.form = new QueryString();
+		}
+		if (this.form.isEmpty()) {
+			ByteStack bytes = getBody();
+			this.form.reset(bytes.getBackedArray(), 0, bytes.size());
+		}
+		return this.form;
+	}
+
+	public String getCharset() {
+		checkOwner();
+		return this.charset;
+	}
+
+	void setBody(RequestBody body) {
+		this.body = body;
+	}
+
+	/**
+	 * @return true if the client sends a body (with a length or chunked)
+	 */
+	public boolean hasBody() {
+		checkOwner();
+		return this.body != null && this.body.exists();
+	}
+
+	/**
+	 * Read the whole body, for small bodies (eg: forms, JSON)
+	 * The buffer is pooled, it is given back once the client is answered
+	 * 
+	 * @return the body, empty if there is none
+	 * @throws UncheckedIOException If the body can't be read, or is larger than
+	 *                              the server accepts
+	 */
+	public ByteStack getBody() {
+		checkOwner();
+		if (this.body == null) {
+			return new ByteStack(0);
+		}
+		try {
+			return this.body.readFully();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the whole body decoded in UTF-8, see {@link #getBody()}
+	 */
+	public String getBodyAsString() {
+		ByteStack bytes = getBody();
+		return new String(bytes.getBackedArray(), 0, bytes.size(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read the body as it is received, for large bodies (eg: uploads)
+	 * 
+	 * @return the body, read from the client
+	 */
+	public ReadableByteChannel getBodyChannel() {
+		checkOwner();
+		return this.body == null ? new RequestBody() : this.body;
+	}
+
+	/**
+	 * Read a multipart/form-data body part by part, for uploads
+	 * The spooled files are deleted once the client is answered, unless moved
+	 * 
+	 * @return the parser of the body
+	 * @throws UncheckedIOException If the body is not multipart
+	 */
+	public Multipart getMultipart() {
+		checkOwner();
+		String boundary = Multipart.boundaryOf(getHeader(Headers.CONTENT_TYPE));
+		if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+			throw new UncheckedIOException(new ProtocolException("Not a multipart body: " + getHeader(Headers.CONTENT_TYPE)));
+		}
+		if (this.body == null) {
+			return new Multipart(new RequestBody(), boundary);
+		}
+		return this.body.multipart(boundary);
+	}
+
+	/**
+	 * Read a whole multipart/form-data body, see {@link Multipart#readForm()}
+	 * 
+	 * @return the fields and the spooled files
+	 * @throws UncheckedIOException If the body can't be read, or is not a valid
+	 *                              multipart body
+	 */
+	public Multipart.Form getForm() {
+		try {
+			return getMultipart().readForm();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public Map<String, String> getParams() {
+		checkOwner();
+		return this.params;
+	}
+
 	public boolean equalsPath(String path, boolean params) {
+		checkOwner();
 		if (!params) {
 			return this.path.equals(path);
 		}
-		String[] urlDivions = path.split("\\/");
-		String[] currentUrlDivision = this.path.split("\\/");
+		return matchSegments(path, null);
+	}
+
+	/**
+	 * @param path The path of a route, with params (eg: "/user/:id")
+	 * @return the params of this request for this route, null if the path is
+	 *         not the path of the route
+	 */
+	public Map<String, String> extractParams(String path) {
+		checkOwner();
+		Map<String, String> params = new HashMap<>();
+		return matchSegments(path, params) ? params : null;
+	}
 
-		// The number of division is different from the current request division
-		if (urlDivions.length != currentUrlDivision.length) {
+	/**
+	 * Match the path against the path of a route, the params are put in
+	 * {@link #getParams()} if it matches
+	 * 
+	 * @param path The path of a route, with params (eg: "/user/:id")
+	 * @return true if the path of this request is the path of the route
+	 */
+	public boolean matchPath(String path) {
+		checkOwner();
+		if (!matchSegments(path, null)) {
 			return false;
 		}
-		for (int i = 0; i < currentUrlDivision.length; i++) {
-			if (!urlDivions[i].equals(currentUrlDivision[i])) {
-				if(!urlDivions[i].startsWith(":"))
-					return false;
+		this.params.clear();
+		matchSegments(path, this.params);
+		return true;
+	}
+
+	/**
+	 * Compare each segment of the paths, without splitting them: a segment
+	 * starting with ':' is a param and matches any segment
+	 * 
+	 * @param pattern The path of the route
+	 * @param params  Where to put the decoded params, null to only compare
+	 */
+	private boolean matchSegments(String pattern, Map<String, String> params) {
+		String path = this.path;
+		// Trailing slashes are ignored
+		int patternEnd = trimSlashes(pattern);
+		int pathEnd = trimSlashes(path);
+		int p = 0;
+		int i = 0;
+		while (true) {
+			int patternNext = segmentEnd(pattern, p, patternEnd);
+			int pathNext = segmentEnd(path, i, pathEnd);
+			if (patternNext > p && pattern.charAt(p) == ':') {
+				if (params != null) {
+					params.put(pattern.substring(p + 1, patternNext), decodeParam(path.substring(i, pathNext)));
+				}
+			} else if (patternNext - p != pathNext - i || !pattern.regionMatches(p, path, i, patternNext - p)) {
+				return false;
+			}
+			boolean patternLast = patternNext == patternEnd;
+			if (patternLast != (pathNext == pathEnd)) {
+				return false;
 			}
+			if (patternLast) {
+				return true;
+			}
+			p = patternNext + 1;
+			i = pathNext + 1;
 		}
-		return true;
 	}
 
-	public Map<String, String> extractParams(String path){
-		String[] urlDivions = path.split("\\/");
-		String[] currentUrlDivision = this.path.split("\\/");
+	private static int trimSlashes(String path) {
+		int end = path.length();
+		while (end > 0 && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return end;
+	}
+
+	private static int segmentEnd(String path, int from, int end) {
+		int slash = path.indexOf('/', from);
+		return slash < 0 || slash > end ? end : slash;
+	}
 
-		// The number of division is different from the current request division
-		if (urlDivions.length != currentUrlDivision.length) {
-			return null;
+	private static String decodeParam(String value) {
+		if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+			return value;
 		}
-		Map<String, String> params = new HashMap<>();
-		for (int i = 0; i < currentUrlDivision.length; i++) {
-			if (!urlDivions[i].equals(currentUrlDivision[i])) {
-				if(urlDivions[i].startsWith(":")){
-					try {
-						params.put(urlDivions[i].substring(1), HTTPUtils.urlDecode(currentUrlDivision[i]));
-					} catch (UnsupportedEncodingException e) {
-						e.printStackTrace();
-					}
-				}
-					
-			}
+		try {
+			return HTTPUtils.urlDecode(value);
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return value;
 		}
-		return params;
 	}
 
 	/**
@@ -194,6 +680,7 @@ public final class Request {
 	 * @date 16/08/2021
 	 */
 	public String getParams(String param) {
+		checkOwner();
 		return this.params.get(param);
 	}
 
@@ -210,7 +697,12 @@ public final class Request {
 	 * @date 16/08/2021
 	 */
 	public String getHeader(String header) {
-		return this.headers.get(header.toLowerCase());
+		int i = indexOfHeader(header);
+		if (i < 0) {
+			return null;
+		}
+		return new String(this.head, this.headerIndex[i + 2], this.headerIndex[i + 3] - this.headerIndex[i + 2],
+				StandardCharsets.ISO_8859_1);
 	}
 
 	/**
@@ -226,7 +718,35 @@ public final class Request {
 	 * @return True if it contains, False otherwise
 	 */
 	public boolean containsHeader(String header) {
-		return this.headers.containsKey(header.toLowerCase());
+		return indexOfHeader(header) >= 0;
+	}
+
+	/**
+	 * @param header The name of the header, in any case
+	 * @return the index of the last header with this name in
+	 *         {@link #headerIndex}, -1 if there is none
+	 */
+	private int indexOfHeader(String header) {
+		checkOwner();
+		int length = header.length();
+		for (int i = 4 * (this.headerCount - 1); i >= 0; i -= 4) {
+			int from = this.headerIndex[i];
+			if (this.headerIndex[i + 1] - from != length) {
+				continue;
+			}
+			int j = 0;
+			while (j < length && toLowerCase(this.head[from + j]) == toLowerCase(header.charAt(j))) {
+				j++;
+			}
+			if (j == length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int toLowerCase(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
 	}
 
 }
@@ -0,0 +1,341 @@
+package net.omny.route;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.exceptions.PayloadTooLargeException;
+import net.omny.server.ClientInput;
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.HTTPUtils.Headers;
+
+/**
+ * Body of a request, read from the client when the route asks for it
+ *
+ * The body is delimited by the Content-Length header, or sent with the chunked
+ * transfer coding. A client expecting a "100 Continue" is told to send the body
+ * on the first read, so a body the route doesn't read is never sent.
+ * Recycled with the request, see {@link RequestContext}.
+ */
+public final class RequestBody implements ReadableByteChannel {
+
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+	private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+	private ClientInput input;
+	private OutputStream out;
+	private long maxSize;
+	/**
+	 * The declared length, -1 if the body is chunked
+	 */
+	private long contentLength;
+	private boolean chunked;
+	/**
+	 * Bytes left in the body, or in the current chunk
+	 */
+	private long remaining;
+	private long read;
+	private boolean firstChunk;
+	private boolean expectContinue;
+	private boolean eof;
+	private boolean open;
+	/**
+	 * The whole body, read by {@link #readFully()}
+	 */
+	private ByteStack buffered;
+	/**
+	 * The parser of a multipart body, its spooled files are deleted with the
+	 * request
+	 */
+	private Multipart multipart;
+
+	/**
+	 * An empty body
+	 */
+	RequestBody() {
+		this.eof = true;
+		this.open = true;
+	}
+
+	/**
+	 * Prepare to read the body of a request
+	 *
+	 * @param request The request, with its headers parsed
+	 * @param input   The input of the client, its head consumed
+	 * @param out     The stream of the client, to send the "100 Continue" to
+	 * @param maxSize The maximum size of the body
+	 * @throws MalformedRequestException If the length of the body is invalid
+	 * @throws PayloadTooLargeException  If the declared length is larger than the
+	 *                                   maximum
+	 */
+	void reset(Request request, ClientInput input, OutputStream out, long maxSize)
+			throws MalformedRequestException, PayloadTooLargeException {
+		this.input = input;
+		this.out = out;
+		this.maxSize = maxSize;
+		this.read = 0;
+		this.open = true;
+		this.firstChunk = true;
+
+		String transferEncoding = request.getHeader(Headers.TRANSFER_ENCODING);
+		String contentLength = request.getHeader(Headers.CONTENT_LENGTH);
+		if (transferEncoding != null) {
+			// The transfer coding wins over the length
+			if (!transferEncoding.toLowerCase().endsWith("chunked")) {
+				throw new MalformedRequestException("Transfer-Encoding: " + transferEncoding);
+			}
+			this.chunked = true;
+			this.contentLength = -1;
+			this.remaining = 0;
+			this.eof = false;
+		} else if (contentLength != null) {
+			try {
+				this.contentLength = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException e) {
+				throw new MalformedRequestException("Content-Length: " + contentLength);
+			}
+			if (this.contentLength < 0) {
+				throw new MalformedRequestException("Content-Length: " + contentLength);
+			}
+			if (this.contentLength > maxSize) {
+				throw new PayloadTooLargeException(maxSize);
+			}
+			this.chunked = false;
+			this.remaining = this.contentLength;
+			this.eof = this.contentLength == 0;
+		} else {
+			this.chunked = false;
+			this.contentLength = 0;
+			this.remaining = 0;
+			this.eof = true;
+		}
+		String expect = request.getHeader(Headers.EXPECT);
+		this.expectContinue = !this.eof && expect != null && expect.equalsIgnoreCase("100-continue");
+	}
+
+	/**
+	 * @return true if the request has a body
+	 */
+	public boolean exists() {
+		return this.chunked || this.contentLength > 0;
+	}
+
+	/**
+	 * @return the declared length of the body, -1 if it is chunked
+	 */
+	public long getContentLength() {
+		return this.contentLength;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!this.open) {
+			throw new ClosedChannelException();
+		}
+		if (this.eof) {
+			return -1;
+		}
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+		sendContinue();
+		if (this.remaining == 0 && (!this.chunked || !nextChunk())) {
+			this.eof = true;
+			return -1;
+		}
+		int count = this.input.read(dst, (int) Math.min(this.remaining, Integer.MAX_VALUE));
+		if (count < 0) {
+			throw new EOFException("Client closed before sending the whole body");
+		}
+		consumed(count);
+		return count;
+	}
+
+	/**
+	 * Read the rest of the body in a pooled buffer, released with the request
+	 *
+	 * @return the whole body
+	 * @throws PayloadTooLargeException If the body is larger than the maximum
+	 */
+	public ByteStack readFully() throws IOException {
+		if (!this.open) {
+			throw new ClosedChannelException();
+		}
+		if (this.buffered == null) {
+			int capacity = this.contentLength > 0 ? (int) this.contentLength : DEFAULT_BUFFER_SIZE;
+			this.buffered = ByteStackPool.acquire(capacity);
+		}
+		sendContinue();
+		while (!this.eof) {
+			if (this.remaining == 0 && (!this.chunked || !nextChunk())) {
+				this.eof = true;
+				break;
+			}
+			int available = this.input.buffered();
+			if (available < 0) {
+				throw new EOFException("Client closed before sending the whole body");
+			}
+			int count = (int) Math.min(this.remaining, available);
+			this.buffered.addAllBytes(this.input.getBuffer(), this.input.getPosition(), count);
+			this.input.skipTo(this.input.getPosition() + count);
+			consumed(count);
+		}
+		return this.buffered;
+	}
+
+	/**
+	 * Parse the body as a multipart body, the same parser is given for the whole
+	 * request
+	 *
+	 * @param boundary The boundary of the parts
+	 * @return the parser, closed with the request
+	 */
+	Multipart multipart(String boundary) {
+		if (this.multipart == null) {
+			this.multipart = new Multipart(this, boundary);
+		}
+		return this.multipart;
+	}
+
+	/**
+	 * Read and drop what is left of the body, so the client doesn't see its
+	 * connection reset while it is sending it
+	 *
+	 * @param max The maximum number of bytes to drop
+	 * @return true if the whole body is read
+	 */
+	boolean discard(long max) {
+		if (this.eof || (this.expectContinue && this.out != null)) {
+			// Not asked for, the client doesn't send it
+			return true;
+		}
+		long dropped = 0;
+		try {
+			while (dropped < max) {
+				if (this.remaining == 0 && (!this.chunked || !nextChunk())) {
+					this.eof = true;
+					return true;
+				}
+				int available = this.input.buffered();
+				if (available < 0) {
+					return false;
+				}
+				int count = (int) Math.min(this.remaining, available);
+				this.input.skipTo(this.input.getPosition() + count);
+				consumed(count);
+				dropped += count;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		return false;
+	}
+
+	private void consumed(int count) {
+		this.remaining -= count;
+		this.read += count;
+		if (!this.chunked && this.remaining == 0) {
+			this.eof = true;
+		}
+	}
+
+	/**
+	 * Read the size of the next chunk
+	 *
+	 * @return false if it is the last chunk
+	 */
+	private boolean nextChunk() throws IOException {
+		if (!this.firstChunk && !"".equals(readLine())) {
+			throw new ProtocolException("Chunk not ended by a line break");
+		}
+		this.firstChunk = false;
+		String sizeLine = readLine();
+		if (sizeLine == null) {
+			throw new EOFException("Client closed before sending the whole body");
+		}
+		// Extensions are ignored
+		int extension = sizeLine.indexOf(';');
+		String size = (extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim();
+		long chunkSize;
+		try {
+			chunkSize = Long.parseLong(size, 16);
+		} catch (NumberFormatException e) {
+			throw new ProtocolException("Invalid chunk size '" + size + "'");
+		}
+		if (chunkSize < 0) {
+			throw new ProtocolException("Invalid chunk size '" + size + "'");
+		}
+		if (chunkSize == 0) {
+			// Trailers are ignored
+			String trailer;
+			while ((trailer = readLine()) != null && !trailer.isEmpty()) {
+			}
+			return false;
+		}
+		if (this.read + chunkSize > this.maxSize) {
+			throw new PayloadTooLargeException(this.maxSize);
+		}
+		this.remaining = chunkSize;
+		return true;
+	}
+
+	private String readLine() throws IOException {
+		try {
+			return this.input.readLine();
+		} catch (MalformedRequestException e) {
+			throw new ProtocolException(e.getMessage());
+		}
+	}
+
+	private void sendContinue() throws IOException {
+		if (this.expectContinue) {
+			this.expectContinue = false;
+			if (this.out != null) {
+				this.out.write(CONTINUE);
+				this.out.flush();
+			}
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	/**
+	 * Stop reading the body, what is left is not read
+	 */
+	@Override
+	public void close() {
+		this.open = false;
+	}
+
+	/**
+	 * Forget the body once the request is handled
+	 */
+	void recycle() {
+		if (this.multipart != null) {
+			this.multipart.close();
+			this.multipart = null;
+		}
+		if (this.buffered != null) {
+			ByteStackPool.release(this.buffered);
+			this.buffered = null;
+		}
+		this.input = null;
+		this.out = null;
+		this.eof = true;
+		this.expectContinue = false;
+		this.chunked = false;
+		this.contentLength = 0;
+		this.remaining = 0;
+	}
+
+}
@@ -0,0 +1,140 @@
+package net.omny.route;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.exceptions.PayloadTooLargeException;
+import net.omny.server.ClientInput;
+
+/**
+ * Objects used to answer one client, recycled by the thread handling it
+ *
+ * Each thread keeps one context: the input buffer, the request and the response
+ * are reset in place for the next client instead of being allocated again.
+ * The request and the response belong to the context until the client is
+ * answered, they can only be used by the thread handling it. A handler that
+ * needs the request once answered (eg: in a background task) keeps a
+ * {@link Request#snapshot()} of it.
+ */
+public final class RequestContext {
+
+	/**
+	 * Disable to create a new context for each client (eg: to compare)
+	 */
+	public static boolean ENABLE = true;
+	/**
+	 * Unread bodies larger than this are not read, the connection is closed
+	 */
+	public static final long DISCARD_LIMIT = 64 * 1024;
+
+	private static final ThreadLocal<RequestContext> CONTEXTS = ThreadLocal.withInitial(RequestContext::new);
+
+	private final ClientInput input = new ClientInput();
+	private final Request request = new Request(this);
+	private final RequestBody body = new RequestBody();
+	private final Response response = new Response(this);
+	private boolean responseInUse;
+	private boolean open;
+	private OutputStream out;
+
+	private RequestContext() {
+	}
+
+	/**
+	 * Take the context of the current thread to handle a client
+	 * It must be closed once the client is answered
+	 *
+	 * @param in  The stream of the client
+	 * @param out The stream to the client, null if nothing is sent (eg: interim
+	 *            responses)
+	 * @return the context, a new one if the context of this thread is already
+	 *         open
+	 */
+	public static RequestContext open(InputStream in, OutputStream out) {
+		RequestContext context = ENABLE ? CONTEXTS.get() : null;
+		if (context == null || context.open) {
+			context = new RequestContext();
+		}
+		context.open = true;
+		context.out = out;
+		context.input.reset(in);
+		context.request.open();
+		return context;
+	}
+
+	/**
+	 * @return the input of the client, its buffer is kept for the next client
+	 */
+	public ClientInput getInput() {
+		return this.input;
+	}
+
+	/**
+	 * Parse the request head and consume it, the body is read when the route asks
+	 * for it
+	 *
+	 * @param headEnd     The end of the head, see {@link ClientInput#findHeadEnd()}
+	 * @param maxBodySize The maximum size of the body
+	 * @return the request, recycled when the context is closed
+	 * @throws MalformedRequestException If the request is malformed
+	 * @throws PayloadTooLargeException  If the declared length of the body is
+	 *                                   larger than the maximum
+	 */
+	public Request parseRequest(int headEnd, long maxBodySize)
+			throws MalformedRequestException, PayloadTooLargeException {
+		this.request.parseHead(this.input.getBuffer(), this.input.getPosition(), headEnd);
+		this.input.skipTo(headEnd);
+		this.body.reset(this.request, this.input, this.out, maxBodySize);
+		this.request.setBody(this.body);
+		return this.request;
+	}
+
+	/**
+	 * Read what the route left of the body, so the client receives the response
+	 * before the connection is closed
+	 *
+	 * @param max The maximum number of bytes to read
+	 * @return true if the whole body is read
+	 */
+	public boolean discardBody(long max) {
+		return this.body.discard(max);
+	}
+
+	/**
+	 * Get a response to the request, to release once sent
+	 *
+	 * @param request The request
+	 * @return the recycled response if the request is recycled and the response
+	 *         is free, a new response otherwise
+	 */
+	static Response responseFor(Request request) {
+		RequestContext context = request.context;
+		if (context == null || context.responseInUse || !context.open) {
+			return new Response(request);
+		}
+		context.responseInUse = true;
+		context.response.reuse(request);
+		return context.response;
+	}
+
+	void released(Response response) {
+		this.responseInUse = false;
+	}
+
+	/**
+	 * Recycle the request and the response, they must not be used anymore
+	 */
+	public void close() {
+		if (this.responseInUse) {
+			// Not released because of an error
+			this.response.release();
+		}
+		this.request.recycle();
+		this.body.recycle();
+		this.input.reset(null);
+		this.out = null;
+		this.open = false;
+	}
+
+}
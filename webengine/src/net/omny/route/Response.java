@@ -1,19 +1,49 @@
 package net.omny.route;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import lombok.Getter;
 import lombok.Setter;
 import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.CompositeBuffer;
 import net.omny.utils.HTTPUtils;
 import net.omny.utils.HTTPUtils.Version;
+import net.omny.utils.HttpClock;
 import net.omny.utils.StringUtils;
 
 public class Response {
 
+	/**
+	 * Header names as sent, by lower-cased name
+	 */
+	private static final Map<String, String> HEADER_NAMES = new ConcurrentHashMap<>();
+	/**
+	 * Start of the header lines (eg: "Content-Type: "), by lower-cased name
+	 */
+	private static final Map<String, byte[]> HEADER_PREFIXES = new ConcurrentHashMap<>();
+	private static final byte[] SERVER_PREFIX = headerPrefix("server");
+	private static final byte[] DATE_PREFIX = headerPrefix("date");
+	/**
+	 * Room for the status line and the headers when a response is serialized
+	 */
+	private static final int HEAD_CAPACITY = 512;
+
 	// Response example
 	// HTTP VERSION (common to both request & response)
 	// HTTP/1.1 404 Not Found
@@ -36,15 +66,38 @@ public class Response {
 	@Getter
 	@Setter
 	private Version httpVersion = HTTPUtils.Version.V1_1;
-	private Map<String, String> headers = new HashMap<>();
-	@Getter
-	private ByteStack body = new ByteStack();
+	/**
+	 * Headers are sent in the order they were set
+	 */
+	private Map<String, String> headers = new LinkedHashMap<>();
+	/**
+	 * The last part of the body, taken from the {@link ByteStackPool} when the
+	 * body is first written, see {@link #release()}
+	 */
+	private ByteStack body;
+	/**
+	 * The parts of the body before {@link #body}, null while the body is made of
+	 * one part
+	 */
+	private CompositeBuffer chunks;
+	/**
+	 * The streams the body is sent through, null while it is sent as is
+	 */
+	private List<BodyFilter> bodyFilters;
 	@Getter
 	@Setter
 	private boolean binary;
 	@Getter
 	@Setter
 	private String charset;
+	/**
+	 * The context recycling this response, null if it is not recycled
+	 */
+	private final RequestContext context;
+	/**
+	 * The thread writing the response, while it is recycled
+	 */
+	private Thread owner;
 
 	/**
 	 * Creating response based on the request (taking the same
@@ -55,18 +108,98 @@ public class Response {
 	 * @date 15/08/2021
 	 */
 	public Response(Request req) {
+		this();
 		this.responseCode = Code.S200_OK;
 		this.httpVersion = req.getHttpVersion();
 		this.charset = req.getCharset();
 	}
 
 	public Response(Code code, HTTPUtils.Version version) {
+		this();
 		this.httpVersion = version;
 		this.responseCode = code;
 		this.charset = "UTF-8";
 	}
 
 	public Response() {
+		this.context = null;
+	}
+
+	/**
+	 * Response recycled by a context, see {@link #reuse(Request)}
+	 */
+	Response(RequestContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Start a new response to the request, on the current thread
+	 * 
+	 * @param req The request
+	 */
+	void reuse(Request req) {
+		this.headers.clear();
+		this.responseCode = Code.S200_OK;
+		this.httpVersion = req.getHttpVersion();
+		this.charset = req.getCharset();
+		this.binary = false;
+		this.bodyFilters = null;
+		this.owner = Thread.currentThread();
+	}
+
+	/**
+	 * A recycled response is only usable by the thread writing it, until it is
+	 * released
+	 */
+	private void checkOwner() {
+		if (this.context != null && this.owner != Thread.currentThread()) {
+			throw new IllegalStateException("Response used once released");
+		}
+	}
+
+	/**
+	 * The last part of the body, taken from the {@link ByteStackPool}, see
+	 * {@link #release()}
+	 * 
+	 * @return the stack to push the body to
+	 */
+	public ByteStack getBody() {
+		checkOwner();
+		return body();
+	}
+
+	/**
+	 * Forget everything written to the body, all its parts
+	 */
+	public void clearBody() {
+		checkOwner();
+		if (this.chunks != null) {
+			this.chunks.release();
+			this.chunks = null;
+		}
+		if (this.body != null) {
+			this.body.reset();
+		}
+	}
+
+	/**
+	 * @return the last part of the body, taken from the pool if nothing was
+	 *         written yet
+	 */
+	private ByteStack body() {
+		if (this.body == null) {
+			this.body = ByteStackPool.acquire(HEAD_CAPACITY);
+		}
+		return this.body;
+	}
+
+	/**
+	 * Write the last part of the body, if any
+	 */
+	private void writeLastPart(OutputStream out) throws IOException {
+		if (this.body != null) {
+			out.write(this.body.getBackedArray(), 0, this.body.size());
+		}
 	}
 
 	public String getHeader(String header) {
@@ -74,10 +207,17 @@ public class Response {
 	}
 
 	public void setHeader(String header, String value) {
+		checkOwner();
 		this.headers.put(header.toLowerCase(), value);
 	}
 
+	public void removeHeader(String header) {
+		checkOwner();
+		this.headers.remove(header.toLowerCase());
+	}
+
 	public void appendHeader(String header, String value) {
+		checkOwner();
 		String lowerCaseHeader = header.toLowerCase();
 		if (this.headers.containsKey(lowerCaseHeader)) {
 			this.headers.put(lowerCaseHeader, this.headers.get(lowerCaseHeader).concat(";" + value));
@@ -89,6 +229,215 @@ public class Response {
 		return toString();
 	}
 
+	/**
+	 * Returns the full response (headers and body) as sent to the client
+	 * 
+	 * @return the response as a byte array
+	 */
+	public byte[] toRawBytes() {
+		if (this.bodyFilters != null) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEAD_CAPACITY + getBodySize());
+			try {
+				writeTo(bytes);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return bytes.toByteArray();
+		}
+		ByteStack byteStack = serialize();
+		try {
+			return byteStack.toArrayNative();
+		} finally {
+			ByteStackPool.release(byteStack);
+		}
+	}
+
+	/**
+	 * Send the full response (headers and body)
+	 * A body made of several parts is sent with one gathering write if the socket
+	 * has a channel, without copying the parts
+	 * 
+	 * @param client The socket of the client
+	 */
+	public void writeTo(Socket client) throws IOException {
+		checkOwner();
+		SocketChannel channel = client.getChannel();
+		if (this.chunks == null || channel == null || this.bodyFilters != null) {
+			writeTo(client.getOutputStream());
+			return;
+		}
+		ByteStack head = serializeHead();
+		try {
+			ByteBuffer[] parts = this.chunks.views();
+			ByteBuffer[] buffers = new ByteBuffer[parts.length + 2];
+			buffers[0] = head.asByteBuffer();
+			System.arraycopy(parts, 0, buffers, 1, parts.length);
+			buffers[buffers.length - 1] = body().asByteBuffer();
+			long remaining = head.size() + getBodySize();
+			while (remaining > 0) {
+				remaining -= channel.write(buffers);
+			}
+		} finally {
+			ByteStackPool.release(head);
+		}
+	}
+
+	/**
+	 * Send the full response (headers and body), in one write if the body is
+	 * made of one part
+	 * 
+	 * @param out The stream of the client
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		checkOwner();
+		if (this.bodyFilters != null) {
+			// Sent as it goes through the filters
+			ResponseSink sink = new ResponseSink(this, out);
+			try {
+				if (this.chunks != null) {
+					this.chunks.writeTo(sink);
+				}
+				writeLastPart(sink);
+				sink.close();
+			} catch (IOException | RuntimeException e) {
+				sink.abort();
+				throw e;
+			}
+			return;
+		}
+		if (this.chunks == null) {
+			ByteStack byteStack = serialize();
+			try {
+				out.write(byteStack.getBackedArray(), 0, byteStack.size());
+				out.flush();
+			} finally {
+				ByteStackPool.release(byteStack);
+			}
+			return;
+		}
+		ByteStack head = serializeHead();
+		try {
+			out.write(head.getBackedArray(), 0, head.size());
+			this.chunks.writeTo(out);
+			writeLastPart(out);
+			out.flush();
+		} finally {
+			ByteStackPool.release(head);
+		}
+	}
+
+	/**
+	 * @return a pooled stack holding the full response, it must be released
+	 */
+	private ByteStack serialize() {
+		ByteStack byteStack = ByteStackPool.acquire(HEAD_CAPACITY + getBodySize());
+		writeHead(byteStack);
+		writeBody(byteStack);
+		return byteStack;
+	}
+
+	/**
+	 * @return a pooled stack holding the status line and the headers, it must be
+	 *         released
+	 */
+	ByteStack serializeHead() {
+		ByteStack byteStack = ByteStackPool.acquire(HEAD_CAPACITY);
+		writeHead(byteStack);
+		return byteStack;
+	}
+
+	private void writeHead(ByteStack byteStack) {
+		writeStatusLine(byteStack);
+		writeHeaders(byteStack, true);
+		byteStack.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
+	}
+
+	private void writeBody(ByteStack byteStack) {
+		if (this.chunks != null) {
+			this.chunks.copyTo(byteStack);
+		}
+		if (this.body != null) {
+			byteStack.addAllBytes(this.body.getBackedArray(), 0, this.body.size());
+		}
+	}
+
+	/**
+	 * Send the body through a stream wrapping the one of the client (eg: to
+	 * compress it), instead of copying it. The body is then sent as it goes
+	 * through, with the chunked transfer coding if it is larger than a chunk.
+	 * The filter added first is the first one written to.
+	 * The Content-Length set on the response is removed when it is sent.
+	 * 
+	 * @param filter Wraps the stream the body is sent to
+	 */
+	public void wrapBody(BodyFilter filter) {
+		checkOwner();
+		if (this.bodyFilters == null) {
+			this.bodyFilters = new ArrayList<>(2);
+		}
+		this.bodyFilters.add(filter);
+	}
+
+	/**
+	 * @return true if the body is sent through filters, see
+	 *         {@link #wrapBody(BodyFilter)}
+	 */
+	public boolean isBodyWrapped() {
+		return this.bodyFilters != null;
+	}
+
+	/**
+	 * @param out The stream sending the body
+	 * @return the stream to write the body to, through the filters
+	 */
+	OutputStream filterBody(OutputStream out) throws IOException {
+		for (int i = this.bodyFilters.size() - 1; i >= 0; i--) {
+			out = this.bodyFilters.get(i).wrap(out);
+		}
+		return out;
+	}
+
+	/**
+	 * @return the size of the body in bytes
+	 */
+	public int getBodySize() {
+		int size = this.body == null ? 0 : this.body.size();
+		return this.chunks == null ? size : this.chunks.size() + size;
+	}
+
+	/**
+	 * @return a copy of the body
+	 */
+	public byte[] bodyToArray() {
+		if (this.chunks == null) {
+			return this.body == null ? new byte[0] : this.body.toArrayNative();
+		}
+		ByteStack byteStack = new ByteStack(getBodySize());
+		writeBody(byteStack);
+		return byteStack.getBackedArray();
+	}
+
+	/**
+	 * Give back the body buffers to the pool, once the response is sent
+	 * The response must not be used anymore
+	 */
+	public void release() {
+		checkOwner();
+		if (this.body != null) {
+			ByteStackPool.release(this.body);
+			this.body = null;
+		}
+		if (this.chunks != null) {
+			this.chunks.release();
+			this.chunks = null;
+		}
+		this.bodyFilters = null;
+		if (this.context != null) {
+			this.owner = null;
+			this.context.released(this);
+		}
+	}
+
 	/**
 	 * Returns the bytes of the response
 	 * 
@@ -102,22 +451,56 @@ public class Response {
 	}
 
 	public void addBody(String value) {
-		body.push(value.getBytes());
+		addBody(value.getBytes(StandardCharsets.UTF_8));
 	}
 
 	public void addBody(byte[] value) {
-		body.push(value);
+		checkOwner();
+		ByteStack body = body();
+		if (body.size() > 0 && body.size() + value.length > body.capacity()) {
+			// A new part is started instead of growing (copying) the current one
+			sealBody(value.length);
+		}
+		body().push(value);
+	}
+
+	/**
+	 * Add an array to the body without copying it (eg: a preloaded file)
+	 * 
+	 * @param shared The array, it must not be modified afterwards
+	 */
+	public void addSharedBody(byte[] shared) {
+		checkOwner();
+		sealBody(HEAD_CAPACITY);
+		this.chunks.append(shared);
+	}
+
+	/**
+	 * Move the current part of the body to the chunks
+	 * 
+	 * @param minCapacity The capacity of the next part
+	 */
+	private void sealBody(int minCapacity) {
+		if (this.chunks == null) {
+			this.chunks = new CompositeBuffer();
+		}
+		if (body().size() > 0) {
+			this.chunks.append(this.body);
+			this.body = ByteStackPool.acquire(Math.max(HEAD_CAPACITY, minCapacity));
+		}
 	}
 
 	public void addBody(byte value) {
-		body.push(value);
+		checkOwner();
+		body().push(value);
 	}
 
 	public void addBody(char value) {
+		checkOwner();
 		byte first = (byte) (value >> 2);
 		byte sec = (byte) value;
-		body.push(first);
-		body.push(sec);
+		body().push(first);
+		body().push(sec);
 	}
 
 	public String realToString() {
@@ -135,44 +518,125 @@ public class Response {
 	 * @return the response as a byte array
 	 */
 	public byte[] toStringAsByte() {
-		ByteStack byteStack = new ByteStack(48);
+		ByteStack byteStack = ByteStackPool.acquire(HEAD_CAPACITY + getBodySize());
+		try {
+			writeStatusLine(byteStack);
+			if (getBodySize() == 0) {
+				return byteStack.toArrayNative();
+			}
+			writeHeaders(byteStack, true);
+
+			if (!this.binary) {
+				byteStack.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
+				writeBody(byteStack);
+			}
+
+			return byteStack.toArrayNative();
+		} finally {
+			ByteStackPool.release(byteStack);
+		}
+	}
+
+	/**
+	 * Returns the status line and the headers, each ended by a line break
+	 * The date and the empty line ending the head are not included, they are
+	 * appended when the response is sent
+	 * 
+	 * @return the head of the response as a byte array
+	 */
+	public byte[] toHeadBytes() {
+		ByteStack byteStack = ByteStackPool.acquire(HEAD_CAPACITY);
+		try {
+			writeStatusLine(byteStack);
+			writeHeaders(byteStack, false);
+			return byteStack.toArrayNative();
+		} finally {
+			ByteStackPool.release(byteStack);
+		}
+	}
+
+	private void writeStatusLine(ByteStack byteStack) {
 		byteStack.addAllBytes(this.httpVersion.getTagAsByte());
 		byteStack.add(HTTPUtils.SPACE_AS_BYTE);
 		byteStack.addAllBytes(this.responseCode.getCodeStringAsByte());
 		byteStack.add(HTTPUtils.SPACE_AS_BYTE);
 		byteStack.addAllBytes(this.responseCode.getResponseAsByte());
 		byteStack.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
-		if (this.body.size() == 0) {
-			return byteStack.getBackedArray();
+	}
+
+	private void writeHeaders(ByteStack byteStack, boolean date) {
+		prepareHeaders();
+		writeHeader(byteStack, SERVER_PREFIX, this.headers.get("server"));
+		if (this.headers.containsKey("date")) {
+			writeHeader(byteStack, DATE_PREFIX, this.headers.get("date"));
+		} else if (date) {
+			// Copied, no date is formatted per response
+			byteStack.addAllBytes(HttpClock.dateHeader());
 		}
+		for (Map.Entry<String, String> header : this.headers.entrySet()) {
+			if (!header.getKey().equals("server") && !header.getKey().equals("date")) {
+				writeHeader(byteStack, headerPrefix(header.getKey()), header.getValue());
+			}
+		}
+	}
+
+	private static void writeHeader(ByteStack byteStack, byte[] prefix, String value) {
+		byteStack.addAllBytes(prefix);
+		byteStack.addString(value);
+		byteStack.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
+	}
+
+	/**
+	 * Add the headers every response must have
+	 */
+	private void prepareHeaders() {
+		// Add server attributes in the response text if doesn't exists
 		if (!this.headers.containsKey("server")) {
 			setHeader("server", "Omny");
 		}
-
-		if (!this.headers.containsKey("Content-Length")) {
-			setHeader("content-length", String.valueOf(this.body.size()));
+		if (!this.headers.containsKey("content-length") && !this.headers.containsKey("transfer-encoding")) {
+			setHeader("content-length", String.valueOf(getBodySize()));
 		}
 		if (!this.binary) {
-			appendHeader("content-type", "charset=UTF-8");
+			String contentType = this.headers.get("content-type");
+			// The response may be serialized more than once
+			if (contentType == null || !contentType.contains("charset=")) {
+				appendHeader("content-type", "charset=UTF-8");
+			}
 		}
-		for (String header : this.headers.keySet()) {
-			String value = this.headers.get(header);
+	}
 
-			// TODO Maybe better way to capitalize
-			String capitalized = Arrays.stream(header.split("\\-"))
-					.map(StringUtils::capitalize)
-					.collect(Collectors.joining("-"));
-			String fullHeaderLine = capitalized + ": " + value;
-			byteStack.addAllBytes(fullHeaderLine.getBytes());
-			byteStack.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
-		}
+	/**
+	 * 
+	 * @param header The lower-cased header name (eg: content-type)
+	 * @return the start of the header line (eg: "Content-Type: ")
+	 */
+	private static byte[] headerPrefix(String header) {
+		return HEADER_PREFIXES.computeIfAbsent(header,
+				name -> (capitalize(name) + ": ").getBytes(StandardCharsets.ISO_8859_1));
+	}
 
-		if (!this.binary) {
-			byteStack.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
-			byteStack.addAllBytes(this.body.getBackedArray());
+	/**
+	 * Iterate over the headers in the order they were set
+	 * The server and the date are not included, they are always sent first
+	 */
+	private void forEachHeader(BiConsumer<String, String> consumer) {
+		for (Map.Entry<String, String> header : this.headers.entrySet()) {
+			if (!header.getKey().equals("server") && !header.getKey().equals("date")) {
+				consumer.accept(capitalize(header.getKey()), header.getValue());
+			}
 		}
+	}
 
-		return byteStack.getBackedArray();
+	/**
+	 * 
+	 * @param header The lower-cased header name (eg: content-type)
+	 * @return the header name as sent (eg: Content-Type)
+	 */
+	private static String capitalize(String header) {
+		return HEADER_NAMES.computeIfAbsent(header, name -> Arrays.stream(name.split("\\-"))
+				.map(StringUtils::capitalize)
+				.collect(Collectors.joining("-")));
 	}
 
 	@Override
@@ -180,33 +644,17 @@ public class Response {
 		String firstLine = this.httpVersion.getTag() + " " + this.responseCode.getCode() + " "
 				+ this.getResponseCode().getResponseText() + "\r\n";
 		StringBuilder fullText = new StringBuilder(firstLine);
-		// Add server attributes in the response text if doesn't exists
-		if (!this.headers.containsKey("server")) {
-			setHeader("server", "Omny");
-		}
-
-		if (!this.headers.containsKey("Content-Length")) {
-			setHeader("content-length", String.valueOf(this.body.size()));
-		}
-		if (!this.binary) {
-			appendHeader("content-type", "charset=UTF-8");
-		}
-
-		for (String header : this.headers.keySet()) {
-			String value = this.headers.get(header);
-
-			String capitalized = Arrays.stream(header.split("\\-"))
-					.map(StringUtils::capitalize)
-					.collect(Collectors.joining("-"));
-			fullText.append(capitalized + ": " + value + "\r\n");
-		}
+		prepareHeaders();
+		fullText.append("Server: ").append(this.headers.get("server")).append("\r\n");
+		fullText.append("Date: ").append(this.headers.getOrDefault("date", HttpClock.date())).append("\r\n");
+		forEachHeader((name, value) -> fullText.append(name).append(": ").append(value).append("\r\n"));
 
 		fullText.append("\r\n");
-		if (this.body.size() == 0) {
+		if (getBodySize() == 0) {
 			return fullText.toString();
 		}
 		if (!this.binary) {
-			fullText.append(new String(this.body.getBackedArray()));
+			fullText.append(new String(bodyToArray(), StandardCharsets.UTF_8));
 			fullText.append("\r\n");
 		}
 
@@ -0,0 +1,326 @@
+package net.omny.route;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.HTTPUtils;
+import net.omny.utils.HTTPUtils.Headers;
+
+/**
+ * Body of a streamed response, sent to the client while it is written
+ *
+ * Bytes are buffered up to {@link #CHUNK_SIZE}, then sent. The head is sent
+ * with the first bytes: if no Content-Length was set on the response, the body
+ * is sent with the chunked transfer coding. A body closed before it fills the
+ * buffer is sent in one write with its length.
+ * Writes block while the client doesn't read, so the memory used stays one
+ * buffer whatever the size of the body. Headers set on the response once the
+ * head is sent are ignored.
+ * When the body of the response is wrapped (see
+ * {@link Response#wrapBody(BodyFilter)}), what is written goes through the
+ * filters first and the Content-Length of the response is removed.
+ */
+public final class ResponseSink extends OutputStream {
+
+	/**
+	 * Buffered bytes are sent once there are that many
+	 */
+	public static final int CHUNK_SIZE = 8 * 1024;
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+	/**
+	 * Room left at the start of the buffer for the size of the chunk (4 hex
+	 * digits and CRLF), so a chunk is sent in one write
+	 */
+	private static final int SIZE_LINE = 6;
+
+	private final Response response;
+	/**
+	 * The stream of the client, null when the body is buffered in the response
+	 */
+	private final OutputStream out;
+	/**
+	 * True if the body goes through the filters of the response
+	 */
+	private final boolean filtered;
+	/**
+	 * The filters, over the stream sending the body, created on the first write
+	 */
+	private OutputStream encoder;
+	private ByteStack buffer;
+	private boolean committed;
+	private boolean chunked;
+	private boolean closed;
+
+	/**
+	 * Stream the body of the response to the client
+	 *
+	 * @param response The response, its head is sent with the first bytes
+	 * @param out      The stream of the client
+	 */
+	public ResponseSink(Response response, OutputStream out) {
+		this.response = Objects.requireNonNull(response);
+		this.out = out;
+		// Buffered in the response, the filters are run when it is sent
+		this.filtered = out != null && response.isBodyWrapped();
+		if (out != null) {
+			this.buffer = ByteStackPool.acquire(2 * CHUNK_SIZE);
+			skipSizeLine();
+		}
+		if (this.filtered) {
+			response.removeHeader(Headers.CONTENT_LENGTH);
+		}
+	}
+
+	/**
+	 * Write the body in the response instead of sending it, eg: when the response
+	 * is cached
+	 *
+	 * @param response The response
+	 * @return a sink appending to the body of the response
+	 */
+	public static ResponseSink into(Response response) {
+		return new ResponseSink(response, null);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (this.filtered) {
+			encoder().write(b);
+			return;
+		}
+		writeRaw(b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		ensureOpen();
+		if (this.filtered) {
+			encoder().write(bytes, offset, length);
+			return;
+		}
+		writeRaw(bytes, offset, length);
+	}
+
+	private void writeRaw(int b) throws IOException {
+		ensureOpen();
+		if (this.out == null) {
+			this.response.addBody((byte) b);
+			return;
+		}
+		this.buffer.add((byte) b);
+		if (buffered() >= CHUNK_SIZE) {
+			send(false);
+		}
+	}
+
+	private void writeRaw(byte[] bytes, int offset, int length) throws IOException {
+		ensureOpen();
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		if (this.out == null) {
+			this.response.getBody().addAllBytes(bytes, offset, length);
+			return;
+		}
+		if (buffered() + length < CHUNK_SIZE) {
+			this.buffer.addAllBytes(bytes, offset, length);
+			return;
+		}
+		send(false);
+		if (length < CHUNK_SIZE) {
+			this.buffer.addAllBytes(bytes, offset, length);
+			return;
+		}
+		// Large enough to be a chunk, it is not copied
+		if (this.chunked) {
+			this.out.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		}
+		this.out.write(bytes, offset, length);
+		if (this.chunked) {
+			this.out.write(HTTPUtils.CRLF_AS_BYTES);
+		}
+	}
+
+	/**
+	 * Write a string encoded in UTF-8
+	 *
+	 * @param string The string
+	 */
+	public void write(String string) throws IOException {
+		ensureOpen();
+		if (this.out == null) {
+			this.response.getBody().addString(string);
+			return;
+		}
+		if (this.filtered || string.length() > CHUNK_SIZE / 4) {
+			write(string.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		// At most 3 bytes per char, the buffer never holds more than a chunk size
+		// can tell
+		if (buffered() + 3 * string.length() >= CHUNK_SIZE) {
+			send(false);
+		}
+		this.buffer.addString(string);
+	}
+
+	/**
+	 * Send the buffered bytes now, the head is sent if it is not yet
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (this.filtered) {
+			encoder().flush();
+		}
+		if (this.out != null) {
+			send(false);
+			this.out.flush();
+		}
+	}
+
+	/**
+	 * End the body, the buffer is given back
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		if (this.out != null) {
+			try {
+				if (this.filtered) {
+					// Writes what the filters hold back, eg: the end of a compressed body
+					encoder().close();
+				}
+				send(true);
+				if (this.chunked) {
+					this.out.write(LAST_CHUNK);
+				}
+				this.out.flush();
+			} finally {
+				abort();
+			}
+		}
+		this.closed = true;
+	}
+
+	/**
+	 * Give back the buffer without ending the body, eg: when the body can't be
+	 * written entirely
+	 * If the head is sent already, the client sees an incomplete body
+	 */
+	public void abort() {
+		this.closed = true;
+		if (this.buffer != null) {
+			ByteStackPool.release(this.buffer);
+			this.buffer = null;
+		}
+	}
+
+	/**
+	 * @return true once the head is sent, the response can't be changed anymore
+	 */
+	public boolean isCommitted() {
+		return this.committed;
+	}
+
+	/**
+	 * @return the filters of the response, over this sink
+	 */
+	private OutputStream encoder() throws IOException {
+		if (this.encoder == null) {
+			this.encoder = this.response.filterBody(new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					writeRaw(b);
+				}
+
+				@Override
+				public void write(byte[] bytes, int offset, int length) throws IOException {
+					writeRaw(bytes, offset, length);
+				}
+
+				@Override
+				public void close() {
+					// The sink is closed by its owner
+				}
+			});
+		}
+		return this.encoder;
+	}
+
+	private int buffered() {
+		return this.buffer.size() - SIZE_LINE;
+	}
+
+	/**
+	 * Send the buffered bytes
+	 *
+	 * @param last True if nothing will be written after
+	 */
+	private void send(boolean last) throws IOException {
+		if (!this.committed) {
+			commit(last);
+		}
+		int length = buffered();
+		if (length == 0) {
+			return;
+		}
+		byte[] bytes = this.buffer.getBackedArray();
+		if (this.chunked) {
+			bytes[0] = HEX[(length >> 12) & 0xf];
+			bytes[1] = HEX[(length >> 8) & 0xf];
+			bytes[2] = HEX[(length >> 4) & 0xf];
+			bytes[3] = HEX[length & 0xf];
+			bytes[4] = '\r';
+			bytes[5] = '\n';
+			this.buffer.addAllBytes(HTTPUtils.CRLF_AS_BYTES);
+			this.out.write(this.buffer.getBackedArray(), 0, this.buffer.size());
+		} else {
+			this.out.write(bytes, SIZE_LINE, length);
+		}
+		this.buffer.reset();
+		skipSizeLine();
+	}
+
+	/**
+	 * Send the head of the response
+	 *
+	 * @param last True if the whole body is buffered, its length is then known
+	 */
+	private void commit(boolean last) throws IOException {
+		if (this.response.getHeader(Headers.CONTENT_LENGTH) == null) {
+			if (last) {
+				this.response.setHeader(Headers.CONTENT_LENGTH, String.valueOf(buffered()));
+			} else {
+				this.response.setHeader(Headers.TRANSFER_ENCODING, "chunked");
+				this.chunked = true;
+			}
+		}
+		ByteStack head = this.response.serializeHead();
+		try {
+			this.out.write(head.getBackedArray(), 0, head.size());
+		} finally {
+			ByteStackPool.release(head);
+		}
+		this.committed = true;
+	}
+
+	private void skipSizeLine() {
+		for (int i = 0; i < SIZE_LINE; i++) {
+			this.buffer.add((byte) 0);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("Response body already closed");
+		}
+	}
+
+}
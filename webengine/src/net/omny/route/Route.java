@@ -11,6 +11,8 @@ import net.omny.views.View;
 
 public abstract class Route {
 
+  private static final String[] NO_VARY = {};
+
   /**
    * Create a route from a file
    *
@@ -45,14 +47,59 @@ public abstract class Route {
    * @param variables The variables to replace
    * @return The route
    */
-  public static Route fromTemplate(String file, Map<String, String> variables) {
+  public static Route fromTemplate(String file, Map<String, ?> variables) {
     return new TemplateRoute(file, (r) -> variables);
   }
 
   @Getter @Setter private boolean allowCache = true;
+  /**
+   * How long (in ms) a response is served from the cache once rendered
+   */
   @Getter @Setter private long lastInCache = 100;
+  /**
+   * How long (in ms) after {@link #lastInCache} a timed out response is still
+   * served while it is rendered again in the background, 0 to disable
+   */
+  @Getter @Setter private long staleWhileRevalidate = 0;
+  /**
+   * Render the response again in the background when the cached one nears
+   * {@link #lastInCache}, so a requested response never times out
+   */
+  @Getter @Setter private boolean refreshAhead = false;
   @Getter @Setter private String path;
   @Getter @Setter private Method method;
+  /**
+   * Lower-cased names of the request headers the response depends on
+   */
+  @Getter private String[] varyHeaders = NO_VARY;
+  /**
+   * Value of the Vary header sent with the response, null if none
+   */
+  @Getter private String varyHeaderValue;
+
+  /**
+   * Declare the request headers the response depends on
+   * Responses are cached per value of those headers
+   *
+   * @param headers The headers names (eg: Accept-Encoding)
+   */
+  public void setVaryHeaders(String... headers) {
+    String[] lowerCased = new String[headers.length];
+    for (int i = 0; i < headers.length; i++) {
+      lowerCased[i] = headers[i].toLowerCase();
+    }
+    this.varyHeaders = lowerCased;
+    this.varyHeaderValue = headers.length == 0 ? null : String.join(", ", headers);
+  }
+
+  /**
+   * A constant route always sends the same response, whatever the request
+   * The response is rendered once when the route is registered, see
+   * {@link ConstantResponse}
+   *
+   * @return true if the response does not depend on the request
+   */
+  public boolean isConstant() { return false; }
 
   public abstract View handle(Request req, Response res);
 }
@@ -12,6 +12,12 @@ public class RouteData {
   @Getter
   private boolean isStatic;
   private boolean param;
+  /**
+   * The response rendered at registration if the route is constant, null
+   * otherwise
+   */
+  @Getter
+  private ConstantResponse constantResponse;
 
   @Getter
   private List<Integer> paramsIndex = new ArrayList<>();
@@ -20,6 +26,9 @@ public class RouteData {
     this.route = route;
     this.isStatic = isStatic;
     this.param = checkParam(path);
+    if (route.isConstant()) {
+      this.constantResponse = ConstantResponse.render(route);
+    }
   }
 
   private boolean checkParam(String path) {
@@ -1,9 +1,7 @@
 package net.omny.route;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.lang.reflect.Field;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
@@ -12,18 +10,31 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 import joptsimple.internal.Objects;
 import lombok.Getter;
 import lombok.Setter;
+import net.omny.cache.CacheKey;
+import net.omny.cache.CachingRequest;
+import net.omny.route.impl.AnonymousAsyncRoute;
 import net.omny.route.impl.AnonymousRoute;
 import net.omny.route.impl.FileRoute;
 import net.omny.route.impl.HtmlRoute;
 import net.omny.route.impl.LoadedFileRoute;
 import net.omny.route.middleware.Middleware;
 import net.omny.route.middleware.MiddlewarePriority;
+import net.omny.route.middleware.MiddlewareTrie;
+import net.omny.route.middleware.ResponseInterceptor;
 import net.omny.route.middleware.UrlMiddleware;
 import net.omny.server.WebServer;
 import net.omny.utils.ByteStack;
@@ -34,7 +45,7 @@ import net.omny.utils.HTTPUtils.Headers;
 import net.omny.utils.HTTPUtils.MimeType;
 import net.omny.utils.HTTPUtils.Version;
 import net.omny.utils.MapUtils;
-import net.omny.utils.Primitive;
+import net.omny.views.StreamingView;
 import net.omny.views.View;
 
 /**
@@ -50,6 +61,8 @@ public class Router {
 		}
 	}
 
+	private static final List<Middleware> NO_MIDDLEWARES = List.of();
+
 	@Getter
 	protected Map<String, Map<Method, RouteData>> routes = new HashMap<>();
 	@Getter
@@ -58,6 +71,11 @@ public class Router {
 	@Setter
 	private boolean routed;
 	private boolean main;
+	/**
+	 * The middlewares resolved by path, null once they change
+	 */
+	private volatile MiddlewareTrie beforeMiddlewares;
+	private volatile MiddlewareTrie afterMiddlewares;
 
 	public Router(WebServer webServer) {
 		// By default
@@ -140,13 +158,12 @@ public class Router {
 			if (this.middlewares.containsKey(priority)) {
 				this.middlewares.get(priority).addAll(middlewares.get(priority));
 			} else {
-				this.middlewares.putAll(new HashMap<>() {
-					{
-						put(priority, middlewares.get(priority));
-					}
-				});
+				// Copied, the list of a named router can't be added to
+				this.middlewares.put(priority, new ArrayList<>(middlewares.get(priority)));
 			}
 		}
+		this.beforeMiddlewares = null;
+		this.afterMiddlewares = null;
 	}
 
 	protected void appendRoutes(Router source, Router destination) {
@@ -272,9 +289,7 @@ public class Router {
 				for (File subFile : rootFolder.listFiles())
 					routeFile("", subFile);
 			} catch (Exception e) {
-				if (Debug.ENABLE) {
-					e.printStackTrace();
-				}
+				Debug.error("Could not load the static files of " + staticFolder, e);
 			}
 		}
 		return this;
@@ -332,6 +347,20 @@ public class Router {
 		return route(path, route, method, false);
 	}
 
+	/**
+	 * Add a route answering once the stage it returns completes, see
+	 * {@link AsyncRoute}
+	 * 
+	 * @param path   The path
+	 * @param route  The handler, it must not use the request in the stage
+	 * @param method The method
+	 * @return this
+	 */
+	public Router routeAsync(String path, BiFunction<Request, Response, ? extends CompletionStage<? extends View>> route,
+			Method method) {
+		return route(path, new AnonymousAsyncRoute(route), method);
+	}
+
 	public Router route(String path, Route route, Method method, boolean isStatic) {
 		if (this.routes.containsKey(path)) {
 			// It already contains path with a map
@@ -395,10 +424,95 @@ public class Router {
 			list.add(handler);
 			this.middlewares.put(priority, list);
 		}
-		Debug.debug("Middleware {" + handler + " }");
+		this.beforeMiddlewares = null;
+		this.afterMiddlewares = null;
+		if (Debug.ENABLE)
+			Debug.debug("Middleware {" + handler + " }");
 		return this;
 	}
 
+	/**
+	 * Add an interceptor of the responses of the routes, run before they are sent
+	 * 
+	 * @param interceptor The interceptor
+	 * @return The router object
+	 */
+	public Router intercept(ResponseInterceptor interceptor) {
+		return middleware(interceptor, MiddlewarePriority.AFTER);
+	}
+
+	/**
+	 * Resolve the middlewares for the paths again, to call when the url of an
+	 * {@link UrlMiddleware} changes after it was added. Adding a middleware
+	 * resolves them again on the next request.
+	 */
+	public void compileMiddlewares() {
+		this.beforeMiddlewares = MiddlewareTrie
+				.compile(this.middlewares.getOrDefault(MiddlewarePriority.BEFORE, NO_MIDDLEWARES));
+		this.afterMiddlewares = MiddlewareTrie
+				.compile(this.middlewares.getOrDefault(MiddlewarePriority.AFTER, NO_MIDDLEWARES));
+	}
+
+	/**
+	 * @param priority The priority of the middlewares
+	 * @return the middlewares of this priority resolved by path
+	 */
+	public MiddlewareTrie getMiddlewareTrie(MiddlewarePriority priority) {
+		MiddlewareTrie trie = priority == MiddlewarePriority.BEFORE ? this.beforeMiddlewares : this.afterMiddlewares;
+		List<Middleware> middlewares = this.middlewares.getOrDefault(priority, NO_MIDDLEWARES);
+		if (trie == null || !trie.isCompiledFrom(middlewares)) {
+			trie = MiddlewareTrie.compile(middlewares);
+			if (priority == MiddlewarePriority.BEFORE) {
+				this.beforeMiddlewares = trie;
+			} else {
+				this.afterMiddlewares = trie;
+			}
+		}
+		return trie;
+	}
+
+	/**
+	 * @param path The path of a request
+	 * @return true if the responses to this path are intercepted, they can't be
+	 *         rendered once
+	 */
+	public boolean isIntercepted(String path) {
+		for (Middleware middleware : getMiddlewareTrie(MiddlewarePriority.AFTER).chainFor(path)) {
+			if (middleware instanceof ResponseInterceptor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Run the {@link ResponseInterceptor}s of the path of the request
+	 * 
+	 * @param request  The request
+	 * @param response Its response, not sent yet
+	 */
+	private void intercept(Request request, Response response) {
+		for (Middleware middleware : getMiddlewareTrie(MiddlewarePriority.AFTER).chainFor(request.getPath())) {
+			if (middleware instanceof ResponseInterceptor interceptor) {
+				interceptor.intercept(request, response);
+			}
+		}
+	}
+
+	/**
+	 * @param path The path of a request
+	 * @return false if a BEFORE middleware of the path keeps its responses out of
+	 *         the cache, see {@link Middleware#allowsCache()}
+	 */
+	public boolean isCacheable(String path) {
+		for (Middleware middleware : getMiddlewareTrie(MiddlewarePriority.BEFORE).chainFor(path)) {
+			if (!middleware.allowsCache()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Handle routing and finding response
 	 * 
@@ -410,19 +524,30 @@ public class Router {
 	 * @date 15/08/2021
 	 */
 	public boolean handleRoute(WebServer webServer, Request request, Socket client) throws IOException {
+		boolean found = dispatch(webServer, request, client);
+		if (!request.isParked()) {
+			// Run once the async route answers otherwise
+			afterSent(webServer, request, client);
+		}
+		return found;
+	}
 
-		// Processing request middlewares...
-		Debug.debug("Middlewares : " + this.middlewares.getOrDefault(MiddlewarePriority.BEFORE, List.of()));
-		for (Middleware middleware : this.middlewares.getOrDefault(MiddlewarePriority.BEFORE, List.of())) {
-			Debug.debug("Checking " + middleware);
-			Debug.debug("Checking " + middleware.getClass().getCanonicalName());
-			if (middleware instanceof UrlMiddleware urlMiddleware) {
-				if (!request.getPath().startsWith(urlMiddleware.getUrl())) {
-					Debug.debug("Skip middleWare " + middleware.getClass().getSimpleName() + " url "
-							+ urlMiddleware.getUrl());
-					continue;
-				}
+	/**
+	 * Run the AFTER middlewares of the path which are not interceptors, once the
+	 * response is sent
+	 */
+	private void afterSent(WebServer webServer, Request request, Socket client) throws IOException {
+		for (Middleware middleware : getMiddlewareTrie(MiddlewarePriority.AFTER).chainFor(request.getPath())) {
+			if (!(middleware instanceof ResponseInterceptor)) {
+				middleware.handle(webServer, this, request, client);
 			}
+		}
+	}
+
+	private boolean dispatch(WebServer webServer, Request request, Socket client) throws IOException {
+		// Processing request middlewares...
+		// Only the ones of the path, resolved when they were added
+		for (Middleware middleware : getMiddlewareTrie(MiddlewarePriority.BEFORE).chainFor(request.getPath())) {
 			if (middleware.handle(webServer, this, request, client)) {
 				// If handler returns true
 				// Then we must stop processing more
@@ -430,132 +555,302 @@ public class Router {
 			}
 		}
 
-		// Dynamic routing
-		RouteLoop: for (String path : this.routes.keySet()) {
-			// Split the current path to the divison
-			// "/foo/bar/baz" => ["foo", "bar", "baz"]
-			// Used to detect the params in URL
+		// A route without params registered with exactly this path
+		Map<Method, RouteData> exactRoute = this.routes.get(request.getPath());
+		RouteData exactData = exactRoute == null ? null : exactRoute.get(request.getMethod());
+		if (exactData != null && !exactData.hasParam()) {
+			sendCorrect(webServer, client, exactData, request);
+			return true;
+		}
 
+		// Dynamic routing
+		for (Map.Entry<String, Map<Method, RouteData>> entry : this.routes.entrySet()) {
 			// For example if our router register a route like this "/player/:id"
 			// We can detect the route "/player/54" (the value in params is treated as
-			// String"
-
-			// TODO use Regex for better handling
-			String[] division = path.split("\\/");
-			String[] currentUrlDivision = request.getPath().split("\\/");
-
-			// The number of division is different from the current request division
-			if (division.length != currentUrlDivision.length) {
-				continue;
-			}
-
-			RouteData routeData = null;
-			if ((routeData = this.routes.get(path).get(request.getMethod())) == null) {
+			// String)
+			RouteData routeData = entry.getValue().get(request.getMethod());
+			if (routeData == null) {
 				// Path exist but not with this method
-				continue RouteLoop;
+				continue;
 			}
-
-			// current division path are the same
-			// The path in the route has params, but not the request
-			request.setParams(request.extractParams(path));
-			if (!request.equalsPath(path, true)) {
-				continue RouteLoop;
+			// Segments are compared in place, the params are put in the request only
+			// when the route matches
+			if (!request.matchPath(entry.getKey())) {
+				continue;
 			}
-			// We compare each division that are not params
 
 			// It's the same route
-			Debug.debug("Requests param " + request.getParams() + " / " + routeData.hasParam());
-			Debug.debug("Found dynamic route for " + request.getPath());
-			Debug.debug("RouteData " + routeData + " / " + path);
+			if (Debug.ENABLE) {
+				Debug.debug("Requests param " + request.getParams() + " / " + routeData.hasParam());
+				Debug.debug("Found dynamic route for " + request.getPath());
+				Debug.debug("RouteData " + routeData + " / " + entry.getKey());
+			}
 
 			sendCorrect(webServer, client, routeData, request);
 			return true;
 		}
 		// Returning a 404 Not Found
 		// IT'S VERY IMPORTANT, IT MUST STAY AT THE END OF EVERY ROUTES
-		Response response = new Response(request);
+		Response response = RequestContext.responseFor(request);
 		response.setResponseCode(Code.E404_NOT_FOUND);
 		response.setBinary(false);
 		response.setCharset("UTF-8");
 		response.setHeader(Headers.CONTENT_TYPE, MimeType.HTML);
 
-		var clientStream = client.getOutputStream();
-		var clientStreamWriter = new OutputStreamWriter(clientStream);
-
-		BufferedWriter clientWriter = new BufferedWriter(clientStreamWriter);
-		// Writing header
-		clientWriter.write(response.toString());
-		// Flush the stream
-		clientWriter.flush();
-		Debug.debug("404 error for '" + request.getPath() + "'");
+		try {
+			intercept(request, response);
+			response.writeTo(client);
+		} finally {
+			response.release();
+		}
+		if (Debug.ENABLE)
+			Debug.debug("404 error for '" + request.getPath() + "'");
 		return false;
 	}
 
 	public void sendCorrect(WebServer webServer, Socket client, RouteData routeData, Request request)
 			throws IOException {
-		Response response = new Response(request);
-
-		View view = routeData.getRoute().handle(request, response);
-		view.write(response);
-		// The content length of the response body, in bytes
-
-		if (response.isBinary()) {
-			Debug.debug("File is binary");
-			client.getOutputStream().write(response.toString().getBytes(StandardCharsets.UTF_8));
+		if (routeData.getConstantResponse() != null && !isIntercepted(request.getPath())) {
+			// Rendered once, no need to cache it
+			routeData.getConstantResponse().writeTo(client);
+			return;
+		}
+		Route route = routeData.getRoute();
+		if (route instanceof AsyncRoute asyncRoute && !route.isAllowCache()) {
+			sendAsync(webServer, client, asyncRoute, request);
+			return;
+		}
+		if (!route.isAllowCache()) {
+			// Written from the pooled buffers, without copying the response
+			Response response = prepare(route, request);
+			try {
+				send(route.handle(request, response), request, response, client);
+			} finally {
+				response.release();
+			}
+			return;
+		}
+		// The response is serialized once, the same bytes are sent and cached
+		byte[] rawResponse = render(route, request);
+		client.getOutputStream().write(rawResponse);
+		client.getOutputStream().flush();
+		cacheRendered(webServer, route, request, rawResponse);
+	}
 
-			client.getOutputStream().write(Primitive.toArray(response.getBody()));
+	/**
+	 * Cache the response rendered by a route, with the caching times of the
+	 * route, unless it must be rendered for each request
+	 * 
+	 * @param route       The route
+	 * @param request     The request, a copy of it is kept to render the response
+	 *                    again in the background
+	 * @param rawResponse The full response sent
+	 */
+	public void cacheRendered(WebServer webServer, Route route, Request request, byte[] rawResponse) {
+		if (!route.isAllowCache() || !isCacheable(request.getPath())) {
+			// A middleware of the path must see every request
+			return;
+		}
+		if (!CachingRequest.isSuccess(rawResponse)) {
+			// An error is rendered again for the next request
+			return;
+		}
+		CacheKey key = webServer.getCaching().keyOf(request, route);
+		if (key == null) {
+			// Private response, it must not be shared with other clients
+			return;
+		}
+		if (webServer.getCaching().countRequest(key) == 0) {
+			// we must cache it
+			// The request is recycled once answered, the refresh renders a copy of it
+			Request snapshot = request.snapshot();
+			webServer.getCaching().cacheRequest(key, rawResponse, route, () -> render(route, snapshot));
+			if (Debug.ENABLE)
+				Debug.debug("caching request ");
 
-			client.getOutputStream().write(HTTPUtils.DOUBLE_CRLF_AS_BYTES);
+		} else {
+			webServer.getCaching().updateCache();
+		}
+	}
 
-			client.getOutputStream().flush();
+	/**
+	 * Write the view to the response and send it, the interceptors run before
+	 */
+	private void send(View view, Request request, Response response, Socket client) throws IOException {
+		if (view instanceof StreamingView streaming) {
+			// Sent while it is written, the body is never held whole
+			intercept(request, response);
+			stream(streaming, response, client);
 		} else {
-			BufferedWriter clientWriter = new BufferedWriter(new OutputStreamWriter(client.getOutputStream()));
-			// Writing header
-			// Writing body content
-			// End of HTTP response following the HTTP specs
-			clientWriter.write(response.toString());
-			// Flush the stream
-			clientWriter.flush();
-		}
-
-		if (routeData.getRoute().isAllowCache()) {
-			if (webServer.getCaching().countRequest(request.getPath()) == 0) {
-				// we must cache it
-				ByteStack byteContent = new ByteStack();
-				if (response.isBinary()) {
-					byteContent.push(response.toString().getBytes(StandardCharsets.UTF_8));
-					byteContent.push(response.getBody().getBackedArray());
-					byteContent.push(HTTPUtils.DOUBLE_CRLF_AS_BYTES);
+			view.write(response);
+			intercept(request, response);
+			response.writeTo(client);
+		}
+	}
+
+	/**
+	 * Run an async route, the request is parked until its stage completes, then
+	 * answered by a thread of the server
+	 */
+	private void sendAsync(WebServer webServer, Socket client, AsyncRoute route, Request request) throws IOException {
+		// Not recycled, it may be written by another thread
+		Response response = new Response(request);
+		if (route.getVaryHeaderValue() != null) {
+			response.setHeader(Headers.VARY, route.getVaryHeaderValue());
+		}
+		CompletableFuture<? extends View> future;
+		try {
+			future = route.handleAsync(request, response).toCompletableFuture();
+		} catch (RuntimeException e) {
+			response.release();
+			throw e;
+		}
+		if (future.isDone()) {
+			// Answered at once, like a synchronous route
+			try {
+				send(future.join(), request, response, client);
+			} catch (CompletionException | CancellationException e) {
+				failed(client, route, e);
+			} finally {
+				response.release();
+			}
+			return;
+		}
+		request.park();
+		Request snapshot = request.snapshot();
+		CompletableFuture<? extends View> deadline = route.getTimeout() > 0
+				? future.copy().orTimeout(route.getTimeout(), TimeUnit.MILLISECONDS)
+				: future;
+		Executor executor = webServer.getThreadPool() != null ? webServer.getThreadPool() : ForkJoinPool.commonPool();
+		deadline.whenCompleteAsync((view, error) -> {
+			try {
+				if (error == null) {
+					send(view, snapshot, response, client);
 				} else {
-					byteContent.push(response.toStringAsByte());
+					failed(client, route, error);
 				}
-				webServer.getCaching().cacheRequest(request.getPath(), byteContent.getBackedArray(),
-						routeData.getRoute().getLastInCache());
-				Debug.debug("caching request ");
-
-			} else {
-				webServer.getCaching().updateCache();
+				afterSent(webServer, snapshot, client);
+			} catch (IOException | RuntimeException e) {
+				if (Debug.ENABLE)
+					Debug.debug("Async response to '" + snapshot.getPath() + "' not sent: " + e.getMessage());
+			} finally {
+				// Once timed out, the stage may still write to the response, its
+				// buffer goes back to the pool only when the stage completes
+				future.whenComplete((result, failure) -> response.release());
+				try {
+					client.close();
+				} catch (IOException e) {
+					// Closed by the client
+				}
+				snapshot.answered();
 			}
+		}, executor);
+	}
+
+	/**
+	 * Answer a route whose stage failed or timed out
+	 */
+	private void failed(Socket client, AsyncRoute route, Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause instanceof TimeoutException) {
+			sendError(client, route.getTimeoutCode());
+			return;
 		}
+		Debug.error("Async route failed", cause);
+		sendError(client, Code.E500_INTERNAL_ERROR);
 	}
 
-	public void sendMalformed(Socket client) {
+	/**
+	 * Run the route and serialize its response
+	 * 
+	 * @param route   The route to run
+	 * @param request The request of the client
+	 * @return the full response (headers and body)
+	 */
+	public byte[] render(Route route, Request request) {
+		Response response = respond(route, request);
 		try {
-			Debug.debug("Handling malformed request");
-			var clientStream = client.getOutputStream();
+			return response.toRawBytes();
+		} finally {
+			response.release();
+		}
+	}
 
-			Response response = new Response(Code.E400_BAD_REQUEST, Version.V1_1);
-			response.setResponseCode(Code.E404_NOT_FOUND);
+	/**
+	 * Run the route
+	 * 
+	 * @param route   The route to run
+	 * @param request The request of the client
+	 * @return the response, to release once sent
+	 */
+	private Response respond(Route route, Request request) {
+		Response response = prepare(route, request);
+		try {
+			View view = route.handle(request, response);
+			view.write(response);
+			intercept(request, response);
+		} catch (RuntimeException e) {
+			response.release();
+			throw e;
+		}
 
-			if (client.isClosed()) {
-				return;
-			}
-			clientStream.write(response.toStringAsByte());
-			clientStream.write(HTTPUtils.DOUBLE_CRLF_AS_BYTES);
-			clientStream.flush();
+		if (Debug.ENABLE && response.isBinary()) {
+			Debug.debug("File is binary");
+		}
+		return response;
+	}
+
+	/**
+	 * @return the response to the request, with the headers set by the route
+	 */
+	private Response prepare(Route route, Request request) {
+		Response response = RequestContext.responseFor(request);
+		if (route.getVaryHeaderValue() != null) {
+			response.setHeader(Headers.VARY, route.getVaryHeaderValue());
+		}
+		return response;
+	}
 
+	/**
+	 * Send the head of the response, then the body as the view writes it
+	 * 
+	 * @param view     The view
+	 * @param response The response, with its headers set
+	 * @param client   The socket of the client
+	 */
+	private static void stream(StreamingView view, Response response, Socket client) throws IOException {
+		ResponseSink sink = new ResponseSink(response, client.getOutputStream());
+		try {
+			view.stream(sink);
+			sink.close();
+		} catch (IOException | RuntimeException e) {
+			// The head may be sent, the client sees an incomplete body
+			sink.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Answer a request that can't be handled, with an empty body
+	 * 
+	 * @param client The socket of the client
+	 * @param code   The error, eg: 400 for a malformed request
+	 */
+	public void sendError(Socket client, Code code) {
+		if (client.isClosed()) {
+			return;
+		}
+		if (Debug.ENABLE)
+			Debug.debug("Handling error " + code.getCode());
+		Response response = new Response(code, Version.V1_1);
+		try {
+			response.writeTo(client.getOutputStream());
 		} catch (IOException e) {
-			e.printStackTrace();
+			// The client may close without reading the response
+			if (Debug.ENABLE)
+				Debug.debug("Error " + code.getCode() + " not sent: " + e.getMessage());
+		} finally {
+			response.release();
 		}
 	}
 
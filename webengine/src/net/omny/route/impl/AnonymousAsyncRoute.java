@@ -0,0 +1,24 @@
+package net.omny.route.impl;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+
+import net.omny.route.AsyncRoute;
+import net.omny.route.Request;
+import net.omny.route.Response;
+import net.omny.views.View;
+
+public class AnonymousAsyncRoute extends AsyncRoute {
+
+    private BiFunction<Request, Response, ? extends CompletionStage<? extends View>> route;
+
+    public AnonymousAsyncRoute(BiFunction<Request, Response, ? extends CompletionStage<? extends View>> route) {
+        this.route = route;
+    }
+
+    @Override
+    public CompletionStage<? extends View> handleAsync(Request req, Response res) {
+        return route.apply(req, res);
+    }
+
+}
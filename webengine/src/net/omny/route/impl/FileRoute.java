@@ -34,6 +34,12 @@ public class FileRoute extends Route{
 	
 	protected View fileView;
 
+	/**
+	 * The MIME type of the file, probed once when the route is created
+	 */
+	protected String mimeType;
+	protected boolean binary;
+
 	/**
 	 * Constructor of the file
 	 * @author Fabien CAYRE (Computer)
@@ -44,6 +50,7 @@ public class FileRoute extends Route{
 	public FileRoute(String filePath) {
 		this.filePath = filePath;
 		this.fileView = new FileView(this.filePath);
+		this.probeMimeType();
 		Debug.debug("Created file route with path '"+filePath+"'");
 	}
 	
@@ -57,6 +64,15 @@ public class FileRoute extends Route{
 	public FileRoute(File file) {
 		this.filePath = file.getPath();
 		this.fileView = new FileView(file);
+		this.probeMimeType();
+	}
+
+	private void probeMimeType() {
+		this.mimeType = Ex.grab(() -> Files.probeContentType(Path.of(this.filePath)));
+		if(this.mimeType == null) {
+			this.mimeType = HTTPUtils.findMime(this.filePath);
+		}
+		this.binary = this.mimeType.equals("application/pdf") || this.mimeType.equals("application/x-msdownload");
 	}
 	
 	
@@ -71,19 +87,10 @@ public class FileRoute extends Route{
 	 */
 	@Override
 	public View handle(Request req, Response res) {
-		Ex.grab(() -> {
-			String mimeType = Files.probeContentType(Path.of(this.filePath));
-			if(mimeType == null) {
-				mimeType = HTTPUtils.findMime(this.filePath);
-			}
-			if(mimeType.equals("application/pdf")) {
-				res.setBinary(true);
-			}
-			if(mimeType.equals("application/x-msdownload")) {
-				res.setBinary(true);
-			}
-			res.setHeader(Headers.CONTENT_TYPE, mimeType);
-		});
+		if(this.binary) {
+			res.setBinary(true);
+		}
+		res.setHeader(Headers.CONTENT_TYPE, this.mimeType);
 		return this.fileView;
 	}
 
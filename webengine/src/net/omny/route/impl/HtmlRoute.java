@@ -16,6 +16,14 @@ public class HtmlRoute extends Route {
         this.view = new TextView(text);
     }
 
+    /**
+     * A subclass may send a different text
+     */
+    @Override
+    public boolean isConstant() {
+        return getClass() == HtmlRoute.class;
+    }
+
     @Override
     public View handle(Request req, Response res) {
         res.setHeader(Headers.CONTENT_TYPE, MimeType.HTML);
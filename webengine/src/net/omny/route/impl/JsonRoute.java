@@ -1,7 +1,5 @@
 package net.omny.route.impl;
 
-import com.google.gson.Gson;
-
 import lombok.Getter;
 import net.omny.route.Request;
 import net.omny.route.Response;
@@ -14,15 +12,33 @@ public class JsonRoute extends Route{
 
   @Getter
   protected JsonView view;
+  /**
+   * True when the view is a JSON string, rendered once; an object is
+   * serialized for each request as it may change
+   */
+  private boolean constant;
 
   public JsonRoute(){}
 
-  public JsonRoute(Gson gson){
-    this.view = new JsonView(gson);
+  /**
+   * @param value Serialized as the JSON answered, see {@link JsonView#of(Object)}
+   */
+  public JsonRoute(Object value){
+    this.view = JsonView.of(value);
   }
 
   public JsonRoute(String string){
     this.view = new JsonView(string);
+    this.constant = true;
+  }
+
+  /**
+   * Only a JSON string is constant, routes created without a view and
+   * subclasses build their own response
+   */
+  @Override
+  public boolean isConstant() {
+    return this.constant && getClass() == JsonRoute.class;
   }
 
   @Override
@@ -1,7 +1,6 @@
 package net.omny.route.impl;
 
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -9,8 +8,6 @@ import lombok.Getter;
 import net.omny.route.Request;
 import net.omny.route.Response;
 import net.omny.utils.Ex;
-import net.omny.utils.HTTPUtils;
-import net.omny.utils.HTTPUtils.Headers;
 import net.omny.views.View;
 
 @Getter
@@ -18,7 +15,6 @@ public class LoadedFileRoute extends FileRoute {
 
   private byte[] bytes;
   private View v;
-  private String mimeType;
 
   public LoadedFileRoute(File file) {
     super(file);
@@ -33,27 +29,16 @@ public class LoadedFileRoute extends FileRoute {
   }
 
   void init() {
-    this.v = res_ -> {
-      if (mimeType.equals("application/pdf")) {
-        res_.setBinary(true);
-      }
-      if (mimeType.equals("application/x-msdownload")) {
-        res_.setBinary(true);
-      }
-      res_.setHeader(Headers.CONTENT_TYPE, mimeType);
-
-      res_.addBody(this.bytes);
-    };
-
-    try {
-      this.mimeType = Files.probeContentType(Path.of(this.filePath));
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-    if (mimeType == null) {
-      mimeType = HTTPUtils.findMime(this.filePath);
-    }
+    // The file is referenced by the response, not copied
+    this.v = res_ -> res_.addSharedBody(this.bytes);
+  }
 
+  /**
+   * The file is read once, a subclass may send something else
+   */
+  @Override
+  public boolean isConstant() {
+    return getClass() == LoadedFileRoute.class;
   }
 
   @Override
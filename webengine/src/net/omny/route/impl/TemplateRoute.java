@@ -1,32 +1,38 @@
 package net.omny.route.impl;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
 import java.util.function.Function;
-import java.util.regex.Pattern;
 import net.omny.route.Code;
 import net.omny.route.Request;
 import net.omny.route.Response;
 import net.omny.route.Route;
+import net.omny.template.Template;
+import net.omny.template.TemplateCache;
+import net.omny.template.TemplateException;
+import net.omny.utils.Debug;
 import net.omny.utils.HTTPUtils.Headers;
 import net.omny.utils.HTTPUtils.MimeType;
 import net.omny.views.View;
 
 public class TemplateRoute extends Route {
 
-  // Pattern is "#{}" and inside {} is the variable name
-  public static final Pattern VARIABLE_PATTERN =
-      Pattern.compile("#\\{([a-zA-Z0-9]+)\\}");
-
   private String templateFile;
+  private final Path templatePath;
 
-  private Function<Request, Map<String, String>> variables;
+  private Function<Request, ? extends Map<String, ?>> variables;
 
+  /**
+   * @param templateFile The template, see {@link Template}
+   * @param variables    The values of the request, strings or objects read by
+   *                     the loops, conditions and properties of the template
+   */
   public TemplateRoute(String templateFile,
-                       Function<Request, Map<String, String>> variables) {
+                       Function<Request, ? extends Map<String, ?>> variables) {
     this.templateFile = templateFile;
+    this.templatePath = Paths.get(templateFile);
     this.variables = variables;
   }
 
@@ -36,25 +42,17 @@ public class TemplateRoute extends Route {
       // write headers to response
       res.setBinary(false);
       res.setHeader(Headers.CONTENT_TYPE, MimeType.HTML);
-      // Open the template file
+      // Compiled once, again when the file changes
       try {
-        String templates =
-            new String(Files.readAllBytes(Paths.get(templateFile)));
-        Map<String, String> vars = variables.apply(req);
-        // Replace all variables in the template using VARIABLE_PATTERN
-        String result =
-            VARIABLE_PATTERN.matcher(templates).replaceAll((match) -> {
-              String varName = match.group(1);
-              if (vars.containsKey(varName)) {
-                return vars.get(varName);
-              }
-              return match.group(0);
-            });
-        // Write the result to the response
-        res.addBody(result);
-      } catch (IOException e) {
+        Template template = TemplateCache.SHARED.get(templatePath);
+        Map<String, ?> vars = variables.apply(req);
+        // Values are escaped, the result goes straight in the body
+        template.render(vars, res.getBody());
+      } catch (IOException | TemplateException e) {
+        // Nothing of a page failing half way is sent
+        res.clearBody();
         res.setResponseCode(Code.E500_INTERNAL_ERROR);
-        e.printStackTrace();
+        Debug.error("Could not render the template " + templateFile, e);
       }
     };
   }
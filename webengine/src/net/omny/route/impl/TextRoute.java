@@ -15,6 +15,14 @@ public class TextRoute extends Route{
 		this.view = new TextView(text);	
 	}
 
+	/**
+	 * A subclass may send a different text
+	 */
+	@Override
+	public boolean isConstant() {
+		return getClass() == TextRoute.class;
+	}
+
 	@Override
 	public View handle(Request req, Response res) {
 		res.setHeader(Headers.CONTENT_TYPE, "text/plain");
@@ -4,9 +4,9 @@ import java.io.IOException;
 import java.net.Socket;
 
 import net.omny.route.Request;
+import net.omny.route.Response;
 import net.omny.route.Router;
 import net.omny.server.WebServer;
-import net.omny.utils.HTTPUtils.Headers;
 
 public abstract class AuthentificationMiddleware implements Middleware, UrlMiddleware {
 
@@ -20,13 +20,34 @@ public abstract class AuthentificationMiddleware implements Middleware, UrlMiddl
   public boolean handle(WebServer webServer, Router router, Request request, Socket client) throws IOException {
     if (request.equalsPath(url, true))
       return false;
-    if (!request.containsHeader(Headers.AUTHORIZATION))
+    if (auth(request))
       return false;
-    return !auth(request);
+    // Not authenticated, the route is not run
+    Response response = Response.noPermission(request);
+    try {
+      challenge(response);
+      response.writeTo(client);
+    } finally {
+      response.release();
+    }
+    return true;
   }
 
+  /**
+   * @param request The request
+   * @return true if the request is authenticated, false to answer 401
+   */
   public abstract boolean auth(Request request);
 
+  /**
+   * Set the headers telling how to authenticate (eg: WWW-Authenticate) on the
+   * 401 response
+   *
+   * @param response The response
+   */
+  protected void challenge(Response response) {
+  }
+
   @Override
   public String getUrl() {
       return this.url;
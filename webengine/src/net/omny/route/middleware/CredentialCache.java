@@ -0,0 +1,294 @@
+package net.omny.route.middleware;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.utils.HttpClock;
+
+/**
+ * The results of the verification of credentials, so a slow verifier (eg:
+ * password hashing) runs once per credentials and time to live
+ *
+ * Credentials are found by the SHA-256 of the header holding them, they are
+ * never kept. A success is kept for {@link #ttl} ms; a failure for
+ * {@link #negativeTtl} ms, so the same wrong credentials are verified at most
+ * once in this time, whatever the number of requests.
+ *
+ * Different wrong credentials for the same subject (eg: a login) are
+ * throttled: past {@link #allowedFailures}, the subject is refused without
+ * running the verifier for {@link #failureDelay} ms, doubled for each other
+ * failure up to {@link #maxFailureDelay} ms, until it succeeds.
+ *
+ * The successes are bounded by {@link #maxEntries}, the failures and the
+ * throttled subjects by {@link #maxFailures}, so wrong credentials never push
+ * out the valid ones: past a bound, the expired entries then the oldest among
+ * a few are removed.
+ */
+public final class CredentialCache {
+
+    /**
+     * Results looked at to choose one to remove
+     */
+    private static final int SAMPLE = 8;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * When the successes expire
+     */
+    private final Map<Key, Long> results = new ConcurrentHashMap<>();
+    /**
+     * When the failures expire
+     */
+    private final Map<Key, Long> failures = new ConcurrentHashMap<>();
+    private final Map<String, Throttle> throttles = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * How long (in ms) a success is kept, 0 to verify each request
+     */
+    @Getter
+    @Setter
+    private long ttl = 60_000;
+    /**
+     * How long (in ms) a failure is kept
+     */
+    @Getter
+    @Setter
+    private long negativeTtl = 5_000;
+    @Getter
+    @Setter
+    private int maxEntries = 10_000;
+    /**
+     * Failures and throttled subjects kept at most
+     */
+    @Getter
+    @Setter
+    private int maxFailures = 10_000;
+    /**
+     * Failures of a subject verified before it is throttled
+     */
+    @Getter
+    @Setter
+    private int allowedFailures = 5;
+    /**
+     * How long (in ms) a subject is refused after its first failure past the
+     * allowed ones
+     */
+    @Getter
+    @Setter
+    private long failureDelay = 1_000;
+    @Getter
+    @Setter
+    private long maxFailureDelay = 60_000;
+
+    /**
+     * Verify credentials, or give the result kept for them
+     *
+     * @param header   The value of the header holding the credentials
+     * @param verifier Verifies the header, run when there is no result for it
+     * @return true if the credentials are valid
+     */
+    public boolean verify(String header, Predicate<String> verifier) {
+        return verify(header, null, verifier);
+    }
+
+    /**
+     * Verify credentials, or give the result kept for them, the failures of the
+     * subject are throttled
+     *
+     * @param header   The value of the header holding the credentials
+     * @param subject  Who the credentials are for (eg: the login), null to not
+     *                 throttle them
+     * @param verifier Verifies the header, run when there is no result for it
+     * @return true if the credentials are valid
+     */
+    public boolean verify(String header, String subject, Predicate<String> verifier) {
+        Key key = Key.of(header);
+        long now = HttpClock.millis();
+        if (isKept(this.results, key, now)) {
+            this.hits.increment();
+            return true;
+        }
+        if (isKept(this.failures, key, now)) {
+            this.hits.increment();
+            return false;
+        }
+        Throttle throttle = subject == null ? null : this.throttles.get(subject);
+        if (throttle != null && throttle.until > now) {
+            this.throttled.increment();
+            return false;
+        }
+        this.misses.increment();
+        boolean valid = verifier.test(header);
+        if (valid) {
+            if (subject != null) {
+                this.throttles.remove(subject);
+            }
+            keep(this.results, key, now + this.ttl, this.ttl, this.maxEntries, now);
+        } else {
+            keep(this.failures, key, now + this.negativeTtl, this.negativeTtl, this.maxFailures, now);
+            if (subject != null) {
+                failed(subject, now);
+            }
+        }
+        return valid;
+    }
+
+    private static boolean isKept(Map<Key, Long> results, Key key, long now) {
+        Long expiresAt = results.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt > now) {
+            return true;
+        }
+        results.remove(key, expiresAt);
+        return false;
+    }
+
+    private static void keep(Map<Key, Long> results, Key key, long expiresAt, long ttl, int maxEntries, long now) {
+        if (ttl <= 0) {
+            return;
+        }
+        results.put(key, expiresAt);
+        if (results.size() > maxEntries) {
+            evict(results, maxEntries, Long::longValue, now);
+        }
+    }
+
+    private void failed(String subject, long now) {
+        Throttle throttle = this.throttles.compute(subject, (k, previous) -> {
+            int failures = previous == null || previous.isForgotten(now, this.maxFailureDelay) ? 1
+                    : previous.failures + 1;
+            long until = 0;
+            if (failures >= this.allowedFailures) {
+                int doublings = Math.min(failures - this.allowedFailures, 30);
+                until = now + Math.min(this.maxFailureDelay, this.failureDelay << doublings);
+            }
+            return new Throttle(failures, until, now);
+        });
+        if (throttle.failures > 1 || this.throttles.size() <= this.maxFailures) {
+            return;
+        }
+        evict(this.throttles, this.maxFailures,
+                entry -> entry.isForgotten(now, this.maxFailureDelay) ? now : entry.failedAt, now);
+    }
+
+    /**
+     * Remove the expired entries, then the oldest among a few, until the map
+     * holds at most maxEntries
+     *
+     * @param expiresAt When an entry expires
+     */
+    private static <K, V> void evict(Map<K, V> map, int maxEntries, ToLongFunction<V> expiresAt, long now) {
+        Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+        while (map.size() > maxEntries && iterator.hasNext()) {
+            Map.Entry<K, V> oldest = null;
+            for (int i = 0; i < SAMPLE && iterator.hasNext(); i++) {
+                Map.Entry<K, V> entry = iterator.next();
+                long expires = expiresAt.applyAsLong(entry.getValue());
+                if (expires <= now) {
+                    map.remove(entry.getKey(), entry.getValue());
+                } else if (oldest == null || expires < expiresAt.applyAsLong(oldest.getValue())) {
+                    oldest = entry;
+                }
+            }
+            if (oldest != null && map.size() > maxEntries) {
+                map.remove(oldest.getKey(), oldest.getValue());
+            }
+        }
+    }
+
+    /**
+     * Forget the results and the throttled subjects, eg: once a password is
+     * changed
+     */
+    public void clear() {
+        this.results.clear();
+        this.failures.clear();
+        this.throttles.clear();
+    }
+
+    /**
+     * @return the count of successes kept
+     */
+    public int size() {
+        return this.results.size();
+    }
+
+    /**
+     * @return the count of failures kept
+     */
+    public int failureCount() {
+        return this.failures.size();
+    }
+
+    /**
+     * @return how many verifications were refused without running the verifier,
+     *         the subject being throttled
+     */
+    public long getThrottled() {
+        return this.throttled.sum();
+    }
+
+    /**
+     * @return how many verifications were answered from the cache
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return how many verifications ran the verifier
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * The first 128 bits of the SHA-256 of the header
+     */
+    private record Key(long high, long low) {
+
+        private static Key of(String header) {
+            ByteBuffer digest = ByteBuffer.wrap(SHA_256.get().digest(header.getBytes(StandardCharsets.UTF_8)));
+            return new Key(digest.getLong(), digest.getLong());
+        }
+
+    }
+
+    /**
+     * The failures of a subject, refused until the given time
+     */
+    private record Throttle(int failures, long until, long failedAt) {
+
+        /**
+         * @return true once no failure happened for maxFailureDelay ms after
+         *         the end of the delay
+         */
+        private boolean isForgotten(long now, long maxFailureDelay) {
+            return Math.max(this.until, this.failedAt) + maxFailureDelay <= now;
+        }
+
+    }
+
+}
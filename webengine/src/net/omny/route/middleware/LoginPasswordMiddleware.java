@@ -1,28 +1,44 @@
 package net.omny.route.middleware;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.function.BiFunction;
 
-import org.codehaus.plexus.util.Base64;
-
+import lombok.Getter;
+import lombok.Setter;
 import net.omny.route.Request;
+import net.omny.route.Response;
 import net.omny.utils.HTTPUtils.Headers;
 
+/**
+ * HTTP Basic authentication: the login and the password are verified by
+ * {@link #auth(String, String)}
+ *
+ * The results are kept in a {@link CredentialCache}, so a slow verification
+ * (eg: password hashing) isn't run for each request.
+ */
 public abstract class LoginPasswordMiddleware extends AuthentificationMiddleware {
 
-    public static LoginPasswordMiddleware middleware(BiFunction<String, String, Boolean> auth) {
-        return new LoginPasswordMiddleware() {
-            @Override
-            public boolean auth(String login, String password) {
-                return auth(login, password);
-            }
-        };
+    private static final String BASIC = "Basic ";
+
+    @Getter
+    private final CredentialCache cache = new CredentialCache();
+    /**
+     * Sent in the WWW-Authenticate header of the 401 responses
+     */
+    @Getter
+    @Setter
+    private String realm = "Omny";
+
+    public static LoginPasswordMiddleware middleware(BiFunction<String, String, Boolean> verifier) {
+        return middleware("", verifier);
     }
 
-    public static LoginPasswordMiddleware middleware(String url, BiFunction<String, String, Boolean> auth) {
+    public static LoginPasswordMiddleware middleware(String url, BiFunction<String, String, Boolean> verifier) {
         return new LoginPasswordMiddleware(url) {
             @Override
             public boolean auth(String login, String password) {
-                return auth(login, password);
+                return verifier.apply(login, password);
             }
         };
     }
@@ -37,21 +53,34 @@ public abstract class LoginPasswordMiddleware extends AuthentificationMiddleware
 
     @Override
     public boolean auth(Request request) {
-        if (request.containsHeader(Headers.AUTHORIZATION))
-            return false;
         String auth = request.getHeader(Headers.AUTHORIZATION);
-        if (!auth.startsWith("Basic ")) {
+        if (auth == null || !auth.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
             return false;
         }
-        String base64 = auth.substring("Basic ".length());
-        String[] credentials = new String(Base64.decodeBase64(base64.getBytes())).split("\\:");
-        String login = credentials[0];
-        String password = credentials[1];
-        return auth(login, password);
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(auth.substring(BASIC.length()).trim()),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // The password may contain colons, the login can't
+        int colon = credentials.indexOf(':');
+        if (colon < 0) {
+            return false;
+        }
+        String login = credentials.substring(0, colon);
+        // The wrong passwords of a login are throttled
+        return this.cache.verify(auth, login, header -> auth(login, credentials.substring(colon + 1)));
     }
 
     public abstract boolean auth(String login, String password);
 
+    @Override
+    protected void challenge(Response response) {
+        response.setHeader(Headers.WWW_AUTHENTICATE, "Basic realm=\"" + this.realm + "\", charset=\"UTF-8\"");
+    }
+
     @Override
     public String toString() {
         return "LoginPasswordMiddleware { url=" + getUrl() + "}";
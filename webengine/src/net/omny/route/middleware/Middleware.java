@@ -24,4 +24,15 @@ public interface Middleware {
   boolean handle(WebServer webServer, Router router, Request request, Socket client)
     throws IOException;
 
+  /**
+   * The cached responses are sent without running the middlewares, a
+   * middleware which must see every request (eg: counting them) keeps the
+   * responses of its paths out of the cache
+   *
+   * @return false if the responses of its paths must not be cached
+   */
+  default boolean allowsCache() {
+    return true;
+  }
+
 }
@@ -0,0 +1,168 @@
+package net.omny.route.middleware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The middlewares of a router resolved for the paths of the requests
+ *
+ * The urls of the {@link UrlMiddleware}s are the keys of a radix trie (the
+ * characters no other url branches from are kept on one edge), each url ends
+ * on a node holding the middlewares a path starting with this url goes through,
+ * in the order they were added: the others, then the ones whose url starts it.
+ * A request follows its path down the trie and runs the chain of the last node
+ * with one, without looking at the middlewares it skips.
+ */
+public final class MiddlewareTrie {
+
+	private static final Middleware[] NONE = new Middleware[0];
+
+	private final Node root = new Node();
+	private final List<Middleware> source;
+	private final int size;
+
+	private MiddlewareTrie(List<Middleware> source) {
+		this.source = source;
+		this.size = source.size();
+	}
+
+	/**
+	 * Resolve the chains of the middlewares
+	 *
+	 * @param middlewares The middlewares, in the order they run
+	 * @return the trie
+	 */
+	public static MiddlewareTrie compile(List<Middleware> middlewares) {
+		MiddlewareTrie trie = new MiddlewareTrie(middlewares);
+		List<String> urls = new ArrayList<>();
+		urls.add("");
+		for (Middleware middleware : middlewares) {
+			String url = urlOf(middleware);
+			if (!urls.contains(url)) {
+				urls.add(url);
+			}
+		}
+		for (String url : urls) {
+			List<Middleware> chain = new ArrayList<>();
+			for (Middleware middleware : middlewares) {
+				if (url.startsWith(urlOf(middleware))) {
+					chain.add(middleware);
+				}
+			}
+			trie.root.insert(url, 0).chain = chain.isEmpty() ? NONE : chain.toArray(NONE);
+		}
+		trie.root.compress();
+		return trie;
+	}
+
+	/**
+	 * The middlewares of a path, without allocating
+	 *
+	 * @param path The path of the request
+	 * @return the middlewares to run, in order
+	 */
+	public Middleware[] chainFor(String path) {
+		Middleware[] chain = this.root.chain;
+		Node node = this.root;
+		int i = 0;
+		while (i < path.length()) {
+			node = node.child(path.charAt(i));
+			if (node == null || !path.startsWith(node.edge, i)) {
+				break;
+			}
+			i += node.edge.length();
+			if (node.chain != null) {
+				chain = node.chain;
+			}
+		}
+		return chain;
+	}
+
+	/**
+	 * @param middlewares The middlewares of a router
+	 * @return false if they changed since this trie was compiled from them
+	 */
+	public boolean isCompiledFrom(List<Middleware> middlewares) {
+		return this.source == middlewares && this.size == middlewares.size();
+	}
+
+	/**
+	 * @return "" for a middleware of every path
+	 */
+	private static String urlOf(Middleware middleware) {
+		if (middleware instanceof UrlMiddleware urlMiddleware && urlMiddleware.getUrl() != null) {
+			return urlMiddleware.getUrl();
+		}
+		return "";
+	}
+
+	private static final class Node {
+
+		/**
+		 * The characters from the parent, starting with the key of this node
+		 */
+		private String edge = "";
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		/**
+		 * null when no url ends here
+		 */
+		private Middleware[] chain;
+
+		private Node child(char key) {
+			char[] keys = this.keys;
+			if (keys.length <= 8) {
+				for (int i = 0; i < keys.length; i++) {
+					if (keys[i] == key) {
+						return this.children[i];
+					}
+				}
+				return null;
+			}
+			int index = Arrays.binarySearch(keys, key);
+			return index < 0 ? null : this.children[index];
+		}
+
+		private Node insert(String url, int from) {
+			if (from == url.length()) {
+				return this;
+			}
+			char key = url.charAt(from);
+			int index = Arrays.binarySearch(this.keys, key);
+			if (index < 0) {
+				index = -index - 1;
+				char[] keys = new char[this.keys.length + 1];
+				Node[] children = new Node[keys.length];
+				System.arraycopy(this.keys, 0, keys, 0, index);
+				System.arraycopy(this.children, 0, children, 0, index);
+				System.arraycopy(this.keys, index, keys, index + 1, this.keys.length - index);
+				System.arraycopy(this.children, index, children, index + 1, this.children.length - index);
+				keys[index] = key;
+				children[index] = new Node();
+				children[index].edge = String.valueOf(key);
+				this.keys = keys;
+				this.children = children;
+			}
+			return this.children[index].insert(url, from + 1);
+		}
+
+		/**
+		 * Merge the children without a chain into their only child
+		 */
+		private void compress() {
+			for (int i = 0; i < this.children.length; i++) {
+				Node child = this.children[i];
+				while (child.chain == null && child.children.length == 1) {
+					Node next = child.children[0];
+					next.edge = child.edge + next.edge;
+					child = next;
+				}
+				this.children[i] = child;
+				child.compress();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,225 @@
+package net.omny.route.middleware;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.route.Code;
+import net.omny.route.Request;
+import net.omny.route.Response;
+import net.omny.route.Router;
+import net.omny.server.WebServer;
+import net.omny.utils.HTTPUtils;
+
+/**
+ * Limit the requests of each client under an url, answered 429 Too Many
+ * Requests with a Retry-After once over the limit
+ *
+ * Each client has a token bucket of {@link #burst} requests, refilled at
+ * {@link #rate} requests per second. A bucket is a single long updated by
+ * compare-and-set (the time it will be full again, as in the generic cell rate
+ * algorithm), checking a request takes no lock. A bucket which is full again
+ * limits as much as no bucket, so the idle buckets are removed when there are
+ * more than {@link #maxEntries}; the buckets are spread over stripes, each one
+ * bounded and cleaned on its own.
+ *
+ * Added before the other middlewares, the requests are refused before any
+ * routing work. The responses of its paths are never cached, so that every
+ * request is counted.
+ */
+public class RateLimitMiddleware implements Middleware, UrlMiddleware {
+
+    private static final int STRIPES = 64;
+    /**
+     * Buckets looked at to choose one to remove, when none is idle
+     */
+    private static final int SAMPLE = 8;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    @Getter
+    private final int burst;
+    /**
+     * Requests per second
+     */
+    @Getter
+    private final double rate;
+    /**
+     * Nanoseconds between two requests at the rate
+     */
+    private final long interval;
+    /**
+     * How far ahead of now a bucket can be and still accept a request
+     */
+    private final long tolerance;
+    @Getter
+    @Setter
+    private int maxEntries = 100_000;
+    /**
+     * The client of a request, by default its address: null isn't limited
+     */
+    @Getter
+    @Setter
+    private BiFunction<Request, Socket, Object> key = (request, client) -> client.getInetAddress();
+    private String url;
+
+    /**
+     * @param url   The start of the paths limited
+     * @param burst The requests a client can send at once
+     * @param rate  The requests per second a client can send in the long run
+     */
+    public RateLimitMiddleware(String url, int burst, double rate) {
+        if (burst < 1 || !(rate > 0)) {
+            throw new IllegalArgumentException("Expected a burst >= 1 and a rate > 0, got " + burst + " and " + rate);
+        }
+        this.url = url;
+        this.burst = burst;
+        this.rate = rate;
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = this.interval * (burst - 1);
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public boolean handle(WebServer webServer, Router router, Request request, Socket client) throws IOException {
+        Object id = this.key.apply(request, client);
+        if (id == null) {
+            return false;
+        }
+        long wait = acquire(id);
+        if (wait == 0) {
+            return false;
+        }
+        Response response = new Response(Code.E429_TOO_MANY_REQUESTS, request.getHttpVersion());
+        try {
+            // In whole seconds, rounded up
+            response.setHeader(HTTPUtils.Headers.RETRY_AFTER, String.valueOf((wait + TimeUnit.SECONDS.toNanos(1) - 1)
+                    / TimeUnit.SECONDS.toNanos(1)));
+            response.writeTo(client);
+        } finally {
+            response.release();
+        }
+        return true;
+    }
+
+    /**
+     * A cached response is sent before the middlewares run
+     */
+    @Override
+    public boolean allowsCache() {
+        return false;
+    }
+
+    /**
+     * Take a token from the bucket of a client
+     *
+     * @param client The client
+     * @return 0 if the request is accepted, otherwise how long (in ns) until it
+     *         would be
+     */
+    public long acquire(Object client) {
+        Map<Object, AtomicLong> stripe = this.stripes[(client.hashCode() * 0x9E3779B9) >>> 26].buckets;
+        long now = System.nanoTime();
+        AtomicLong bucket = stripe.get(client);
+        if (bucket != null) {
+            return take(bucket, now);
+        }
+        // A new bucket is full
+        long wait = take(stripe.computeIfAbsent(client, k -> new AtomicLong(now)), now);
+        if (stripe.size() > stripeEntries()) {
+            evict(stripe, now);
+        }
+        return wait;
+    }
+
+    private long take(AtomicLong bucket, long now) {
+        while (true) {
+            long full = bucket.get();
+            long from = full - now > 0 ? full : now;
+            long wait = from - now - this.tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(full, from + this.interval)) {
+                return 0;
+            }
+        }
+    }
+
+    private int stripeEntries() {
+        return Math.max(1, this.maxEntries / STRIPES);
+    }
+
+    /**
+     * Remove the buckets of the clients which are idle long enough for their
+     * bucket to be full again, eg: from a background task
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (Stripe stripe : this.stripes) {
+            stripe.buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+
+    private void evict(Map<Object, AtomicLong> stripe, long now) {
+        stripe.values().removeIf(bucket -> bucket.get() - now <= 0);
+        // Every client is limited, the closest to being full are forgotten
+        Iterator<Map.Entry<Object, AtomicLong>> iterator = stripe.entrySet().iterator();
+        while (stripe.size() > stripeEntries() && iterator.hasNext()) {
+            Map.Entry<Object, AtomicLong> fullest = null;
+            for (int i = 0; i < SAMPLE && iterator.hasNext(); i++) {
+                Map.Entry<Object, AtomicLong> entry = iterator.next();
+                if (fullest == null || entry.getValue().get() - fullest.getValue().get() < 0) {
+                    fullest = entry;
+                }
+            }
+            if (fullest != null) {
+                stripe.remove(fullest.getKey(), fullest.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the count of buckets
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : this.stripes) {
+            size += stripe.buckets.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String getUrl() {
+        return this.url;
+    }
+
+    @Override
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * The buckets of the clients hashed to the same stripe
+     */
+    private static final class Stripe {
+
+        private final Map<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitMiddleware { url=" + getUrl() + ", burst=" + this.burst + ", rate=" + this.rate + "}";
+    }
+
+}
@@ -0,0 +1,43 @@
+package net.omny.route.middleware;
+
+import java.net.Socket;
+
+import net.omny.route.Request;
+import net.omny.route.Response;
+import net.omny.route.Router;
+import net.omny.server.WebServer;
+
+/**
+ * Middleware of the {@link MiddlewarePriority#AFTER} phase changing the
+ * responses of the routes before they are sent (eg: headers, compression,
+ * metrics)
+ *
+ * Example:
+ *
+ * router.intercept((req, res) -> res.setHeader("X-Frame-Options", "DENY"));
+ *
+ * The body is written when the response is intercepted, except for a
+ * {@link net.omny.views.StreamingView}: its body is written once the response
+ * is intercepted. To change the body, wrap it with
+ * {@link Response#wrapBody(net.omny.route.BodyFilter)} rather than copying it.
+ */
+@FunctionalInterface
+public interface ResponseInterceptor extends Middleware {
+
+  /**
+   * Inspect or change the response of a route
+   *
+   * @param request  The request
+   * @param response The response, not sent yet
+   */
+  void intercept(Request request, Response response);
+
+  /**
+   * Nothing is done once the response is sent
+   */
+  @Override
+  default boolean handle(WebServer webServer, Router router, Request request, Socket client) {
+    return false;
+  }
+
+}
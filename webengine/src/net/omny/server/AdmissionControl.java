@@ -0,0 +1,189 @@
+package net.omny.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Bound the connections a server works on, so that it refuses what it can't
+ * answer in time instead of queueing it
+ *
+ * A connection is admitted when it is accepted, and stays in flight until it
+ * is answered: waiting for a thread first, then handled, or parked until its
+ * async route answers. The connections
+ * in flight are bounded by the limit, the ones waiting by the size of the
+ * queue; the others are shed at once, answered 503 Service Unavailable.
+ *
+ * The limit adapts to the time spent waiting for a thread (AIMD): a connection
+ * which waited longer than the target is shed as well and the limit shrinks by
+ * a tenth (at most once per target), while the connections handled in time
+ * grow it by one each time as many as the limit have been handled.
+ */
+public class AdmissionControl {
+
+  private static final double DECREASE = 0.9;
+
+  @Getter private final int maxConnections;
+  @Getter private final int maxQueue;
+  /**
+   * Nanoseconds a connection may wait for a thread
+   */
+  private final long queueTarget;
+  @Getter private final int minLimit;
+
+  /**
+   * Connections in flight at most, between minLimit and maxConnections
+   */
+  @Getter private volatile int limit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger active = new AtomicInteger();
+  /**
+   * Connections handled in time since the limit last grew
+   */
+  private final AtomicInteger credits = new AtomicInteger();
+  private volatile long decreasedAt;
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder shed = new LongAdder();
+
+  /**
+   * @param maxConnections The connections in flight at most
+   * @param maxQueue       The connections waiting for a thread at most
+   * @param queueTarget    How long (in ms) a connection may wait for a thread,
+   *                       0 to never shed the connections waiting
+   * @param minLimit       The limit never shrinks below, eg: the threads
+   */
+  public AdmissionControl(int maxConnections, int maxQueue, long queueTarget,
+                          int minLimit) {
+    if (maxConnections < 1 || maxQueue < 0 || queueTarget < 0) {
+      throw new IllegalArgumentException(
+          "Expected max connections >= 1, max queue >= 0 and queue target >= "
+          + "0, got " + maxConnections + ", " + maxQueue + " and " +
+          queueTarget);
+    }
+    this.maxConnections = maxConnections;
+    this.maxQueue = maxQueue;
+    this.queueTarget = TimeUnit.MILLISECONDS.toNanos(queueTarget);
+    this.minLimit = Math.max(1, Math.min(minLimit, maxConnections));
+    this.limit = maxConnections;
+    this.decreasedAt = System.nanoTime() - this.queueTarget;
+  }
+
+  /**
+   * Admit an accepted connection
+   *
+   * @return when it was admitted (System.nanoTime), or -1 if it must be shed
+   */
+  public long admit() {
+    while (true) {
+      int inFlight = this.inFlight.get();
+      if (inFlight >= this.limit ||
+          inFlight - this.active.get() >= this.maxQueue) {
+        this.shed.increment();
+        return -1;
+      }
+      if (this.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+        this.admitted.increment();
+        return System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Start handling an admitted connection, on its thread
+   *
+   * @param admittedAt What {@link #admit()} returned
+   * @return false if it waited too long and must be shed, it is no longer in
+   *         flight, otherwise {@link #end()} must be called once handled
+   */
+  public boolean begin(long admittedAt) {
+    long now = System.nanoTime();
+    if (this.queueTarget > 0 && now - admittedAt > this.queueTarget) {
+      this.inFlight.decrementAndGet();
+      this.shed.increment();
+      decrease(now);
+      return false;
+    }
+    this.active.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * A connection started by {@link #begin(long)} is answered, once its handler
+   * returns or, when it is parked, once its async response is sent
+   */
+  public void end() {
+    int inFlight = this.inFlight.getAndDecrement();
+    this.active.decrementAndGet();
+    // Only grown while at least half of it is used
+    int limit = this.limit;
+    if (inFlight * 2 >= limit && this.credits.incrementAndGet() >= limit) {
+      increase(limit);
+    }
+  }
+
+  /**
+   * A connection which was admitted isn't handled after all (eg: the executor
+   * refused it)
+   */
+  public void cancel() {
+    this.inFlight.decrementAndGet();
+    this.shed.increment();
+  }
+
+  private synchronized void increase(int from) {
+    if (this.limit == from && from < this.maxConnections) {
+      this.limit = from + 1;
+    }
+    this.credits.set(0);
+  }
+
+  private synchronized void decrease(long now) {
+    if (now - this.decreasedAt < this.queueTarget) {
+      return;
+    }
+    this.decreasedAt = now;
+    this.limit = Math.max(this.minLimit, (int)(this.limit * DECREASE));
+    this.credits.set(0);
+  }
+
+  /**
+   * @return the connections waiting for a thread or handled
+   */
+  public int getInFlight() { return this.inFlight.get(); }
+
+  /**
+   * @return the connections handled
+   */
+  public int getActive() { return this.active.get(); }
+
+  /**
+   * @return the connections waiting for a thread
+   */
+  public int getQueued() { return Math.max(0, getInFlight() - getActive()); }
+
+  /**
+   * @return how long (in ms) a connection may wait for a thread
+   */
+  public long getQueueTarget() {
+    return TimeUnit.NANOSECONDS.toMillis(this.queueTarget);
+  }
+
+  /**
+   * @return how many connections were admitted
+   */
+  public long getAdmitted() { return this.admitted.sum(); }
+
+  /**
+   * @return how many connections were answered 503
+   */
+  public long getShed() { return this.shed.sum(); }
+
+  @Override
+  public String toString() {
+    return "AdmissionControl { limit=" + this.limit +
+        ", inFlight=" + getInFlight() + ", queued=" + getQueued() +
+        ", admitted=" + getAdmitted() + ", shed=" + getShed() + "}";
+  }
+}
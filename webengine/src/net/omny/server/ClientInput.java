@@ -0,0 +1,457 @@
+package net.omny.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.exceptions.HeadTooLargeException;
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.route.Code;
+import net.omny.utils.ByteStack;
+
+/**
+ * Buffered reader of the bytes sent by a client
+ *
+ * Unlike a BufferedReader, the raw bytes of the request head stay accessible,
+ * so the request line can be inspected before anything is decoded.
+ * Indexes returned by the find methods are positions in {@link #getBuffer()}
+ * and stay valid until something is consumed.
+ */
+public class ClientInput {
+
+  private static final int DEFAULT_SIZE = 2048;
+  public static final int DEFAULT_MAX_HEAD_SIZE = 64 * 1024;
+  public static final int DEFAULT_MAX_LINE_SIZE = 8 * 1024;
+  /**
+   * A client may fall behind the minimum rate by the bytes it would send in
+   * this time (in ns), so a pause of a legitimate client (eg: before the last
+   * packet of a small head) is not taken for a slow client
+   */
+  private static final long RATE_ALLOWANCE = TimeUnit.SECONDS.toNanos(2);
+
+  /**
+   * Buffers grown beyond this size are not kept for the next client
+   */
+  private static final int MAX_KEPT_SIZE = 8 * 1024;
+
+  private InputStream in;
+  @Getter private byte[] buffer;
+  /**
+   * Index of the next byte to consume
+   */
+  @Getter private int position;
+  /**
+   * Index after the last byte read from the client
+   */
+  @Getter private int limit;
+  private boolean eof;
+
+  /**
+   * The request head is answered 431 past this size
+   */
+  @Getter @Setter private int maxHeadSize = DEFAULT_MAX_HEAD_SIZE;
+  /**
+   * The request line is answered 414 past this size
+   */
+  @Getter @Setter private int maxLineSize = DEFAULT_MAX_LINE_SIZE;
+
+  /**
+   * The socket whose timeout bounds each read, null if reads are only checked
+   * once they return
+   */
+  private Socket socket;
+  private int soTimeout;
+  /**
+   * How long (in ms) a read may wait for bytes, 0 for ever
+   */
+  private long readTimeout;
+  /**
+   * How long (in ns) the reads until the next deadline may take, 0 for ever
+   */
+  private long timeout;
+  /**
+   * The bytes per second the client must send, 0 for any rate
+   */
+  private long minRate;
+  /**
+   * When the first read since the deadline was set started, 0 before
+   */
+  private long startedAt;
+  /**
+   * How far (in bytes * ns) the client is ahead of the minimum rate, it only
+   * gets as much as the allowance ahead, so a fast start can't pay for a slow
+   * end
+   */
+  private long credit;
+  private long lastReadAt;
+
+  public ClientInput(InputStream in) {
+    this.in = in;
+    this.buffer = new byte[DEFAULT_SIZE];
+  }
+
+  public ClientInput() { this(null); }
+
+  /**
+   * Read another client, the buffer is reused and the limits are the default
+   * ones
+   *
+   * @param in The stream of the client, null to only forget the previous one
+   */
+  public void reset(InputStream in) {
+    this.in = in;
+    this.position = 0;
+    this.limit = 0;
+    this.eof = false;
+    this.socket = null;
+    this.readTimeout = 0;
+    this.timeout = 0;
+    this.minRate = 0;
+    this.startedAt = 0;
+    this.maxHeadSize = DEFAULT_MAX_HEAD_SIZE;
+    this.maxLineSize = DEFAULT_MAX_LINE_SIZE;
+    if (this.buffer.length > MAX_KEPT_SIZE) {
+      this.buffer = new byte[DEFAULT_SIZE];
+    }
+  }
+
+  /**
+   * Bound each read from the client
+   *
+   * @param socket      The socket of the client
+   * @param readTimeout How long (in ms) a read may wait for bytes, 0 for ever
+   */
+  public void bind(Socket socket, long readTimeout) {
+    this.socket = socket;
+    this.readTimeout = readTimeout;
+    this.soTimeout = -1;
+  }
+
+  /**
+   * Bound the time the next reads take together (eg: the reads of the head,
+   * then of the body), from the first one
+   *
+   * @param timeout How long (in ms) they may take, 0 for ever
+   * @param minRate The bytes per second the client must send, 0 for any rate
+   */
+  public void deadline(long timeout, long minRate) {
+    this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+    this.minRate = minRate;
+    this.startedAt = 0;
+  }
+
+  /**
+   * Read the client within the deadline and the minimum rate
+   *
+   * @throws SocketTimeoutException If the client is too slow
+   */
+  private int receive(byte[] b, int off, int len) throws IOException {
+    if (this.timeout == 0 && this.minRate == 0 && this.socket == null) {
+      return in.read(b, off, len);
+    }
+    long now = System.nanoTime();
+    if (this.startedAt == 0) {
+      this.startedAt = now;
+      this.lastReadAt = now;
+      this.credit = this.minRate * RATE_ALLOWANCE;
+    }
+    long elapsed = now - this.startedAt;
+    checkDeadline(elapsed);
+    if (this.socket != null) {
+      long wait = this.readTimeout;
+      if (this.timeout > 0) {
+        // At least 1 ms, 0 would wait for ever
+        long left = Math.max(
+            1, TimeUnit.NANOSECONDS.toMillis(this.timeout - elapsed));
+        wait = wait == 0 ? left : Math.min(wait, left);
+      }
+      if (wait != this.soTimeout) {
+        this.socket.setSoTimeout((int)Math.min(wait, Integer.MAX_VALUE));
+        this.soTimeout = (int)wait;
+      }
+    }
+    int read = in.read(b, off, len);
+    if (read > 0 && (this.timeout > 0 || this.minRate > 0)) {
+      now = System.nanoTime();
+      checkDeadline(now - this.startedAt);
+      if (this.minRate > 0) {
+        this.credit = Math.min(this.minRate * RATE_ALLOWANCE,
+                               this.credit +
+                                   read * TimeUnit.SECONDS.toNanos(1) -
+                                   this.minRate * (now - this.lastReadAt));
+        this.lastReadAt = now;
+        if (this.credit < 0) {
+          throw new SocketTimeoutException("Client sends less than " +
+                                           this.minRate + " bytes per second");
+        }
+      }
+    }
+    return read;
+  }
+
+  private void checkDeadline(long elapsed) throws SocketTimeoutException {
+    if (this.timeout > 0 && elapsed >= this.timeout) {
+      throw new SocketTimeoutException(
+          "Client not read within " +
+          TimeUnit.NANOSECONDS.toMillis(this.timeout) + " ms");
+    }
+  }
+
+  /**
+   * Read more bytes from the client
+   *
+   * @return false if the client has nothing more to send
+   */
+  private boolean fill() throws IOException, MalformedRequestException {
+    if (eof) {
+      return false;
+    }
+    if (limit == buffer.length) {
+      if (position > 0) {
+        // Drop what is already consumed
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+      } else if (buffer.length < maxHeadSize) {
+        byte[] grown = new byte[Math.min(buffer.length * 2, maxHeadSize)];
+        System.arraycopy(buffer, 0, grown, 0, limit);
+        buffer = grown;
+      } else {
+        throw new HeadTooLargeException(
+            Code.E431_REQUEST_HEADER_FIELDS_TOO_LARGE,
+            "request head larger than " + maxHeadSize + " bytes");
+      }
+    }
+    int read = receive(buffer, limit, buffer.length - limit);
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  /**
+   * Find the end of the line starting at the current position
+   *
+   * @return the index of the LF ending the line, -1 if the client closed the
+   *     connection before
+   */
+  public int findLineEnd() throws IOException, MalformedRequestException {
+    int from = position;
+    while (true) {
+      int lineEnd = ByteStack.indexOf(buffer, from, limit, (byte)'\n');
+      if (lineEnd >= 0) {
+        return lineEnd;
+      }
+      from = limit;
+      int consumed = position;
+      if (!fill()) {
+        return -1;
+      }
+      // Indexes move when consumed bytes are dropped
+      from -= consumed - position;
+    }
+  }
+
+  /**
+   * Find the end of the request head (the empty line after the headers)
+   * Nothing is consumed
+   *
+   * @return the index after the empty line, -1 if the client closed the
+   *     connection before
+   * @throws HeadTooLargeException If the request line or the head is larger
+   *     than allowed
+   */
+  public int findHeadEnd() throws IOException, MalformedRequestException {
+    int from = position;
+    while (true) {
+      checkRequestLine();
+      for (int i = from; i < limit; i++) {
+        // Jump to the next line break
+        i = ByteStack.indexOf(buffer, i, limit, (byte)'\n');
+        if (i < 0) {
+          break;
+        }
+        if (i + 1 >= limit) {
+          break;
+        }
+        if (buffer[i + 1] == '\n') {
+          return checkHeadSize(i + 2);
+        }
+        if (buffer[i + 1] == '\r') {
+          if (i + 2 >= limit) {
+            break;
+          }
+          if (buffer[i + 2] == '\n') {
+            return checkHeadSize(i + 3);
+          }
+        }
+      }
+      checkHeadSize(limit);
+      // Scan again the end of the buffer, the empty line may be cut
+      from = Math.max(position, limit - 3);
+      int consumed = position;
+      if (!fill()) {
+        return -1;
+      }
+      // Indexes move when consumed bytes are dropped
+      from -= consumed - position;
+    }
+  }
+
+  /**
+   * Check the size of the request line, as soon as its end or more bytes than
+   * allowed are read
+   */
+  private void checkRequestLine() throws HeadTooLargeException {
+    int end = Math.min(limit, position + maxLineSize + 1);
+    int lineEnd = ByteStack.indexOf(buffer, position, end, (byte)'\n');
+    if (lineEnd < 0 && end - position > maxLineSize) {
+      throw new HeadTooLargeException(Code.E414_URI_TOO_LONG,
+                                      "request line larger than " +
+                                          maxLineSize + " bytes");
+    }
+  }
+
+  private int checkHeadSize(int headEnd) throws HeadTooLargeException {
+    if (headEnd - position > maxHeadSize) {
+      throw new HeadTooLargeException(
+          Code.E431_REQUEST_HEADER_FIELDS_TOO_LARGE,
+          "request head larger than " + maxHeadSize + " bytes");
+    }
+    return headEnd;
+  }
+
+  /**
+   * Check if the head contains a header, without consuming anything
+   *
+   * @param lowerCaseName The name of the header followed by ':' in lower case
+   * @param headEnd       The end of the head, see {@link #findHeadEnd()}
+   * @return true if a line of the head starts with this name
+   */
+  public boolean hasHeader(byte[] lowerCaseName, int headEnd) {
+    int lineStart = position;
+    while (lineStart < headEnd) {
+      if (startsWithIgnoreCase(lineStart, headEnd, lowerCaseName)) {
+        return true;
+      }
+      while (lineStart < headEnd && buffer[lineStart] != '\n') {
+        lineStart++;
+      }
+      lineStart++;
+    }
+    return false;
+  }
+
+  private boolean startsWithIgnoreCase(int from, int to, byte[] lowerCase) {
+    if (to - from < lowerCase.length) {
+      return false;
+    }
+    for (int i = 0; i < lowerCase.length; i++) {
+      byte b = buffer[from + i];
+      if (b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (b != lowerCase[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Consume a line
+   *
+   * @return the line without its line break, null if the client closed the
+   *     connection
+   */
+  public String readLine() throws IOException, MalformedRequestException {
+    int lineEnd = findLineEnd();
+    if (lineEnd < 0) {
+      if (position == limit) {
+        return null;
+      }
+      // Last line without line break
+      lineEnd = limit;
+    }
+    int end = lineEnd;
+    if (end > position && buffer[end - 1] == '\r') {
+      end--;
+    }
+    // Request head is made of ISO-8859-1 characters
+    String line = new String(buffer, position, end - position,
+                             StandardCharsets.ISO_8859_1);
+    position = Math.min(lineEnd + 1, limit);
+    return line;
+  }
+
+  /**
+   * Make sure some bytes are buffered, reading the client if none are
+   * Used once the head is consumed, to read the body
+   *
+   * @return the number of buffered bytes, from {@link #getPosition()}, -1 if
+   *     the client has nothing more to send
+   */
+  public int buffered() throws IOException {
+    if (position < limit) {
+      return limit - position;
+    }
+    if (eof) {
+      return -1;
+    }
+    // Everything is consumed, the whole buffer is free
+    position = 0;
+    limit = 0;
+    int read = receive(buffer, 0, buffer.length);
+    if (read < 0) {
+      eof = true;
+      return -1;
+    }
+    limit = read;
+    return read;
+  }
+
+  /**
+   * Consume bytes into a buffer
+   * Large reads into a heap buffer are not copied through this input
+   *
+   * @param dst The buffer to fill
+   * @param max The maximum number of bytes to consume
+   * @return the number of bytes consumed, -1 if the client has nothing more to
+   *     send
+   */
+  public int read(ByteBuffer dst, int max) throws IOException {
+    int length = Math.min(max, dst.remaining());
+    if (position == limit && !eof && dst.hasArray() && length >= buffer.length) {
+      int read =
+          receive(dst.array(), dst.arrayOffset() + dst.position(), length);
+      if (read < 0) {
+        eof = true;
+        return -1;
+      }
+      dst.position(dst.position() + read);
+      return read;
+    }
+    int available = buffered();
+    if (available < 0) {
+      return -1;
+    }
+    length = Math.min(length, available);
+    dst.put(buffer, position, length);
+    position += length;
+    return length;
+  }
+
+  /**
+   * Consume the bytes until the index
+   *
+   * @param index The index of the next byte to consume
+   */
+  public void skipTo(int index) { this.position = index; }
+}
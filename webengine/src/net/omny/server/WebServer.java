@@ -1,24 +1,38 @@
 package net.omny.server;
 
 import com.moandjiezana.toml.Toml;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.Getter;
+import lombok.Setter;
 import net.omny.cache.CachingRequest;
+import net.omny.exceptions.HeadTooLargeException;
 import net.omny.exceptions.MalformedRequestException;
+import net.omny.exceptions.PayloadTooLargeException;
+import net.omny.route.Code;
 import net.omny.route.Request;
+import net.omny.route.Response;
+import net.omny.route.RequestContext;
 import net.omny.route.Router;
 import net.omny.route.middleware.StaticFileMiddleware;
 import net.omny.utils.ConfigFile;
 import net.omny.utils.Debug;
 import net.omny.utils.Ex;
+import net.omny.utils.HTTPUtils.Headers;
+import net.omny.utils.HTTPUtils.Version;
+import net.omny.utils.HttpClock;
 
 public abstract class WebServer {
 
@@ -47,24 +61,54 @@ public abstract class WebServer {
       // TODO replace this value with either value from configFile or value
       // depending on system capabilities
       webServer.threadPool = Executors.newScheduledThreadPool(4);
+      webServer.threadPoolSize = 4;
     }
+    HttpClock.start(webServer.threadPool);
+    if (webServer.admission == null) {
+      webServer.admission = new AdmissionControl(
+          webServer.maxConnections, webServer.maxQueue, webServer.queueTarget,
+          // One thread of the pool accepts the connections
+          Math.max(webServer.threadPoolSize - 1, 1));
+    }
+    AdmissionControl admission = webServer.admission;
 
     webServer.init();
 
     webServer.threadPool.submit(() -> {
       // Run the server
-      try (ServerSocket serverSocket = new ServerSocket(webServer.port)) {
+      // Opened as a channel, so the sockets of the clients have a channel to
+      // write direct buffers to
+      try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+        serverChannel.bind(new InetSocketAddress(webServer.port));
         Debug.debug("Thread pool has " + webServer.threadPoolSize +
                     " threads.");
         Debug.debug("Listening on port " + webServer.port);
         webServer.running.set(true);
         while (webServer.running.get()) {
-          Socket client = serverSocket.accept();
-          webServer.threadPool.submit(() -> {
-            Debug.debug(Thread.currentThread().getName() + " is handling " +
-                        client.getInetAddress());
-            Ex.grab(() -> webServer.handler(client));
-          });
+          Socket client = serverChannel.accept().socket();
+          long admittedAt = admission.admit();
+          if (admittedAt < 0) {
+            // Answered now rather than after the connections already waiting
+            Ex.grab(() -> webServer.shed(client));
+            continue;
+          }
+          try {
+            webServer.threadPool.submit(() -> {
+              if (!admission.begin(admittedAt)) {
+                Ex.grab(() -> webServer.shed(client));
+                return;
+              }
+              if (Debug.ENABLE) {
+                Debug.debug(Thread.currentThread().getName() +
+                            " is handling " + client.getInetAddress());
+              }
+              // A parked request stays in flight until its response is sent
+              Ex.grab(() -> webServer.handler(client, admission::end));
+            });
+          } catch (RejectedExecutionException e) {
+            admission.cancel();
+            Ex.grab(() -> webServer.shed(client));
+          }
         }
       } catch (Exception e) {
         e.printStackTrace();
@@ -72,6 +116,13 @@ public abstract class WebServer {
     });
   }
 
+  private static final byte[] AUTHORIZATION =
+      (Headers.AUTHORIZATION.toLowerCase() + ":").getBytes();
+  private static final byte[] CONTENT_LENGTH =
+      (Headers.CONTENT_LENGTH.toLowerCase() + ":").getBytes();
+  private static final byte[] TRANSFER_ENCODING =
+      (Headers.TRANSFER_ENCODING.toLowerCase() + ":").getBytes();
+
   // Default fields
   @Getter protected Router router = new Router(this);
   @Getter protected int port = (int)ConfigFile.DEFAULT_PORT;
@@ -80,6 +131,54 @@ public abstract class WebServer {
   @Getter private int threadPoolSize;
   @Getter private ScheduledExecutorService threadPool;
   @Getter private CachingRequest caching;
+  /**
+   * Bodies larger than this are answered 413 Payload Too Large
+   */
+  @Getter @Setter private long maxBodySize = ConfigFile.DEFAULT_MAX_BODY_SIZE;
+  /**
+   * Connections accepted and not answered yet at most
+   */
+  @Getter @Setter
+  private int maxConnections = (int)ConfigFile.DEFAULT_MAX_CONNECTIONS;
+  /**
+   * Connections waiting for a thread at most
+   */
+  @Getter @Setter private int maxQueue = (int)ConfigFile.DEFAULT_MAX_QUEUE;
+  /**
+   * How long (in ms) a connection may wait for a thread, 0 for no limit
+   */
+  @Getter @Setter private long queueTarget = ConfigFile.DEFAULT_QUEUE_TARGET;
+  /**
+   * Request lines longer than this are answered 414 URI Too Long
+   */
+  @Getter @Setter
+  private int maxRequestLine = (int)ConfigFile.DEFAULT_MAX_REQUEST_LINE;
+  /**
+   * Request heads larger than this are answered 431 Request Header Fields Too
+   * Large
+   */
+  @Getter @Setter
+  private int maxHeadSize = (int)ConfigFile.DEFAULT_MAX_HEAD_SIZE;
+  /**
+   * How long (in ms) a read may wait for bytes, 0 for ever
+   */
+  @Getter @Setter private long readTimeout = ConfigFile.DEFAULT_READ_TIMEOUT;
+  /**
+   * How long (in ms) a client may take to send the head, 0 for ever
+   */
+  @Getter @Setter private long headTimeout = ConfigFile.DEFAULT_HEAD_TIMEOUT;
+  /**
+   * How long (in ms) a client may take to send the body, 0 for ever
+   */
+  @Getter @Setter private long bodyTimeout = ConfigFile.DEFAULT_BODY_TIMEOUT;
+  /**
+   * The bytes per second a client must send, 0 for any rate
+   */
+  @Getter @Setter private long minDataRate = ConfigFile.DEFAULT_MIN_DATA_RATE;
+  /**
+   * The connections admitted and shed, created when the server is launched
+   */
+  @Getter private AdmissionControl admission;
 
   public WebServer(String configFile) {
     this();
@@ -116,6 +215,31 @@ public abstract class WebServer {
     Toml toml = new Toml().read(new File(configFile));
     this.port =
         toml.getLong(ConfigFile.PORT, ConfigFile.DEFAULT_PORT).intValue();
+    this.maxBodySize = toml.getLong(ConfigFile.MAX_BODY_SIZE,
+                                    ConfigFile.DEFAULT_MAX_BODY_SIZE);
+    this.maxConnections =
+        toml.getLong(ConfigFile.MAX_CONNECTIONS,
+                     ConfigFile.DEFAULT_MAX_CONNECTIONS)
+            .intValue();
+    this.maxQueue =
+        toml.getLong(ConfigFile.MAX_QUEUE, ConfigFile.DEFAULT_MAX_QUEUE)
+            .intValue();
+    this.queueTarget = toml.getLong(ConfigFile.QUEUE_TARGET,
+                                    ConfigFile.DEFAULT_QUEUE_TARGET);
+    this.maxRequestLine = toml.getLong(ConfigFile.MAX_REQUEST_LINE,
+                                       ConfigFile.DEFAULT_MAX_REQUEST_LINE)
+                              .intValue();
+    this.maxHeadSize = toml.getLong(ConfigFile.MAX_HEAD_SIZE,
+                                    ConfigFile.DEFAULT_MAX_HEAD_SIZE)
+                           .intValue();
+    this.readTimeout = toml.getLong(ConfigFile.READ_TIMEOUT,
+                                    ConfigFile.DEFAULT_READ_TIMEOUT);
+    this.headTimeout = toml.getLong(ConfigFile.HEAD_TIMEOUT,
+                                    ConfigFile.DEFAULT_HEAD_TIMEOUT);
+    this.bodyTimeout = toml.getLong(ConfigFile.BODY_TIMEOUT,
+                                    ConfigFile.DEFAULT_BODY_TIMEOUT);
+    this.minDataRate = toml.getLong(ConfigFile.MIN_DATA_RATE,
+                                    ConfigFile.DEFAULT_MIN_DATA_RATE);
     return toml;
   }
 
@@ -128,7 +252,9 @@ public abstract class WebServer {
     this.router.middleware(new StaticFileMiddleware());
     route(this.router);
     this.router.setRouted(true);
-    System.out.println(this.router.getMiddlewares());
+    if (Debug.ENABLE) {
+      Debug.debug("Middlewares " + this.router.getMiddlewares());
+    }
   }
 
   /**
@@ -138,6 +264,11 @@ public abstract class WebServer {
    * @param runnable The function to run in background
    */
   public void background(Runnable runnable) {
+    if (this.threadPool == null) {
+      // Not launched (eg: routes served by tests)
+      ForkJoinPool.commonPool().execute(runnable);
+      return;
+    }
     this.threadPool.submit(runnable);
   }
 
@@ -162,49 +293,166 @@ public abstract class WebServer {
    * @date 08/08/2021
    */
   public void handler(Socket clientSocket) throws IOException {
+    handler(clientSocket, null);
+  }
+
+  /**
+   * The handler of clientSocket
+   *
+   * @param clientSocket
+   * @param answered Run once the client is answered, by the thread sending the
+   *     response if the request is parked, null for nothing
+   * @throws IOException
+   */
+  public void handler(Socket clientSocket, Runnable answered)
+      throws IOException {
+    boolean parked = false;
+    try {
+      parked = handle(clientSocket, answered);
+    } finally {
+      if (!parked && answered != null) {
+        answered.run();
+      }
+    }
+  }
+
+  /**
+   * @return true if the request is parked, answered later by another thread
+   */
+  private boolean handle(Socket clientSocket, Runnable answered)
+      throws IOException {
     Debug.reset("handle_request");
+    // Responses are written whole, a last small write must not wait for an ack
+    clientSocket.setTcpNoDelay(true);
 
-    BufferedReader br = new BufferedReader(
-        new InputStreamReader(clientSocket.getInputStream()));
-    String headerLine = br.readLine();
+    // The buffers and the request of this thread, recycled once answered
+    RequestContext context = RequestContext.open(
+        clientSocket.getInputStream(), clientSocket.getOutputStream());
+    ClientInput input = context.getInput();
+    // A slow client holds a thread, it is given a deadline per part of the
+    // request and a minimum rate
+    input.setMaxLineSize(this.maxRequestLine);
+    input.setMaxHeadSize(this.maxHeadSize);
+    input.bind(clientSocket, this.readTimeout);
+    input.deadline(this.headTimeout, this.minDataRate);
+    boolean parked = false;
     try {
-      if (headerLine == null) {
-        throw new MalformedRequestException("readLine() returns 'null'");
+      int headEnd = input.findHeadEnd();
+      if (headEnd >= 0 && !input.hasHeader(AUTHORIZATION, headEnd) &&
+          !input.hasHeader(CONTENT_LENGTH, headEnd) &&
+          !input.hasHeader(TRANSFER_ENCODING, headEnd)) {
+        // Fast path: the cached response is looked up with the raw bytes of
+        // the request line, no Request is created
+        int lineEnd = input.findLineEnd();
+        byte[] rawResponse =
+            this.caching.lookup(input.getBuffer(), input.getPosition(),
+                                trimCR(input.getBuffer(), lineEnd));
+        if (rawResponse != null) {
+          input.skipTo(headEnd);
+          clientSocket.getOutputStream().write(rawResponse);
+          clientSocket.close();
+          Debug.time("handle_request",
+                     "Cached request processed in {ms} ms.");
+          return false;
+        }
       }
-      Request request = Request.lightWeight(headerLine);
 
-      int count = this.caching.countRequest(request.getPath());
-      if (count > 0) {
-        byte[] rawResponse = this.caching.get(request.getPath());
-        Debug.debug("Accessed cached request '" + request.getPath() +
-                    "' (access : " + count + ")");
-        clientSocket.getOutputStream().write(rawResponse);
-        try {
-          this.caching.cacheRequest(request.getPath());
-        } catch (IllegalAccessException e) {
-          e.printStackTrace();
+      if (headEnd < 0) {
+        if (input.getPosition() == input.getLimit()) {
+          throw new MalformedRequestException("empty request");
         }
-      } else {
-        StringBuilder requestBuilder = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null && !line.isBlank()) {
-          // Following the RFC at this link:
-          // https://datatracker.ietf.org/doc/html/rfc2616 Line breaking is
-          // describe as CR LF => \r \n
-          requestBuilder.append(line + "\r\n");
+        // The client stopped sending before the empty line
+        headEnd = input.getLimit();
+      }
+      Request request = context.parseRequest(headEnd, this.maxBodySize);
+      request.whenAnswered(answered);
+      // Counted from the first read of the body
+      input.deadline(this.bodyTimeout, this.minDataRate);
+
+      // The cached response depends on the method, the target and the headers
+      // the route varies on, so the cache is looked up once headers are read
+      byte[] rawResponse = this.caching.lookup(request);
+      if (rawResponse != null) {
+        if (Debug.ENABLE) {
+          Debug.debug("Accessed cached request '" + request.getPath() + "'");
         }
-        request.readFurther(requestBuilder.toString());
+        clientSocket.getOutputStream().write(rawResponse);
+      } else {
         this.router.handleRoute(this, request, clientSocket);
       }
-      clientSocket.close();
-      Debug.time("handle_request", request.getMethod() + " on '" +
-                                       request.getPath() +
-                                       "' processed in {ms} ms.");
-    } catch (MalformedRequestException e) {
-      if (!clientSocket.isClosed()) {
-        this.router.sendMalformed(clientSocket);
+      parked = request.isParked();
+      if (!parked) {
+        // What the route didn't read of the body is read before closing, a
+        // socket closed with unread bytes is reset and the response may be
+        // lost
+        context.discardBody(RequestContext.DISCARD_LIMIT);
         clientSocket.close();
       }
+      if (Debug.ENABLE) {
+        Debug.time("handle_request", request.getMethod() + " on '" +
+                                         request.getPath() +
+                                         "' processed in {ms} ms.");
+      }
+    } catch (PayloadTooLargeException e) {
+      sendError(clientSocket, Code.E413_PAYLOAD_TOO_LARGE);
+    } catch (HeadTooLargeException e) {
+      sendError(clientSocket, e.getCode());
+    } catch (SocketTimeoutException e) {
+      sendError(clientSocket, Code.E408_REQUEST_TIMEOUT);
+    } catch (MalformedRequestException | ProtocolException e) {
+      sendError(clientSocket, Code.E400_BAD_REQUEST);
+    } catch (UncheckedIOException e) {
+      // The body read by the route is too large or malformed
+      if (e.getCause() instanceof PayloadTooLargeException) {
+        sendError(clientSocket, Code.E413_PAYLOAD_TOO_LARGE);
+      } else if (e.getCause() instanceof SocketTimeoutException) {
+        sendError(clientSocket, Code.E408_REQUEST_TIMEOUT);
+      } else if (e.getCause() instanceof ProtocolException) {
+        sendError(clientSocket, Code.E400_BAD_REQUEST);
+      } else {
+        throw e;
+      }
+    } finally {
+      context.close();
     }
+    return parked;
+  }
+
+  /**
+   * Answer with an error, the socket is closed
+   */
+  private void sendError(Socket clientSocket, Code code) throws IOException {
+    if (!clientSocket.isClosed()) {
+      this.router.sendError(clientSocket, code);
+      clientSocket.close();
+    }
+  }
+
+  /**
+   * Answer 503 to a connection which isn't admitted, without reading its
+   * request, the socket is closed
+   */
+  private void shed(Socket clientSocket) throws IOException {
+    try {
+      Response response =
+          new Response(Code.E503_SERVICE_UNAVAILABLE, Version.V1_1);
+      try {
+        response.setHeader(Headers.RETRY_AFTER, "1");
+        response.writeTo(clientSocket.getOutputStream());
+      } finally {
+        response.release();
+      }
+      clientSocket.shutdownOutput();
+      // What the client already sent is dropped, a socket closed with unread
+      // bytes is reset and the response may be lost
+      InputStream in = clientSocket.getInputStream();
+      in.skip(Math.min(in.available(), RequestContext.DISCARD_LIMIT));
+    } finally {
+      clientSocket.close();
+    }
+  }
+
+  private static int trimCR(byte[] buffer, int lineEnd) {
+    return lineEnd > 0 && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
   }
 }
@@ -0,0 +1,178 @@
+package net.omny.template;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.utils.ByteStack;
+import net.omny.utils.HttpClock;
+
+/**
+ * The rendered bytes of the {@code #{cache}} blocks of templates
+ *
+ * A fragment is found by its block and the value of the key of the block, it
+ * is copied in the output instead of rendering the block until its time to
+ * live is over. The cache is bounded in entries and in bytes: past a bound,
+ * the expired fragments then the least recently used among a few are removed.
+ */
+public final class FragmentCache {
+
+    /**
+     * Used by the templates
+     */
+    public static final FragmentCache SHARED = new FragmentCache();
+
+    /**
+     * Fragments looked at to choose one to remove
+     */
+    private static final int SAMPLE = 8;
+
+    private final Map<Key, Fragment> fragments = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Getter
+    @Setter
+    private int maxEntries = 10_000;
+    /**
+     * Bytes of the fragments, a larger fragment isn't stored
+     */
+    @Getter
+    @Setter
+    private long maxBytes = 16 * 1024 * 1024;
+
+    /**
+     * Write a fragment if it is cached
+     *
+     * @param block The block of the template
+     * @param key   The value of the key of the block
+     * @param out   The output
+     * @return true if written, false if the block must be rendered
+     */
+    boolean write(Object block, Object key, ByteStack out) {
+        Key fragmentKey = new Key(block, String.valueOf(key));
+        Fragment fragment = this.fragments.get(fragmentKey);
+        if (fragment != null) {
+            long now = HttpClock.millis();
+            if (fragment.expiresAt > now) {
+                if (fragment.usedAt != now) {
+                    fragment.usedAt = now;
+                }
+                out.addAllBytes(fragment.bytes);
+                this.hits.increment();
+                return true;
+            }
+            remove(fragmentKey, fragment);
+        }
+        this.misses.increment();
+        return false;
+    }
+
+    /**
+     * Store what a block rendered
+     *
+     * @param block The block of the template
+     * @param key   The value of the key of the block
+     * @param ttl   How long (in ms) the fragment is used
+     * @param out   The output
+     * @param from  Where the rendering of the block starts in the output
+     */
+    void store(Object block, Object key, long ttl, ByteStack out, int from) {
+        int length = out.size() - from;
+        if (length > this.maxBytes) {
+            return;
+        }
+        long now = HttpClock.millis();
+        Fragment fragment = new Fragment(Arrays.copyOfRange(out.getBackedArray(), from, out.size()), now + ttl, now);
+        Fragment previous = this.fragments.put(new Key(block, String.valueOf(key)), fragment);
+        this.bytes.addAndGet(length - (previous == null ? 0 : previous.bytes.length));
+        if (isFull()) {
+            evict(now);
+        }
+    }
+
+    private boolean isFull() {
+        return this.fragments.size() > this.maxEntries || this.bytes.get() > this.maxBytes;
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<Key, Fragment>> iterator = this.fragments.entrySet().iterator();
+        while (isFull() && iterator.hasNext()) {
+            Map.Entry<Key, Fragment> oldest = null;
+            for (int i = 0; i < SAMPLE && iterator.hasNext(); i++) {
+                Map.Entry<Key, Fragment> entry = iterator.next();
+                if (entry.getValue().expiresAt <= now) {
+                    remove(entry.getKey(), entry.getValue());
+                } else if (oldest == null || entry.getValue().usedAt < oldest.getValue().usedAt) {
+                    oldest = entry;
+                }
+            }
+            if (oldest != null && isFull()) {
+                remove(oldest.getKey(), oldest.getValue());
+            }
+        }
+    }
+
+    private void remove(Key key, Fragment fragment) {
+        if (this.fragments.remove(key, fragment)) {
+            this.bytes.addAndGet(-fragment.bytes.length);
+        }
+    }
+
+    public void clear() {
+        this.fragments.clear();
+        this.bytes.set(0);
+    }
+
+    /**
+     * @return the count of fragments
+     */
+    public int size() {
+        return this.fragments.size();
+    }
+
+    /**
+     * @return the bytes of the fragments
+     */
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * @return how many blocks were written from the cache
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return how many blocks were rendered
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    private record Key(Object block, String key) {
+    }
+
+    private static final class Fragment {
+
+        private final byte[] bytes;
+        private final long expiresAt;
+        private volatile long usedAt;
+
+        private Fragment(byte[] bytes, long expiresAt, long usedAt) {
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+            this.usedAt = usedAt;
+        }
+
+    }
+
+}
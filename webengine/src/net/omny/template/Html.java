@@ -0,0 +1,75 @@
+package net.omny.template;
+
+import java.nio.charset.StandardCharsets;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * Escaping of the values written in HTML
+ */
+public final class Html {
+
+    private static final byte[] AMP = "&amp;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LT = "&lt;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GT = "&gt;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUOT = "&quot;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] APOS = "&#39;".getBytes(StandardCharsets.US_ASCII);
+
+    private Html() {
+    }
+
+    /**
+     * Push a value encoded in UTF-8, the characters that have a meaning in HTML
+     * (&amp; &lt; &gt; &quot; ') replaced by entities, so it can be written in
+     * text and in attribute values
+     * The runs of characters without meaning are pushed whole
+     *
+     * @param value The value
+     * @param out   The stack to push to
+     */
+    public static void escape(String value, ByteStack out) {
+        int length = value.length();
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            byte[] entity;
+            switch (value.charAt(i)) {
+                case '&':
+                    entity = AMP;
+                    break;
+                case '<':
+                    entity = LT;
+                    break;
+                case '>':
+                    entity = GT;
+                    break;
+                case '"':
+                    entity = QUOT;
+                    break;
+                case '\'':
+                    entity = APOS;
+                    break;
+                default:
+                    continue;
+            }
+            if (i > last) {
+                out.addString(value, last, i);
+            }
+            out.addAllBytes(entity);
+            last = i + 1;
+        }
+        if (last < length) {
+            out.addString(value, last, length);
+        }
+    }
+
+    /**
+     * @param value The value
+     * @return the value escaped, see {@link #escape(String, ByteStack)}
+     */
+    public static String escape(String value) {
+        ByteStack out = new ByteStack(value.length() + 16);
+        escape(value, out);
+        return new String(out.getBackedArray(), 0, out.size(), StandardCharsets.UTF_8);
+    }
+
+}
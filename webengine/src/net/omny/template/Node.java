@@ -0,0 +1,193 @@
+package net.omny.template;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * A part of a parsed template, rendered by walking the nodes when the template
+ * isn't compiled
+ *
+ * The variables of the loops are resolved when parsing: each one has a slot in
+ * the locals of the rendering, the other names are looked up in the values.
+ */
+abstract class Node {
+
+    abstract void render(Map<String, ?> values, Object[] locals, ByteStack out);
+
+    static void render(List<Node> nodes, Map<String, ?> values, Object[] locals, ByteStack out) {
+        for (int i = 0, size = nodes.size(); i < size; i++) {
+            nodes.get(i).render(values, locals, out);
+        }
+    }
+
+    /**
+     * {@code name}, {@code item.name} or {@code user.address.city}
+     */
+    static final class Expression {
+
+        final String text;
+        /**
+         * The first name when it isn't a loop variable
+         */
+        final String root;
+        /**
+         * The slot of the loop variable, -1 for a name of the values
+         */
+        final int local;
+        final String[] properties;
+
+        Expression(String text, String root, int local, String[] properties) {
+            this.text = text;
+            this.root = root;
+            this.local = local;
+            this.properties = properties;
+        }
+
+        Object evaluate(Map<String, ?> values, Object[] locals) {
+            Object value = this.local >= 0 ? locals[this.local] : values == null ? null : values.get(this.root);
+            for (String property : this.properties) {
+                value = Rendering.property(value, property);
+            }
+            return value;
+        }
+
+    }
+
+    static final class Text extends Node {
+
+        final byte[] bytes;
+
+        Text(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        void render(Map<String, ?> values, Object[] locals, ByteStack out) {
+            out.addAllBytes(this.bytes);
+        }
+
+    }
+
+    /**
+     * {@code #{expression}} or {@code #!{expression}}
+     */
+    static final class Value extends Node {
+
+        final Expression expression;
+        final boolean raw;
+        /**
+         * Written when the value is null
+         */
+        final byte[] placeholder;
+
+        Value(Expression expression, boolean raw, byte[] placeholder) {
+            this.expression = expression;
+            this.raw = raw;
+            this.placeholder = placeholder;
+        }
+
+        @Override
+        void render(Map<String, ?> values, Object[] locals, ByteStack out) {
+            Object value = this.expression.evaluate(values, locals);
+            if (this.raw) {
+                Rendering.writeRaw(value, out, this.placeholder);
+            } else {
+                Rendering.writeEscaped(value, out, this.placeholder);
+            }
+        }
+
+    }
+
+    /**
+     * {@code #{each item in expression}...#{end}}
+     */
+    static final class Each extends Node {
+
+        final int local;
+        final Expression expression;
+        final List<Node> body;
+
+        Each(int local, Expression expression, List<Node> body) {
+            this.local = local;
+            this.expression = expression;
+            this.body = body;
+        }
+
+        @Override
+        void render(Map<String, ?> values, Object[] locals, ByteStack out) {
+            Iterator<?> iterator = Rendering.iterator(this.expression.evaluate(values, locals));
+            while (iterator.hasNext()) {
+                locals[this.local] = iterator.next();
+                render(this.body, values, locals, out);
+            }
+            locals[this.local] = null;
+        }
+
+    }
+
+    /**
+     * {@code #{if expression}...#{else}...#{end}}, {@code #{if !expression}} for
+     * the negation
+     */
+    static final class If extends Node {
+
+        final Expression expression;
+        final boolean negated;
+        final List<Node> then;
+        final List<Node> otherwise;
+
+        If(Expression expression, boolean negated, List<Node> then, List<Node> otherwise) {
+            this.expression = expression;
+            this.negated = negated;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        void render(Map<String, ?> values, Object[] locals, ByteStack out) {
+            boolean truthy = Rendering.truthy(this.expression.evaluate(values, locals));
+            render(truthy != this.negated ? this.then : this.otherwise, values, locals, out);
+        }
+
+    }
+
+    /**
+     * {@code #{cache ttl key}...#{end}}, written from the {@link FragmentCache}
+     * until its time to live is over
+     */
+    static final class Cache extends Node {
+
+        /**
+         * The slot of the key and of the start of the fragment once compiled
+         */
+        final int local;
+        /**
+         * null for one fragment whatever the values
+         */
+        final Expression key;
+        final long ttl;
+        final List<Node> body;
+
+        Cache(int local, Expression key, long ttl, List<Node> body) {
+            this.local = local;
+            this.key = key;
+            this.ttl = ttl;
+            this.body = body;
+        }
+
+        @Override
+        void render(Map<String, ?> values, Object[] locals, ByteStack out) {
+            Object key = this.key == null ? null : this.key.evaluate(values, locals);
+            int from = Rendering.enterFragment(this, key, out);
+            if (from >= 0) {
+                render(this.body, values, locals, out);
+                Rendering.storeFragment(this, key, out, from);
+            }
+        }
+
+    }
+
+}
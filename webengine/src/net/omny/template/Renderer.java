@@ -0,0 +1,15 @@
+package net.omny.template;
+
+import java.util.Map;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * Render a template, implemented by the classes generated by
+ * {@link TemplateCompiler}, or by walking the nodes
+ */
+interface Renderer {
+
+    void render(Map<String, ?> values, ByteStack out);
+
+}
@@ -0,0 +1,287 @@
+package net.omny.template;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * What the rendering of a template calls, from the nodes of a parsed template
+ * as from the classes generated by {@link TemplateCompiler}
+ */
+final class Rendering {
+
+    /**
+     * Found when a property is read for the first time on a class
+     */
+    private static final ClassValue<Map<String, Function<Object, Object>>> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected Map<String, Function<Object, Object>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final Function<Object, Object> MISSING = target -> null;
+    private static final Lookup LOOKUP = MethodHandles.lookup();
+
+    private Rendering() {
+    }
+
+    /**
+     * Write a value escaped for HTML
+     *
+     * @param value       The value, null writes the placeholder
+     * @param out         The buffer
+     * @param placeholder The expression as written in the template
+     */
+    static void writeEscaped(Object value, ByteStack out, byte[] placeholder) {
+        if (value == null) {
+            out.addAllBytes(placeholder);
+        } else {
+            Html.escape(value instanceof String ? (String) value : String.valueOf(value), out);
+        }
+    }
+
+    /**
+     * Write a value as is
+     *
+     * @param value       The value, null writes the placeholder
+     * @param out         The buffer
+     * @param placeholder The expression as written in the template
+     */
+    static void writeRaw(Object value, ByteStack out, byte[] placeholder) {
+        if (value == null) {
+            out.addAllBytes(placeholder);
+        } else {
+            out.addString(value instanceof String ? (String) value : String.valueOf(value));
+        }
+    }
+
+    /**
+     * Write the cached fragment of a {@code #{cache}} block
+     *
+     * @param block The block
+     * @param key   The value of its key
+     * @param out   The buffer
+     * @return -1 if written, otherwise where the block starts rendering in the
+     *         buffer
+     */
+    static int enterFragment(Node.Cache block, Object key, ByteStack out) {
+        return FragmentCache.SHARED.write(block, key, out) ? -1 : out.size();
+    }
+
+    /**
+     * Keep what a {@code #{cache}} block rendered
+     *
+     * @param block The block
+     * @param key   The value of its key
+     * @param out   The buffer
+     * @param from  Where the block started rendering
+     */
+    static void storeFragment(Node.Cache block, Object key, ByteStack out, int from) {
+        FragmentCache.SHARED.store(block, key, block.ttl, out, from);
+    }
+
+    /**
+     * The value of {@code #{if value}}: false for null, false, an empty string,
+     * collection, map or array and zero
+     *
+     * @param value The value
+     * @return if the block is rendered
+     */
+    static boolean truthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() > 0;
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        if (value.getClass().isArray()) {
+            return Array.getLength(value) > 0;
+        }
+        return true;
+    }
+
+    /**
+     * The elements of {@code #{each item in value}}
+     *
+     * @param value An iterable, an array, or a map (its entries), null is empty
+     * @return the iterator
+     */
+    static Iterator<?> iterator(Object value) {
+        if (value == null) {
+            return Collections.emptyIterator();
+        }
+        if (value instanceof Iterable) {
+            return ((Iterable<?>) value).iterator();
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).entrySet().iterator();
+        }
+        if (value.getClass().isArray()) {
+            return new ArrayIterator(value);
+        }
+        throw new TemplateException("Can't iterate over " + value.getClass().getName());
+    }
+
+    /**
+     * Read a property: the value of a map, or a public getter ({@code getName()},
+     * {@code isName()}), accessor ({@code name()}, as of records) or field
+     *
+     * @param target The object
+     * @param name   The property
+     * @return its value, null if the target is null or has no such property
+     */
+    static Object property(Object target, String name) {
+        if (target == null) {
+            return null;
+        }
+        if (target instanceof Map) {
+            return ((Map<?, ?>) target).get(name);
+        }
+        Map<String, Function<Object, Object>> accessors = ACCESSORS.get(target.getClass());
+        Function<Object, Object> accessor = accessors.get(name);
+        if (accessor == null) {
+            accessor = accessor(target.getClass(), name);
+            accessors.put(name, accessor);
+        }
+        return accessor.apply(target);
+    }
+
+    private static Function<Object, Object> accessor(Class<?> type, String name) {
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String methodName : new String[] { "get" + capitalized, "is" + capitalized, name }) {
+            Method method = publicMethod(type, methodName);
+            if (method != null && method.getReturnType() != void.class) {
+                return getter(type, name, method);
+            }
+        }
+        try {
+            Field field = type.getField(name);
+            if (!Modifier.isStatic(field.getModifiers()) && Modifier.isPublic(field.getDeclaringClass().getModifiers())) {
+                return target -> {
+                    try {
+                        return field.get(target);
+                    } catch (IllegalAccessException e) {
+                        throw new TemplateException("Can't read " + name + " of " + type.getName(), e);
+                    }
+                };
+            }
+        } catch (NoSuchFieldException e) {
+            // Not a field either
+        }
+        return MISSING;
+    }
+
+    /**
+     * A function calling the getter, as a lambda would, instead of calling it by
+     * reflection
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(Class<?> type, String name, Method method) {
+        try {
+            MethodHandle getter = MethodHandles.publicLookup().unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), getter,
+                    MethodType.methodType(method.getReturnType(), method.getDeclaringClass()).wrap());
+            return (Function<Object, Object>) site.getTarget().invoke();
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            return target -> {
+                try {
+                    return method.invoke(target);
+                } catch (IllegalAccessException e2) {
+                    throw new TemplateException("Can't read " + name + " of " + type.getName(), e2);
+                } catch (InvocationTargetException e2) {
+                    throw new TemplateException("Reading " + name + " of " + type.getName() + " failed",
+                            e2.getCause());
+                }
+            };
+        }
+    }
+
+    /**
+     * A public method without parameters, declared by a public class or
+     * interface, so it can be called on instances of private classes (eg: the
+     * entries of a map)
+     */
+    private static Method publicMethod(Class<?> type, String name) {
+        if (type == null) {
+            return null;
+        }
+        if (Modifier.isPublic(type.getModifiers())) {
+            try {
+                Method method = type.getMethod(name);
+                if (!Modifier.isStatic(method.getModifiers())
+                        && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+        for (Class<?> interfaceType : type.getInterfaces()) {
+            Method method = publicMethod(interfaceType, name);
+            if (method != null) {
+                return method;
+            }
+        }
+        return publicMethod(type.getSuperclass(), name);
+    }
+
+    private static final class ArrayIterator implements Iterator<Object> {
+
+        private final Object array;
+        private final int length;
+        private int index;
+
+        private ArrayIterator(Object array) {
+            this.array = array;
+            this.length = Array.getLength(array);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < this.length;
+        }
+
+        @Override
+        public Object next() {
+            if (this.index >= this.length) {
+                throw new NoSuchElementException();
+            }
+            return Array.get(this.array, this.index++);
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package net.omny.template;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import net.omny.utils.ByteStack;
+
+/**
+ * A template parsed once, rendered by pushing its parts in a buffer
+ *
+ * The text between the variables is encoded in UTF-8 when the template is
+ * parsed, rendering copies these chunks and the values of the variables:
+ * no regex, and no string of the whole page is built.
+ * {@code #{name}} writes the value escaped for HTML, {@code #!{name}} writes it
+ * as is. A variable without value is written as it is in the template.
+ * {@code #{include file}}, {@code #{each item in list}} and
+ * {@code #{if value}} are described in {@link TemplateParser}.
+ *
+ * A compiled template is rendered by a generated class (see
+ * {@link TemplateCompiler}), a parsed one by walking its nodes. A template
+ * too large to be compiled is rendered as a parsed one.
+ */
+public final class Template {
+
+    private final List<Node> nodes;
+    private final int localCount;
+    private final Renderer renderer;
+    private final List<String> variables;
+    private final List<Path> files;
+    /**
+     * Length of the last rendering, the buffer is grown once to about the size
+     * of the page instead of growing again when the values don't fit
+     */
+    private volatile int renderedLength;
+
+    private Template(List<Node> nodes, TemplateParser parser, boolean compile) {
+        this.nodes = nodes;
+        this.localCount = parser.getLocalCount();
+        this.variables = List.copyOf(parser.getExpressions());
+        this.files = parser.getFiles();
+        this.renderer = compile ? TemplateCompiler.compile(nodes, this.localCount) : null;
+        int length = 0;
+        for (Node node : nodes) {
+            if (node instanceof Node.Text) {
+                length += ((Node.Text) node).bytes.length;
+            }
+        }
+        this.renderedLength = length;
+    }
+
+    /**
+     * Parse and compile a template, the includes are relative to the working
+     * directory
+     *
+     * @param source The text of the template
+     * @return the compiled template
+     * @throws TemplateException If the template is invalid
+     */
+    public static Template compile(String source) {
+        return of(source, true);
+    }
+
+    /**
+     * Parse and compile the template of a file, the includes are relative to
+     * its directory
+     *
+     * @param file The template file
+     * @return the compiled template
+     * @throws IOException       If the file or an included one can't be read
+     * @throws TemplateException If the template is invalid
+     */
+    public static Template compile(Path file) throws IOException {
+        TemplateParser parser = new TemplateParser();
+        return new Template(parser.parseFile(file), parser, true);
+    }
+
+    /**
+     * Parse a template without compiling it, rendered by walking its nodes
+     *
+     * @param source The text of the template
+     * @return the parsed template
+     * @throws TemplateException If the template is invalid
+     */
+    public static Template parse(String source) {
+        return of(source, false);
+    }
+
+    private static Template of(String source, boolean compile) {
+        TemplateParser parser = new TemplateParser();
+        try {
+            return new Template(parser.parse(source, null, "template"), parser, compile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Render the template at the end of a buffer
+     *
+     * @param values The values of the variables
+     * @param out    The buffer, eg: the body of the response
+     */
+    public void render(Map<String, ?> values, ByteStack out) {
+        int start = out.size();
+        out.ensureCapacity(start + this.renderedLength);
+        if (this.renderer != null) {
+            this.renderer.render(values, out);
+        } else {
+            Node.render(this.nodes, values, new Object[this.localCount], out);
+        }
+        this.renderedLength = out.size() - start;
+    }
+
+    /**
+     * @param values The values of the variables
+     * @return the rendered template
+     */
+    public String render(Map<String, ?> values) {
+        ByteStack out = new ByteStack(this.renderedLength + 64);
+        render(values, out);
+        return new String(out.getBackedArray(), 0, out.size(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the expressions of the values, loops and conditions, in the order
+     *         they are written
+     */
+    public List<String> getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * @return the files read: the file of the template, if it was read from one,
+     *         then the included ones
+     */
+    public List<Path> getFiles() {
+        return this.files;
+    }
+
+    /**
+     * @return if the template is rendered by a generated class
+     */
+    public boolean isCompiled() {
+        return this.renderer != null;
+    }
+
+}
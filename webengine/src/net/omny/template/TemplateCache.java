@@ -0,0 +1,144 @@
+package net.omny.template;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.omny.utils.HttpClock;
+
+/**
+ * Compiled templates by file, compiled again once the file or a file it
+ * includes changes
+ *
+ * The modification time and the size of the files are checked at most once per
+ * {@link #getCheckInterval()}, so a template used by every request doesn't
+ * cost a system call each time.
+ */
+public final class TemplateCache {
+
+    /**
+     * Shared by the template routes
+     */
+    public static final TemplateCache SHARED = new TemplateCache();
+
+    private final Map<Path, Entry> templates = new ConcurrentHashMap<>();
+
+    /**
+     * How long (in ms) a template is used before its file is checked again, 0 to
+     * check it each time
+     */
+    @Getter
+    @Setter
+    private long checkInterval = 1000;
+
+    /**
+     * @param path The template file
+     * @return the compiled template, compiled again if a file changed
+     * @throws IOException       If a file can't be read
+     * @throws TemplateException If the template is invalid
+     */
+    public Template get(Path path) throws IOException {
+        Entry entry = this.templates.get(path);
+        long now = HttpClock.millis();
+        if (entry != null && now - entry.checkedAt < this.checkInterval) {
+            return entry.template;
+        }
+        if (entry != null && !entry.changed()) {
+            entry.checkedAt = now;
+            return entry.template;
+        }
+        // The files are checked before being read, a change made while the
+        // template compiles is seen by the next check
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        List<Path> known = entry != null ? entry.files : List.of(path);
+        Template template;
+        while (true) {
+            for (Path file : known) {
+                if (!attributes.containsKey(file)) {
+                    readAttributes(file, attributes);
+                }
+            }
+            template = Template.compile(path);
+            if (attributes.keySet().containsAll(template.getFiles())) {
+                break;
+            }
+            // Includes seen for the first time, compiled again once checked
+            known = template.getFiles();
+        }
+        List<Path> files = template.getFiles();
+        FileTime[] modified = new FileTime[files.size()];
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < modified.length; i++) {
+            BasicFileAttributes checked = attributes.get(files.get(i));
+            modified[i] = checked.lastModifiedTime();
+            sizes[i] = checked.size();
+        }
+        this.templates.put(path, new Entry(template, files, modified, sizes, now));
+        return template;
+    }
+
+    private static void readAttributes(Path file, Map<Path, BasicFileAttributes> attributes) throws IOException {
+        try {
+            attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            // No longer included, or the compilation reports it
+        }
+    }
+
+    /**
+     * Forget a template, it is compiled again when asked for
+     *
+     * @param path The template file
+     */
+    public void invalidate(Path path) {
+        this.templates.remove(path);
+    }
+
+    public void clear() {
+        this.templates.clear();
+    }
+
+    private static final class Entry {
+
+        private final Template template;
+        private final List<Path> files;
+        private final FileTime[] modified;
+        private final long[] sizes;
+        private volatile long checkedAt;
+
+        private Entry(Template template, List<Path> files, FileTime[] modified, long[] sizes, long checkedAt) {
+            this.template = template;
+            this.files = files;
+            this.modified = modified;
+            this.sizes = sizes;
+            this.checkedAt = checkedAt;
+        }
+
+        private boolean changed() throws IOException {
+            for (int i = 0; i < this.modified.length; i++) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(this.files.get(i), BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // An included file was removed, the template is compiled again
+                    return true;
+                }
+                if (!this.modified[i].equals(attributes.lastModifiedTime()) || this.sizes[i] != attributes.size()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,626 @@
+package net.omny.template;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.omny.utils.Debug;
+
+/**
+ * Generate the class of a parsed template
+ *
+ * Each node becomes a few instructions: a text pushes its bytes, a value calls
+ * {@link Rendering}, a loop iterates with its variable in a local, a condition
+ * is a branch. The JIT compiles it as any method, the calls of the rendering
+ * are inlined instead of dispatched on each node.
+ *
+ * The class is written in the format of Java 5 (version 49), that doesn't need
+ * the stack map frames of the later versions, and defined as a hidden class:
+ * it is unloaded with its template. The texts and the {@code #{cache}} blocks
+ * are given as class data and kept in static final arrays. The top level nodes are split in methods of
+ * less than 8000 bytes, the JIT doesn't compile larger methods.
+ */
+final class TemplateCompiler {
+
+    private static final Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String CLASS_NAME = "net/omny/template/CompiledTemplate";
+    private static final String RENDERER = "net/omny/template/Renderer";
+    private static final String RENDERING = "net/omny/template/Rendering";
+    private static final String BYTE_STACK = "net/omny/utils/ByteStack";
+    private static final String RENDER_DESCRIPTOR = "(Ljava/util/Map;Lnet/omny/utils/ByteStack;)V";
+    private static final String WRITE_DESCRIPTOR = "(Ljava/lang/Object;Lnet/omny/utils/ByteStack;[B)V";
+    private static final String LITERALS = "LITERALS";
+    private static final String LITERALS_DESCRIPTOR = "[[B";
+    private static final String BLOCKS = "BLOCKS";
+    private static final String CACHE_BLOCK = "net/omny/template/Node$Cache";
+    private static final String BLOCKS_DESCRIPTOR = "[L" + CACHE_BLOCK + ";";
+
+    /**
+     * Bytes of code of a method, under the 8000 bytes the JIT compiles
+     */
+    private static final int MAX_PART = 7000;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int AALOAD = 0x32;
+    private static final int ISTORE = 0x36;
+    private static final int ASTORE = 0x3a;
+    private static final int DUP = 0x59;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int GOTO = 0xa7;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private final ConstantPool pool = new ConstantPool();
+    /**
+     * The texts and placeholders, indexes in LITERALS
+     */
+    private final List<byte[]> literals = new ArrayList<>();
+    /**
+     * The {@code #{cache}} blocks, indexes in BLOCKS
+     */
+    private final List<Node.Cache> blocks = new ArrayList<>();
+    private final int localCount;
+
+    private TemplateCompiler(int localCount) {
+        this.localCount = localCount;
+    }
+
+    /**
+     * @param nodes      The parsed template
+     * @param localCount The slots of loop variables
+     * @return the renderer, null if the template can't be compiled (eg: too many
+     *         texts or nested loops, hidden classes not allowed), it is then
+     *         rendered by walking the nodes
+     */
+    static Renderer compile(List<Node> nodes, int localCount) {
+        try {
+            TemplateCompiler compiler = new TemplateCompiler(localCount);
+            byte[] classFile = compiler.classFile(nodes);
+            Object[] data = { compiler.literals.toArray(new byte[0][]), compiler.blocks.toArray(new Node.Cache[0]) };
+            Lookup lookup = LOOKUP.defineHiddenClassWithClassData(classFile, data, true);
+            return (Renderer) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (TooLargeException e) {
+            if (Debug.ENABLE) {
+                Debug.warn("Template not compiled: " + e.getMessage());
+            }
+            return null;
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            if (Debug.ENABLE) {
+                Debug.warn("Template not compiled: " + e);
+            }
+            return null;
+        }
+    }
+
+    private byte[] classFile(List<Node> nodes) {
+        // The locals are loaded by a one byte index
+        int maxLocals = 2 + 2 * this.localCount;
+        if (maxLocals > 255) {
+            throw new TooLargeException("too many nested loops");
+        }
+        // The code of each top level node, then packed in parts
+        List<Code> parts = new ArrayList<>();
+        Code part = new Code();
+        for (Node node : nodes) {
+            Code code = new Code();
+            node(code, node);
+            if (code.length() > MAX_PART) {
+                throw new TooLargeException("a block is larger than " + MAX_PART + " bytes of code");
+            }
+            if (part.length() + code.length() > MAX_PART) {
+                parts.add(part);
+                part = new Code();
+            }
+            part.append(code);
+        }
+        parts.add(part);
+
+        Code render = new Code();
+        for (int i = 0; i < parts.size(); i++) {
+            render.u1(ALOAD_1);
+            render.u1(ALOAD_2);
+            render.u1(INVOKESTATIC);
+            render.u2(this.pool.methodRef(CLASS_NAME, "part" + i, RENDER_DESCRIPTOR));
+        }
+        render.u1(RETURN);
+
+        Code constructor = new Code();
+        constructor.u1(ALOAD_0);
+        constructor.u1(INVOKESPECIAL);
+        constructor.u2(this.pool.methodRef("java/lang/Object", "<init>", "()V"));
+        constructor.u1(RETURN);
+
+        // Object[] data = MethodHandles.classData(MethodHandles.lookup(), "_", Object[].class)
+        // LITERALS = (byte[][]) data[0]; BLOCKS = (Node.Cache[]) data[1]
+        Code initializer = new Code();
+        initializer.u1(INVOKESTATIC);
+        initializer.u2(this.pool.methodRef("java/lang/invoke/MethodHandles", "lookup",
+                "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+        ldc(initializer, this.pool.string("_"));
+        ldc(initializer, this.pool.classRef("[Ljava/lang/Object;"));
+        initializer.u1(INVOKESTATIC);
+        initializer.u2(this.pool.methodRef("java/lang/invoke/MethodHandles", "classData",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"));
+        initializer.u1(CHECKCAST);
+        initializer.u2(this.pool.classRef("[Ljava/lang/Object;"));
+        initializer.u1(DUP);
+        initializer.u1(ICONST_0);
+        initializer.u1(AALOAD);
+        initializer.u1(CHECKCAST);
+        initializer.u2(this.pool.classRef(LITERALS_DESCRIPTOR));
+        initializer.u1(PUTSTATIC);
+        initializer.u2(this.pool.fieldRef(CLASS_NAME, LITERALS, LITERALS_DESCRIPTOR));
+        initializer.u1(ICONST_1);
+        initializer.u1(AALOAD);
+        initializer.u1(CHECKCAST);
+        initializer.u2(this.pool.classRef(BLOCKS_DESCRIPTOR));
+        initializer.u1(PUTSTATIC);
+        initializer.u2(this.pool.fieldRef(CLASS_NAME, BLOCKS, BLOCKS_DESCRIPTOR));
+        initializer.u1(RETURN);
+
+        Code methods = new Code();
+        method(methods, ACC_PUBLIC, "<init>", "()V", constructor, 1, 1);
+        method(methods, ACC_STATIC, "<clinit>", "()V", initializer, 3, 0);
+        method(methods, ACC_PUBLIC, "render", RENDER_DESCRIPTOR, render, 2, 3);
+        int methodCount = 3;
+        for (int i = 0; i < parts.size(); i++) {
+            parts.get(i).u1(RETURN);
+            method(methods, ACC_PRIVATE | ACC_STATIC, "part" + i, RENDER_DESCRIPTOR, parts.get(i), 5, maxLocals);
+            methodCount++;
+        }
+
+        int thisClass = this.pool.classRef(CLASS_NAME);
+        int superClass = this.pool.classRef("java/lang/Object");
+        int renderer = this.pool.classRef(RENDERER);
+        int literalsName = this.pool.utf8(LITERALS);
+        int literalsDescriptor = this.pool.utf8(LITERALS_DESCRIPTOR);
+        int blocksName = this.pool.utf8(BLOCKS);
+        int blocksDescriptor = this.pool.utf8(BLOCKS_DESCRIPTOR);
+
+        Code file = new Code();
+        file.u4(0xCAFEBABE);
+        file.u2(0);
+        file.u2(49);
+        file.u2(this.pool.count());
+        file.append(this.pool.entries);
+        file.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        file.u2(thisClass);
+        file.u2(superClass);
+        file.u2(1);
+        file.u2(renderer);
+        file.u2(2);
+        file.u2(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+        file.u2(literalsName);
+        file.u2(literalsDescriptor);
+        file.u2(0);
+        file.u2(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+        file.u2(blocksName);
+        file.u2(blocksDescriptor);
+        file.u2(0);
+        file.u2(methodCount);
+        file.append(methods);
+        file.u2(0);
+        return file.toArray();
+    }
+
+    private void method(Code out, int access, String name, String descriptor, Code code, int maxStack,
+            int maxLocals) {
+        out.u2(access);
+        out.u2(this.pool.utf8(name));
+        out.u2(this.pool.utf8(descriptor));
+        out.u2(1);
+        out.u2(this.pool.utf8("Code"));
+        out.u4(12 + code.length());
+        out.u2(maxStack);
+        out.u2(maxLocals);
+        out.u4(code.length());
+        out.append(code);
+        // No exception table nor attributes
+        out.u2(0);
+        out.u2(0);
+    }
+
+    private void nodes(Code code, List<Node> nodes) {
+        for (Node node : nodes) {
+            node(code, node);
+        }
+    }
+
+    private void node(Code code, Node node) {
+        if (node instanceof Node.Text) {
+            // out.addAllBytes(LITERALS[i])
+            code.u1(ALOAD_1);
+            literal(code, ((Node.Text) node).bytes);
+            code.u1(INVOKEVIRTUAL);
+            code.u2(this.pool.methodRef(BYTE_STACK, "addAllBytes", "([B)V"));
+        } else if (node instanceof Node.Value) {
+            // Rendering.writeEscaped(value, out, LITERALS[i])
+            Node.Value value = (Node.Value) node;
+            expression(code, value.expression);
+            code.u1(ALOAD_1);
+            literal(code, value.placeholder);
+            code.u1(INVOKESTATIC);
+            code.u2(this.pool.methodRef(RENDERING, value.raw ? "writeRaw" : "writeEscaped", WRITE_DESCRIPTOR));
+        } else if (node instanceof Node.Each) {
+            // for (Iterator it = Rendering.iterator(list); it.hasNext();) { item = it.next(); ... }
+            Node.Each each = (Node.Each) node;
+            int iterator = 2 + 2 * each.local;
+            expression(code, each.expression);
+            code.u1(INVOKESTATIC);
+            code.u2(this.pool.methodRef(RENDERING, "iterator", "(Ljava/lang/Object;)Ljava/util/Iterator;"));
+            code.u1(ASTORE);
+            code.u1(iterator);
+            int loop = code.length();
+            code.u1(ALOAD);
+            code.u1(iterator);
+            code.u1(INVOKEINTERFACE);
+            code.u2(this.pool.interfaceMethodRef("java/util/Iterator", "hasNext", "()Z"));
+            code.u1(1);
+            code.u1(0);
+            int exit = code.length();
+            code.u1(IFEQ);
+            code.u2(0);
+            code.u1(ALOAD);
+            code.u1(iterator);
+            code.u1(INVOKEINTERFACE);
+            code.u2(this.pool.interfaceMethodRef("java/util/Iterator", "next", "()Ljava/lang/Object;"));
+            code.u1(1);
+            code.u1(0);
+            code.u1(ASTORE);
+            code.u1(iterator + 1);
+            nodes(code, each.body);
+            jump(code, GOTO, loop);
+            code.patch(exit, code.length());
+            // The last element isn't kept until the end of the rendering
+            code.u1(ACONST_NULL);
+            code.u1(ASTORE);
+            code.u1(iterator + 1);
+        } else if (node instanceof Node.If) {
+            // if (Rendering.truthy(value)) { ... } else { ... }
+            Node.If condition = (Node.If) node;
+            expression(code, condition.expression);
+            code.u1(INVOKESTATIC);
+            code.u2(this.pool.methodRef(RENDERING, "truthy", "(Ljava/lang/Object;)Z"));
+            int otherwise = code.length();
+            code.u1(condition.negated ? IFNE : IFEQ);
+            code.u2(0);
+            nodes(code, condition.then);
+            if (condition.otherwise.isEmpty()) {
+                code.patch(otherwise, code.length());
+            } else {
+                int end = code.length();
+                code.u1(GOTO);
+                code.u2(0);
+                code.patch(otherwise, code.length());
+                nodes(code, condition.otherwise);
+                code.patch(end, code.length());
+            }
+        } else if (node instanceof Node.Cache) {
+            // Object key = ...; int from = Rendering.enterFragment(BLOCKS[i], key, out);
+            // if (from >= 0) { ...; Rendering.storeFragment(BLOCKS[i], key, out, from); }
+            Node.Cache cache = (Node.Cache) node;
+            int key = 2 + 2 * cache.local;
+            if (cache.key == null) {
+                code.u1(ACONST_NULL);
+            } else {
+                expression(code, cache.key);
+            }
+            code.u1(ASTORE);
+            code.u1(key);
+            int block = block(code, cache);
+            code.u1(ALOAD);
+            code.u1(key);
+            code.u1(ALOAD_1);
+            code.u1(INVOKESTATIC);
+            code.u2(this.pool.methodRef(RENDERING, "enterFragment",
+                    "(L" + CACHE_BLOCK + ";Ljava/lang/Object;Lnet/omny/utils/ByteStack;)I"));
+            code.u1(ISTORE);
+            code.u1(key + 1);
+            code.u1(ILOAD);
+            code.u1(key + 1);
+            int cached = code.length();
+            code.u1(IFLT);
+            code.u2(0);
+            nodes(code, cache.body);
+            blockAt(code, block);
+            code.u1(ALOAD);
+            code.u1(key);
+            code.u1(ALOAD_1);
+            code.u1(ILOAD);
+            code.u1(key + 1);
+            code.u1(INVOKESTATIC);
+            code.u2(this.pool.methodRef(RENDERING, "storeFragment",
+                    "(L" + CACHE_BLOCK + ";Ljava/lang/Object;Lnet/omny/utils/ByteStack;I)V"));
+            code.patch(cached, code.length());
+        } else {
+            throw new IllegalStateException("Unknown node " + node.getClass());
+        }
+    }
+
+    /**
+     * Push the value of an expression: the loop variable or values.get(root),
+     * then Rendering.property for each property
+     */
+    private void expression(Code code, Node.Expression expression) {
+        if (expression.local >= 0) {
+            code.u1(ALOAD);
+            code.u1(3 + 2 * expression.local);
+        } else {
+            code.u1(ALOAD_0);
+            ldc(code, this.pool.string(expression.root));
+            code.u1(INVOKEINTERFACE);
+            code.u2(this.pool.interfaceMethodRef("java/util/Map", "get", "(Ljava/lang/Object;)Ljava/lang/Object;"));
+            code.u1(2);
+            code.u1(0);
+        }
+        for (String property : expression.properties) {
+            ldc(code, this.pool.string(property));
+            code.u1(INVOKESTATIC);
+            code.u2(this.pool.methodRef(RENDERING, "property",
+                    "(Ljava/lang/Object;Ljava/lang/String;)Ljava/lang/Object;"));
+        }
+    }
+
+    /**
+     * Push LITERALS[i]
+     */
+    private void literal(Code code, byte[] bytes) {
+        int index = this.literals.size();
+        this.literals.add(bytes);
+        code.u1(GETSTATIC);
+        code.u2(this.pool.fieldRef(CLASS_NAME, LITERALS, LITERALS_DESCRIPTOR));
+        pushInt(code, index);
+        code.u1(AALOAD);
+    }
+
+    /**
+     * Push BLOCKS[i] of a new block
+     *
+     * @return i
+     */
+    private int block(Code code, Node.Cache cache) {
+        int index = this.blocks.size();
+        this.blocks.add(cache);
+        blockAt(code, index);
+        return index;
+    }
+
+    private void blockAt(Code code, int index) {
+        code.u1(GETSTATIC);
+        code.u2(this.pool.fieldRef(CLASS_NAME, BLOCKS, BLOCKS_DESCRIPTOR));
+        pushInt(code, index);
+        code.u1(AALOAD);
+    }
+
+    private static void pushInt(Code code, int value) {
+        if (value <= 5) {
+            code.u1(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.u1(BIPUSH);
+            code.u1(value);
+        } else if (value <= Short.MAX_VALUE) {
+            code.u1(SIPUSH);
+            code.u2(value);
+        } else {
+            throw new TooLargeException("more than " + Short.MAX_VALUE + " texts or blocks");
+        }
+    }
+
+    private static void ldc(Code code, int index) {
+        if (index <= 0xFF) {
+            code.u1(LDC);
+            code.u1(index);
+        } else {
+            code.u1(LDC_W);
+            code.u2(index);
+        }
+    }
+
+    private static void jump(Code code, int opcode, int target) {
+        int at = code.length();
+        code.u1(opcode);
+        code.u2(0);
+        code.patch(at, target);
+    }
+
+    /**
+     * Bytes of a class file
+     */
+    private static final class Code {
+
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        void u1(int value) {
+            if (this.length == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.length * 2);
+            }
+            this.bytes[this.length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void append(Code code) {
+            if (this.length + code.length > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + code.length));
+            }
+            System.arraycopy(code.bytes, 0, this.bytes, this.length, code.length);
+            this.length += code.length;
+        }
+
+        /**
+         * Set the offset of the branch at a position to a target
+         */
+        void patch(int branch, int target) {
+            int offset = target - branch;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new TooLargeException("a branch is longer than " + Short.MAX_VALUE + " bytes");
+            }
+            this.bytes[branch + 1] = (byte) (offset >>> 8);
+            this.bytes[branch + 2] = (byte) offset;
+        }
+
+        int length() {
+            return this.length;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(this.bytes, this.length);
+        }
+
+    }
+
+    /**
+     * The constants of the class, each one written once
+     */
+    private static final class ConstantPool {
+
+        private final Code entries = new Code();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = this.indexes.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            byte[] bytes = modifiedUtf8(value);
+            this.entries.u1(1);
+            this.entries.u2(bytes.length);
+            for (byte b : bytes) {
+                this.entries.u1(b);
+            }
+            return add("U" + value);
+        }
+
+        int classRef(String name) {
+            return reference("C" + name, 7, utf8(name), -1);
+        }
+
+        int string(String value) {
+            return reference("S" + value, 8, utf8(value), -1);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return reference("F" + owner + '.' + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return reference("M" + owner + '.' + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) {
+            return reference("I" + owner + '.' + name + descriptor, 11, classRef(owner),
+                    nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            return reference("N" + name + ':' + descriptor, 12, utf8(name), utf8(descriptor));
+        }
+
+        private int reference(String key, int tag, int first, int second) {
+            Integer index = this.indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            this.entries.u1(tag);
+            this.entries.u2(first);
+            if (second >= 0) {
+                this.entries.u2(second);
+            }
+            return add(key);
+        }
+
+        private int add(String key) {
+            if (this.count == 0xFFFF) {
+                throw new TooLargeException("more than 65535 constants");
+            }
+            this.indexes.put(key, this.count);
+            return this.count++;
+        }
+
+        int count() {
+            return this.count;
+        }
+
+        /**
+         * The encoding of the strings of a class file
+         */
+        private static byte[] modifiedUtf8(String value) {
+            Code out = new Code();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c != 0 && c < 0x80) {
+                    out.u1(c);
+                } else if (c < 0x800) {
+                    out.u1(0xC0 | (c >> 6));
+                    out.u1(0x80 | (c & 0x3F));
+                } else {
+                    out.u1(0xE0 | (c >> 12));
+                    out.u1(0x80 | ((c >> 6) & 0x3F));
+                    out.u1(0x80 | (c & 0x3F));
+                }
+            }
+            if (out.length() > 0xFFFF) {
+                throw new TooLargeException("a name is longer than 65535 bytes");
+            }
+            return out.toArray();
+        }
+
+    }
+
+    /**
+     * The template is valid but doesn't fit in a class, it is rendered by
+     * walking the nodes
+     */
+    private static final class TooLargeException extends RuntimeException {
+
+        private TooLargeException(String message) {
+            super(message, null, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.omny.template;
+
+/**
+ * A template can't be parsed (eg: a block without {@code #{end}}, an include
+ * cycle) or rendered (eg: {@code #{each}} over something that isn't a list)
+ */
+public class TemplateException extends IllegalArgumentException {
+
+    public TemplateException(String message) {
+        super(message);
+    }
+
+    public TemplateException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
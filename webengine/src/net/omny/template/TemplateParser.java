@@ -0,0 +1,369 @@
+package net.omny.template;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parse the text of a template into {@link Node}s
+ *
+ * <pre>
+ * #{name} #{user.name}         the value, escaped for HTML
+ * #!{name}                     the value as is
+ * #{include header.html}       the template of a file, relative to the including one
+ * #{each user in users}...#{end}
+ * #{if user.admin}...#{else}...#{end}, #{if !user.admin}
+ * #{cache 10m}...#{end}        rendered once per 10 minutes (ms, s, m or h, seconds if none)
+ * #{cache 30s user.id}...#{end}  rendered once per 30 seconds for each user.id
+ * </pre>
+ *
+ * What isn't one of these stays text, as {@code #{end}} and {@code #{else}}
+ * outside of a block, so older templates render as before. The includes are
+ * parsed in place: an included file sees the loop variables around it.
+ */
+final class TemplateParser {
+
+    private static final String EACH = "each ";
+    private static final String IF = "if ";
+    private static final String INCLUDE = "include ";
+    private static final String CACHE = "cache ";
+    private static final String END = "end";
+    private static final String ELSE = "else";
+
+    /**
+     * The files read, the first one is the template
+     */
+    private final Set<Path> files = new LinkedHashSet<>();
+    private final Deque<Path> including = new ArrayDeque<>();
+    /**
+     * The variables of the loops around the parsed text, the slot of a
+     * variable is its index
+     */
+    private final List<String> loopVariables = new ArrayList<>();
+    private final List<String> expressions = new ArrayList<>();
+    private int localCount;
+
+    List<Node> parseFile(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        if (this.including.contains(path)) {
+            throw new TemplateException("Include cycle: " + path + " includes itself through " + this.including);
+        }
+        this.files.add(path);
+        String source = Files.readString(path, StandardCharsets.UTF_8);
+        this.including.push(path);
+        try {
+            return parse(source, path.getParent(), path.toString());
+        } finally {
+            this.including.pop();
+        }
+    }
+
+    /**
+     * @param source    The text
+     * @param directory The directory of the includes, null for the working
+     *                  directory
+     * @param origin    Where the text comes from, for the errors
+     * @return the nodes
+     * @throws IOException If an included file can't be read
+     */
+    List<Node> parse(String source, Path directory, String origin) throws IOException {
+        Deque<Block> blocks = new ArrayDeque<>();
+        List<Node> nodes = new ArrayList<>();
+        int length = source.length();
+        int literalStart = 0;
+        int i = 0;
+        while ((i = source.indexOf('#', i)) >= 0) {
+            boolean raw = i + 1 < length && source.charAt(i + 1) == '!';
+            int open = raw ? i + 2 : i + 1;
+            int close = open < length && source.charAt(open) == '{' ? source.indexOf('}', open + 1) : -1;
+            if (close < 0) {
+                i++;
+                continue;
+            }
+            String content = source.substring(open + 1, close);
+            List<Node> target = blocks.isEmpty() ? nodes : blocks.peek().nodes();
+            if (raw) {
+                if (!isExpression(content)) {
+                    i++;
+                    continue;
+                }
+                appendText(target, source, literalStart, i);
+                append(target, new Node.Value(expression(content), true,
+                        source.substring(i, close + 1).getBytes(StandardCharsets.UTF_8)));
+            } else if (isBlockKeyword(content, blocks)) {
+                appendText(target, source, literalStart, i);
+                closeOrSwitch(content, blocks, source, origin, i);
+            } else if (isExpression(content)) {
+                appendText(target, source, literalStart, i);
+                append(target, new Node.Value(expression(content), false,
+                        source.substring(i, close + 1).getBytes(StandardCharsets.UTF_8)));
+            } else if (content.startsWith(EACH)) {
+                appendText(target, source, literalStart, i);
+                String[] words = content.substring(EACH.length()).trim().split("\\s+");
+                if (words.length != 3 || !isName(words[0]) || !words[1].equals("in") || !isExpression(words[2])) {
+                    throw error(origin, source, i, "expected #{each item in list}, got #{" + content + "}");
+                }
+                Node.Expression list = expression(words[2]);
+                int local = this.loopVariables.size();
+                this.loopVariables.add(words[0]);
+                this.localCount = Math.max(this.localCount, this.loopVariables.size());
+                blocks.push(new Block(content, i, target, local, list));
+            } else if (content.startsWith(IF)) {
+                appendText(target, source, literalStart, i);
+                String condition = content.substring(IF.length()).trim();
+                boolean negated = condition.startsWith("!");
+                if (negated) {
+                    condition = condition.substring(1).trim();
+                }
+                if (!isExpression(condition)) {
+                    throw error(origin, source, i, "expected #{if value}, got #{" + content + "}");
+                }
+                blocks.push(new Block(content, i, target, expression(condition), negated));
+            } else if (content.startsWith(CACHE)) {
+                appendText(target, source, literalStart, i);
+                String[] words = content.substring(CACHE.length()).trim().split("\\s+");
+                long ttl = words.length <= 2 ? duration(words[0]) : -1;
+                if (ttl < 0 || (words.length == 2 && !isExpression(words[1]))) {
+                    throw error(origin, source, i, "expected #{cache ttl} or #{cache ttl key}, got #{" + content + "}");
+                }
+                Node.Expression key = words.length == 2 ? expression(words[1]) : null;
+                // The slot holds the key and the start of the fragment once compiled
+                int local = this.loopVariables.size();
+                this.loopVariables.add(null);
+                this.localCount = Math.max(this.localCount, this.loopVariables.size());
+                blocks.push(new Block(content, i, target, local, key, ttl));
+            } else if (content.startsWith(INCLUDE)) {
+                appendText(target, source, literalStart, i);
+                String file = content.substring(INCLUDE.length()).trim();
+                if (file.isEmpty()) {
+                    throw error(origin, source, i, "expected #{include file}");
+                }
+                Path path = directory == null ? Paths.get(file) : directory.resolve(file);
+                for (Node node : parseFile(path)) {
+                    append(target, node);
+                }
+            } else {
+                i++;
+                continue;
+            }
+            i = literalStart = close + 1;
+        }
+        if (!blocks.isEmpty()) {
+            Block block = blocks.peek();
+            throw error(origin, source, block.start, "#{" + block.content + "} without #{end}");
+        }
+        appendText(nodes, source, literalStart, length);
+        return nodes;
+    }
+
+    /**
+     * {@code end} and {@code else} are keywords while a block is open, variables
+     * otherwise
+     */
+    private static boolean isBlockKeyword(String content, Deque<Block> blocks) {
+        return !blocks.isEmpty() && (content.equals(END) || content.equals(ELSE));
+    }
+
+    private void closeOrSwitch(String content, Deque<Block> blocks, String source, String origin, int position) {
+        Block block = blocks.peek();
+        if (content.equals(ELSE)) {
+            if (block.condition == null || block.otherwise != null) {
+                throw error(origin, source, position, "#{else} without #{if}");
+            }
+            block.otherwise = new ArrayList<>();
+            return;
+        }
+        blocks.pop();
+        Node node;
+        if (block.ttl >= 0) {
+            this.loopVariables.remove(this.loopVariables.size() - 1);
+            node = new Node.Cache(block.local, block.key, block.ttl, block.then);
+        } else if (block.list != null) {
+            this.loopVariables.remove(this.loopVariables.size() - 1);
+            node = new Node.Each(block.local, block.list, block.then);
+        } else {
+            node = new Node.If(block.condition, block.negated, block.then,
+                    block.otherwise == null ? List.of() : block.otherwise);
+        }
+        append(block.parent, node);
+    }
+
+    private Node.Expression expression(String text) {
+        this.expressions.add(text);
+        String[] names = text.split("\\.");
+        String[] properties = Arrays.copyOfRange(names, 1, names.length);
+        int local = this.loopVariables.lastIndexOf(names[0]);
+        return new Node.Expression(text, local >= 0 ? null : names[0], local, properties);
+    }
+
+    private static void appendText(List<Node> nodes, String source, int from, int to) {
+        if (from < to) {
+            append(nodes, new Node.Text(source.substring(from, to).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Add a node, the text following a text is merged in it
+     */
+    private static void append(List<Node> nodes, Node node) {
+        if (node instanceof Node.Text && !nodes.isEmpty() && nodes.get(nodes.size() - 1) instanceof Node.Text) {
+            byte[] previous = ((Node.Text) nodes.get(nodes.size() - 1)).bytes;
+            byte[] next = ((Node.Text) node).bytes;
+            byte[] merged = Arrays.copyOf(previous, previous.length + next.length);
+            System.arraycopy(next, 0, merged, previous.length, next.length);
+            nodes.set(nodes.size() - 1, new Node.Text(merged));
+        } else {
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * {@code name} or {@code name.property...}
+     */
+    static boolean isExpression(String text) {
+        if (text.isEmpty() || text.charAt(0) == '.' || text.charAt(text.length() - 1) == '.') {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' ? text.charAt(i - 1) == '.' : !isNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isName(String text) {
+        return isExpression(text) && text.indexOf('.') < 0;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * @return the duration in ms, -1 if invalid
+     */
+    private static long duration(String text) {
+        long unit = 1000;
+        String digits = text;
+        if (text.endsWith("ms")) {
+            unit = 1;
+            digits = text.substring(0, text.length() - 2);
+        } else if (text.endsWith("s")) {
+            digits = text.substring(0, text.length() - 1);
+        } else if (text.endsWith("m")) {
+            unit = 60 * 1000;
+            digits = text.substring(0, text.length() - 1);
+        } else if (text.endsWith("h")) {
+            unit = 60 * 60 * 1000;
+            digits = text.substring(0, text.length() - 1);
+        }
+        if (digits.isEmpty() || digits.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(digits) * unit;
+    }
+
+    private static TemplateException error(String origin, String source, int position, String message) {
+        int line = 1;
+        for (int i = 0; i < position; i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new TemplateException(origin + ":" + line + ": " + message);
+    }
+
+    List<Path> getFiles() {
+        return List.copyOf(this.files);
+    }
+
+    List<String> getExpressions() {
+        return this.expressions;
+    }
+
+    /**
+     * The slots of loop variables used by the template
+     */
+    int getLocalCount() {
+        return this.localCount;
+    }
+
+    /**
+     * An open {@code #{each}}, {@code #{if}} or {@code #{cache}}
+     */
+    private static final class Block {
+
+        private final String content;
+        private final int start;
+        /**
+         * Where the node of the block is added once closed
+         */
+        private final List<Node> parent;
+        private final List<Node> then = new ArrayList<>();
+        private List<Node> otherwise;
+        private final int local;
+        private final Node.Expression list;
+        private final Node.Expression condition;
+        private final boolean negated;
+        private final Node.Expression key;
+        private final long ttl;
+
+        private Block(String content, int start, List<Node> parent, int local, Node.Expression list) {
+            this.content = content;
+            this.start = start;
+            this.parent = parent;
+            this.local = local;
+            this.list = list;
+            this.condition = null;
+            this.negated = false;
+            this.key = null;
+            this.ttl = -1;
+        }
+
+        private Block(String content, int start, List<Node> parent, Node.Expression condition, boolean negated) {
+            this.content = content;
+            this.start = start;
+            this.parent = parent;
+            this.local = -1;
+            this.list = null;
+            this.condition = condition;
+            this.negated = negated;
+            this.key = null;
+            this.ttl = -1;
+        }
+
+        private Block(String content, int start, List<Node> parent, int local, Node.Expression key, long ttl) {
+            this.content = content;
+            this.start = start;
+            this.parent = parent;
+            this.local = local;
+            this.list = null;
+            this.condition = null;
+            this.negated = false;
+            this.key = key;
+            this.ttl = ttl;
+        }
+
+        private List<Node> nodes() {
+            return this.otherwise != null ? this.otherwise : this.then;
+        }
+
+    }
+
+}
@@ -1,5 +1,13 @@
 package net.omny.utils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
@@ -18,6 +26,14 @@ import java.util.Objects;
  */
 public class ByteStack implements List<Byte> {
 
+    /**
+     * Reads 8 bytes of an array as a long, the first byte in the lowest bits
+     */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
     private static final int DEFAULT_CAPACITY = 10;
     private static final int DEFAULT_GROW_CAPACITY = 16;
     private static final byte[] EMPTY_ELEMENTDATA = {};
@@ -25,6 +41,14 @@ public class ByteStack implements List<Byte> {
     private byte[] array;
     private int size;
     private int modificationCount;
+    /**
+     * True while the stack is in a {@link ByteStackPool}
+     */
+    boolean pooled;
+    /**
+     * Set by the pool when tracking leaks, to detect stacks never released
+     */
+    ByteStackPool.Lease lease;
 
     public ByteStack() {
         this(DEFAULT_CAPACITY);
@@ -125,6 +149,118 @@ public class ByteStack implements List<Byte> {
         return true;
     }
 
+    /**
+     * Empty the stack but keep its backed array, so it can be filled again
+     * without allocating
+     */
+    public void reset() {
+        modificationCount++;
+        this.size = 0;
+    }
+
+    /**
+     * @return the number of bytes the stack holds before growing
+     */
+    public int capacity() {
+        return this.array.length;
+    }
+
+    /**
+     * Push the characters of the string, encoded in UTF-8
+     * ASCII strings are copied char by char, without encoding them in a new array
+     *
+     * @param string The string to push
+     */
+    public void addString(String string) {
+        int length = string.length();
+        ensureCapacity(this.size + length);
+        byte[] elementData = this.array;
+        int s = this.size;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                // Not ASCII, the encoder handles it
+                this.size = s;
+                addAllBytes(string.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            elementData[s++] = (byte) c;
+        }
+        modificationCount++;
+        this.size = s;
+    }
+
+    /**
+     * Push the characters from index from to index to (excluded), encoded in
+     * UTF-8 straight in the backed array
+     * A lone surrogate is pushed as '?', as {@link String#getBytes} does
+     *
+     * @param string The string to push
+     * @param from   The index of the first char
+     * @param to     The index after the last char
+     */
+    public void addString(String string, int from, int to) {
+        Objects.checkFromToIndex(from, to, string.length());
+        ensureCapacity(this.size + (to - from));
+        byte[] elementData = this.array;
+        int s = this.size;
+        int i = from;
+        while (i < to) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            elementData[s++] = (byte) c;
+            i++;
+        }
+        modificationCount++;
+        this.size = s;
+        if (i == to) {
+            return;
+        }
+        // At most 3 bytes per char (4 for a pair of 2 chars)
+        ensureCapacity(s + 3 * (to - i));
+        for (; i < to; i++) {
+            char c = string.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(string.charAt(i + 1))) {
+                addCodePoint(Character.toCodePoint(c, string.charAt(++i)));
+            } else {
+                addCodePoint(Character.isSurrogate(c) ? '?' : c);
+            }
+        }
+    }
+
+    /**
+     * Push a code point encoded in UTF-8
+     *
+     * @param codePoint The code point, not a surrogate
+     */
+    public void addCodePoint(int codePoint) {
+        ensureCapacity(this.size + 4);
+        byte[] elementData = this.array;
+        int s = this.size;
+        if (codePoint < 0x80) {
+            elementData[s++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            elementData[s++] = (byte) (0xc0 | codePoint >> 6);
+            elementData[s++] = (byte) (0x80 | codePoint & 0x3f);
+        } else if (codePoint < 0x10000) {
+            elementData[s++] = (byte) (0xe0 | codePoint >> 12);
+            elementData[s++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            elementData[s++] = (byte) (0x80 | codePoint & 0x3f);
+        } else {
+            elementData[s++] = (byte) (0xf0 | codePoint >> 18);
+            elementData[s++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            elementData[s++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            elementData[s++] = (byte) (0x80 | codePoint & 0x3f);
+        }
+        modificationCount++;
+        this.size = s;
+    }
+
+    /**
+     * Boxes every byte, use {@link #cursor()} instead
+     */
     public Iterator<Byte> iterator() {
         return new ByteStackIterator();
     }
@@ -137,14 +273,198 @@ public class ByteStack implements List<Byte> {
         return Arrays.copyOf(this.array, size);
     }
 
+    /**
+     * The array is larger than the stack, only the bytes before
+     * {@link #size()} were pushed, see {@link #asByteBuffer()}
+     *
+     * @return the backed array, not a copy
+     */
     public byte[] getBackedArray() {
         return this.array;
     }
 
+    /**
+     * @return a view of the pushed bytes, sharing the backed array
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(this.array, 0, this.size).slice();
+    }
+
+    /**
+     *
+     * @param from The index of the first byte
+     * @param to   The index after the last byte
+     * @return a view of the bytes in this range, sharing the backed array
+     */
+    public ByteBuffer slice(int from, int to) {
+        Objects.checkFromToIndex(from, to, this.size);
+        return ByteBuffer.wrap(this.array, from, to - from).slice();
+    }
+
     public boolean push(byte e) {
         return add(e);
     }
 
+    /**
+     * Write the bytes of the stack, without copying them
+     *
+     * @param out The stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(this.array, 0, this.size);
+    }
+
+    /**
+     * Write all the bytes of the stack
+     *
+     * @param channel The channel, in blocking mode
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer view = asByteBuffer();
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    /**
+     * Copy the bytes of the stack to an array
+     *
+     * @param dest   The array
+     * @param offset The index where the first byte is copied
+     * @return the number of bytes copied
+     */
+    public int copyTo(byte[] dest, int offset) {
+        System.arraycopy(this.array, 0, dest, offset, this.size);
+        return this.size;
+    }
+
+    /**
+     * @param pattern The bytes to find
+     * @return the index of the first occurrence of the pattern, -1 if not found
+     */
+    public int indexOf(byte[] pattern) {
+        return indexOf(this.array, 0, this.size, pattern);
+    }
+
+    /**
+     * @param pattern The bytes to find
+     * @param from    The index to start from
+     * @return the index of the first occurrence of the pattern from this index,
+     *         -1 if not found
+     */
+    public int indexOf(byte[] pattern, int from) {
+        return indexOf(this.array, from, this.size, pattern);
+    }
+
+    /**
+     * Find a byte, 8 bytes at a time (SWAR: the bytes of a long are compared at
+     * once)
+     *
+     * @param bytes The array to search in
+     * @param from  The index to start from
+     * @param to    The index to stop at (excluded)
+     * @param b     The byte to find
+     * @return the index of the first occurrence, -1 if not found
+     */
+    public static int indexOf(byte[] bytes, int from, int to, byte b) {
+        Objects.checkFromToIndex(from, to, bytes.length);
+        long pattern = (b & 0xFFL) * ONES;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            // The bytes equal to b become 0
+            long word = (long) LONGS.get(bytes, i) ^ pattern;
+            // The high bit of the first 0 byte is set (bytes after it may be false
+            // positives, they are ignored)
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find a sequence of bytes, the candidates are found by
+     * {@link #indexOf(byte[], int, int, byte)} on the first byte
+     *
+     * @param bytes   The array to search in
+     * @param from    The index to start from
+     * @param to      The index to stop at (excluded)
+     * @param pattern The bytes to find
+     * @return the index of the first occurrence, -1 if not found
+     */
+    public static int indexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        Objects.checkFromToIndex(from, to, bytes.length);
+        if (pattern.length == 0) {
+            return from;
+        }
+        int last = to - pattern.length;
+        int i = from;
+        while (i <= last) {
+            i = indexOf(bytes, i, last + 1, pattern[0]);
+            if (i < 0) {
+                return -1;
+            }
+            if (Arrays.equals(bytes, i + 1, i + pattern.length, pattern, 1, pattern.length)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return a cursor over the bytes of the stack, without boxing them
+     */
+    public ByteCursor cursor() {
+        return new ByteCursor();
+    }
+
+    /**
+     * Reads the bytes of the stack one by one, like {@link Iterator} without
+     * boxing them
+     */
+    public final class ByteCursor {
+
+        private int position;
+        private final int expectedModCount = ByteStack.this.modificationCount;
+
+        private ByteCursor() {
+        }
+
+        public boolean hasNext() {
+            return position < ByteStack.this.size;
+        }
+
+        public byte next() {
+            if (ByteStack.this.modificationCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (position >= ByteStack.this.size)
+                throw new NoSuchElementException();
+            return ByteStack.this.array[position++];
+        }
+
+        /**
+         * @return the index of the next byte
+         */
+        public int position() {
+            return position;
+        }
+
+        /**
+         * @param count The number of bytes to skip
+         */
+        public void skip(int count) {
+            this.position = Math.min(position + count, ByteStack.this.size);
+        }
+
+    }
+
     public void push(byte[] array){
         this.addAllBytes(array);
     }
@@ -173,6 +493,21 @@ public class ByteStack implements List<Byte> {
         System.arraycopy(bytes, 0, this.array, insertAt, arrLength);
     }
 
+    /**
+     * Push a range of an array
+     *
+     * @param bytes  The array
+     * @param offset The index of the first byte to push
+     * @param length The number of bytes to push
+     */
+    public void addAllBytes(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int insertAt = this.size;
+        ensureCapacity(this.size + length);
+        this.size += length;
+        System.arraycopy(bytes, offset, this.array, insertAt, length);
+    }
+
     public void addAllBytesSlow(byte[] bytes) {
         for (byte b : bytes)
             push(b);
@@ -0,0 +1,167 @@
+package net.omny.utils;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of {@link ByteStack} to write responses without allocating buffers
+ *
+ * Each thread keeps its own free lists, one per size class, so acquiring and
+ * releasing a stack needs no synchronization. A stack may be released by another
+ * thread than the one which acquired it, it then goes to the pool of that thread.
+ * A released stack is filed under the largest class its capacity fits in, stacks
+ * grown beyond the largest class are left to the garbage collector.
+ *
+ * With {@link #TRACK_LEAKS}, a stack garbage collected without being released
+ * is reported with the place it was acquired from.
+ */
+public final class ByteStackPool {
+
+    /**
+     * Disable to allocate a new stack each time (eg: to compare)
+     */
+    public static boolean ENABLE = true;
+    /**
+     * Enable to report the stacks never released, each acquire then records
+     * where it comes from (a stack trace and a cleaner, not for production)
+     */
+    public static boolean TRACK_LEAKS = false;
+
+    private static final int[] SIZE_CLASSES = { 1024, 4 * 1024, 16 * 1024, 64 * 1024 };
+    private static final int MAX_PER_CLASS = 8;
+
+    private static final ThreadLocal<FreeList[]> FREE = ThreadLocal.withInitial(() -> {
+        FreeList[] free = new FreeList[SIZE_CLASSES.length];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new FreeList();
+        }
+        return free;
+    });
+
+    private ByteStackPool() {
+    }
+
+    /**
+     * The free stacks of a size class, most recently released first
+     */
+    private static final class FreeList {
+
+        private final ArrayDeque<ByteStack> stacks = new ArrayDeque<>(MAX_PER_CLASS);
+
+    }
+
+    /**
+     * Acquire an empty stack, it must be released once written
+     *
+     * @param minCapacity The number of bytes the stack should hold without growing
+     * @return an empty stack
+     */
+    public static ByteStack acquire(int minCapacity) {
+        ByteStack stack = null;
+        int sizeClass = classFor(minCapacity);
+        if (ENABLE && sizeClass >= 0) {
+            stack = FREE.get()[sizeClass].stacks.pollFirst();
+        }
+        if (stack == null) {
+            stack = new ByteStack(sizeClass >= 0 ? SIZE_CLASSES[sizeClass] : minCapacity);
+        }
+        stack.pooled = false;
+        if (TRACK_LEAKS) {
+            stack.lease = Lease.track(stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Give back a stack, its content must not be used anymore
+     *
+     * @param stack The stack acquired from {@link #acquire(int)}
+     * @throws IllegalStateException if the stack is already released
+     */
+    public static void release(ByteStack stack) {
+        if (stack.pooled) {
+            throw new IllegalStateException("ByteStack released twice");
+        }
+        stack.pooled = true;
+        if (stack.lease != null) {
+            stack.lease.release();
+            stack.lease = null;
+        }
+        if (!ENABLE) {
+            return;
+        }
+        int sizeClass = classOf(stack.capacity());
+        if (sizeClass < 0) {
+            return;
+        }
+        ArrayDeque<ByteStack> free = FREE.get()[sizeClass].stacks;
+        if (free.size() < MAX_PER_CLASS) {
+            stack.reset();
+            free.addFirst(stack);
+        }
+    }
+
+    /**
+     * @return the smallest class holding this capacity, -1 if none
+     */
+    private static int classFor(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the largest class a stack of this capacity can be used for, -1 if
+     *         it is too small or too large to be kept
+     */
+    private static int classOf(int capacity) {
+        if (capacity > 2 * SIZE_CLASSES[SIZE_CLASSES.length - 1]) {
+            return -1;
+        }
+        for (int i = SIZE_CLASSES.length - 1; i >= 0; i--) {
+            if (capacity >= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tracks an acquired stack until it is released
+     */
+    static final class Lease implements Runnable {
+
+        // Created on first use, it starts a thread
+        private static final class CleanerHolder {
+            static final Cleaner CLEANER = Cleaner.create();
+        }
+
+        private final Throwable acquiredAt = new Throwable("ByteStack acquired here");
+        private volatile boolean released;
+        private Cleaner.Cleanable cleanable;
+
+        static Lease track(ByteStack stack) {
+            Lease lease = new Lease();
+            // The action must not reference the stack, it would never be collected
+            lease.cleanable = CleanerHolder.CLEANER.register(stack, lease);
+            return lease;
+        }
+
+        void release() {
+            this.released = true;
+            this.cleanable.clean();
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                Debug.error("A ByteStack was garbage collected without being released", acquiredAt);
+            }
+        }
+
+    }
+
+}
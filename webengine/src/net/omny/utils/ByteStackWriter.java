@@ -0,0 +1,99 @@
+package net.omny.utils;
+
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Writer encoding the chars in UTF-8 straight in a ByteStack
+ *
+ * No intermediate char or byte array is used, eg: a JSON writer serializes
+ * straight in the body of a response. A pair of surrogates split between two
+ * writes is kept until its second char is written.
+ */
+public final class ByteStackWriter extends Writer {
+
+    private final ByteStack target;
+    /**
+     * The first char of a pair written last, 0 if there is none
+     */
+    private char highSurrogate;
+
+    /**
+     * @param target The stack to push the bytes to
+     */
+    public ByteStackWriter(ByteStack target) {
+        this.target = Objects.requireNonNull(target);
+    }
+
+    @Override
+    public void write(int c) {
+        char ch = (char) c;
+        if (this.highSurrogate != 0) {
+            char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(ch)) {
+                this.target.addCodePoint(Character.toCodePoint(high, ch));
+                return;
+            }
+            this.target.add((byte) '?');
+        }
+        if (Character.isHighSurrogate(ch)) {
+            this.highSurrogate = ch;
+        } else {
+            this.target.addCodePoint(Character.isSurrogate(ch) ? '?' : ch);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        int end = offset + length;
+        if (this.highSurrogate != 0) {
+            write(string.charAt(offset++));
+        }
+        if (offset < end && Character.isHighSurrogate(string.charAt(end - 1))) {
+            // Its second char comes with the next write
+            this.target.addString(string, offset, end - 1);
+            this.highSurrogate = string.charAt(end - 1);
+            return;
+        }
+        this.target.addString(string, offset, end);
+    }
+
+    @Override
+    public void write(String string) {
+        write(string, 0, string.length());
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, chars.length);
+        for (int i = offset; i < offset + length; i++) {
+            write(chars[i]);
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence sequence) {
+        write(String.valueOf(sequence));
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * A pair of surrogates left unfinished is written as '?'
+     */
+    @Override
+    public void close() {
+        if (this.highSurrogate != 0) {
+            this.highSurrogate = 0;
+            this.target.add((byte) '?');
+        }
+    }
+
+}
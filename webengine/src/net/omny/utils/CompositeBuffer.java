@@ -0,0 +1,195 @@
+package net.omny.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Buffer made of chunks, written one after the other
+ *
+ * Chunks are referenced, not copied: shared arrays (eg: a preloaded file),
+ * direct buffers, or pooled stacks the buffer owns until {@link #release()}.
+ * Appending is O(1) whatever the size of the chunk, and the chunks are sent
+ * with one gathering write when the client has a channel.
+ */
+public class CompositeBuffer {
+
+    private static final int DEFAULT_CHUNKS = 4;
+    /**
+     * Bytes copied at once from a chunk outside of the heap
+     */
+    private static final int COPY_SIZE = 8 * 1024;
+
+    /**
+     * Views of the chunks, kept writable so the arrays of the heap chunks stay
+     * reachable, only {@link #views()} are read-only
+     */
+    private ByteBuffer[] chunks = new ByteBuffer[DEFAULT_CHUNKS];
+    private int count;
+    private int size;
+    /**
+     * Pooled stacks backing some chunks, released with the buffer
+     */
+    private ByteStack[] owned = new ByteStack[DEFAULT_CHUNKS];
+    private int ownedCount;
+
+    /**
+     * Reference a chunk
+     *
+     * @param chunk The bytes between the position and the limit, they must not be
+     *              modified afterwards
+     */
+    public void append(ByteBuffer chunk) {
+        if (!chunk.hasRemaining()) {
+            return;
+        }
+        if (count == chunks.length) {
+            chunks = Arrays.copyOf(chunks, count * 2);
+        }
+        chunks[count++] = chunk.duplicate();
+        size = Math.addExact(size, chunk.remaining());
+    }
+
+    /**
+     * Reference a shared array
+     *
+     * @param shared The array, it must not be modified afterwards
+     */
+    public void append(byte[] shared) {
+        append(ByteBuffer.wrap(shared));
+    }
+
+    /**
+     * Take a pooled stack, its bytes are referenced until the buffer is released
+     *
+     * @param pooled The stack acquired from the {@link ByteStackPool}, it must not
+     *               be used anymore by the caller
+     */
+    public void append(ByteStack pooled) {
+        if (ownedCount == owned.length) {
+            owned = Arrays.copyOf(owned, ownedCount * 2);
+        }
+        owned[ownedCount++] = pooled;
+        append(pooled.asByteBuffer());
+    }
+
+    /**
+     * @return the number of bytes in all the chunks
+     */
+    public int size() {
+        return size;
+    }
+
+    public int chunkCount() {
+        return count;
+    }
+
+    /**
+     * @return views of the chunks, each with its own position so they can be
+     *         consumed by a write
+     */
+    public ByteBuffer[] views() {
+        ByteBuffer[] views = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            views[i] = chunks[i].asReadOnlyBuffer();
+        }
+        return views;
+    }
+
+    /**
+     * Write all the chunks with gathering writes
+     *
+     * @param channel The channel, in blocking mode
+     */
+    public void writeTo(GatheringByteChannel channel) throws IOException {
+        ByteBuffer[] views = views();
+        long remaining = size;
+        while (remaining > 0) {
+            remaining -= channel.write(views);
+        }
+    }
+
+    /**
+     * Write all the chunks to a stream, the chunks on the heap are not copied
+     *
+     * @param out The stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel channel = null;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer chunk = chunks[i];
+            if (chunk.hasArray()) {
+                out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            } else {
+                if (channel == null) {
+                    channel = Channels.newChannel(out);
+                }
+                ByteBuffer view = chunk.duplicate();
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the bytes of the chunks in the stack
+     *
+     * @param byteStack The stack to push to
+     */
+    public void copyTo(ByteStack byteStack) {
+        byteStack.ensureCapacity(byteStack.size() + size);
+        byte[] copy = null;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer chunk = chunks[i];
+            if (chunk.hasArray()) {
+                byteStack.addAllBytes(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                continue;
+            }
+            // Outside of the heap, copied through a bounded array
+            ByteBuffer view = chunk.duplicate();
+            if (copy == null) {
+                copy = new byte[Math.min(COPY_SIZE, size)];
+            }
+            while (view.hasRemaining()) {
+                int length = Math.min(copy.length, view.remaining());
+                view.get(copy, 0, length);
+                byteStack.addAllBytes(copy, 0, length);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of all the chunks
+     */
+    public byte[] toArrayNative() {
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer chunk = chunks[i].duplicate();
+            int length = chunk.remaining();
+            chunk.get(bytes, offset, length);
+            offset += length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Forget the chunks and give back the pooled stacks
+     */
+    public void release() {
+        for (int i = 0; i < ownedCount; i++) {
+            ByteStackPool.release(owned[i]);
+            owned[i] = null;
+        }
+        Arrays.fill(chunks, 0, count, null);
+        ownedCount = 0;
+        count = 0;
+        size = 0;
+    }
+
+}
@@ -7,4 +7,70 @@ public class ConfigFile {
 
   public static final String THREAD_COUNT = "thread_count";
 
+  /**
+   * Maximum size of a request body in bytes, larger bodies are answered 413
+   */
+  public static final String MAX_BODY_SIZE = "max_body_size";
+  public static final long DEFAULT_MAX_BODY_SIZE = 1024 * 1024L;
+
+  /**
+   * Connections accepted and not answered yet at most, the others are answered
+   * 503 Service Unavailable
+   */
+  public static final String MAX_CONNECTIONS = "max_connections";
+  public static final long DEFAULT_MAX_CONNECTIONS = 1024L;
+
+  /**
+   * Connections waiting for a thread at most
+   */
+  public static final String MAX_QUEUE = "max_queue";
+  public static final long DEFAULT_MAX_QUEUE = 256L;
+
+  /**
+   * How long (in ms) a connection may wait for a thread before it is answered
+   * 503 and the limit of connections shrinks, 0 to never shed them
+   */
+  public static final String QUEUE_TARGET = "queue_target_ms";
+  public static final long DEFAULT_QUEUE_TARGET = 100L;
+
+  /**
+   * Maximum size of the request line in bytes, longer lines are answered 414
+   */
+  public static final String MAX_REQUEST_LINE = "max_request_line";
+  public static final long DEFAULT_MAX_REQUEST_LINE = 8 * 1024L;
+
+  /**
+   * Maximum size of the request head (request line and headers) in bytes,
+   * larger heads are answered 431
+   */
+  public static final String MAX_HEAD_SIZE = "max_head_size";
+  public static final long DEFAULT_MAX_HEAD_SIZE = 64 * 1024L;
+
+  /**
+   * How long (in ms) a read from a client may wait for bytes, 0 for ever
+   */
+  public static final String READ_TIMEOUT = "read_timeout_ms";
+  public static final long DEFAULT_READ_TIMEOUT = 10_000L;
+
+  /**
+   * How long (in ms) a client may take to send the request head, answered 408
+   * past it, 0 for ever
+   */
+  public static final String HEAD_TIMEOUT = "head_timeout_ms";
+  public static final long DEFAULT_HEAD_TIMEOUT = 10_000L;
+
+  /**
+   * How long (in ms) a client may take to send the body, from the first read
+   * of the route, 0 for ever
+   */
+  public static final String BODY_TIMEOUT = "body_timeout_ms";
+  public static final long DEFAULT_BODY_TIMEOUT = 60_000L;
+
+  /**
+   * The bytes per second a client must send, it may fall behind by two
+   * seconds of them, 0 for any rate
+   */
+  public static final String MIN_DATA_RATE = "min_data_rate";
+  public static final long DEFAULT_MIN_DATA_RATE = 1024L;
+
 }
@@ -31,6 +31,13 @@ public class Debug {
 		}
 	}
 
+	public static void error(String string, Throwable error) {
+		if (ENABLE) {
+			System.err.println("[Error Debug] " + string);
+			error.printStackTrace();
+		}
+	}
+
 	public static void time(String tag, String message){
 		if(ENABLE){
 			if(chronos.get().containsKey(tag)){
@@ -0,0 +1,184 @@
+package net.omny.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Byte stack backed by a direct (off-heap) buffer
+ *
+ * Same push API as {@link ByteStack}, but the bytes are written to a socket
+ * channel as they are: a heap array is first copied to a direct buffer by the
+ * channel. Worth it for large bodies written many times, a direct buffer is
+ * slower to allocate and is freed only when garbage collected.
+ */
+public class DirectByteStack {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Bytes are pushed at the position, the limit is the capacity
+     */
+    private ByteBuffer buffer;
+
+    public DirectByteStack() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DirectByteStack(int defaultCapacity) {
+        this.buffer = ByteBuffer.allocateDirect(defaultCapacity);
+    }
+
+    /**
+     * @param bytes The bytes to copy off-heap
+     * @return a stack holding exactly those bytes
+     */
+    public static DirectByteStack of(byte[] bytes) {
+        DirectByteStack stack = new DirectByteStack(bytes.length);
+        stack.addAllBytes(bytes);
+        return stack;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of bytes the stack holds before growing
+     */
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > buffer.capacity()) {
+            int oldCapacity = buffer.capacity();
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(minCapacity, oldCapacity + (oldCapacity >> 1)));
+            buffer.flip();
+            grown.put(buffer);
+            this.buffer = grown;
+        }
+    }
+
+    public boolean add(byte e) {
+        ensureCapacity(size() + 1);
+        buffer.put(e);
+        return true;
+    }
+
+    public boolean push(byte e) {
+        return add(e);
+    }
+
+    public void push(byte[] array) {
+        this.addAllBytes(array);
+    }
+
+    public void addAllBytes(byte[] bytes) {
+        addAllBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Push a range of an array
+     *
+     * @param bytes  The array
+     * @param offset The index of the first byte to push
+     * @param length The number of bytes to push
+     */
+    public void addAllBytes(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        ensureCapacity(size() + length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Push the characters of the string, encoded in UTF-8
+     *
+     * @param string The string to push
+     */
+    public void addString(String string) {
+        int length = string.length();
+        ensureCapacity(size() + length);
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                // Not ASCII, the encoder handles it
+                addAllBytes(string.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    public byte getNative(int index) {
+        Objects.checkIndex(index, size());
+        return buffer.get(index);
+    }
+
+    /**
+     * Empty the stack but keep its buffer
+     */
+    public void reset() {
+        buffer.clear();
+    }
+
+    /**
+     * The view shares the bytes of the stack, but has its own position and
+     * limit, so it can be consumed by a write without changing the stack
+     *
+     * @return a read-only view of the pushed bytes
+     */
+    public ByteBuffer asByteBuffer() {
+        return buffer.asReadOnlyBuffer().flip();
+    }
+
+    /**
+     *
+     * @param from The index of the first byte
+     * @param to   The index after the last byte
+     * @return a read-only view of the bytes in this range
+     */
+    public ByteBuffer slice(int from, int to) {
+        Objects.checkFromToIndex(from, to, size());
+        return buffer.asReadOnlyBuffer().position(from).limit(to).slice();
+    }
+
+    /**
+     * @return a copy of the pushed bytes on the heap
+     */
+    public byte[] toArrayNative() {
+        byte[] bytes = new byte[size()];
+        asByteBuffer().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write all the bytes to the channel, without copying them
+     *
+     * @param channel The channel, in blocking mode
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer view = asByteBuffer();
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    /**
+     * Write all the bytes to a stream, they are copied on the heap by chunks
+     *
+     * @param out The stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out));
+    }
+
+}
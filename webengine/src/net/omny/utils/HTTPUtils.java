@@ -3,6 +3,7 @@ package net.omny.utils;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,6 +20,8 @@ public class HTTPUtils {
 		V2("HTTP/2"),
 		V3("HTTP/3");
 
+		private static final Version[] VERSIONS = values();
+
 		public static Version byTag(String tag) {
 			for (Version v : Version.values())
 				if (v.tag.equals(tag))
@@ -26,6 +29,21 @@ public class HTTPUtils {
 			return V1_1;
 		}
 
+		/**
+		 * Same as {@link #byTag(String)}, without decoding the tag
+		 * 
+		 * @param bytes The buffer containing the tag
+		 * @param from  The index of the first byte of the tag
+		 * @param to    The index after the last byte of the tag
+		 * @return the version, HTTP/1.1 if the tag is unknown
+		 */
+		public static Version byTag(byte[] bytes, int from, int to) {
+			for (Version v : VERSIONS)
+				if (Arrays.equals(v.tagAsByte, 0, v.tagAsByte.length, bytes, from, to))
+					return v;
+			return V1_1;
+		}
+
 		@Getter
 		private final String tag;
 		@Getter
@@ -77,8 +95,14 @@ public class HTTPUtils {
 		public static final String ACCEPT_LANGUAGE = "Accept-Language";
 		public static final String CONTENT_TYPE = "Content-Type";
 		public static final String CONTENT_LENGTH = "Content-Length";
+		public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+		public static final String EXPECT = "Expect";
 		public static final String CACHE_CONTROL = "Cache-Control";
 		public static final String AUTHORIZATION = "Authorization";
+		public static final String WWW_AUTHENTICATE = "WWW-Authenticate";
+		public static final String RETRY_AFTER = "Retry-After";
+		public static final String VARY = "Vary";
+		public static final String DATE = "Date";
 	}
 
 	public static final String CRLF = "\r\n";
@@ -0,0 +1,122 @@
+package net.omny.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock shared by the requests
+ *
+ * Once started, a background tick reads the time every {@link #TICK_MS} ms and
+ * renders the Date header again when the second changes, so responses copy the
+ * header instead of formatting a date.
+ * Until it is started (or once its executor is shut down) the clock reads the
+ * system time on each call.
+ */
+public final class HttpClock {
+
+    public static final long TICK_MS = 10;
+
+    /**
+     * IMF-fixdate, the format of the HTTP dates (eg: Sun, 06 Nov 1994 08:49:37 GMT)
+     */
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * A date rendered for a given second
+     */
+    private record Rendered(long second, String date, byte[] header) {
+    }
+
+    private static volatile long millis = System.currentTimeMillis();
+    private static volatile Rendered rendered = render(millis / 1000);
+    private static volatile ScheduledFuture<?> ticker;
+    private static volatile ScheduledExecutorService tickerExecutor;
+
+    private HttpClock() {
+    }
+
+    /**
+     * Start ticking on the executor, nothing is done if the clock already ticks
+     *
+     * @param executor The executor of the server
+     */
+    public static synchronized void start(ScheduledExecutorService executor) {
+        if (isTicking()) {
+            return;
+        }
+        tick();
+        tickerExecutor = executor;
+        ticker = executor.scheduleAtFixedRate(HttpClock::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isTicking() {
+        ScheduledFuture<?> current = ticker;
+        // Periodic tasks are not cancelled by shutdownNow
+        return current != null && !current.isDone() && !tickerExecutor.isShutdown();
+    }
+
+    private static void tick() {
+        long now = System.currentTimeMillis();
+        millis = now;
+        if (now / 1000 != rendered.second) {
+            rendered = render(now / 1000);
+        }
+    }
+
+    private static Rendered render(long second) {
+        String date = format(second * 1000);
+        byte[] header = (HTTPUtils.Headers.DATE + ": " + date + HTTPUtils.CRLF).getBytes(StandardCharsets.US_ASCII);
+        return new Rendered(second, date, header);
+    }
+
+    /**
+     *
+     * @param epochMillis The time
+     * @return the time formatted as an HTTP date
+     */
+    public static String format(long epochMillis) {
+        return FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    /**
+     * @return the current time in ms, precise to {@link #TICK_MS} once started
+     */
+    public static long millis() {
+        if (isTicking()) {
+            return millis;
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return the current date as an HTTP date
+     */
+    public static String date() {
+        return current().date;
+    }
+
+    /**
+     * The returned array is shared and must not be modified
+     *
+     * @return the full Date header line, with its line break
+     */
+    public static byte[] dateHeader() {
+        return current().header;
+    }
+
+    private static Rendered current() {
+        if (!isTicking()) {
+            tick();
+        }
+        return rendered;
+    }
+
+}
@@ -13,6 +13,10 @@ public class Primitive {
 	}
 
 	public static final byte[] toArray(List<Byte> bytes) {
+		if (bytes instanceof ByteStack byteStack) {
+			// No boxing
+			return byteStack.toArrayNative();
+		}
 		byte[] byteArray = new byte[bytes.size()];
 		for(int i = 0; i < byteArray.length; i++)
 			byteArray[i] = bytes.get(i);
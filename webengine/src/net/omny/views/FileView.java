@@ -24,7 +24,8 @@ public class FileView implements View {
 	public void write(Response res) {
 		Ex.grab(() -> {
 			byte[] fileBytes = Files.readAllBytes(file.toPath());
-			res.addBody(fileBytes);
+			// Read for this response only, no need to copy it
+			res.addSharedBody(fileBytes);
 			
 		});
 	}
@@ -1,36 +1,144 @@
 package net.omny.views;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 import lombok.Getter;
 import net.omny.route.Response;
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackWriter;
+import net.omny.utils.HTTPUtils.Headers;
+import net.omny.utils.HTTPUtils.MimeType;
 
 
 @Getter
 public class JsonView implements View{
 
+  /**
+   * Shared by every view, a Gson instance is thread-safe
+   */
+  private static volatile Gson sharedGson = new Gson();
+  /**
+   * Adapters of the types already serialized, looked up without building a
+   * TypeToken
+   */
+  private static final Map<Type, TypeAdapter<?>> ADAPTERS = new ConcurrentHashMap<>();
+
   private String gson;
+  /**
+   * The object serialized when the view is written, see {@link #of(Object)}
+   */
+  private final Object value;
+  private final Type type;
 
+  /**
+   * @deprecated Writes the description of the Gson instance, not data: use
+   *             {@link #of(Object)} to serialize an object
+   */
+  @Deprecated
   public JsonView(Gson gson){
-    this.gson = gson.toString();
+    this(gson.toString());
   }
 
   public JsonView(String string) {
-    this.gson = string;
+    this.gson = Objects.requireNonNull(string);
+    this.value = null;
+    this.type = null;
+  }
+
+  private JsonView(Object value, Type type) {
+    this.gson = null;
+    this.value = value;
+    this.type = type;
+  }
+
+  /**
+   * Serialize an object when the view is written, straight in the body of the
+   * response as UTF-8
+   *
+   * @param value The object, null is written as null
+   * @return the view
+   */
+  public static JsonView of(Object value) {
+    return new JsonView(value, value == null ? Object.class : value.getClass());
+  }
+
+  /**
+   * Serialize an object of a generic type, eg: {@code List<User>}
+   *
+   * @param value The object
+   * @param type  Its type, see {@link TypeToken#getType()}
+   * @return the view
+   */
+  public static JsonView of(Object value, Type type) {
+    return new JsonView(value, Objects.requireNonNull(type));
+  }
+
+  /**
+   * Configure the Gson instance used by {@link #of(Object)} (eg: with type
+   * adapters, naming policy, pretty printing)
+   *
+   * @param gson The Gson instance
+   */
+  public static void configure(Gson gson) {
+    sharedGson = Objects.requireNonNull(gson);
+    ADAPTERS.clear();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static TypeAdapter<Object> adapter(Type type) {
+    TypeAdapter<?> adapter = ADAPTERS.get(type);
+    if (adapter == null) {
+      adapter = sharedGson.getAdapter(TypeToken.get(type));
+      ADAPTERS.put(type, adapter);
+    }
+    return (TypeAdapter<Object>) adapter;
   }
 
   @Override
   public void write(Response res) {
-    res.addBody(gson);
+    if (res.getHeader(Headers.CONTENT_TYPE) == null) {
+      res.setHeader(Headers.CONTENT_TYPE, MimeType.JSON);
+    }
+    ByteStack body = res.getBody();
+    if (this.gson != null) {
+      body.addString(this.gson);
+    } else {
+      ByteStackWriter writer = new ByteStackWriter(body);
+      try {
+        JsonWriter json = sharedGson.newJsonWriter(writer);
+        // As Gson.toJson does, NaN and infinities are refused by the adapters
+        // unless the Gson instance allows them
+        json.setLenient(true);
+        if (this.value == null) {
+          json.nullValue();
+        } else {
+          adapter(this.type).write(json, this.value);
+        }
+        writer.close();
+      } catch (IOException e) {
+        // The writer doesn't throw, only the adapters of the application
+        throw new UncheckedIOException(e);
+      }
+    }
   }
 
 
   @Override
   public String toString() {
     return "{" +
-      " gson='" + getGson() + "'" +
+      " gson='" + (this.gson != null ? this.gson : this.value) + "'" +
       "}";
   }
 
-  
+
 }
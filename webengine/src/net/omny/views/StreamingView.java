@@ -0,0 +1,54 @@
+package net.omny.views;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import net.omny.route.Response;
+import net.omny.route.ResponseSink;
+
+/**
+ * View writing its body while it is sent, for bodies too large to be buffered
+ * (eg: exports, reports)
+ *
+ * Example:
+ *
+ * router.route("/export", (req, res) -> StreamingView.of(sink -> {
+ *   for (Row row : rows) sink.write(row.toCsv());
+ * }), Method.GET);
+ *
+ * The body is streamed when the route is not cached, otherwise it is buffered
+ * like any other view.
+ */
+@FunctionalInterface
+public interface StreamingView extends View {
+
+  /**
+   * Helps lambdas to be typed as a streaming view
+   *
+   * @param view The view
+   * @return the view
+   */
+  static StreamingView of(StreamingView view) {
+    return view;
+  }
+
+  /**
+   * Write the body, it must be written before returning
+   * The sink is closed by the caller
+   *
+   * @param sink The body of the response, sent as it is written
+   */
+  void stream(ResponseSink sink) throws IOException;
+
+  /**
+   * Buffer the whole body in the response
+   */
+  @Override
+  default void write(Response res) {
+    try (ResponseSink sink = ResponseSink.into(res)) {
+      stream(sink);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
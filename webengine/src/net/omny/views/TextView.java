@@ -18,8 +18,10 @@ public class TextView implements View{
 	
 	@Override
 	public void write(Response res) {
-        res.setHeader(Headers.CONTENT_LENGTH, String.valueOf(text.getBytes().length));
-		res.addBody(text);
+		// Encoded straight in the body, the length is what was written
+		int before = res.getBody().size();
+		res.getBody().addString(text);
+		res.setHeader(Headers.CONTENT_LENGTH, String.valueOf(res.getBody().size() - before));
 	}
 
 
@@ -0,0 +1,74 @@
+package net.omny.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.omny.server.AdmissionControl;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testBounds() {
+        AdmissionControl admission = new AdmissionControl(2, 10, 0, 1);
+        long first = admission.admit();
+        long second = admission.admit();
+        assertTrue(first >= 0 && second >= 0);
+        assertEquals(-1, admission.admit());
+        assertTrue(admission.begin(first));
+        admission.end();
+        assertTrue(admission.admit() >= 0);
+        assertEquals(3, admission.getAdmitted());
+        assertEquals(1, admission.getShed());
+
+        // The connections waiting for a thread
+        admission = new AdmissionControl(10, 1, 0, 1);
+        long waiting = admission.admit();
+        assertEquals(1, admission.getQueued());
+        assertEquals(-1, admission.admit());
+        assertTrue(admission.begin(waiting));
+        assertEquals(0, admission.getQueued());
+        assertEquals(1, admission.getActive());
+        assertTrue(admission.admit() >= 0);
+        assertEquals(2, admission.getInFlight());
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws InterruptedException {
+        AdmissionControl admission = new AdmissionControl(100, 100, 1, 2);
+        assertEquals(100, admission.getLimit());
+
+        // Waited longer than the target: shed, and the limit shrinks
+        long admittedAt = admission.admit();
+        Thread.sleep(5);
+        assertFalse(admission.begin(admittedAt));
+        assertEquals(90, admission.getLimit());
+        assertEquals(0, admission.getInFlight());
+        assertEquals(1, admission.getShed());
+        admittedAt = admission.admit();
+        Thread.sleep(5);
+        assertFalse(admission.begin(admittedAt));
+        assertEquals(81, admission.getLimit());
+
+        // Grown by one once as many as the limit are handled in time, while busy
+        for (int i = 0; i < 40; i++) {
+            assertTrue(admission.begin(admission.admit()));
+        }
+        for (int i = 0; i < 81; i++) {
+            assertEquals(81, admission.getLimit());
+            assertTrue(admission.begin(admission.admit()));
+            admission.end();
+        }
+        assertEquals(82, admission.getLimit());
+
+        // Never below the minimum
+        admission = new AdmissionControl(2, 10, 1, 2);
+        admittedAt = admission.admit();
+        Thread.sleep(5);
+        assertFalse(admission.begin(admittedAt));
+        assertEquals(2, admission.getLimit());
+    }
+
+}
@@ -1,10 +1,19 @@
 package net.omny.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import org.junit.Test;
 
 import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.ByteStackWriter;
+import net.omny.utils.DirectByteStack;
 
 public class ByteStackTest {
 
@@ -151,4 +160,129 @@ public class ByteStackTest {
         }
     }
 
+    @Test
+    public void testAddString() {
+        ByteStack byteStack = new ByteStack(2);
+        byteStack.addString("Omny ");
+        byteStack.addString("caf\u00e9");
+
+        assertArrayEquals("Omny caf\u00e9".getBytes(StandardCharsets.UTF_8), byteStack.toArrayNative());
+    }
+
+    @Test
+    public void testPoolReuse() {
+        ByteStack byteStack = ByteStackPool.acquire(100);
+        byteStack.push((byte) 1);
+        ByteStackPool.release(byteStack);
+
+        ByteStack again = ByteStackPool.acquire(200);
+        assertSame(byteStack, again);
+        assertEquals(0, again.size());
+        ByteStackPool.release(again);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPoolReleaseTwice() {
+        ByteStack byteStack = ByteStackPool.acquire(100);
+        ByteStackPool.release(byteStack);
+        ByteStackPool.release(byteStack);
+    }
+
+    @Test
+    public void testAsByteBuffer() {
+        ByteStack byteStack = new ByteStack(64);
+        byteStack.addAllBytes(new byte[] { 1, 2, 3 });
+
+        ByteBuffer view = byteStack.asByteBuffer();
+        assertEquals(3, view.remaining());
+        assertEquals(ByteBuffer.wrap(new byte[] { 2, 3 }), byteStack.slice(1, 3));
+    }
+
+    @Test
+    public void testDirectPush() {
+        DirectByteStack byteStack = new DirectByteStack(2);
+        byteStack.push((byte) 1);
+        byteStack.addAllBytes(new byte[] { 2, 3, 4 });
+        byteStack.addString("ab");
+
+        assertEquals(6, byteStack.size());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 'a', 'b' }, byteStack.toArrayNative());
+        assertEquals(ByteBuffer.wrap(new byte[] { 3, 4 }), byteStack.slice(2, 4));
+
+        // Views do not move the stack
+        byteStack.asByteBuffer().get(new byte[6]);
+        assertEquals(6, byteStack.size());
+        byteStack.reset();
+        assertEquals(0, byteStack.asByteBuffer().remaining());
+    }
+
+    @Test
+    public void testIndexOfByte() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[100];
+        for (int n = 0; n < 1000; n++) {
+            random.nextBytes(bytes);
+            byte b = (byte) random.nextInt(256);
+            int from = random.nextInt(50);
+            int to = 50 + random.nextInt(51);
+            int expected = -1;
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == b) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, ByteStack.indexOf(bytes, from, to, b));
+        }
+    }
+
+    @Test
+    public void testIndexOfPattern() {
+        ByteStack byteStack = new ByteStack();
+        byteStack.addString("GET / HTTP/1.1\r\nHost: omny\r\n\r\nbody\r\n\r\n");
+
+        assertEquals(26, byteStack.indexOf("\r\n\r\n".getBytes()));
+        assertEquals(34, byteStack.indexOf("\r\n\r\n".getBytes(), 27));
+        assertEquals(-1, byteStack.indexOf("omnyx".getBytes()));
+    }
+
+    @Test
+    public void testCursorAndCopy() {
+        ByteStack byteStack = new ByteStack();
+        byteStack.addAllBytes(new byte[] { 1, 2, 3 });
+
+        ByteStack.ByteCursor cursor = byteStack.cursor();
+        int sum = 0;
+        while (cursor.hasNext()) {
+            sum += cursor.next();
+        }
+        assertEquals(6, sum);
+
+        byte[] dest = new byte[5];
+        assertEquals(3, byteStack.copyTo(dest, 1));
+        assertArrayEquals(new byte[] { 0, 1, 2, 3, 0 }, dest);
+    }
+
+    @Test
+    public void testUtf8Encoding() throws Exception {
+        String text = "ascii \u00e9t\u00e9 \u20ac \ud83d\ude00 end";
+        ByteStack byteStack = new ByteStack(4);
+        byteStack.addString(text, 6, text.length());
+        assertArrayEquals(text.substring(6).getBytes(StandardCharsets.UTF_8), byteStack.toArrayNative());
+
+        // A pair split between two writes is joined
+        ByteStack written = new ByteStack();
+        ByteStackWriter writer = new ByteStackWriter(written);
+        int split = text.indexOf('\ud83d') + 1;
+        writer.write(text, 0, split);
+        writer.write(text.substring(split));
+        writer.close();
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), written.toArrayNative());
+
+        // Lone surrogates are written as '?'
+        ByteStack lone = new ByteStack();
+        lone.addString("a\ud83db\ude00", 0, 4);
+        assertArrayEquals("a?b?".getBytes(StandardCharsets.UTF_8), lone.toArrayNative());
+    }
+
 }
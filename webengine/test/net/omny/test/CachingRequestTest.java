@@ -1,11 +1,23 @@
 package net.omny.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import net.omny.cache.CacheKey;
 import net.omny.cache.CachingRequest;
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.route.Method;
+import net.omny.route.Request;
+import net.omny.route.Route;
+import net.omny.utils.Debug;
 
 public class CachingRequestTest {
 
@@ -53,4 +65,236 @@ public class CachingRequestTest {
         assertEquals(5, cachingRequest.countRequest("/"));
     }
 
+    @Test
+    public void testCacheKeyMethod() throws MalformedRequestException {
+        Route route = Route.fromText("test");
+        Request get = Request.parse("GET /test HTTP/1.1\r\nHost: localhost");
+        Request head = Request.parse("HEAD /test HTTP/1.1\r\nHost: localhost");
+
+        cachingRequest.cacheRequest(cachingRequest.keyOf(get, route), RESPONSE, 10000);
+
+        assertEquals(1, cachingRequest.countRequest(cachingRequest.keyOf(get)));
+        assertEquals(0, cachingRequest.countRequest(cachingRequest.keyOf(head)));
+    }
+
+    @Test
+    public void testCacheKeyQuery() throws MalformedRequestException {
+        Route route = Route.fromText("test");
+        Request first = Request.parse("GET /test?page=1 HTTP/1.1\r\nHost: localhost");
+        Request second = Request.parse("GET /test?page=2 HTTP/1.1\r\nHost: localhost");
+
+        cachingRequest.cacheRequest(cachingRequest.keyOf(first, route), RESPONSE, 10000);
+
+        // The response depends on the query string
+        assertEquals(1, cachingRequest.countRequest(cachingRequest.keyOf(first)));
+        assertEquals(0, cachingRequest.countRequest(cachingRequest.keyOf(second)));
+    }
+
+    @Test
+    public void testCacheKeyVary() throws MalformedRequestException {
+        Route route = Route.fromText("test");
+        route.setVaryHeaders("Accept-Encoding");
+        Request gzip = Request.parse("GET /test HTTP/1.1\r\nAccept-Encoding: gzip");
+        Request identity = Request.parse("GET /test HTTP/1.1\r\nAccept-Encoding: identity");
+
+        CacheKey gzipKey = cachingRequest.keyOf(gzip, route);
+        assertNotEquals(gzipKey, cachingRequest.keyOf(identity, route));
+
+        cachingRequest.cacheRequest(gzipKey, RESPONSE, 10000);
+
+        assertEquals(gzipKey, cachingRequest.keyOf(gzip));
+        assertEquals(1, cachingRequest.countRequest(cachingRequest.keyOf(gzip)));
+        assertEquals(0, cachingRequest.countRequest(cachingRequest.keyOf(identity)));
+    }
+
+    @Test
+    public void testCacheKeyAuthorization() throws MalformedRequestException {
+        Route route = Route.fromText("test");
+        Request anonymous = Request.parse("GET /test HTTP/1.1\r\nHost: localhost");
+        Request authentified = Request.parse("GET /test HTTP/1.1\r\nAuthorization: Basic dGVzdDp0ZXN0");
+
+        // Private responses are never stored nor served from the cache
+        assertNull(cachingRequest.keyOf(authentified, route));
+        cachingRequest.cacheRequest(cachingRequest.keyOf(anonymous, route), RESPONSE, 10000);
+        assertNull(cachingRequest.keyOf(authentified));
+
+        route.setVaryHeaders("Authorization");
+        assertNotEquals(cachingRequest.keyOf(anonymous, route), cachingRequest.keyOf(authentified, route));
+    }
+
+    @Test
+    public void testLookupRequestLine() {
+        Route route = Route.fromText("test");
+        route.setLastInCache(10000);
+        cachingRequest.cacheRequest(CacheKey.of(Method.GET, "/test?page=1"), RESPONSE, route, () -> RESPONSE);
+
+        // The line is found where it is in the buffer
+        byte[] buffer = "xxGET /test?page=1 HTTP/1.1\r\n".getBytes();
+        assertArrayEquals(RESPONSE, cachingRequest.lookup(buffer, 2, buffer.length - 2));
+        assertNull(lookupLine("HEAD /test?page=1 HTTP/1.1"));
+        assertNull(lookupLine("GET /test?page=2 HTTP/1.1"));
+        assertNull(lookupLine("GET /test?page=1"));
+        assertNull(lookupLine("BREW /test?page=1 HTTP/1.1"));
+    }
+
+    @Test
+    public void testLookupRequestLineCollision() throws MalformedRequestException {
+        Route route = Route.fromText("test");
+        route.setLastInCache(10000);
+        // More targets than slots, some share theirs
+        int count = 3000;
+        for (int i = 0; i < count; i++) {
+            byte[] response = ("HTTP/1.1 200 OK\r\n\r\n" + i).getBytes();
+            cachingRequest.cacheRequest(CacheKey.of(Method.GET, "/page/" + i), response, route, () -> response);
+        }
+        int missed = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] expected = ("HTTP/1.1 200 OK\r\n\r\n" + i).getBytes();
+            byte[] found = lookupLine("GET /page/" + i + " HTTP/1.1");
+            // The slot holds another target, the request is parsed and found
+            if (found == null) {
+                missed++;
+                found = cachingRequest.lookup(Request.parse("GET /page/" + i + " HTTP/1.1\r\nHost: localhost"));
+            }
+            assertArrayEquals(expected, found);
+        }
+        assertTrue(missed >= count - 1024);
+    }
+
+    @Test
+    public void testLookupRequestLineAuthorization() throws MalformedRequestException {
+        Route route = Route.fromText("test");
+        route.setLastInCache(10000);
+        Request anonymous = Request.parse("GET /test HTTP/1.1\r\nHost: localhost");
+        Request authentified = Request.parse("GET /test HTTP/1.1\r\nAuthorization: Basic dGVzdDp0ZXN0");
+        cachingRequest.cacheRequest(cachingRequest.keyOf(anonymous, route), RESPONSE, route, () -> RESPONSE);
+
+        // The line alone matches, the caller checks the credentials first and
+        // the parsed request isn't served
+        assertArrayEquals(RESPONSE, lookupLine("GET /test HTTP/1.1"));
+        assertArrayEquals(RESPONSE, cachingRequest.lookup(anonymous));
+        assertNull(cachingRequest.lookup(authentified));
+    }
+
+    @Test
+    public void testLookupRequestLineReplaced() throws MalformedRequestException, InterruptedException {
+        byte[] replaced = "HTTP/1.1 200 OK\r\n\r\n<html>new</html>\r\n\r\n".getBytes();
+        Route route = Route.fromText("test");
+        route.setLastInCache(10000);
+        CacheKey key = CacheKey.of(Method.GET, "/test");
+        cachingRequest.cacheRequest(key, RESPONSE, route, () -> RESPONSE);
+        assertArrayEquals(RESPONSE, lookupLine("GET /test HTTP/1.1"));
+
+        cachingRequest.cacheRequest(key, replaced, route, () -> replaced);
+        assertArrayEquals(replaced, lookupLine("GET /test HTTP/1.1"));
+
+        // The route now varies, the response stored for every client leaves
+        route.setVaryHeaders("Accept-Encoding");
+        cachingRequest.keyOf(Request.parse("GET /test HTTP/1.1\r\nAccept-Encoding: gzip"), route);
+        assertNull(lookupLine("GET /test HTTP/1.1"));
+
+        // Removed once expired
+        Route shortLived = Route.fromText("test");
+        shortLived.setLastInCache(10);
+        cachingRequest.cacheRequest(CacheKey.of(Method.GET, "/short"), RESPONSE, shortLived, () -> RESPONSE);
+        assertArrayEquals(RESPONSE, lookupLine("GET /short HTTP/1.1"));
+        Thread.sleep(50);
+        cachingRequest.updateCache();
+        assertNull(lookupLine("GET /short HTTP/1.1"));
+    }
+
+    private byte[] lookupLine(String line) {
+        byte[] bytes = line.getBytes();
+        return cachingRequest.lookup(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws InterruptedException {
+        byte[] refreshed = "HTTP/1.1 200 OK\r\n\r\n<html>new</html>\r\n\r\n".getBytes();
+        Route route = Route.fromText("test");
+        route.setLastInCache(10);
+        route.setStaleWhileRevalidate(10000);
+        CacheKey key = CacheKey.of(Method.GET, "/");
+
+        cachingRequest.cacheRequest(key, RESPONSE, route, () -> refreshed);
+        Thread.sleep(50);
+        cachingRequest.updateCache(); // it must keep the stale response
+
+        // The stale response is served, the new one is rendered meanwhile
+        assertArrayEquals(RESPONSE, cachingRequest.lookup(key));
+        assertArrayEquals(refreshed, cachingRequest.lookup(key));
+    }
+
+    @Test
+    public void testRefreshAhead() throws InterruptedException {
+        byte[] refreshed = "HTTP/1.1 200 OK\r\n\r\n<html>new</html>\r\n\r\n".getBytes();
+        Route route = Route.fromText("test");
+        route.setLastInCache(50);
+        route.setRefreshAhead(true);
+        CacheKey key = CacheKey.of(Method.GET, "/");
+
+        cachingRequest.cacheRequest(key, RESPONSE, route, () -> refreshed);
+        for (int i = 0; i < 4; i++) {
+            // Keep the response requested, it is renewed before it times out
+            Thread.sleep(20);
+            cachingRequest.lookup(key);
+        }
+        assertArrayEquals(refreshed, cachingRequest.lookup(key));
+    }
+
+    @Test
+    public void testRefreshFailureKeepsResponse() throws InterruptedException {
+        byte[] error = "HTTP/1.1 500 Internal Server Error\r\n\r\n".getBytes();
+        Route route = Route.fromText("test");
+        route.setLastInCache(10);
+        route.setStaleWhileRevalidate(10000);
+        CacheKey key = CacheKey.of(Method.GET, "/");
+        AtomicInteger renders = new AtomicInteger();
+
+        cachingRequest.cacheRequest(key, RESPONSE, route, () -> {
+            if (renders.incrementAndGet() == 1)
+                return error;
+            throw new IllegalStateException("Render failed");
+        });
+        boolean debug = Debug.ENABLE;
+        Debug.ENABLE = false;
+        try {
+            Thread.sleep(50);
+            // Neither the error nor the exception replace the stale response
+            assertArrayEquals(RESPONSE, cachingRequest.lookup(key));
+            assertArrayEquals(RESPONSE, cachingRequest.lookup(key));
+            assertArrayEquals(RESPONSE, cachingRequest.lookup(key));
+            assertEquals(3, renders.get());
+        } finally {
+            Debug.ENABLE = debug;
+        }
+    }
+
+    @Test
+    public void testTimedOutWhileRequested() throws InterruptedException {
+        Route route = Route.fromText("test");
+        route.setLastInCache(50);
+        CacheKey key = CacheKey.of(Method.GET, "/");
+
+        cachingRequest.cacheRequest(key, RESPONSE, route, () -> RESPONSE);
+        for (int i = 0; i < 2; i++) {
+            Thread.sleep(20);
+            assertArrayEquals(RESPONSE, cachingRequest.lookup(key));
+        }
+        // Requested all along, it is still too old
+        Thread.sleep(20);
+        assertNull(cachingRequest.lookup(key));
+    }
+
+    @Test
+    public void testExpiredWithoutRevalidate() throws InterruptedException {
+        Route route = Route.fromText("test");
+        route.setLastInCache(10);
+        CacheKey key = CacheKey.of(Method.GET, "/");
+
+        cachingRequest.cacheRequest(key, RESPONSE, route, () -> RESPONSE);
+        Thread.sleep(50);
+        assertNull(cachingRequest.lookup(key));
+    }
+
 }
@@ -0,0 +1,40 @@
+package net.omny.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+
+import net.omny.utils.HttpClock;
+
+public class HttpClockTest {
+
+    @Test
+    public void testFormat() {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpClock.format(0));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpClock.format(784111777000L));
+    }
+
+    @Test
+    public void testTicking() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            HttpClock.start(executor);
+            long before = System.currentTimeMillis();
+            Thread.sleep(50);
+            long millis = HttpClock.millis();
+            assertTrue(millis >= before && millis <= System.currentTimeMillis());
+            assertArrayEquals(("Date: " + HttpClock.date() + "\r\n").getBytes(), HttpClock.dateHeader());
+        } finally {
+            executor.shutdownNow();
+        }
+        // Back to the system time once the executor is stopped
+        long before = System.currentTimeMillis();
+        assertTrue(HttpClock.millis() >= before);
+    }
+
+}
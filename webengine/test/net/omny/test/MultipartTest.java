@@ -0,0 +1,144 @@
+package net.omny.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.omny.exceptions.PayloadTooLargeException;
+import net.omny.route.Multipart;
+
+public class MultipartTest {
+
+  private static final String BOUNDARY = "----omny42";
+
+  @Test
+  public void testReadForm() throws IOException {
+    byte[] body = ("preamble\r\n"
+        + "--" + BOUNDARY + "\r\n"
+        + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+        + "h\u00e9llo\r\n"
+        + "--" + BOUNDARY + "  \r\n"
+        + "Content-Disposition: form-data; name=\"upload\"; filename=\"a \\\"b\\\".txt\"\r\n"
+        + "Content-Type: text/plain\r\n\r\n"
+        + "line\r\n--" + BOUNDARY.substring(0, 6) + "\r\n"
+        + "--" + BOUNDARY + "--\r\nepilogue").getBytes(StandardCharsets.UTF_8);
+
+    // Read a few bytes at a time, the boundary is split between reads
+    for (int step = 1; step < 8; step++) {
+      try (Multipart multipart = new Multipart(trickle(body, step), BOUNDARY)) {
+        Multipart.Form form = multipart.readForm();
+        assertEquals("h\u00e9llo", form.getField("title"));
+        Multipart.SpooledFile file = form.getFile("upload");
+        assertEquals("a \"b\".txt", file.getFileName());
+        assertEquals("text/plain", file.getContentType());
+        assertEquals("line\r\n--" + BOUNDARY.substring(0, 6), Files.readString(file.getPath()));
+        assertEquals(file.getSize(), Files.size(file.getPath()));
+        multipart.close();
+        // Not moved, deleted with the parser
+        assertFalse(Files.exists(file.getPath()));
+      }
+    }
+  }
+
+  @Test
+  public void testStreamedPart() throws IOException {
+    byte[] content = new byte[1024 * 1024];
+    new Random(42).nextBytes(content);
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename*=UTF-8''na%C3%AFve+1.bin\r\n\r\n").getBytes());
+    body.write(content);
+    body.write(("\r\n--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"skipped\"; filename=\"b\"\r\n\r\n").getBytes());
+    body.write(content);
+    body.write(("\r\n--" + BOUNDARY + "--").getBytes());
+
+    Multipart multipart = new Multipart(trickle(body.toByteArray(), 4000), BOUNDARY);
+    Multipart.Part part = multipart.next();
+    assertTrue(part.isFile());
+    assertEquals("file", part.getName());
+    assertEquals("na\u00efve+1.bin", part.getFileName());
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    assertEquals(content.length, part.transferTo(Channels.newChannel(received)));
+    assertArrayEquals(content, received.toByteArray());
+    assertEquals(-1, part.read(ByteBuffer.allocate(8)));
+
+    // Not read, skipped
+    assertEquals("skipped", multipart.next().getName());
+    assertNull(multipart.next());
+    assertNull(multipart.next());
+  }
+
+  @Test
+  public void testLimits() throws IOException {
+    byte[] body = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\n"
+        + "0123456789\r\n--" + BOUNDARY + "--").getBytes();
+
+    Multipart multipart = new Multipart(trickle(body, 64), BOUNDARY);
+    multipart.setMaxFieldSize(5);
+    assertThrows(PayloadTooLargeException.class, () -> multipart.next().getValue());
+
+    Multipart parts = new Multipart(trickle(body, 64), BOUNDARY);
+    parts.setMaxPartSize(9);
+    assertThrows(PayloadTooLargeException.class, () -> parts.next().transferTo(Channels.newChannel(new ByteArrayOutputStream())));
+
+    Multipart total = new Multipart(trickle(body, 8), BOUNDARY);
+    total.setMaxTotalSize(body.length - 1);
+    assertThrows(PayloadTooLargeException.class, () -> total.readForm());
+
+    byte[] truncated = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\n0123").getBytes();
+    Multipart invalid = new Multipart(trickle(truncated, 64), BOUNDARY);
+    assertThrows(ProtocolException.class, () -> invalid.readForm());
+  }
+
+  @Test
+  public void testBoundary() {
+    assertEquals(BOUNDARY, Multipart.boundaryOf("multipart/form-data; boundary=" + BOUNDARY));
+    assertEquals("a b", Multipart.boundaryOf("Multipart/Form-Data; charset=utf-8; boundary=\"a b\""));
+    assertNull(Multipart.boundaryOf("application/x-www-form-urlencoded"));
+    assertNull(Multipart.boundaryOf(null));
+  }
+
+  /**
+   * A channel giving at most a few bytes for each read
+   */
+  private static ReadableByteChannel trickle(byte[] bytes, int step) {
+    return new ReadableByteChannel() {
+      private int position;
+
+      @Override
+      public int read(ByteBuffer dst) {
+        if (this.position == bytes.length) {
+          return -1;
+        }
+        int count = Math.min(Math.min(step, dst.remaining()), bytes.length - this.position);
+        dst.put(bytes, this.position, count);
+        this.position += count;
+        return count;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+}
@@ -2,13 +2,39 @@ package net.omny.test;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import org.junit.Test;
 
+import net.omny.exceptions.HeadTooLargeException;
 import net.omny.exceptions.MalformedRequestException;
+import net.omny.exceptions.PayloadTooLargeException;
+import net.omny.route.Code;
 import net.omny.route.Method;
+import net.omny.route.QueryString;
 import net.omny.route.Request;
+import net.omny.route.RequestContext;
 public class RequestTest{
 
   public static final String REQUEST = 
@@ -17,6 +43,8 @@ public class RequestTest{
   public static final String REQUEST_PARAMS = 
   "GET /api/user/Fabcc_c HTTP/1.1\r\nHost: localhost:8080\r\nConnection: keep-alive";
 
+  private static final long MAX_BODY_SIZE = 1024;
+
   
   @Test
   public void testRequestParsing() throws MalformedRequestException{
@@ -49,4 +77,255 @@ public class RequestTest{
     assertEquals("Fabcc_c", params.get("playername"));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testHeaderValues() throws MalformedRequestException {
+    Request request = Request.parse(
+        "POST /form HTTP/1.1\r\nReferer:  http://localhost:8080/a  \r\nX-Empty:\r\nAccept: a\r\naccept: b\r\n\r\n");
+
+    assertEquals(Method.POST, request.getMethod());
+    assertEquals("http://localhost:8080/a", request.getHeader("Referer"));
+    assertEquals("", request.getHeader("X-Empty"));
+    // The last value wins
+    assertEquals("b", request.getHeader("Accept"));
+    assertFalse(request.containsHeader("Host"));
+    assertNull(request.getHeader("Host"));
+    assertThrows(MalformedRequestException.class, () -> Request.parse("GET / HTTP/1.1\r\nNoColon"));
+    assertThrows(MalformedRequestException.class, () -> Request.parse("FETCH / HTTP/1.1"));
+  }
+
+  @Test
+  public void testRecycledRequest() throws IOException, MalformedRequestException, InterruptedException, ExecutionException {
+    RequestContext context = RequestContext.open(new ByteArrayInputStream((REQUEST + "\r\n\r\n").getBytes()), null);
+    Request request = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    Request snapshot = request.snapshot();
+
+    assertEquals("localhost:8080", request.getHeader("Host"));
+    // Only the thread handling the request may use it
+    CompletableFuture<Void> other = CompletableFuture.runAsync(() -> assertThrows(IllegalStateException.class, request::getPath));
+    other.get();
+    context.close();
+    assertThrows(IllegalStateException.class, request::getPath);
+    assertEquals("/", snapshot.getPath());
+    assertEquals("localhost:8080", snapshot.getHeader("host"));
+
+    // The same request is parsed again for the next client
+    RequestContext next = RequestContext.open(new ByteArrayInputStream((REQUEST_PARAMS + "\r\n\r\n").getBytes()), null);
+    Request nextRequest = next.parseRequest(next.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    assertSame(request, nextRequest);
+    assertEquals("/api/user/Fabcc_c", nextRequest.getPath());
+    assertEquals("keep-alive", nextRequest.getHeader("Connection"));
+    next.close();
+    assertEquals("/", snapshot.getPath());
+  }
+
+  @Test
+  public void testRequestBody() throws IOException, MalformedRequestException {
+    RequestContext context = open("POST /form HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello world", null);
+    Request request = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    assertTrue(request.hasBody());
+    assertEquals("hello world", request.getBodyAsString());
+    // Read once, the same bytes are given again
+    assertEquals(11, request.getBody().size());
+    context.close();
+
+    context = open(REQUEST + "\r\n\r\n", null);
+    request = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    assertFalse(request.hasBody());
+    assertEquals("", request.getBodyAsString());
+    context.close();
+  }
+
+  @Test
+  public void testChunkedBody() throws IOException, MalformedRequestException {
+    RequestContext context = open("PUT /file HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+        + "5\r\nhello\r\n6;name=value\r\n world\r\n0\r\nTrailer: ignored\r\n\r\n", null);
+    Request request = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    assertTrue(request.hasBody());
+    ReadableByteChannel channel = request.getBodyChannel();
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    while (channel.read(buffer) >= 0) {
+    }
+    buffer.flip();
+    assertEquals("hello world", StandardCharsets.UTF_8.decode(buffer).toString());
+    context.close();
+
+    context = open("PUT /file HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n", null);
+    Request malformed = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    assertThrows(ProtocolException.class, () -> malformed.getBodyChannel().read(ByteBuffer.allocate(8)));
+    context.close();
+  }
+
+  @Test
+  public void testBodyTooLarge() throws IOException, MalformedRequestException {
+    RequestContext context = open("POST / HTTP/1.1\r\nContent-Length: 2048\r\n\r\n", null);
+    // Refused before the body is read
+    assertThrows(PayloadTooLargeException.class, () -> context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE));
+    context.close();
+
+    // A chunked body has no declared length, it is refused while read
+    String chunk = "x".repeat(1000);
+    RequestContext chunked = open("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+        + "3e8\r\n" + chunk + "\r\n3e8\r\n" + chunk + "\r\n0\r\n\r\n", null);
+    Request request = chunked.parseRequest(chunked.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    UncheckedIOException e = assertThrows(UncheckedIOException.class, request::getBody);
+    assertTrue(e.getCause() instanceof PayloadTooLargeException);
+    chunked.close();
+
+    assertThrows(MalformedRequestException.class, () -> {
+      RequestContext invalid = open("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n", null);
+      try {
+        invalid.parseRequest(invalid.getInput().findHeadEnd(), MAX_BODY_SIZE);
+      } finally {
+        invalid.close();
+      }
+    });
+  }
+
+  @Test
+  public void testExpectContinue() throws IOException, MalformedRequestException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RequestContext context = open("POST / HTTP/1.1\r\nContent-Length: 2\r\nExpect: 100-continue\r\n\r\nok", out);
+    Request request = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    // Only asked for when the route reads the body
+    assertEquals(0, out.size());
+    assertEquals("ok", request.getBodyAsString());
+    assertEquals("HTTP/1.1 100 Continue\r\n\r\n", out.toString());
+    context.close();
+  }
+
+  @Test
+  public void testHeadLimits() throws IOException, MalformedRequestException {
+    RequestContext context = open("GET /" + "a".repeat(9000) + " HTTP/1.1\r\n\r\n", null);
+    HeadTooLargeException e = assertThrows(HeadTooLargeException.class, () -> context.getInput().findHeadEnd());
+    assertEquals(Code.E414_URI_TOO_LONG, e.getCode());
+    context.close();
+
+    RequestContext headers = open("GET / HTTP/1.1\r\n" + "X-Pad: 0123456789\r\n".repeat(100) + "\r\n", null);
+    headers.getInput().setMaxHeadSize(1024);
+    e = assertThrows(HeadTooLargeException.class, () -> headers.getInput().findHeadEnd());
+    assertEquals(Code.E431_REQUEST_HEADER_FIELDS_TOO_LARGE, e.getCode());
+    headers.close();
+
+    // Back to the default limits for the next client
+    RequestContext next = open("GET / HTTP/1.1\r\n" + "X-Pad: 0123456789\r\n".repeat(100) + "\r\n", null);
+    assertEquals("/", next.parseRequest(next.getInput().findHeadEnd(), MAX_BODY_SIZE).getPath());
+    next.close();
+  }
+
+  @Test
+  public void testSlowClient() throws IOException, MalformedRequestException {
+    String head = REQUEST + "\r\n\r\n";
+    // A byte every 20 ms
+    RequestContext context = RequestContext.open(new SlowInputStream(head.getBytes(), 20), null);
+    context.getInput().deadline(100, 0);
+    assertThrows(SocketTimeoutException.class, () -> context.getInput().findHeadEnd());
+    context.close();
+
+    // 50 bytes per second, let through while it has its allowance
+    RequestContext slow = RequestContext.open(
+        new SlowInputStream(("GET /" + "a".repeat(100) + " HTTP/1.1\r\n").getBytes(), 20), null);
+    slow.getInput().deadline(0, 1000);
+    SocketTimeoutException e = assertThrows(SocketTimeoutException.class, () -> slow.getInput().readLine());
+    assertTrue(e.getMessage(), e.getMessage().contains("1000 bytes per second"));
+    slow.close();
+
+    // A small head, its last packet late
+    byte[] small = head.getBytes();
+    RequestContext late = RequestContext.open(new SequenceInputStream(
+        new ByteArrayInputStream(small, 0, small.length - 1),
+        new SlowInputStream(new byte[] {'\n'}, 1500)), null);
+    late.getInput().deadline(0, 1024);
+    assertEquals(small.length, late.getInput().findHeadEnd());
+    late.close();
+  }
+
+  /**
+   * Sends its bytes one by one
+   */
+  private static class SlowInputStream extends InputStream {
+
+    private final byte[] bytes;
+    private final long delay;
+    private int position;
+
+    SlowInputStream(byte[] bytes, long delay) {
+      this.bytes = bytes;
+      this.delay = delay;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (this.position == this.bytes.length) {
+        return -1;
+      }
+      try {
+        Thread.sleep(this.delay);
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      b[off] = this.bytes[this.position++];
+      return 1;
+    }
+
+  }
+
+  private static RequestContext open(String request, OutputStream out) {
+    return RequestContext.open(new ByteArrayInputStream(request.getBytes()), out);
+  }
+
+  @Test
+  public void testQueryString() throws MalformedRequestException {
+    Request request = Request.parse("GET /search?q=a+b%26c&tag=x&tag=&empty&caf%C3%A9=%E2%82%AC&bad=%zz HTTP/1.1\r\nHost: localhost");
+    assertEquals("/search", request.getPath());
+    assertEquals("/search?q=a+b%26c&tag=x&tag=&empty&caf%C3%A9=%E2%82%AC&bad=%zz", request.getTarget());
+    assertEquals("q=a+b%26c&tag=x&tag=&empty&caf%C3%A9=%E2%82%AC&bad=%zz", request.getQueryString());
+
+    QueryString query = request.getQuery();
+    assertEquals(6, query.size());
+    assertEquals("a b&c", request.getQuery("q"));
+    assertEquals(List.of("x", ""), query.getAll("tag"));
+    assertEquals("", query.get("empty"));
+    assertEquals("\u20ac", query.get("caf\u00e9"));
+    // Invalid escapes are kept
+    assertEquals("%zz", query.get("bad"));
+    assertNull(query.get("missing"));
+    assertTrue(query.getAll("missing").isEmpty());
+
+    Request noQuery = Request.parse(REQUEST);
+    assertNull(noQuery.getQueryString());
+    assertTrue(noQuery.getQuery().isEmpty());
+  }
+
+  @Test
+  public void testFormParams() throws IOException, MalformedRequestException {
+    RequestContext context = open("POST /login HTTP/1.1\r\nContent-Type: application/x-www-form-urlencoded\r\n"
+        + "Content-Length: 25\r\n\r\nuser=fab&pass=p%40ss+word", null);
+    Request request = context.parseRequest(context.getInput().findHeadEnd(), MAX_BODY_SIZE);
+    QueryString form = request.getFormParams();
+    assertEquals("fab", form.get("user"));
+    assertEquals("p@ss word", form.get("pass"));
+    context.close();
+  }
+
+  @Test
+  public void testMatchPath() throws MalformedRequestException {
+    Request request = Request.parse("GET /api/user/Fab%20c/posts?sort=date HTTP/1.1");
+    assertTrue(request.matchPath("/api/user/:name/posts"));
+    assertEquals("Fab c", request.getParams("name"));
+    assertTrue(request.matchPath("/api/user/:name/posts/"));
+    assertFalse(request.matchPath("/api/user/:name"));
+    assertFalse(request.matchPath("/api/users/:name/posts"));
+    assertFalse(request.matchPath("/api/user/:name/posts/:id"));
+    assertTrue(request.equalsPath("/api/:kind/:name/posts", true));
+
+    assertTrue(Request.parse("GET / HTTP/1.1").matchPath("/"));
+    assertFalse(Request.parse("GET / HTTP/1.1").matchPath("/:id"));
+  }
+
+}
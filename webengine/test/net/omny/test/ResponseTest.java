@@ -3,20 +3,44 @@ package net.omny.test;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
 import net.omny.route.Code;
+import net.omny.route.ConstantResponse;
+import net.omny.route.Request;
 import net.omny.route.Response;
+import net.omny.route.ResponseSink;
+import net.omny.route.impl.TextRoute;
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.CompositeBuffer;
 import net.omny.utils.Ex;
 import net.omny.utils.HTTPUtils.Version;
+import net.omny.views.StreamingView;
 import net.omny.views.TextView;
+import net.omny.views.View;
 
 public class ResponseTest{
 
+	/**
+	 * The date changes every second
+	 */
+	private static String withoutDate(String response) {
+		return response.replaceFirst("Date: [A-Z][a-z]{2}, \\d{2} [A-Z][a-z]{2} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT\r\n", "Date: <date>\r\n");
+	}
+
 	@Test
 	public void test404ResponseAndHeader() {
 		Response response = new Response();
@@ -24,7 +48,8 @@ public class ResponseTest{
 		response.setResponseCode(Code.E404_NOT_FOUND);
 		response.setHeader("Server", "Nginx");
 		
-		assertEquals("HTTP/1.1 404 Not Found\r\nServer: Nginx\r\nContent-Length: 0\r\nContent-Type: charset=UTF-8\r\n\r\n", response.toString());
+		assertEquals("HTTP/1.1 404 Not Found\r\nServer: Nginx\r\nDate: <date>\r\nContent-Length: 0\r\nContent-Type: charset=UTF-8\r\n\r\n",
+				withoutDate(response.toString()));
 	}
 	
 	@Test
@@ -48,7 +73,222 @@ public class ResponseTest{
 		});
 		StringBuffer fullHTTPResponse = fakeClientSocket.getBuffer();
 		String resultString = fullHTTPResponse.toString().trim()+"\r\n\r\n";
-		assertEquals("HTTP/1.1 200 OK\r\nServer: Omny\r\nContent-Length: 20\r\nContent-Type: charset=UTF-8\r\n\r\nThis is a text !!!\r\n\r\n", resultString);
+		assertEquals("HTTP/1.1 200 OK\r\nServer: Omny\r\nDate: <date>\r\nContent-Length: 20\r\nContent-Type: charset=UTF-8\r\n\r\nThis is a text !!!\r\n\r\n", withoutDate(resultString));
 	}
 	
+	@Test
+	public void testConstantResponse() {
+		TextRoute route = new TextRoute("Hello");
+		assertTrue(route.isConstant());
+
+		ConstantResponse response = ConstantResponse.render(route);
+		assertEquals("HTTP/1.1 200 OK\r\nServer: Omny\r\nContent-Type: text/plain;charset=UTF-8\r\nContent-Length: 5\r\n"
+				+ "Date: <date>\r\nConnection: close\r\n\r\nHello", withoutDate(new String(response.toBytes())));
+	}
+
+	@Test
+	public void testSubclassNotConstant() {
+		TextRoute route = new TextRoute("Hello") {
+			@Override
+			public View handle(Request req, Response res) {
+				return new TextView(req.getPath());
+			}
+		};
+		assertFalse(route.isConstant());
+	}
+
+	@Test
+	public void testLargeConstantResponse() {
+		String text = "a".repeat(20000);
+		ConstantResponse response = ConstantResponse.render(new TextRoute(text));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ex.grab(() -> response.writeTo(out));
+		assertEquals(20000, response.getBodyLength());
+		assertEquals(new String(response.toBytes()), out.toString());
+		assertTrue(out.toString().endsWith("\r\n\r\n" + text));
+	}
+
+	@Test
+	public void testCompositeBody() {
+		byte[] shared = "shared ".repeat(1000).getBytes();
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		response.setBinary(true);
+		response.addBody("start ");
+		response.addSharedBody(shared);
+		response.addBody("end");
+		String body = "start " + "shared ".repeat(1000) + "end";
+
+		assertEquals(body.length(), response.getBodySize());
+		assertEquals(body, new String(response.bodyToArray()));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ex.grab(() -> response.writeTo(out));
+		assertEquals(new String(response.toRawBytes()), out.toString());
+		assertTrue(out.toString().contains("Content-Length: " + body.length() + "\r\n"));
+		assertTrue(out.toString().endsWith("\r\n\r\n" + body));
+		response.release();
+	}
+
+	@Test
+	public void testStreamedBody() throws IOException {
+		// Closed before a chunk is full, sent with its length
+		Response small = new Response(Code.S200_OK, Version.V1_1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ResponseSink sink = new ResponseSink(small, out)) {
+			sink.write("small body");
+		}
+		small.release();
+		assertTrue(out.toString().contains("Content-Length: 10\r\n"));
+		assertTrue(out.toString().endsWith("\r\n\r\nsmall body"));
+
+		// Larger than a chunk, sent chunked
+		Response large = new Response(Code.S200_OK, Version.V1_1);
+		out.reset();
+		StringBuilder expected = new StringBuilder();
+		try (ResponseSink sink = new ResponseSink(large, out)) {
+			for (int i = 0; i < 2000; i++) {
+				String line = "line " + i + "\n";
+				sink.write(line);
+				expected.append(line);
+			}
+			assertTrue(sink.isCommitted());
+			byte[] big = "x".repeat(3 * ResponseSink.CHUNK_SIZE).getBytes();
+			sink.write(big);
+			expected.append(new String(big));
+		}
+		large.release();
+		String raw = out.toString();
+		int headEnd = raw.indexOf("\r\n\r\n") + 4;
+		assertTrue(raw.substring(0, headEnd).contains("Transfer-Encoding: chunked\r\n"));
+		assertFalse(raw.substring(0, headEnd).contains("Content-Length"));
+		// Decode the chunks
+		StringBuilder body = new StringBuilder();
+		int position = headEnd;
+		while (true) {
+			int lineEnd = raw.indexOf("\r\n", position);
+			int size = Integer.parseInt(raw.substring(position, lineEnd), 16);
+			if (size == 0) {
+				assertEquals(lineEnd + 4, raw.length());
+				break;
+			}
+			assertTrue(size <= 0xffff);
+			body.append(raw, lineEnd + 2, lineEnd + 2 + size);
+			assertEquals("\r\n", raw.substring(lineEnd + 2 + size, lineEnd + 4 + size));
+			position = lineEnd + 4 + size;
+		}
+		assertEquals(expected.toString(), body.toString());
+	}
+
+	@Test
+	public void testWrappedBody() throws IOException {
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		response.addBody("x".repeat(3 * ResponseSink.CHUNK_SIZE));
+		response.setHeader("Content-Length", String.valueOf(3 * ResponseSink.CHUNK_SIZE));
+		// Each byte twice, the body is larger once filtered
+		response.wrapBody(body -> new FilterOutputStream(body) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				out.write(b);
+			}
+		});
+		assertTrue(response.isBodyWrapped());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.writeTo(out);
+		String raw = out.toString();
+		String head = raw.substring(0, raw.indexOf("\r\n\r\n") + 4);
+		assertTrue(head, head.contains("Transfer-Encoding: chunked\r\n"));
+		assertFalse(head, head.contains("Content-Length"));
+		assertEquals(6 * ResponseSink.CHUNK_SIZE, raw.chars().filter(c -> c == 'x').count());
+		assertTrue(raw.endsWith("\r\n0\r\n\r\n"));
+		response.release();
+	}
+
+	@Test
+	public void testBufferedStreamingView() {
+		StreamingView view = StreamingView.of(sink -> {
+			sink.write("a");
+			sink.write('b');
+			sink.write("c".getBytes());
+		});
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		view.write(response);
+		assertEquals("abc", new String(response.bodyToArray()));
+		response.release();
+	}
+
+	@Test
+	public void testLazyBody() throws IOException {
+		assertFalse(ByteStackPool.TRACK_LEAKS);
+		// Not written, nothing is taken from the pool
+		Response empty = new Response(Code.E404_NOT_FOUND, Version.V1_1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		empty.writeTo(out);
+		assertTrue(out.toString().startsWith("HTTP/1.1 404"));
+		assertEquals(0, empty.getBodySize());
+		empty.release();
+
+		Response response = new Response();
+		response.addBody("abc");
+		response.release();
+		// Released once, a late write takes another buffer
+		response.release();
+		response.addBody("d");
+		assertEquals("d", new String(response.bodyToArray()));
+		response.release();
+	}
+
+	@Test
+	public void testSharedBodyNotCopied() throws IOException {
+		byte[] shared = "a preloaded file".getBytes();
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		response.addBody("head");
+		response.addSharedBody(shared);
+		// Written from the array itself
+		List<byte[]> written = new ArrayList<>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				written.add(b);
+				super.write(b, off, len);
+			}
+		};
+		response.writeTo(out);
+		assertTrue(written.stream().anyMatch(bytes -> bytes == shared));
+		assertTrue(out.toString().endsWith("heada preloaded file"));
+		response.release();
+
+		// Copied from the array itself
+		CompositeBuffer chunks = new CompositeBuffer();
+		chunks.append(shared);
+		List<byte[]> copied = new ArrayList<>();
+		ByteStack stack = new ByteStack() {
+			@Override
+			public void addAllBytes(byte[] bytes, int offset, int length) {
+				copied.add(bytes);
+				super.addAllBytes(bytes, offset, length);
+			}
+		};
+		chunks.copyTo(stack);
+		assertEquals(1, copied.size());
+		assertSame(shared, copied.get(0));
+		assertEquals("a preloaded file", new String(stack.getBackedArray(), 0, stack.size()));
+		// The views stay read-only
+		assertTrue(chunks.views()[0].isReadOnly());
+	}
+
+	@Test
+	public void testClearBody() {
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		response.addBody("head");
+		response.addSharedBody("shared".getBytes());
+		response.addBody("tail");
+		response.clearBody();
+		assertEquals(0, response.getBodySize());
+		response.addBody("error");
+		assertEquals("error", new String(response.bodyToArray()));
+		response.release();
+	}
+
 }
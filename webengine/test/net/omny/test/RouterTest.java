@@ -1,12 +1,62 @@
 package net.omny.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Test;
 
+import net.omny.cache.CacheKey;
+import net.omny.exceptions.MalformedRequestException;
+import net.omny.route.AsyncRoute;
+import net.omny.route.Code;
+import net.omny.route.Method;
 import net.omny.route.NamedRouter;
+import net.omny.route.Request;
+import net.omny.route.Response;
+import net.omny.route.Route;
+import net.omny.route.Router;
+import net.omny.route.impl.AnonymousAsyncRoute;
+import net.omny.route.impl.AnonymousRoute;
+import net.omny.route.impl.JsonRoute;
+import net.omny.route.middleware.CredentialCache;
 import net.omny.route.middleware.LoginPasswordMiddleware;
+import net.omny.route.middleware.Middleware;
 import net.omny.route.middleware.MiddlewarePriority;
+import net.omny.route.middleware.MiddlewareTrie;
+import net.omny.route.middleware.RateLimitMiddleware;
+import net.omny.route.middleware.StaticFileMiddleware;
+import net.omny.route.middleware.ResponseInterceptor;
+import net.omny.route.middleware.UrlMiddleware;
+import net.omny.server.WebServer;
+import net.omny.utils.ByteStack;
+import net.omny.utils.ByteStackPool;
+import net.omny.utils.Debug;
+import net.omny.views.StreamingView;
+import net.omny.views.TextView;
+import net.omny.views.View;
 
 public class RouterTest {
 
@@ -24,6 +74,540 @@ public class RouterTest {
                 .getUrl());
     }
 
+    @Test
+    public void testMiddlewareChains() {
+        Router router = new Router();
+        Middleware global = new PathMiddleware(null);
+        Middleware api = new PathMiddleware("/api");
+        Middleware users = new PathMiddleware("/api/users");
+        Middleware last = new PathMiddleware("");
+        router.middleware(api);
+        router.middleware(global);
+        router.middleware(users);
+        router.middleware(last);
+
+        MiddlewareTrie trie = router.getMiddlewareTrie(MiddlewarePriority.BEFORE);
+        // In the order they were added, as startsWith matched them
+        assertArrayEquals(new Middleware[] { global, last }, trie.chainFor("/"));
+        assertArrayEquals(new Middleware[] { global, last }, trie.chainFor("/ap"));
+        assertArrayEquals(new Middleware[] { api, global, last }, trie.chainFor("/api"));
+        assertArrayEquals(new Middleware[] { api, global, last }, trie.chainFor("/apix/users"));
+        assertArrayEquals(new Middleware[] { api, global, users, last }, trie.chainFor("/api/users/1"));
+        assertArrayEquals(new Middleware[] { api, global, last }, trie.chainFor("/api/user"));
+
+        // The middlewares of a named router are under its namespace
+        router.route(new NamedRouter("admin") {
+            @Override
+            public void route() {
+                middleware(new PathMiddleware("/"));
+            }
+        });
+        trie = router.getMiddlewareTrie(MiddlewarePriority.BEFORE);
+        assertEquals("/admin/", ((UrlMiddleware) trie.chainFor("/admin/users")[2]).getUrl());
+        assertEquals(3, trie.chainFor("/admin/users").length);
+        assertEquals(2, trie.chainFor("/admin").length);
+    }
+
+    @Test
+    public void testInterceptors() throws Exception {
+        String text = "hello ".repeat(2000);
+        List<String> sent = new ArrayList<>();
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.route("/text", (req, res) -> new TextView(text), Method.GET);
+            router.route("/stream", (req, res) -> StreamingView.of(sink -> sink.write(text)), Method.GET);
+            router.intercept((req, res) -> res.setHeader("X-Frame-Options", "DENY"));
+            router.intercept(new CompressingInterceptor());
+            router.middleware((webServer, r, req, client) -> {
+                sent.add(req.getPath());
+                return false;
+            }, MiddlewarePriority.AFTER);
+        });
+        server.init();
+
+        // Cached route, then streamed one, compressed as they are sent
+        for (String path : new String[] { "/text", "/stream" }) {
+            String[] response = handle(server, path);
+            assertTrue(response[0], response[0].contains("X-Frame-Options: DENY\r\n"));
+            assertTrue(response[0], response[0].contains("Content-Encoding: gzip\r\n"));
+            // The length of the compressed body, it fits in a chunk
+            assertFalse(response[0], response[0].contains("Content-Length: " + text.length()));
+            assertTrue(response[0], response[0].contains("Content-Length: "));
+            assertEquals(text, response[1]);
+        }
+        String[] notFound = handle(server, "/missing");
+        assertTrue(notFound[0], notFound[0].startsWith("HTTP/1.1 404"));
+        assertTrue(notFound[0], notFound[0].contains("X-Frame-Options: DENY\r\n"));
+        assertEquals(List.of("/text", "/stream", "/missing"), sent);
+    }
+
+    @Test
+    public void testAsyncRoutes() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        CompletableFuture<View> never = new CompletableFuture<>();
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.routeAsync("/now", (req, res) -> CompletableFuture.completedFuture(new TextView("now")), Method.GET);
+            router.routeAsync("/later", (req, res) -> {
+                Request snapshot = req.snapshot();
+                res.setHeader("X-Async", "yes");
+                return CompletableFuture.supplyAsync(() -> new TextView("later " + snapshot.getQuery("n")),
+                        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+            }, Method.GET);
+            AsyncRoute late = new AnonymousAsyncRoute((req, res) -> never);
+            late.setTimeout(50);
+            late.setTimeoutCode(Code.E408_REQUEST_TIMEOUT);
+            router.route("/late", late, Method.GET);
+            router.routeAsync("/failed", (req, res) -> CompletableFuture.failedFuture(new IllegalStateException()),
+                    Method.GET);
+            router.intercept((req, res) -> res.setHeader("X-Path", req.getPath()));
+            router.middleware((webServer, r, req, client) -> {
+                sent.add(req.getPath());
+                return false;
+            }, MiddlewarePriority.AFTER);
+        });
+        server.init();
+
+        String[] now = handle(server, "/now");
+        assertTrue(now[0], now[0].contains("X-Path: /now\r\n"));
+        assertEquals("now", now[1]);
+
+        // Answered by another thread, the socket is closed once sent
+        String[] later = handle(server, "/later?n=1");
+        assertTrue(later[0], later[0].startsWith("HTTP/1.1 200"));
+        assertTrue(later[0], later[0].contains("X-Async: yes\r\n"));
+        assertTrue(later[0], later[0].contains("X-Path: /later\r\n"));
+        assertEquals("later 1", later[1]);
+
+        assertTrue(handle(server, "/late")[0].startsWith("HTTP/1.1 408 Request Timeout"));
+        assertFalse(never.isDone());
+        // The failure is expected, it isn't reported
+        boolean debug = Debug.ENABLE;
+        Debug.ENABLE = false;
+        try {
+            assertTrue(handle(server, "/failed")[0].startsWith("HTTP/1.1 500 Internal Server Error"));
+        } finally {
+            Debug.ENABLE = debug;
+        }
+        assertEquals(List.of("/now", "/later", "/late", "/failed"), sent);
+    }
+
+    @Test
+    public void testAsyncTimeoutRelease() throws Exception {
+        CompletableFuture<View> stage = new CompletableFuture<>();
+        AtomicReference<Response> written = new AtomicReference<>();
+        DummyWebServer server = new DummyWebServer(router -> {
+            AsyncRoute slow = new AnonymousAsyncRoute((req, res) -> {
+                written.set(res);
+                return stage;
+            });
+            slow.setTimeout(50);
+            router.route("/slow", slow, Method.GET);
+        });
+        server.init();
+
+        assertTrue(handle(server, "/slow")[0].startsWith("HTTP/1.1 503 Service Unavailable"));
+        // Still written by the stage once timed out, its buffer isn't given back yet
+        ByteStack body = written.get().getBody();
+        written.get().addBody("late");
+        assertEquals(4, body.size());
+        // Given back by the thread completing the stage
+        stage.complete(new TextView("too late"));
+        ByteStack next = ByteStackPool.acquire(body.capacity());
+        assertSame(body, next);
+        ByteStackPool.release(next);
+    }
+
+    @Test
+    public void testAsyncAnswered() throws Exception {
+        CompletableFuture<View> stage = new CompletableFuture<>();
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.route("/wait", new AnonymousAsyncRoute((req, res) -> stage), Method.GET);
+            router.route("/home", (req, res) -> new TextView("home"), Method.GET);
+        });
+        server.init();
+
+        // Answered when the handler returns
+        AtomicInteger answered = new AtomicInteger();
+        ByteArrayOutputStream home = new ByteArrayOutputStream();
+        server.handler(client("GET /home HTTP/1.1\r\n\r\n", home), answered::incrementAndGet);
+        assertEquals(1, answered.get());
+
+        // Parked, answered once the response is sent
+        CountDownLatch sent = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Socket client = client("GET /wait HTTP/1.1\r\n\r\n", out);
+        server.handler(client, sent::countDown);
+        assertEquals(1, sent.getCount());
+        assertFalse(client.isClosed());
+        stage.complete(new TextView("done"));
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertTrue(client.isClosed());
+        assertTrue(out.toString(StandardCharsets.ISO_8859_1).endsWith("done"));
+    }
+
+    @Test
+    public void testLoginPassword() throws Exception {
+        AtomicInteger verified = new AtomicInteger();
+        LoginPasswordMiddleware middleware = LoginPasswordMiddleware.middleware("/admin", (login, password) -> {
+            verified.incrementAndGet();
+            return login.equals("bob") && password.equals("s3cr:t");
+        });
+        String valid = "Basic " + Base64.getEncoder().encodeToString("bob:s3cr:t".getBytes(StandardCharsets.UTF_8));
+        String invalid = "Basic " + Base64.getEncoder().encodeToString("bob:guess".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("", authenticate(middleware, valid));
+            assertTrue(authenticate(middleware, invalid).startsWith("HTTP/1.1 401"));
+        }
+        // Verified once each, then answered from the cache
+        assertEquals(2, verified.get());
+        assertEquals(4, middleware.getCache().getHits());
+
+        String challenge = authenticate(middleware, null);
+        assertTrue(challenge, challenge.startsWith("HTTP/1.1 401"));
+        assertTrue(challenge, challenge.contains("Www-Authenticate: Basic realm=\"Omny\", charset=\"UTF-8\"\r\n"));
+        assertTrue(authenticate(middleware, "Basic !!!").startsWith("HTTP/1.1 401"));
+        assertTrue(authenticate(middleware, "Bearer token").startsWith("HTTP/1.1 401"));
+
+        // Verified again once the results are forgotten
+        middleware.getCache().setTtl(0);
+        middleware.getCache().clear();
+        assertEquals("", authenticate(middleware, valid));
+        assertEquals("", authenticate(middleware, valid));
+        assertEquals(4, verified.get());
+    }
+
+    @Test
+    public void testLoginPasswordBruteForce() throws Exception {
+        AtomicInteger verified = new AtomicInteger();
+        LoginPasswordMiddleware middleware = LoginPasswordMiddleware.middleware("/admin", (login, password) -> {
+            verified.incrementAndGet();
+            return password.equals("s3cr:t");
+        });
+        CredentialCache cache = middleware.getCache();
+        cache.setAllowedFailures(3);
+        cache.setFailureDelay(200);
+        cache.setMaxFailures(4);
+        String valid = basic("bob:s3cr:t");
+        assertEquals("", authenticate(middleware, valid));
+
+        // Each password is new, only the allowed ones are verified
+        for (int i = 0; i < 10; i++) {
+            assertTrue(authenticate(middleware, basic("alice:guess" + i)).startsWith("HTTP/1.1 401"));
+        }
+        assertEquals(4, verified.get());
+        assertEquals(7, cache.getThrottled());
+        // Even the right password, until the delay passes
+        assertTrue(authenticate(middleware, basic("alice:s3cr:t")).startsWith("HTTP/1.1 401"));
+        assertEquals(4, verified.get());
+        Thread.sleep(250);
+        assertEquals("", authenticate(middleware, basic("alice:s3cr:t")));
+        assertEquals(5, verified.get());
+
+        // A flood of failures is bounded apart, the successes stay
+        for (int i = 0; i < 20; i++) {
+            authenticate(middleware, basic("user" + i + ":guess"));
+        }
+        assertTrue(cache.failureCount() <= 4);
+        assertEquals(2, cache.size());
+        int before = verified.get();
+        assertEquals("", authenticate(middleware, valid));
+        assertEquals(before, verified.get());
+    }
+
+    private static String basic(String credentials) {
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        AtomicInteger routed = new AtomicInteger();
+        RateLimitMiddleware limit = new RateLimitMiddleware("/api", 3, 0.5);
+        // The stub sockets have no address
+        limit.setKey((request, client) -> "client");
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.middleware(limit);
+            router.route("/api/search", (req, res) -> {
+                routed.incrementAndGet();
+                return new TextView("found");
+            }, Method.GET);
+            router.route("/home", (req, res) -> new TextView("home"), Method.GET);
+        });
+        server.init();
+
+        // The burst, then refused before the route
+        for (int i = 0; i < 3; i++) {
+            assertEquals("found", handle(server, "/api/search")[1]);
+        }
+        String[] refused = handle(server, "/api/search");
+        assertTrue(refused[0], refused[0].startsWith("HTTP/1.1 429 Too Many Requests"));
+        // A request every 2s
+        assertTrue(refused[0], refused[0].contains("Retry-After: 2\r\n"));
+        assertEquals(3, routed.get());
+        assertEquals("home", handle(server, "/home")[1]);
+
+        // Each client has its bucket
+        assertTrue(limit.acquire("client") > 0);
+        assertEquals(0, limit.acquire("other"));
+
+        // Bounded, the full buckets are forgotten first
+        RateLimitMiddleware bounded = new RateLimitMiddleware("/", 1, 1000);
+        bounded.setMaxEntries(128);
+        for (int i = 0; i < 10_000; i++) {
+            bounded.acquire(i);
+        }
+        assertTrue(String.valueOf(bounded.size()), bounded.size() <= 128 + 64);
+        Thread.sleep(5);
+        bounded.evictIdle();
+        assertEquals(0, bounded.size());
+    }
+
+    @Test
+    public void testJsonRoute() throws Exception {
+        List<String> users = new CopyOnWriteArrayList<>(List.of("bob"));
+        JsonRoute live = new JsonRoute(users);
+        live.setAllowCache(false);
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.route("/users", live, Method.GET);
+            router.route("/version", new JsonRoute("{\"version\":1}"), Method.GET);
+        });
+        server.init();
+
+        assertFalse(live.isConstant());
+        assertTrue(serve(server, "GET /users HTTP/1.1\r\n\r\n").endsWith("[\"bob\"]"));
+        // Serialized when answered, not when registered
+        users.add("alice");
+        assertTrue(serve(server, "GET /users HTTP/1.1\r\n\r\n").endsWith("[\"bob\",\"alice\"]"));
+        assertTrue(serve(server, "GET /version HTTP/1.1\r\n\r\n").endsWith("{\"version\":1}"));
+    }
+
+    @Test
+    public void testStaticRouteCaching() throws Exception {
+        AtomicInteger rendered = new AtomicInteger();
+        Route route = new AnonymousRoute((req, res) -> new TextView("v" + rendered.incrementAndGet()));
+        route.setLastInCache(10);
+        route.setStaleWhileRevalidate(10000);
+        DummyWebServer server = new DummyWebServer(router -> router.route("/file", route, Method.GET, true));
+        server.init();
+
+        // Served by the static middleware, cached with the times of the route
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(new StaticFileMiddleware().handle(server, server.getRouter(),
+                Request.parse("GET /file HTTP/1.1\r\nHost: localhost"), client("", out)));
+        assertTrue(out.toString(StandardCharsets.ISO_8859_1).endsWith("v1"));
+        Thread.sleep(50);
+        CacheKey key = CacheKey.of(Method.GET, "/file");
+        assertTrue(new String(server.getCaching().lookup(key), StandardCharsets.ISO_8859_1).endsWith("v1"));
+        // Rendered again in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!new String(server.getCaching().lookup(key), StandardCharsets.ISO_8859_1).endsWith("v2")) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testErrorNotCached() throws Exception {
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.route("/broken", Route.fromTemplate("missing/template.html", Map.of()), Method.GET);
+        });
+        server.init();
+
+        boolean debug = Debug.ENABLE;
+        Debug.ENABLE = false;
+        try {
+            for (int i = 0; i < 2; i++) {
+                String response = serve(server, "GET /broken HTTP/1.1\r\n\r\n");
+                assertTrue(response, response.startsWith("HTTP/1.1 500"));
+            }
+        } finally {
+            Debug.ENABLE = debug;
+        }
+        assertEquals(0, server.getCaching().countRequest("/broken"));
+    }
+
+    @Test
+    public void testRateLimitCachedRoute() throws Exception {
+        AtomicInteger routed = new AtomicInteger();
+        RateLimitMiddleware limit = new RateLimitMiddleware("/api", 2, 0.5);
+        limit.setKey((request, client) -> "client");
+        DummyWebServer server = new DummyWebServer(router -> {
+            router.middleware(limit);
+            // Cached by default
+            router.route("/api/list", (req, res) -> {
+                routed.incrementAndGet();
+                return new TextView("list");
+            }, Method.GET);
+            router.route("/home", (req, res) -> new TextView("home"), Method.GET);
+        });
+        server.init();
+
+        // Through the server, where the cached responses are looked up first
+        assertTrue(serve(server, "GET /api/list HTTP/1.1\r\n\r\n").endsWith("list"));
+        assertTrue(serve(server, "GET /api/list HTTP/1.1\r\n\r\n").endsWith("list"));
+        String refused = serve(server, "GET /api/list HTTP/1.1\r\n\r\n");
+        assertTrue(refused, refused.startsWith("HTTP/1.1 429 Too Many Requests"));
+        assertEquals(2, routed.get());
+        assertFalse(server.getRouter().isCacheable("/api/list"));
+        assertEquals(0, server.getCaching().countRequest("/api/list"));
+
+        // The other paths are still cached
+        assertTrue(server.getRouter().isCacheable("/home"));
+        serve(server, "GET /home HTTP/1.1\r\n\r\n");
+        assertTrue(serve(server, "GET /home HTTP/1.1\r\n\r\n").endsWith("home"));
+        assertEquals(2, server.getCaching().countRequest("/home"));
+    }
+
+    /**
+     * @return the raw response of the server to a raw request
+     */
+    private static String serve(WebServer server, String request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Socket client = client(request, out);
+        server.handler(client);
+        assertTrue(client.isClosed());
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return a client sending the request, the response is written to out
+     */
+    private static Socket client(String request, ByteArrayOutputStream out) {
+        ByteArrayInputStream in = new ByteArrayInputStream(request.getBytes(StandardCharsets.ISO_8859_1));
+        return new Socket() {
+            private boolean closed;
+
+            @Override
+            public InputStream getInputStream() {
+                return in;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return out;
+            }
+
+            @Override
+            public void setTcpNoDelay(boolean on) {
+            }
+
+            @Override
+            public void setSoTimeout(int timeout) {
+            }
+
+            @Override
+            public synchronized void close() {
+                this.closed = true;
+            }
+
+            @Override
+            public boolean isClosed() {
+                return this.closed;
+            }
+        };
+    }
+
+    /**
+     * @return what the middleware sent, empty if the request goes on to the route
+     */
+    private static String authenticate(LoginPasswordMiddleware middleware, String authorization)
+            throws IOException, MalformedRequestException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Socket client = new Socket() {
+            @Override
+            public OutputStream getOutputStream() {
+                return out;
+            }
+        };
+        Request request = Request.parse("GET /admin/users HTTP/1.1\r\nHost: localhost"
+                + (authorization == null ? "" : "\r\nAuthorization: " + authorization));
+        boolean stopped = middleware.handle(null, null, request, client);
+        assertEquals(stopped, out.size() > 0);
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return the head and the body of the response, decoded
+     */
+    private static String[] handle(DummyWebServer server, String path)
+            throws IOException, MalformedRequestException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountDownLatch closed = new CountDownLatch(1);
+        Socket client = new Socket() {
+            @Override
+            public OutputStream getOutputStream() {
+                return out;
+            }
+
+            @Override
+            public synchronized void close() {
+                closed.countDown();
+            }
+        };
+        Request request = Request.parse("GET " + path + " HTTP/1.1\r\nHost: localhost");
+        server.getRouter().handleRoute(server, request, client);
+        if (request.isParked()) {
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+        }
+        String raw = out.toString(StandardCharsets.ISO_8859_1);
+        int headEnd = raw.indexOf("\r\n\r\n") + 4;
+        String head = raw.substring(0, headEnd);
+        byte[] body = raw.substring(headEnd).getBytes(StandardCharsets.ISO_8859_1);
+        if (!head.contains("Content-Encoding: gzip")) {
+            return new String[] { head, new String(body, StandardCharsets.UTF_8) };
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String[] { head, new String(in.readAllBytes(), StandardCharsets.UTF_8) };
+        }
+    }
+
+    public static class CompressingInterceptor implements ResponseInterceptor, UrlMiddleware {
+
+        private String url = "/";
+
+        @Override
+        public void intercept(Request request, Response response) {
+            if (response.getResponseCode() == Code.S200_OK) {
+                response.setHeader("Content-Encoding", "gzip");
+                response.wrapBody(GZIPOutputStream::new);
+            }
+        }
+
+        @Override
+        public String getUrl() {
+            return this.url;
+        }
+
+        @Override
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+    }
+
+    public static class PathMiddleware implements Middleware, UrlMiddleware {
+
+        private String url;
+
+        public PathMiddleware(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public boolean handle(WebServer webServer, Router router, Request request, Socket client) {
+            return false;
+        }
+
+        @Override
+        public String getUrl() {
+            return this.url;
+        }
+
+        @Override
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+    }
+
     public static class APIRouter extends NamedRouter {
 
         public APIRouter() {
@@ -0,0 +1,290 @@
+package net.omny.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.omny.template.FragmentCache;
+import net.omny.template.Html;
+import net.omny.template.Template;
+import net.omny.template.TemplateCache;
+import net.omny.template.TemplateException;
+import net.omny.utils.ByteStack;
+import net.omny.utils.Debug;
+
+public class TemplateTest {
+
+    @Test
+    public void testRender() {
+        Template template = Template.compile("<h2>#{name}</h2><p>#{age} #{missing}</p>");
+        assertEquals(List.of("name", "age", "missing"), template.getVariables());
+        assertEquals("<h2>Bob</h2><p>42 #{missing}</p>", template.render(Map.of("name", "Bob", "age", "42")));
+        // Not variables
+        assertEquals("# #{} #{a-b} #{open #!x", Template.compile("# #{} #{a-b} #{open #!x").render(Map.of()));
+        // Replacement characters of regex are plain text
+        assertEquals("<b>$1 \\</b>", Template.compile("<b>#{v}</b>").render(Map.of("v", "$1 \\")));
+        // Appended to what the buffer already holds
+        ByteStack out = new ByteStack(4);
+        out.addString("> ");
+        Template.compile("caf\u00e9 #{v}").render(Map.of("v", "\u20ac"), out);
+        assertEquals("> caf\u00e9 \u20ac", new String(out.getBackedArray(), 0, out.size(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEscaping() {
+        Template template = Template.compile("<a title=\"#{v}\">#!{v}</a>");
+        assertEquals("<a title=\"&lt;b&gt; &amp; &quot;x&quot; &#39;y&#39;\"><b> & \"x\" 'y'</a>",
+                template.render(Map.of("v", "<b> & \"x\" 'y'")));
+        assertEquals("plain", Html.escape("plain"));
+        assertEquals("&lt;&lt;\u00e9&gt;", Html.escape("<<\u00e9>"));
+    }
+
+    @Test
+    public void testCacheInvalidation() throws IOException {
+        Path file = Files.createTempFile("template", ".html");
+        try {
+            TemplateCache cache = new TemplateCache();
+            cache.setCheckInterval(0);
+            Files.writeString(file, "<p>#{v}</p>");
+            Template first = cache.get(file);
+            assertSame(first, cache.get(file));
+            assertEquals("<p>1</p>", first.render(Map.of("v", "1")));
+
+            Files.writeString(file, "<div>#{v}</div>");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            Template second = cache.get(file);
+            assertNotSame(first, second);
+            assertEquals("<div>1</div>", second.render(Map.of("v", "1")));
+
+            cache.invalidate(file);
+            assertNotSame(second, cache.get(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBlocks() {
+        String source = "<ul>#{each user in users}<li class=\"#{if user.admin}admin#{else}user#{end}\">"
+                + "#{user.name}#{each tag in user.tags}, #{tag}#{end}</li>#{end}</ul>"
+                + "#{if !users}none#{end}#{if count}#{count} users#{end}";
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("users", List.of(new User("Bob & co", true, new String[] { "a", "<b>" }),
+                new User("Alice", false, new String[0])));
+        values.put("count", 2);
+        String expected = "<ul><li class=\"admin\">Bob &amp; co, a, &lt;b&gt;</li><li class=\"user\">Alice</li></ul>"
+                + "2 users";
+        assertRendered(expected, source, values);
+
+        values.put("users", List.of());
+        values.put("count", 0);
+        assertRendered("<ul></ul>none", source, values);
+
+        // Maps and their entries
+        Map<String, Object> ages = new LinkedHashMap<>();
+        ages.put("bob", 42);
+        ages.put("alice", 7);
+        assertRendered("bob=42 alice=7 x=3 #{missing.x}", "#{each entry in ages}#{entry.key}=#{entry.value} #{end}"
+                + "#{point.x}=#{point.value} #{missing.x}", Map.of("ages", ages, "point", Map.of("x", "x", "value", 3)));
+        // A loop variable hides a value of the same name, not after its loop
+        assertRendered("1 2 top", "#{each v in list}#{v} #{end}#{v}", Map.of("list", new int[] { 1, 2 }, "v", "top"));
+        // end and else are variables out of a block, as they were
+        assertRendered("E #{else}", "#{end} #{else}", Map.of("end", "E"));
+    }
+
+    @Test
+    public void testInclude() throws IOException {
+        Path directory = Files.createTempDirectory("templates");
+        Path page = directory.resolve("page.html");
+        Path row = directory.resolve("row.html");
+        try {
+            Files.writeString(page, "<table>#{each user in users}#{include row.html}#{end}</table>");
+            Files.writeString(row, "<tr><td>#{user.name}</td></tr>");
+            TemplateCache cache = new TemplateCache();
+            cache.setCheckInterval(0);
+            Template template = cache.get(page);
+            assertTrue(template.isCompiled());
+            assertEquals(List.of(page.toAbsolutePath().normalize(), row.toAbsolutePath().normalize()),
+                    template.getFiles());
+            Map<String, ?> values = Map.of("users", List.of(new User("Bob", false, new String[0])));
+            assertEquals("<table><tr><td>Bob</td></tr></table>", template.render(values));
+
+            // Compiled again when the included file changes
+            Files.writeString(row, "<tr><th>#{user.name}</th></tr>");
+            Files.setLastModifiedTime(row, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            assertEquals("<table><tr><th>Bob</th></tr></table>", cache.get(page).render(values));
+
+            Files.writeString(row, "#{include page.html}");
+            Files.setLastModifiedTime(row, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            try {
+                cache.get(page);
+                fail("Include cycle");
+            } catch (TemplateException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Include cycle"));
+            }
+        } finally {
+            Files.deleteIfExists(row);
+            Files.deleteIfExists(page);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        for (String source : new String[] { "#{each user in users}", "#{if a}#{else}#{else}#{end}",
+                "#{each user users}#{end}", "#{each a in b}#{else}#{end}", "<p>\n#{if a b}#{end}" }) {
+            try {
+                Template.compile(source);
+                fail(source);
+            } catch (TemplateException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("template:"));
+            }
+        }
+        try {
+            Template.compile("#{if a}\n\n#{each b in c}").render(Map.of());
+            fail();
+        } catch (TemplateException e) {
+            assertEquals("template:3: #{each b in c} without #{end}", e.getMessage());
+        }
+        try {
+            Template.compile("#{each b in c}#{b}#{end}").render(Map.of("c", 3));
+            fail();
+        } catch (TemplateException e) {
+            assertEquals("Can't iterate over java.lang.Integer", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFragmentCache() {
+        FragmentCache cache = FragmentCache.SHARED;
+        cache.clear();
+        for (Template template : new Template[] { Template.compile("#{cache 60s}<p>#{n}</p>#{end} #{n}"),
+                Template.parse("#{cache 60s}<p>#{n}</p>#{end} #{n}") }) {
+            assertEquals("<p>1</p> 1", template.render(Map.of("n", 1)));
+            // Only what is out of the block is rendered again
+            assertEquals("<p>1</p> 2", template.render(Map.of("n", 2)));
+        }
+        assertEquals(2, cache.size());
+
+        // A fragment per key, in a loop
+        long hits = cache.getHits();
+        Template keyed = Template.compile("#{each user in users}#{cache 1m user}#{user}=#{n} #{end}#{end}");
+        assertEquals("a=1 b=1 ", keyed.render(Map.of("users", List.of("a", "b"), "n", 1)));
+        assertEquals("b=1 c=2 a=1 ", keyed.render(Map.of("users", List.of("b", "c", "a"), "n", 2)));
+        assertEquals(hits + 2, cache.getHits());
+
+        // Expired at once
+        Template uncached = Template.compile("#{cache 0ms}#{n}#{end}");
+        assertEquals("1", uncached.render(Map.of("n", 1)));
+        assertEquals("2", uncached.render(Map.of("n", 2)));
+
+        // Bounded
+        int maxEntries = cache.getMaxEntries();
+        try {
+            cache.clear();
+            cache.setMaxEntries(3);
+            List<Integer> users = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                users.add(i);
+            }
+            keyed.render(Map.of("users", users, "n", 1));
+            assertTrue(String.valueOf(cache.size()), cache.size() <= 3);
+            // "19=1 " at most
+            assertTrue(String.valueOf(cache.getBytes()), cache.getBytes() <= cache.size() * 5L);
+        } finally {
+            cache.setMaxEntries(maxEntries);
+            cache.clear();
+        }
+
+        try {
+            Template.compile("#{cache soon}#{end}");
+            fail();
+        } catch (TemplateException e) {
+            assertEquals("template:1: expected #{cache ttl} or #{cache ttl key}, got #{cache soon}", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testLargeTemplate() {
+        // More texts than a class can index, rendered as parsed
+        StringBuilder source = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            source.append(i).append("#{v}");
+            expected.append(i).append('x');
+        }
+        Template template;
+        // Not compiling it is expected, it isn't reported
+        boolean debug = Debug.ENABLE;
+        Debug.ENABLE = false;
+        try {
+            template = Template.compile(source.toString());
+        } finally {
+            Debug.ENABLE = debug;
+        }
+        assertFalse(template.isCompiled());
+        assertEquals(expected.toString(), template.render(Map.of("v", "x")));
+        source.setLength(0);
+        expected.setLength(0);
+        for (int i = 0; i < 2000; i++) {
+            source.append("#{if v}").append(i).append("#{v}#{end}");
+            expected.append(i).append('x');
+        }
+        // Split in several methods
+        template = Template.compile(source.toString());
+        assertTrue(template.isCompiled());
+        assertEquals(expected.toString(), template.render(Map.of("v", "x")));
+    }
+
+    /**
+     * Render by the generated class and by the nodes
+     */
+    private static void assertRendered(String expected, String source, Map<String, ?> values) {
+        Template compiled = Template.compile(source);
+        assertTrue(compiled.isCompiled());
+        assertEquals(expected, compiled.render(values));
+        assertEquals(expected, Template.parse(source).render(values));
+    }
+
+    public static class User {
+
+        private final String name;
+        private final boolean admin;
+        private final String[] tags;
+
+        public User(String name, boolean admin, String[] tags) {
+            this.name = name;
+            this.admin = admin;
+            this.tags = tags;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public boolean isAdmin() {
+            return this.admin;
+        }
+
+        public String[] getTags() {
+            return this.tags;
+        }
+
+    }
+
+}
@@ -1,14 +1,58 @@
 package net.omny.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import net.omny.route.Code;
+import net.omny.route.Response;
+import net.omny.utils.ByteStack;
+import net.omny.utils.HTTPUtils.Version;
+import net.omny.views.JsonView;
+import net.omny.views.View;
+
 public class ViewTest {
 
 	@Test
 	public void textViewTest() {
 		assertTrue(true);
 	}
-	
+
+	@Test
+	public void testJsonView() {
+		Map<String, Object> user = Map.of("name", "Fabien \u00e9 \ud83d\ude00 <b>", "age", 42, "tags", List.of("a", "b"));
+		String expected = new Gson().toJson(user);
+		assertEquals(expected, written(JsonView.of(user), "application/json"));
+
+		// Generic types use their own adapter
+		List<List<Integer>> matrix = List.of(List.of(1, 2), List.of(3));
+		assertEquals("[[1,2],[3]]", written(JsonView.of(matrix, new TypeToken<List<List<Integer>>>() {
+		}.getType()), "application/json"));
+		assertEquals("null", written(JsonView.of(null), "application/json"));
+		assertEquals("{\"built\":true}", written(new JsonView("{\"built\":true}"), "application/json"));
+	}
+
+	private static String written(View view, String contentType) {
+		Response response = new Response(Code.S200_OK, Version.V1_1);
+		try {
+			view.write(response);
+			ByteStack body = response.getBody();
+			assertEquals(contentType, response.getHeader("Content-Type"));
+			// Set from the body once the response is serialized
+			String raw = new String(response.toRawBytes(), StandardCharsets.ISO_8859_1);
+			assertTrue(raw, raw.contains("\r\nContent-Length: " + body.size() + "\r\n"));
+			return new String(body.getBackedArray(), 0, body.size(), StandardCharsets.UTF_8);
+		} finally {
+			response.release();
+		}
+	}
+
 }